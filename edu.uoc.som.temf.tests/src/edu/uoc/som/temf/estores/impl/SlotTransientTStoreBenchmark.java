@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.estores.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.InternalEObject.EStore;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link SlotTransientTStoreImpl} with
+ * {@link OwnedTransientTStoreImpl}, the stores of detached objects. The
+ * <code>read</code> benchmarks measure the time of reading the features of an
+ * object, and the <code>populate</code> benchmark measures the time of
+ * creating the store of an object and setting its features. Run
+ * {@link #main(String[])} to execute them with the {@link GCProfiler}: the
+ * <code>gc.alloc.rate.norm</code> of the <code>read</code> benchmarks are the
+ * bytes allocated by every read, and the one of <code>populate</code> is an
+ * upper bound of the footprint of the store of an object.
+ *
+ * @author agomez
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlotTransientTStoreBenchmark {
+
+	protected static final int OBJECTS = 1024;
+
+	protected static final int LIST_SIZE = 16;
+
+	@Param({ "slot", "owned" })
+	public String store;
+
+	protected EClass eClass;
+
+	protected EAttribute name;
+
+	protected EAttribute size;
+
+	protected EAttribute items;
+
+	protected InternalEObject[] objects;
+
+	protected EStore[] eStores;
+
+	protected int next;
+
+	@Setup
+	public void setUp() {
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("benchmark");
+		ePackage.setNsURI("http://benchmark");
+		eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName("Element");
+		name = EcoreFactory.eINSTANCE.createEAttribute();
+		name.setName("name");
+		name.setEType(EcorePackage.Literals.ESTRING);
+		size = EcoreFactory.eINSTANCE.createEAttribute();
+		size.setName("size");
+		size.setEType(EcorePackage.Literals.EINT);
+		items = EcoreFactory.eINSTANCE.createEAttribute();
+		items.setName("items");
+		items.setEType(EcorePackage.Literals.EINT);
+		items.setUpperBound(-1);
+		items.setUnique(false);
+		eClass.getEStructuralFeatures().add(name);
+		eClass.getEStructuralFeatures().add(size);
+		eClass.getEStructuralFeatures().add(items);
+		ePackage.getEClassifiers().add(eClass);
+
+		objects = new InternalEObject[OBJECTS];
+		eStores = new EStore[OBJECTS];
+		for (int index = 0; index < OBJECTS; index++) {
+			objects[index] = (InternalEObject) EcoreUtil.create(eClass);
+			eStores[index] = populate(objects[index], index);
+		}
+	}
+
+	protected EStore createStore(InternalEObject object) {
+		return "slot".equals(store) ? new SlotTransientTStoreImpl(object) : new OwnedTransientTStoreImpl(object);
+	}
+
+	/**
+	 * Creates the store of the given <code>object</code> and sets all its
+	 * features
+	 */
+	protected EStore populate(InternalEObject object, int index) {
+		EStore eStore = createStore(object);
+		eStore.set(object, name, EStore.NO_INDEX, "element");
+		eStore.set(object, size, EStore.NO_INDEX, LIST_SIZE);
+		for (int item = 0; item < LIST_SIZE; item++) {
+			eStore.add(object, items, item, item);
+		}
+		return eStore;
+	}
+
+	protected int nextIndex() {
+		next = (next + 1) & (OBJECTS - 1);
+		return next;
+	}
+
+	/**
+	 * Reads a single-valued feature of an object
+	 */
+	@Benchmark
+	public Object readSingle() {
+		int index = nextIndex();
+		return eStores[index].get(objects[index], name, EStore.NO_INDEX);
+	}
+
+	/**
+	 * Reads an element of a many-valued feature of an object
+	 */
+	@Benchmark
+	public Object readMany() {
+		int index = nextIndex();
+		return eStores[index].get(objects[index], items, index & (LIST_SIZE - 1));
+	}
+
+	/**
+	 * Checks whether a feature of an object is set
+	 */
+	@Benchmark
+	public boolean readIsSet() {
+		int index = nextIndex();
+		return eStores[index].isSet(objects[index], size);
+	}
+
+	/**
+	 * Creates and fills the store of an object
+	 */
+	@Benchmark
+	public EStore populate() {
+		int index = nextIndex();
+		return populate(objects[index], index);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(SlotTransientTStoreBenchmark.class.getName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.estores.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.InternalEObject.EStore;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.uoc.som.temf.core.THistory;
+
+/**
+ * Checks the versions kept by {@link TemporalTransientTStoreImpl}: the
+ * boundaries of the version in effect at a timestamp, the replay of the list
+ * deltas from their checkpoints (against a reference list kept by the test),
+ * and the versions kept after pruning.
+ *
+ * @author agomez
+ *
+ */
+public class TemporalTransientTStoreImplTest {
+
+	protected static EClass element;
+
+	protected static EAttribute name;
+
+	protected static EAttribute names;
+
+	protected static EReference children;
+
+	/**
+	 * The timestamp returned by the clock of the stores
+	 */
+	protected long now;
+
+	protected InternalEObject object;
+
+	@BeforeClass
+	public static void setUpClass() {
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("temporal");
+		ePackage.setNsURI("http://temporal");
+		element = EcoreFactory.eINSTANCE.createEClass();
+		element.setName("Element");
+		name = EcoreFactory.eINSTANCE.createEAttribute();
+		name.setName("name");
+		name.setEType(EcorePackage.Literals.ESTRING);
+		names = EcoreFactory.eINSTANCE.createEAttribute();
+		names.setName("names");
+		names.setEType(EcorePackage.Literals.ESTRING);
+		names.setUpperBound(-1);
+		names.setUnique(false);
+		children = EcoreFactory.eINSTANCE.createEReference();
+		children.setName("children");
+		children.setEType(element);
+		children.setContainment(true);
+		children.setUpperBound(-1);
+		element.getEStructuralFeatures().addAll(Arrays.asList(name, names, children));
+		ePackage.getEClassifiers().add(element);
+	}
+
+	@Before
+	public void setUp() {
+		now = 0;
+		object = create();
+	}
+
+	protected static InternalEObject create() {
+		return (InternalEObject) EcoreUtil.create(element);
+	}
+
+	protected TemporalTransientTStoreImpl createStore(long retention, int checkpointInterval) {
+		return new TemporalTransientTStoreImpl(retention, () -> now, checkpointInterval);
+	}
+
+	@Test
+	public void testVersionBoundaries() {
+		TemporalTransientTStoreImpl store = createStore(TemporalTransientTStoreImpl.UNLIMITED_RETENTION, TemporalTransientTStoreImpl.DEFAULT_CHECKPOINT_INTERVAL);
+		now = 10;
+		store.set(object, name, EStore.NO_INDEX, "a");
+		now = 20;
+		store.set(object, name, EStore.NO_INDEX, "b");
+		now = 30;
+		store.set(object, name, EStore.NO_INDEX, "c");
+		now = 40;
+		store.unset(object, name);
+
+		assertNull(store.getAt(9, object, name, EStore.NO_INDEX));
+		assertFalse(store.isSetAt(9, object, name));
+		assertEquals("a", store.getAt(10, object, name, EStore.NO_INDEX));
+		assertEquals("a", store.getAt(19, object, name, EStore.NO_INDEX));
+		assertEquals("b", store.getAt(20, object, name, EStore.NO_INDEX));
+		assertEquals("c", store.getAt(39, object, name, EStore.NO_INDEX));
+		assertTrue(store.isSetAt(39, object, name));
+		assertFalse(store.isSetAt(40, object, name));
+		assertNull(store.getAt(Long.MAX_VALUE, object, name, EStore.NO_INDEX));
+
+		// The history between two timestamps includes the version in effect at
+		// the first one
+		THistory<Object> history = store.getAllBetween(15, 30, object, name, EStore.NO_INDEX, 0, false);
+		assertArrayEquals(new long[] { 10, 20, 30 }, history.getTimestamps());
+		assertEquals(Arrays.asList("a", "b", "c"), history.getValueList());
+		THistory<Object> latest = store.getAllBetween(0, Long.MAX_VALUE, object, name, EStore.NO_INDEX, 2, true);
+		assertArrayEquals(new long[] { 40, 30 }, latest.getTimestamps());
+		assertEquals(Arrays.asList(null, "c"), latest.getValueList());
+	}
+
+	@Test
+	public void testSameTimestampReplaces() {
+		TemporalTransientTStoreImpl store = createStore(TemporalTransientTStoreImpl.UNLIMITED_RETENTION, TemporalTransientTStoreImpl.DEFAULT_CHECKPOINT_INTERVAL);
+		now = 10;
+		store.set(object, name, EStore.NO_INDEX, "a");
+		store.set(object, name, EStore.NO_INDEX, "b");
+		store.add(object, names, 0, "x");
+		store.add(object, names, 1, "y");
+		assertEquals(1, store.getAllBetween(0, Long.MAX_VALUE, object, name, EStore.NO_INDEX, 0, false).size());
+		assertEquals("b", store.getAt(10, object, name, EStore.NO_INDEX));
+		THistory<Object[]> history = store.toArrayAllBetween(0, Long.MAX_VALUE, object, names, 0, false);
+		assertEquals(1, history.size());
+		assertArrayEquals(new Object[] { "x", "y" }, history.getValue(0));
+
+		// A clock that goes backwards does not reorder the versions
+		now = 5;
+		store.set(object, name, EStore.NO_INDEX, "c");
+		assertEquals("c", store.getAt(10, object, name, EStore.NO_INDEX));
+	}
+
+	@Test
+	public void testListReplayEveryVersion() {
+		for (int checkpointInterval : new int[] { 1, 3, 7, TemporalTransientTStoreImpl.DEFAULT_CHECKPOINT_INTERVAL }) {
+			checkListReplay(TemporalTransientTStoreImpl.UNLIMITED_RETENTION, checkpointInterval);
+		}
+	}
+
+	@Test
+	public void testListReplayAfterPruning() {
+		for (int checkpointInterval : new int[] { 1, 3, 7, TemporalTransientTStoreImpl.DEFAULT_CHECKPOINT_INTERVAL }) {
+			checkListReplay(40, checkpointInterval);
+		}
+	}
+
+	/**
+	 * Applies random modifications to a many-valued feature and to a reference
+	 * list, and checks the state of the feature at every timestamp that is
+	 * still retained, and its whole retained history
+	 */
+	protected void checkListReplay(long retention, int checkpointInterval) {
+		String label = "checkpoint interval " + checkpointInterval + ", retention " + retention;
+		TemporalTransientTStoreImpl store = createStore(retention, checkpointInterval);
+		Random random = new Random(checkpointInterval);
+		TreeMap<Long, List<Object>> expected = new TreeMap<>();
+		List<Object> current = null;
+		now = 0;
+		for (int step = 0; step < 2000; step++) {
+			if (random.nextInt(3) == 0) {
+				now++;
+			}
+			int size = current == null ? 0 : current.size();
+			int operation = random.nextInt(20);
+			if (operation < 8 || size == 0) {
+				int index = random.nextInt(size + 1);
+				store.add(object, names, index, "v" + step);
+				if (current == null) {
+					current = new ArrayList<>();
+				}
+				current.add(index, "v" + step);
+			} else if (operation < 11) {
+				int index = random.nextInt(size);
+				assertEquals(label, current.remove(index), store.remove(object, names, index));
+			} else if (operation < 14) {
+				int index = random.nextInt(size);
+				assertEquals(label, current.set(index, "s" + step), store.set(object, names, index, "s" + step));
+			} else if (operation < 17) {
+				int targetIndex = random.nextInt(size);
+				int sourceIndex = random.nextInt(size);
+				Object moved = current.remove(sourceIndex);
+				current.add(targetIndex, moved);
+				assertEquals(label, moved, store.move(object, names, targetIndex, sourceIndex));
+			} else if (operation < 19) {
+				store.clear(object, names);
+				current = new ArrayList<>();
+			} else {
+				store.unset(object, names);
+				current = null;
+			}
+			expected.put(now, current != null ? new ArrayList<>(current) : null);
+			assertArrayEquals(label, current != null ? current.toArray() : new Object[0], store.toArray(object, names));
+		}
+
+		// Versions replaced before the retention window are discarded, and
+		// older timestamps see the oldest retained state
+		long oldest = retention == TemporalTransientTStoreImpl.UNLIMITED_RETENTION ? 0 : expected.floorKey(now - retention);
+		for (long timestamp = 0; timestamp <= now + 1; timestamp++) {
+			Map.Entry<Long, List<Object>> entry = expected.floorEntry(Math.max(timestamp, oldest));
+			List<Object> list = entry != null ? entry.getValue() : null;
+			String message = label + ", timestamp " + timestamp;
+			assertArrayEquals(message, list != null ? list.toArray() : new Object[0], store.toArrayAt(timestamp, object, names));
+			assertEquals(message, list != null ? list.size() : 0, store.sizeAt(timestamp, object, names));
+			assertEquals(message, list != null, store.isSetAt(timestamp, object, names));
+			if (list != null && !list.isEmpty()) {
+				assertEquals(message, list.get(list.size() - 1), store.getAt(timestamp, object, names, list.size() - 1));
+			}
+		}
+
+		THistory<Object[]> history = store.toArrayAllBetween(oldest, Long.MAX_VALUE, object, names, 0, false);
+		assertEquals(label, expected.tailMap(oldest, true).size(), history.size());
+		for (int index = 0; index < history.size(); index++) {
+			List<Object> list = expected.get(history.getTimestamp(index));
+			assertArrayEquals(label, list != null ? list.toArray() : new Object[0], history.getValue(index));
+		}
+		THistory<Object[]> descending = store.toArrayAllBetween(oldest, Long.MAX_VALUE, object, names, 5, true);
+		assertEquals(label, Math.min(5, history.size()), descending.size());
+		for (int index = 0; index < descending.size(); index++) {
+			assertEquals(label, history.getTimestamp(history.size() - 1 - index), descending.getTimestamp(index));
+			assertArrayEquals(label, history.getValue(history.size() - 1 - index), descending.getValue(index));
+		}
+	}
+
+	@Test
+	public void testRetention() {
+		TemporalTransientTStoreImpl store = createStore(10, TemporalTransientTStoreImpl.DEFAULT_CHECKPOINT_INTERVAL);
+		for (now = 0; now <= 100; now += 5) {
+			store.set(object, name, EStore.NO_INDEX, "v" + now);
+		}
+		now = 100;
+		assertEquals("v95", store.getAt(95, object, name, EStore.NO_INDEX));
+		assertEquals("v90", store.getAt(90, object, name, EStore.NO_INDEX));
+		// Older timestamps see the oldest retained version
+		assertEquals("v90", store.getAt(10, object, name, EStore.NO_INDEX));
+		THistory<Object> history = store.getAllBetween(0, Long.MAX_VALUE, object, name, EStore.NO_INDEX, 0, false);
+		assertArrayEquals(new long[] { 90, 95, 100 }, history.getTimestamps());
+
+		// Pruning without new versions
+		now = 200;
+		store.prune();
+		assertArrayEquals(new long[] { 100 }, store.getAllBetween(0, Long.MAX_VALUE, object, name, EStore.NO_INDEX, 0, false).getTimestamps());
+		assertEquals("v100", store.getAt(0, object, name, EStore.NO_INDEX));
+	}
+
+	@Test
+	public void testContainment() {
+		TemporalTransientTStoreImpl store = createStore(TemporalTransientTStoreImpl.UNLIMITED_RETENTION, TemporalTransientTStoreImpl.DEFAULT_CHECKPOINT_INTERVAL);
+		InternalEObject child = create();
+		InternalEObject other = create();
+		now = 10;
+		store.add(object, children, 0, child);
+		now = 20;
+		store.remove(object, children, 0);
+		now = 30;
+		store.add(other, children, 0, child);
+
+		assertNull(store.getContainerAt(9, child));
+		assertSame(object, store.getContainerAt(10, child));
+		assertSame(children, store.getContainingFeatureAt(15, child));
+		assertSame(other, store.getContainerAt(30, child));
+		assertSame(other, store.getContainer(child));
+		assertEquals(0, store.sizeAt(25, object, children));
+		assertEquals(1, store.sizeAt(15, object, children));
+	}
+}
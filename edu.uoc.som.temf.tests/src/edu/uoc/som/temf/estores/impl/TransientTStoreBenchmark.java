@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.estores.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.InternalEObject.EStore;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the throughput of {@link ConcurrentTransientTStoreImpl} and
+ * {@link SynchronizedTransientTStoreImpl} when they are shared by 1 to 32
+ * threads, with a read-only workload and a read-mostly one (one replacement in
+ * a list every 10 operations). Run {@link #main(String[])} to execute all
+ * the combinations.
+ *
+ * @author agomez
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class TransientTStoreBenchmark {
+
+	protected static final int OBJECTS = 1024;
+
+	protected static final int LIST_SIZE = 16;
+
+	protected static final int[] THREADS = { 1, 2, 4, 8, 16, 32 };
+
+	@Param({ "concurrent", "synchronized" })
+	public String store;
+
+	protected EStore eStore;
+
+	protected EAttribute name;
+
+	protected EAttribute items;
+
+	protected InternalEObject[] objects;
+
+	@Setup
+	public void setUp() {
+		eStore = "concurrent".equals(store) ? new ConcurrentTransientTStoreImpl() : new SynchronizedTransientTStoreImpl();
+
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("benchmark");
+		ePackage.setNsURI("http://benchmark");
+		EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName("Element");
+		name = EcoreFactory.eINSTANCE.createEAttribute();
+		name.setName("name");
+		name.setEType(EcorePackage.Literals.ESTRING);
+		items = EcoreFactory.eINSTANCE.createEAttribute();
+		items.setName("items");
+		items.setEType(EcorePackage.Literals.EINT);
+		items.setUpperBound(-1);
+		eClass.getEStructuralFeatures().add(name);
+		eClass.getEStructuralFeatures().add(items);
+		ePackage.getEClassifiers().add(eClass);
+
+		objects = new InternalEObject[OBJECTS];
+		for (int index = 0; index < OBJECTS; index++) {
+			objects[index] = (InternalEObject) EcoreUtil.create(eClass);
+			eStore.set(objects[index], name, EStore.NO_INDEX, "element" + index);
+			for (int item = 0; item < LIST_SIZE; item++) {
+				eStore.add(objects[index], items, item, item);
+			}
+		}
+	}
+
+	/**
+	 * Reads the name and an element of the list of a random object
+	 */
+	@Benchmark
+	public Object read() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		InternalEObject object = objects[random.nextInt(OBJECTS)];
+		eStore.get(object, name, EStore.NO_INDEX);
+		return eStore.get(object, items, random.nextInt(LIST_SIZE));
+	}
+
+	/**
+	 * Reads as {@link #read()} does, but replaces an element of the list of the
+	 * object one out of every 10 times. The elements are replaced rather than
+	 * moved because {@link SynchronizedTransientTStoreImpl#move} is not atomic,
+	 * and concurrent moves make the lists of that store lose elements
+	 */
+	@Benchmark
+	public Object readMostly() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		InternalEObject object = objects[random.nextInt(OBJECTS)];
+		if (random.nextInt(10) == 0) {
+			return eStore.set(object, items, random.nextInt(LIST_SIZE), random.nextInt());
+		}
+		eStore.get(object, name, EStore.NO_INDEX);
+		return eStore.get(object, items, random.nextInt(LIST_SIZE));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : THREADS) {
+			Options options = new OptionsBuilder()
+					.include(TransientTStoreBenchmark.class.getName())
+					.threads(threads)
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.file.estores.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.uoc.som.temf.TURI;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.impl.TFactoryImpl;
+import edu.uoc.som.temf.file.impl.FileTResourceImpl;
+
+/**
+ * Checks that a {@link FileTResourceImpl} opened after a crash sees the
+ * modifications and the change sets whose records reached the storage
+ * device, and none of the torn or uncommitted ones.
+ *
+ * @author agomez
+ *
+ */
+public class FileResourceTStoreImplTest {
+
+	protected static EClass node;
+
+	protected static EAttribute name;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUp() {
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("recovery");
+		ePackage.setNsURI("http://recovery");
+		ePackage.setNsPrefix("recovery");
+		ePackage.setEFactoryInstance(new TFactoryImpl());
+		node = EcoreFactory.eINSTANCE.createEClass();
+		node.setName("Node");
+		name = EcoreFactory.eINSTANCE.createEAttribute();
+		name.setName("name");
+		name.setEType(EcorePackage.Literals.ESTRING);
+		node.getEStructuralFeatures().add(name);
+		ePackage.getEClassifiers().add(node);
+		EPackage.Registry.INSTANCE.put(ePackage.getNsURI(), ePackage);
+	}
+
+	/**
+	 * Creates a resource with a root whose name is <code>initial</code>, and
+	 * returns it loaded
+	 */
+	protected FileTResourceImpl createResource(URI uri, String initial) throws IOException {
+		FileTResourceImpl resource = new FileTResourceImpl(uri);
+		resource.load(Collections.emptyMap());
+		TObject root = (TObject) EcoreUtil.create(node);
+		resource.getContents().add(root);
+		root.eSet(name, initial);
+		resource.save(Collections.emptyMap());
+		return resource;
+	}
+
+	protected static TObject rootOf(FileTResourceImpl resource) {
+		return (TObject) resource.getContents().get(0);
+	}
+
+	/**
+	 * Crashes the log of the given <code>resource</code> (see
+	 * {@link FileTLogTest#crash(FileTLog)}) and shuts it down without
+	 * unloading its objects, which would read the crashed log
+	 */
+	protected static void crash(FileTResourceImpl resource) throws IOException {
+		FileTLogTest.crash(resource.getLog());
+		FileTResourceImpl.shutdownWithoutUnload(resource);
+	}
+
+	/**
+	 * Checks that a change set whose commit marker did not reach the storage
+	 * device is discarded as a whole, and that the change sets committed
+	 * before it are kept
+	 */
+	@Test
+	public void testUncommittedChangeSet() throws IOException {
+		URI uri = TURI.createTFileURI(new File(folder.getRoot(), "changeset"));
+		FileTResourceImpl resource = createResource(uri, "initial");
+		TObject root = rootOf(resource);
+		resource.beginChangeSet();
+		root.eSet(name, "committed");
+		long committed = resource.commitChangeSet();
+		resource.beginChangeSet();
+		TObject child = (TObject) EcoreUtil.create(node);
+		resource.getContents().add(child);
+		child.eSet(name, "child");
+		root.eSet(name, "uncommitted");
+		resource.commitChangeSet();
+		FileTLog log = resource.getLog();
+		File file = log.segmentFile(log.segments.size() - 1);
+		int commitOffset = log.offset - FileTLog.HEADER_SIZE
+				- FileTLog.length(FileTLog.EMPTY, FileTLog.GROUP_COMMIT_COLUMN.getBytes(StandardCharsets.UTF_8), null);
+		crash(resource);
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.seek(commitOffset);
+			randomAccessFile.writeInt(0);
+		}
+
+		resource = new FileTResourceImpl(uri);
+		resource.load(Collections.emptyMap());
+		try {
+			assertEquals(1, resource.getContents().size());
+			root = rootOf(resource);
+			assertEquals("committed", root.eGet(name));
+			assertEquals("committed", root.eGetAt(committed, name));
+		} finally {
+			resource.unload();
+		}
+	}
+
+	/**
+	 * Checks that a modification whose record is torn is discarded, and that
+	 * the resource can be modified again
+	 */
+	@Test
+	public void testTornModification() throws IOException {
+		URI uri = TURI.createTFileURI(new File(folder.getRoot(), "torn"));
+		FileTResourceImpl resource = createResource(uri, "initial");
+		TObject root = rootOf(resource);
+		root.eSet(name, "torn");
+		FileTLog log = resource.getLog();
+		long position = log.positionAt(root.tId(), name.getName(), Long.MAX_VALUE);
+		File file = log.segmentFile(FileTLog.segment(position));
+		crash(resource);
+		// The CRC of the record
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.seek(FileTLog.offset(position) + 4);
+			int crc = randomAccessFile.readInt();
+			randomAccessFile.seek(FileTLog.offset(position) + 4);
+			randomAccessFile.writeInt(~crc);
+		}
+
+		resource = new FileTResourceImpl(uri);
+		resource.load(Collections.emptyMap());
+		try {
+			root = rootOf(resource);
+			assertEquals("initial", root.eGet(name));
+			root.eSet(name, "next");
+			resource.save(Collections.emptyMap());
+		} finally {
+			resource.unload();
+		}
+
+		resource = new FileTResourceImpl(uri);
+		resource.load(Collections.emptyMap());
+		try {
+			root = rootOf(resource);
+			assertEquals("next", root.eGet(name));
+			assertNull(root.eGetAt(0, name));
+		} finally {
+			resource.unload();
+		}
+	}
+}
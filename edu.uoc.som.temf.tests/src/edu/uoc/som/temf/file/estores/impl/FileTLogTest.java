@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.file.estores.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a {@link FileTLog} recovers the records that reached the
+ * storage device when it is opened again after a crash, and discards the torn
+ * and the uncommitted ones. A crash is simulated by releasing the log without
+ * writing a checkpoint (see {@link #crash(FileTLog)}), and the segment and
+ * index files are then damaged as a crash would leave them.
+ *
+ * @author agomez
+ *
+ */
+public class FileTLogTest {
+
+	/**
+	 * Small enough for the records of every test to span several segments
+	 */
+	protected static final long SEGMENT_SIZE = 1024;
+
+	protected static final int ROWS = 8;
+
+	protected static final String COLUMN = "name";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	protected File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = folder.newFolder("log");
+	}
+
+	/**
+	 * Forces the records of the given <code>log</code> to the storage device
+	 * and releases it without writing a checkpoint, as if the process had
+	 * crashed
+	 */
+	protected static void crash(FileTLog log) throws IOException {
+		log.force();
+		log.closed = true;
+		log.segments.clear();
+		log.closeChannel();
+		log.unlock();
+	}
+
+	protected static String rowOf(int index) {
+		return "row" + index % ROWS;
+	}
+
+	protected static String string(ByteBuffer buffer) {
+		if (buffer == null) {
+			return null;
+		}
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Appends a version of the given cell, and waits until the clock has
+	 * moved past its timestamp, as the versions appended in the same
+	 * millisecond replace each other
+	 */
+	protected static void append(FileTLog log, String row, String value) throws IOException {
+		long timestamp = log.append(row, COLUMN, value.getBytes(StandardCharsets.UTF_8));
+		while (System.currentTimeMillis() <= timestamp) {
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Appends <code>count</code> versions, spread over {@link #ROWS} rows, and
+	 * records their values in <code>expected</code>
+	 */
+	protected static void append(FileTLog log, String prefix, int count, Map<String, List<String>> expected) throws IOException {
+		for (int index = 0; index < count; index++) {
+			String value = prefix + index;
+			append(log, rowOf(index), value);
+			expected.computeIfAbsent(rowOf(index), key -> new ArrayList<>()).add(value);
+		}
+	}
+
+	/**
+	 * Checks that the histories of the cells of the given <code>log</code> are
+	 * the <code>expected</code> ones
+	 */
+	protected static void checkCells(FileTLog log, Map<String, List<String>> expected) {
+		assertEquals(expected.keySet(), new HashSet<>(log.rows(COLUMN)));
+		for (Entry<String, List<String>> entry : expected.entrySet()) {
+			List<String> values = new ArrayList<>();
+			for (ByteBuffer value : log.history(entry.getKey(), COLUMN, 0, Long.MAX_VALUE, 0, false).getValueList()) {
+				values.add(string(value));
+			}
+			assertEquals(entry.getKey(), entry.getValue(), values);
+		}
+	}
+
+	protected static void removeLast(Map<String, List<String>> expected, String row) {
+		List<String> values = expected.get(row);
+		values.remove(values.size() - 1);
+		if (values.isEmpty()) {
+			expected.remove(row);
+		}
+	}
+
+	protected static void writeInt(File file, long offset, int value) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.seek(offset);
+			randomAccessFile.writeInt(value);
+		}
+	}
+
+	protected static void flipByte(File file, long offset) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.seek(offset);
+			int value = randomAccessFile.read();
+			randomAccessFile.seek(offset);
+			randomAccessFile.write(value ^ 0xFF);
+		}
+	}
+
+	/**
+	 * Checks that the index files written when the segments are filled and
+	 * when the log is closed are enough to rebuild the index
+	 */
+	@Test
+	public void testReopen() throws IOException {
+		Map<String, List<String>> expected = new LinkedHashMap<>();
+		FileTLog log = new FileTLog(directory, SEGMENT_SIZE, false);
+		append(log, "value", 200, expected);
+		int segments = log.segments.size();
+		assertTrue(segments > 2);
+		log.close();
+		for (int segment = 0; segment < segments; segment++) {
+			assertTrue(log.indexFile(segment).isFile());
+		}
+
+		log = new FileTLog(directory, SEGMENT_SIZE, false);
+		try {
+			assertEquals(segments, log.segments.size());
+			checkCells(log, expected);
+			append(log, "next", 20, expected);
+			checkCells(log, expected);
+		} finally {
+			log.close();
+		}
+	}
+
+	/**
+	 * Checks that the records written after the last index file of a segment
+	 * are replayed, both in the synchronous and in the mapped mode
+	 */
+	@Test
+	public void testReplayAfterCheckpoint() throws IOException {
+		for (boolean sync : new boolean[] { false, true }) {
+			File directory = new File(this.directory, "sync-" + sync);
+			Map<String, List<String>> expected = new LinkedHashMap<>();
+			FileTLog log = new FileTLog(directory, SEGMENT_SIZE, sync);
+			append(log, "indexed", 30, expected);
+			log.checkpoint();
+			append(log, "replayed", 60, expected);
+			crash(log);
+
+			log = new FileTLog(directory, SEGMENT_SIZE, sync);
+			try {
+				checkCells(log, expected);
+			} finally {
+				log.close();
+			}
+		}
+	}
+
+	/**
+	 * Checks that the index files which are corrupt, truncated or missing are
+	 * ignored, and that their segments are replayed instead
+	 */
+	@Test
+	public void testReplayWithoutIndex() throws IOException {
+		Map<String, List<String>> expected = new LinkedHashMap<>();
+		FileTLog log = new FileTLog(directory, SEGMENT_SIZE, false);
+		append(log, "value", 200, expected);
+		assertTrue(log.segments.size() > 3);
+		log.close();
+
+		// The offset of the first record of the segment
+		flipByte(log.indexFile(0), 16);
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(log.indexFile(1), "rw")) {
+			randomAccessFile.setLength(randomAccessFile.length() / 2);
+		}
+		assertTrue(log.indexFile(2).delete());
+
+		log = new FileTLog(directory, SEGMENT_SIZE, false);
+		try {
+			checkCells(log, expected);
+		} finally {
+			log.close();
+		}
+	}
+
+	/**
+	 * Checks that a record whose body does not match its CRC is discarded,
+	 * and that its room is reused by the next record
+	 */
+	@Test
+	public void testTornRecord() throws IOException {
+		Map<String, List<String>> expected = new LinkedHashMap<>();
+		FileTLog log = new FileTLog(directory, SEGMENT_SIZE, false);
+		append(log, "value", 100, expected);
+		String row = rowOf(99);
+		long position = log.positionAt(row, COLUMN, Long.MAX_VALUE);
+		File file = log.segmentFile(FileTLog.segment(position));
+		crash(log);
+		// The last byte of the value of the record
+		flipByte(file, FileTLog.offset(position) + FileTLog.HEADER_SIZE + FileTLog.length(row.getBytes(StandardCharsets.UTF_8),
+				COLUMN.getBytes(StandardCharsets.UTF_8), "value99".getBytes(StandardCharsets.UTF_8)) - 1);
+		removeLast(expected, row);
+
+		log = new FileTLog(directory, SEGMENT_SIZE, false);
+		try {
+			checkCells(log, expected);
+			append(log, "next", 1, expected);
+			assertEquals(position, log.positionAt(rowOf(0), COLUMN, Long.MAX_VALUE));
+			crash(log);
+		} finally {
+			log.close();
+		}
+
+		log = new FileTLog(directory, SEGMENT_SIZE, false);
+		try {
+			checkCells(log, expected);
+		} finally {
+			log.close();
+		}
+	}
+
+	/**
+	 * Checks that a segment whose tail has been cut in the middle of a record
+	 * is opened with the records before it, even if the index file of the
+	 * segment goes beyond its new end
+	 */
+	@Test
+	public void testTruncatedTail() throws IOException {
+		Map<String, List<String>> expected = new LinkedHashMap<>();
+		FileTLog log = new FileTLog(directory, SEGMENT_SIZE, false);
+		append(log, "value", 100, expected);
+		String row = rowOf(99);
+		long position = log.positionAt(row, COLUMN, Long.MAX_VALUE);
+		File file = log.segmentFile(FileTLog.segment(position));
+		log.checkpoint();
+		crash(log);
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(FileTLog.offset(position) + FileTLog.HEADER_SIZE + 4);
+		}
+		removeLast(expected, row);
+
+		log = new FileTLog(directory, SEGMENT_SIZE, false);
+		try {
+			checkCells(log, expected);
+			append(log, "next", 20, expected);
+			checkCells(log, expected);
+		} finally {
+			log.close();
+		}
+
+		log = new FileTLog(directory, SEGMENT_SIZE, false);
+		try {
+			checkCells(log, expected);
+		} finally {
+			log.close();
+		}
+	}
+
+	/**
+	 * Checks that a torn record in a segment which is replayed discards the
+	 * records after it, including the later segments
+	 */
+	@Test
+	public void testTornSegment() throws IOException {
+		// Only the records of the first segment are expected to be kept
+		Map<String, List<String>> expected = new LinkedHashMap<>();
+		FileTLog log = new FileTLog(directory, SEGMENT_SIZE, false);
+		for (int index = 0; index < 200; index++) {
+			String value = "value" + index;
+			append(log, rowOf(index), value);
+			if (FileTLog.segment(log.positionAt(rowOf(index), COLUMN, Long.MAX_VALUE)) == 0) {
+				expected.computeIfAbsent(rowOf(index), key -> new ArrayList<>()).add(value);
+			}
+		}
+		assertTrue(log.segments.size() > 3);
+		crash(log);
+		assertTrue(log.indexFile(1).delete());
+		// The length of the first record of the second segment
+		writeInt(log.segmentFile(1), 0, Integer.MAX_VALUE);
+
+		log = new FileTLog(directory, SEGMENT_SIZE, false);
+		try {
+			assertEquals(2, log.segments.size());
+			assertFalse(log.segmentFile(2).exists());
+			assertFalse(log.indexFile(2).exists());
+			checkCells(log, expected);
+			append(log, "next", 20, expected);
+			checkCells(log, expected);
+		} finally {
+			log.close();
+		}
+
+		log = new FileTLog(directory, SEGMENT_SIZE, false);
+		try {
+			checkCells(log, expected);
+		} finally {
+			log.close();
+		}
+	}
+
+	/**
+	 * Checks that the records of a group whose commit marker did not reach
+	 * the storage device are discarded, and that the records written before
+	 * the group are kept
+	 */
+	@Test
+	public void testUncommittedGroup() throws IOException {
+		Map<String, List<String>> expected = new LinkedHashMap<>();
+		FileTLog log = new FileTLog(directory, SEGMENT_SIZE, false);
+		append(log, "value", 4, expected);
+		log.beginGroup();
+		log.append(rowOf(0), COLUMN, "group".getBytes(StandardCharsets.UTF_8));
+		log.append("other", COLUMN, "group".getBytes(StandardCharsets.UTF_8));
+		log.endGroup();
+		assertEquals("group", string(log.valueAt("other", COLUMN, Long.MAX_VALUE)));
+		File file = log.segmentFile(log.segments.size() - 1);
+		int commitOffset = log.offset - FileTLog.HEADER_SIZE
+				- FileTLog.length(FileTLog.EMPTY, FileTLog.GROUP_COMMIT_COLUMN.getBytes(StandardCharsets.UTF_8), null);
+		crash(log);
+		writeInt(file, commitOffset, 0);
+
+		log = new FileTLog(directory, SEGMENT_SIZE, false);
+		try {
+			checkCells(log, expected);
+			assertNull(log.valueAt("other", COLUMN, Long.MAX_VALUE));
+			log.beginGroup();
+			log.append(rowOf(0), COLUMN, "committed".getBytes(StandardCharsets.UTF_8));
+			log.endGroup();
+			expected.get(rowOf(0)).add("committed");
+			crash(log);
+		} finally {
+			log.close();
+		}
+
+		log = new FileTLog(directory, SEGMENT_SIZE, false);
+		try {
+			checkCells(log, expected);
+		} finally {
+			log.close();
+		}
+	}
+}
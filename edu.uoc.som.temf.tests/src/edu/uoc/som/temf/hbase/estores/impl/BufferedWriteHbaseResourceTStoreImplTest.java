@@ -0,0 +1,513 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Table;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.uoc.som.temf.TURI;
+import edu.uoc.som.temf.core.impl.TFactoryImpl;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.WriteMode;
+import edu.uoc.som.temf.hbase.impl.HbaseTResourceImpl;
+
+/**
+ * Checks the {@link BufferedWriteHbaseResourceTStoreImpl} against a
+ * mini-cluster, counting the requests that it sends through its
+ * {@link Connection}.
+ *
+ * @author agomez
+ *
+ */
+public class BufferedWriteHbaseResourceTStoreImplTest {
+
+	protected static final int NODES = 50;
+
+	protected static final int TAGS = 3;
+
+	/**
+	 * The methods of {@link Table} that send requests to the region servers
+	 */
+	protected static final Set<String> TABLE_REQUESTS = new HashSet<>(Arrays.asList("get", "exists", "existsAll", "put", "delete",
+			"checkAndPut", "checkAndDelete", "checkAndMutate", "mutateRow", "append", "increment", "incrementColumnValue", "batch",
+			"batchCallback", "getScanner"));
+
+	/**
+	 * The methods of {@link Table} that send conditional mutations
+	 */
+	protected static final Set<String> CONDITIONAL_REQUESTS = new HashSet<>(Arrays.asList("checkAndPut", "checkAndDelete", "checkAndMutate"));
+
+	protected static HBaseTestingUtility util;
+
+	protected static EClass node;
+
+	protected static EAttribute name;
+
+	protected static EAttribute tags;
+
+	protected static EReference children;
+
+	protected static EReference links;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		util = new HBaseTestingUtility();
+		util.startMiniCluster();
+
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("buffered");
+		ePackage.setNsURI("http://buffered");
+		ePackage.setNsPrefix("buffered");
+		ePackage.setEFactoryInstance(new TFactoryImpl());
+		node = EcoreFactory.eINSTANCE.createEClass();
+		node.setName("Node");
+		name = EcoreFactory.eINSTANCE.createEAttribute();
+		name.setName("name");
+		name.setEType(EcorePackage.Literals.ESTRING);
+		tags = EcoreFactory.eINSTANCE.createEAttribute();
+		tags.setName("tags");
+		tags.setEType(EcorePackage.Literals.ESTRING);
+		tags.setUpperBound(-1);
+		tags.setUnique(false);
+		children = EcoreFactory.eINSTANCE.createEReference();
+		children.setName("children");
+		children.setEType(node);
+		children.setContainment(true);
+		children.setUpperBound(-1);
+		links = EcoreFactory.eINSTANCE.createEReference();
+		links.setName("links");
+		links.setEType(node);
+		links.setUpperBound(-1);
+		node.getEStructuralFeatures().addAll(Arrays.asList(name, tags, children, links));
+		ePackage.getEClassifiers().add(node);
+		EPackage.Registry.INSTANCE.put(ePackage.getNsURI(), ePackage);
+	}
+
+	@AfterClass
+	public static void tearDown() throws Exception {
+		util.shutdownMiniCluster();
+	}
+
+	/**
+	 * Counts the calls to the methods of the {@link Table}s and
+	 * {@link BufferedMutator}s of a {@link Connection}, indexed by method name.
+	 * While {@link #failWrites} is set, the {@link BufferedMutator}s drop the
+	 * mutations and fail to flush.
+	 */
+	protected static class Requests {
+
+		protected final ConcurrentMap<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+		protected volatile boolean failWrites;
+
+		protected Connection wrap(Connection connection) {
+			return proxy(Connection.class, connection, (method, invocation) -> {
+				Object result = invocation.call();
+				if (result instanceof Table) {
+					return proxy(Table.class, (Table) result, (tableMethod, tableInvocation) -> {
+						if (TABLE_REQUESTS.contains(tableMethod)) {
+							count(tableMethod);
+						}
+						return tableInvocation.call();
+					});
+				} else if (result instanceof BufferedMutator) {
+					return proxy(BufferedMutator.class, (BufferedMutator) result, (mutatorMethod, mutatorInvocation) -> {
+						if ("flush".equals(mutatorMethod)) {
+							count("flush");
+						}
+						if (failWrites && "mutate".equals(mutatorMethod)) {
+							return null;
+						} else if (failWrites && "flush".equals(mutatorMethod)) {
+							throw new IOException("Unable to flush");
+						}
+						return mutatorInvocation.call();
+					});
+				}
+				return result;
+			});
+		}
+
+		protected void count(String method) {
+			calls.computeIfAbsent(method, key -> new LongAdder()).increment();
+		}
+
+		public long get(String method) {
+			LongAdder adder = calls.get(method);
+			return adder != null ? adder.sum() : 0;
+		}
+
+		public long getTableRequests() {
+			return calls.entrySet().stream().filter(entry -> TABLE_REQUESTS.contains(entry.getKey())).mapToLong(entry -> entry.getValue().sum()).sum();
+		}
+
+		public long getConditionalRequests() {
+			return calls.entrySet().stream().filter(entry -> CONDITIONAL_REQUESTS.contains(entry.getKey())).mapToLong(entry -> entry.getValue().sum()).sum();
+		}
+
+		public void reset() {
+			calls.clear();
+		}
+
+		@Override
+		public String toString() {
+			return new HashMap<>(calls).toString();
+		}
+	}
+
+	protected interface Interceptor {
+		Object intercept(String method, Callable<Object> invocation) throws Exception;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static <T> T proxy(Class<T> type, T target, Interceptor interceptor) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			try {
+				return interceptor.intercept(method.getName(), () -> method.invoke(target, args));
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		});
+	}
+
+	protected static URI uriOf(String table) {
+		String authority = MessageFormat.format("localhost:{0,number,#}", util.getZkCluster().getClientPort());
+		return TURI.createTHBaseURI(authority, table);
+	}
+
+	/**
+	 * Returns a {@link HbaseTResourceImpl} whose requests are counted by the
+	 * given <code>requests</code>
+	 */
+	protected static HbaseTResourceImpl createResource(URI uri, Requests requests) {
+		return new HbaseTResourceImpl(uri) {
+			@Override
+			protected DirectWriteHbaseResourceTStoreImpl createHbaseEStore(Connection connection) throws IOException {
+				return super.createHbaseEStore(requests.wrap(connection));
+			}
+		};
+	}
+
+	protected static Map<String, Object> bufferedOptions(ListLayout layout) {
+		Map<String, Object> options = new HashMap<>();
+		options.put(HbaseTResourceOptions.WRITE_MODE, WriteMode.BUFFERED);
+		options.put(HbaseTResourceOptions.LIST_LAYOUT, layout);
+		options.put(HbaseTResourceOptions.WRITE_BUFFER_SIZE, 64 * 1024 * 1024);
+		options.put(HbaseTResourceOptions.WRITE_BUFFER_FLUSH_INTERVAL, 0);
+		return options;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static EList<EObject> listOf(EObject eObject, EReference reference) {
+		return (EList<EObject>) eObject.eGet(reference);
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static EList<String> listOf(EObject eObject, EAttribute attribute) {
+		return (EList<String>) eObject.eGet(attribute);
+	}
+
+	/**
+	 * Attaches {@link #NODES} nodes to the given <code>root</code> one by one,
+	 * and modifies them once attached
+	 */
+	protected static void grow(EObject root) {
+		EObject previous = root;
+		for (int index = 0; index < NODES; index++) {
+			EObject child = EcoreUtil.create(node);
+			listOf(root, children).add(child);
+			child.eSet(name, "node" + index);
+			for (int tag = 0; tag < TAGS; tag++) {
+				listOf(child, tags).add("tag" + tag);
+			}
+			listOf(child, links).add(previous);
+			previous = child;
+		}
+	}
+
+	@Test
+	public void testRequestsSerialized() throws Exception {
+		checkRequests(ListLayout.SERIALIZED);
+	}
+
+	@Test
+	public void testRequestsPerElement() throws Exception {
+		checkRequests(ListLayout.PER_ELEMENT);
+	}
+
+	@Test
+	public void testRequestsDelta() throws Exception {
+		checkRequests(ListLayout.DELTA);
+	}
+
+	/**
+	 * The objects attached by a buffered store are written without flushing
+	 * the buffer and without conditional mutations, and they are read from the
+	 * buffer. Only the list of the root, which is already in the table, is
+	 * modified with conditional mutations, so every node costs a few reads (of
+	 * its type and of the list of the root) and a conditional mutation.
+	 */
+	protected void checkRequests(ListLayout layout) throws Exception {
+		URI uri = uriOf("requests" + layout);
+		Requests requests = new Requests();
+		HbaseTResourceImpl resource = createResource(uri, requests);
+		resource.load(bufferedOptions(layout));
+		try {
+			EObject root = EcoreUtil.create(node);
+			resource.getContents().add(root);
+			resource.save(Collections.emptyMap());
+			requests.reset();
+			grow(root);
+			String message = MessageFormat.format("{0}: {1}", layout, requests);
+			assertEquals(message, 0, requests.get("flush"));
+			assertEquals(message, NODES, requests.getConditionalRequests());
+			assertTrue(message, requests.getTableRequests() <= 4 * NODES);
+
+			// The attached objects are read from the buffer
+			List<EObject> nodes = new ArrayList<>(listOf(root, children));
+			requests.reset();
+			for (int index = 0; index < NODES; index++) {
+				assertEquals(message, "node" + index, nodes.get(index).eGet(name));
+				assertEquals(message, "tag" + (TAGS - 1), listOf(nodes.get(index), tags).get(TAGS - 1));
+			}
+			assertEquals(message, 0, requests.getTableRequests());
+			resource.save(Collections.emptyMap());
+			assertEquals(message, 1, requests.get("flush"));
+		} finally {
+			resource.unload();
+		}
+
+		HbaseTResourceImpl loaded = new HbaseTResourceImpl(uri);
+		loaded.load(Collections.emptyMap());
+		try {
+			EObject root = loaded.getContents().get(0);
+			assertEquals(NODES, listOf(root, children).size());
+			EObject last = listOf(root, children).get(NODES - 1);
+			assertEquals("node" + (NODES - 1), last.eGet(name));
+			assertEquals(Arrays.asList("tag0", "tag1", "tag2"), listOf(last, tags));
+			assertEquals(listOf(root, children).get(NODES - 2), listOf(last, links).get(0));
+		} finally {
+			loaded.unload();
+		}
+	}
+
+	/**
+	 * Returns the name of the root of the resource stored in the table of the
+	 * given <code>uri</code>, as read by another resource
+	 */
+	protected static Object readName(URI uri) throws IOException {
+		HbaseTResourceImpl resource = new HbaseTResourceImpl(uri);
+		resource.load(Collections.emptyMap());
+		try {
+			return resource.getContents().get(0).eGet(name);
+		} finally {
+			resource.unload();
+		}
+	}
+
+	/**
+	 * Adds a root with the given name to the <code>resource</code>, and saves it
+	 */
+	protected static EObject createRoot(HbaseTResourceImpl resource, String rootName) throws IOException {
+		EObject root = EcoreUtil.create(node);
+		root.eSet(name, rootName);
+		resource.getContents().add(root);
+		resource.save(Collections.emptyMap());
+		return root;
+	}
+
+	/**
+	 * The modifications are read back before they are sent, and only other
+	 * resources do not see them until the buffer is flushed
+	 */
+	@Test
+	public void testReadYourWrites() throws Exception {
+		URI uri = uriOf("readYourWrites");
+		Requests requests = new Requests();
+		HbaseTResourceImpl resource = createResource(uri, requests);
+		resource.load(bufferedOptions(ListLayout.SERIALIZED));
+		try {
+			EObject root = createRoot(resource, "a");
+			requests.reset();
+			// The list is written first, since its conditional writes would
+			// flush the pending name
+			listOf(root, tags).addAll(Arrays.asList("x", "y"));
+			root.eSet(name, "b");
+			assertEquals("b", root.eGet(name));
+			assertEquals(Arrays.asList("x", "y"), listOf(root, tags));
+			assertEquals(0, requests.get("flush"));
+			assertEquals("a", readName(uri));
+
+			resource.save(Collections.emptyMap());
+			assertEquals(1, requests.get("flush"));
+			assertEquals("b", readName(uri));
+		} finally {
+			resource.unload();
+		}
+	}
+
+	@Test
+	public void testFlushOnBufferSize() throws Exception {
+		URI uri = uriOf("flushOnBufferSize");
+		Requests requests = new Requests();
+		HbaseTResourceImpl resource = createResource(uri, requests);
+		Map<String, Object> options = bufferedOptions(ListLayout.SERIALIZED);
+		options.put(HbaseTResourceOptions.WRITE_BUFFER_SIZE, 4 * 1024);
+		resource.load(options);
+		try {
+			EObject root = createRoot(resource, "a");
+			requests.reset();
+			int writes = 200;
+			for (int index = 1; index <= writes; index++) {
+				root.eSet(name, String.format("%0100d", index));
+			}
+			long flushes = requests.get("flush");
+			assertTrue(requests.toString(), flushes > 0 && flushes < writes);
+			assertEquals(String.format("%0100d", writes), root.eGet(name));
+			assertTrue(((String) readName(uri)).startsWith("0"));
+		} finally {
+			resource.unload();
+		}
+		assertEquals(String.format("%0100d", 200), readName(uri));
+	}
+
+	@Test
+	public void testFlushOnInterval() throws Exception {
+		URI uri = uriOf("flushOnInterval");
+		Requests requests = new Requests();
+		HbaseTResourceImpl resource = createResource(uri, requests);
+		Map<String, Object> options = bufferedOptions(ListLayout.SERIALIZED);
+		options.put(HbaseTResourceOptions.WRITE_BUFFER_FLUSH_INTERVAL, 100);
+		resource.load(options);
+		try {
+			EObject root = createRoot(resource, "a");
+			requests.reset();
+			root.eSet(name, "b");
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (!"b".equals(readName(uri)) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(100);
+			}
+			assertEquals("b", readName(uri));
+			assertTrue(requests.toString(), requests.get("flush") > 0);
+		} finally {
+			resource.unload();
+		}
+	}
+
+	/**
+	 * Write failures are thrown by the flush that finds them, and the
+	 * modifications that could not be written are discarded
+	 */
+	@Test
+	public void testFailureReporting() throws Exception {
+		URI uri = uriOf("failureReporting");
+		Requests requests = new Requests();
+		HbaseTResourceImpl resource = createResource(uri, requests);
+		resource.load(bufferedOptions(ListLayout.SERIALIZED));
+		try {
+			EObject root = createRoot(resource, "a");
+			requests.failWrites = true;
+			root.eSet(name, "b");
+			try {
+				resource.save(Collections.emptyMap());
+				fail("The write failure has not been reported");
+			} catch (IOException e) {
+				// Expected
+			}
+			requests.failWrites = false;
+			assertEquals("a", readName(uri));
+			assertEquals("a", root.eGet(name));
+
+			// The store keeps working after the failure
+			root.eSet(name, "c");
+			resource.save(Collections.emptyMap());
+			assertEquals("c", readName(uri));
+		} finally {
+			requests.failWrites = false;
+			resource.unload();
+		}
+	}
+
+	/**
+	 * Failures of the flushes made in the background are reported by the next
+	 * flush requested by a client
+	 */
+	@Test
+	public void testBackgroundFailureReporting() throws Exception {
+		URI uri = uriOf("backgroundFailureReporting");
+		Requests requests = new Requests();
+		HbaseTResourceImpl resource = createResource(uri, requests);
+		Map<String, Object> options = bufferedOptions(ListLayout.SERIALIZED);
+		options.put(HbaseTResourceOptions.WRITE_BUFFER_FLUSH_INTERVAL, 50);
+		resource.load(options);
+		try {
+			EObject root = createRoot(resource, "a");
+			requests.failWrites = true;
+			requests.reset();
+			root.eSet(name, "b");
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (requests.get("flush") == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			assertTrue(requests.get("flush") > 0);
+			requests.failWrites = false;
+			// The failed modification is still read until it is reported
+			assertEquals("b", root.eGet(name));
+			try {
+				resource.save(Collections.emptyMap());
+				fail("The write failure has not been reported");
+			} catch (IOException e) {
+				// Expected
+			}
+			assertEquals("a", readName(uri));
+			resource.save(Collections.emptyMap());
+		} finally {
+			requests.failWrites = false;
+			resource.unload();
+		}
+	}
+}
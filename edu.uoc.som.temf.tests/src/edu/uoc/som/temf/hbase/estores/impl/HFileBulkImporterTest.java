@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.uoc.som.temf.TURI;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.impl.TFactoryImpl;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+import edu.uoc.som.temf.hbase.impl.HbaseTResourceImpl;
+
+/**
+ * Imports an XMI model with the {@link HFileBulkImporter} into the table of a
+ * mini-cluster, for every {@link ListLayout}, and checks that the
+ * {@link HbaseTResourceImpl} that is loaded from the table is equal to the
+ * model.
+ *
+ * @author agomez
+ *
+ */
+public class HFileBulkImporterTest {
+
+	protected static final int LIBRARIES = 3;
+
+	protected static final int BOOKS = 50;
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	protected static HBaseTestingUtility util;
+
+	protected static EClass library;
+
+	protected static EClass book;
+
+	protected static EAttribute name;
+
+	protected static EAttribute pages;
+
+	protected static EAttribute tags;
+
+	protected static EReference books;
+
+	protected static EReference related;
+
+	protected static EReference favorite;
+
+	protected static URI modelURI;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		util = new HBaseTestingUtility();
+		util.startMiniCluster();
+
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("library");
+		ePackage.setNsURI("http://library");
+		ePackage.setNsPrefix("library");
+		ePackage.setEFactoryInstance(new TFactoryImpl());
+		library = EcoreFactory.eINSTANCE.createEClass();
+		library.setName("Library");
+		book = EcoreFactory.eINSTANCE.createEClass();
+		book.setName("Book");
+		name = EcoreFactory.eINSTANCE.createEAttribute();
+		name.setName("name");
+		name.setEType(EcorePackage.Literals.ESTRING);
+		pages = EcoreFactory.eINSTANCE.createEAttribute();
+		pages.setName("pages");
+		pages.setEType(EcorePackage.Literals.EINT);
+		tags = EcoreFactory.eINSTANCE.createEAttribute();
+		tags.setName("tags");
+		tags.setEType(EcorePackage.Literals.ESTRING);
+		tags.setUpperBound(-1);
+		tags.setUnique(false);
+		books = EcoreFactory.eINSTANCE.createEReference();
+		books.setName("books");
+		books.setEType(book);
+		books.setContainment(true);
+		books.setUpperBound(-1);
+		related = EcoreFactory.eINSTANCE.createEReference();
+		related.setName("related");
+		related.setEType(book);
+		related.setUpperBound(-1);
+		favorite = EcoreFactory.eINSTANCE.createEReference();
+		favorite.setName("favorite");
+		favorite.setEType(book);
+		library.getEStructuralFeatures().addAll(Arrays.asList(name, books, favorite));
+		book.getEStructuralFeatures().addAll(Arrays.asList(EcoreUtil.copy(name), pages, tags, related));
+		ePackage.getEClassifiers().addAll(Arrays.asList(library, book));
+		EPackage.Registry.INSTANCE.put(ePackage.getNsURI(), ePackage);
+
+		modelURI = URI.createFileURI(new File(folder.getRoot(), "library.xmi").getAbsolutePath());
+		Resource model = new XMIResourceImpl(modelURI);
+		for (int libraryIndex = 0; libraryIndex < LIBRARIES; libraryIndex++) {
+			EObject newLibrary = EcoreUtil.create(library);
+			newLibrary.eSet(name, "library" + libraryIndex);
+			EList<EObject> newBooks = listOf(newLibrary, books);
+			for (int bookIndex = 0; bookIndex < BOOKS; bookIndex++) {
+				EObject newBook = EcoreUtil.create(book);
+				newBook.eSet(book.getEStructuralFeature("name"), "book" + libraryIndex + "-" + bookIndex);
+				newBook.eSet(pages, 100 + bookIndex);
+				for (int tag = 0; tag < bookIndex % 4; tag++) {
+					listOf(newBook, tags).add("tag" + tag % 2);
+				}
+				newBooks.add(newBook);
+			}
+			newLibrary.eSet(favorite, newBooks.get(libraryIndex));
+			model.getContents().add(newLibrary);
+		}
+		// Cross references, including references to the books of other
+		// libraries
+		List<EObject> allBooks = new ArrayList<>();
+		for (EObject root : model.getContents()) {
+			allBooks.addAll(listOf(root, books));
+		}
+		for (int index = 0; index < allBooks.size(); index++) {
+			for (int step = 1; step <= index % 3; step++) {
+				listOf(allBooks.get(index), related).add(allBooks.get((index + step * 7) % allBooks.size()));
+			}
+		}
+		model.save(Collections.emptyMap());
+		model.unload();
+	}
+
+	@AfterClass
+	public static void tearDown() throws Exception {
+		util.shutdownMiniCluster();
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static EList<EObject> listOf(EObject eObject, EReference reference) {
+		return (EList<EObject>) eObject.eGet(reference);
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static EList<String> listOf(EObject eObject, EAttribute attribute) {
+		return (EList<String>) eObject.eGet(attribute);
+	}
+
+	protected static URI uriOf(String table) {
+		String authority = MessageFormat.format("localhost:{0,number,#}", util.getZkCluster().getClientPort());
+		return TURI.createTHBaseURI(authority, table);
+	}
+
+	protected static Resource loadModel() throws IOException {
+		Resource model = new XMIResourceImpl(modelURI);
+		model.load(Collections.emptyMap());
+		return model;
+	}
+
+	@Test
+	public void testImportSerialized() throws Exception {
+		checkImport(ListLayout.SERIALIZED);
+	}
+
+	@Test
+	public void testImportPerElement() throws Exception {
+		checkImport(ListLayout.PER_ELEMENT);
+	}
+
+	@Test
+	public void testImportDelta() throws Exception {
+		checkImport(ListLayout.DELTA);
+	}
+
+	/**
+	 * Imports the model with the given list <code>layout</code> and reads it
+	 * back without specifying the layout, which must be taken from the table
+	 */
+	protected void checkImport(ListLayout layout) throws Exception {
+		URI uri = uriOf("import" + layout);
+		Map<String, Object> options = new HashMap<>();
+		options.put(HbaseTResourceOptions.LIST_LAYOUT, layout);
+		long cells = new HFileBulkImporter(util.getConnection(), uri, options).importModel(modelURI);
+		assertTrue(cells > 0);
+
+		Resource model = loadModel();
+		HbaseTResourceImpl resource = new HbaseTResourceImpl(uri);
+		try {
+			resource.load(Collections.emptyMap());
+			assertEquals(LIBRARIES, resource.getContents().size());
+			assertTrue(MessageFormat.format("The ''{0}'' import differs from the model", layout),
+					EcoreUtil.equals(model.getContents(), resource.getContents()));
+			EObject importedBook = listOf(resource.getContents().get(1), books).get(BOOKS - 1);
+			assertEquals(resource.getContents().get(1), importedBook.eContainer());
+			assertEquals(books, importedBook.eContainmentFeature());
+		} finally {
+			resource.unload();
+			model.unload();
+		}
+	}
+
+	/**
+	 * Imports the model at a given timestamp, and checks that it is not visible
+	 * before it. The imported objects keep the ids of the objects of the
+	 * imported model, so they are compared with another copy of the model.
+	 */
+	@Test
+	public void testImportAtTimestamp() throws Exception {
+		URI uri = uriOf("importAtTimestamp");
+		long timestamp = System.currentTimeMillis() - 60_000;
+		Resource imported = loadModel();
+		try {
+			new HFileBulkImporter(util.getConnection(), uri, Collections.emptyMap()).importResource(imported, timestamp);
+		} finally {
+			imported.unload();
+		}
+		Resource model = loadModel();
+		HbaseTResourceImpl resource = new HbaseTResourceImpl(uri);
+		try {
+			resource.load(Collections.emptyMap());
+			assertTrue(EcoreUtil.equals(model.getContents(), resource.getContents()));
+			TObject importedLibrary = (TObject) resource.getContents().get(0);
+			assertEquals("library0", importedLibrary.eGetAt(timestamp, name));
+			assertEquals(null, importedLibrary.eGetAt(timestamp - 1, name));
+		} finally {
+			resource.unload();
+			model.unload();
+		}
+	}
+
+	/**
+	 * The importer only writes new tables
+	 */
+	@Test
+	public void testImportIntoExistingTable() throws Exception {
+		URI uri = uriOf("importExisting");
+		HbaseTResourceImpl resource = new HbaseTResourceImpl(uri);
+		resource.load(Collections.emptyMap());
+		resource.unload();
+		try {
+			new HFileBulkImporter(util.getConnection(), uri, Collections.emptyMap()).importModel(modelURI);
+			fail("The model has been imported into an existing table");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+}
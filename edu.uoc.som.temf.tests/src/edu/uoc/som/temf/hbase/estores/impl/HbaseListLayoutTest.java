@@ -0,0 +1,467 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.uoc.som.temf.TURI;
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.impl.TFactoryImpl;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.TimestampMode;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.WriteMode;
+import edu.uoc.som.temf.hbase.impl.HbaseTResourceImpl;
+
+/**
+ * Checks the {@link HbaseListLayout}s against a mini-cluster, applying the
+ * same random modifications to a list stored with
+ * {@link ListLayout#SERIALIZED}, the reference layout, and with the layout
+ * under test, and comparing all the states of both lists.
+ *
+ * @author agomez
+ *
+ */
+public class HbaseListLayoutTest {
+
+	protected static final int MODIFICATIONS = 300;
+
+	protected static final String[] VALUES = { "a", "b", "c", "d", "e" };
+
+	/**
+	 * Values that the layouts must tell apart: <code>null</code> and the empty
+	 * {@link String}
+	 */
+	protected static final String[] NULL_AND_EMPTY_VALUES = { null, "", "a" };
+
+	protected static final int WRITERS = 2;
+
+	protected static final int ADDS = 100;
+
+	protected static HBaseTestingUtility util;
+
+	protected static EClass node;
+
+	protected static EAttribute tags;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		util = new HBaseTestingUtility();
+		util.startMiniCluster();
+
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("layout");
+		ePackage.setNsURI("http://layout");
+		ePackage.setNsPrefix("layout");
+		ePackage.setEFactoryInstance(new TFactoryImpl());
+		node = EcoreFactory.eINSTANCE.createEClass();
+		node.setName("Node");
+		tags = EcoreFactory.eINSTANCE.createEAttribute();
+		tags.setName("tags");
+		tags.setEType(EcorePackage.Literals.ESTRING);
+		tags.setUpperBound(-1);
+		tags.setUnique(false);
+		node.getEStructuralFeatures().add(tags);
+		ePackage.getEClassifiers().add(node);
+		EPackage.Registry.INSTANCE.put(ePackage.getNsURI(), ePackage);
+	}
+
+	@AfterClass
+	public static void tearDown() throws Exception {
+		util.shutdownMiniCluster();
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static EList<String> listOf(EObject eObject) {
+		return (EList<String>) eObject.eGet(tags);
+	}
+
+	protected static URI uriOf(String table) {
+		String authority = MessageFormat.format("localhost:{0,number,#}", util.getZkCluster().getClientPort());
+		return TURI.createTHBaseURI(authority, table);
+	}
+
+	/**
+	 * Every modification is written with its own timestamp, so that the
+	 * histories of both layouts have a state per modification
+	 */
+	protected static Map<String, Object> options(ListLayout layout, int checkpointInterval) {
+		Map<String, Object> options = readOptions();
+		options.put(HbaseTResourceOptions.LIST_LAYOUT, layout);
+		options.put(HbaseTResourceOptions.LIST_CHECKPOINT_INTERVAL, checkpointInterval);
+		options.put(HbaseTResourceOptions.TIMESTAMP_MODE, TimestampMode.HYBRID_LOGICAL);
+		return options;
+	}
+
+	/**
+	 * Histories are read in small pages, so that the lazy reads replay the
+	 * records of several pages
+	 */
+	protected static Map<String, Object> readOptions() {
+		Map<String, Object> options = new HashMap<>();
+		options.put(HbaseTResourceOptions.HISTORY_PAGE_SIZE, 7);
+		return options;
+	}
+
+	protected static List<Object> copyOf(Object list) {
+		return new ArrayList<>((Collection<?>) list);
+	}
+
+	@Test
+	public void testDeltaRoundTrip() throws Exception {
+		checkRoundTrip(ListLayout.DELTA, DeltaHbaseListLayoutImpl.DEFAULT_CHECKPOINT_INTERVAL, 1);
+	}
+
+	/**
+	 * A short interval replays the records from many checkpoints, including
+	 * checkpoints of unset and empty lists
+	 */
+	@Test
+	public void testDeltaRoundTripShortInterval() throws Exception {
+		checkRoundTrip(ListLayout.DELTA, 3, 2);
+	}
+
+	@Test
+	public void testDeltaRoundTripEveryVersion() throws Exception {
+		checkRoundTrip(ListLayout.DELTA, 1, 3);
+	}
+
+	@Test
+	public void testPerElementRoundTrip() throws Exception {
+		checkRoundTrip(ListLayout.PER_ELEMENT, DeltaHbaseListLayoutImpl.DEFAULT_CHECKPOINT_INTERVAL, 4);
+	}
+
+	@Test
+	public void testPerElementNullAndEmptyValues() throws Exception {
+		checkRoundTrip(ListLayout.PER_ELEMENT, DeltaHbaseListLayoutImpl.DEFAULT_CHECKPOINT_INTERVAL, 5, NULL_AND_EMPTY_VALUES);
+	}
+
+	@Test
+	public void testDeltaNullAndEmptyValues() throws Exception {
+		checkRoundTrip(ListLayout.DELTA, 3, 6, NULL_AND_EMPTY_VALUES);
+	}
+
+	/**
+	 * Removing the last elements only writes the size, so the cells of the
+	 * removed positions remain in the table, and must be ignored by the reads
+	 * of the later states
+	 */
+	@Test
+	public void testPerElementPositionsBeyondSize() throws Exception {
+		URI uri = uriOf("positionsBeyondSize");
+		HbaseTResourceImpl resource = new HbaseTResourceImpl(uri);
+		resource.load(options(ListLayout.PER_ELEMENT, DeltaHbaseListLayoutImpl.DEFAULT_CHECKPOINT_INTERVAL));
+		String id;
+		try {
+			TObject root = (TObject) EcoreUtil.create(node);
+			resource.getContents().add(root);
+			id = root.tId();
+			EList<String> list = listOf(root);
+			list.add("a");
+			list.add("b");
+			list.add("c");
+			list.remove(2);
+			list.remove(1);
+			assertEquals(Arrays.asList("a"), copyOf(list));
+			list.add("d");
+			list.clear();
+			list.add("e");
+		} finally {
+			resource.unload();
+		}
+
+		try (Table table = util.getConnection().getTable(DirectWriteHbaseResourceTStoreImpl.tableName(uri))) {
+			Get get = new Get(Bytes.toBytes(id));
+			get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, PerElementHbaseListLayoutImpl.elementQualifier(tags, 1));
+			get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, PerElementHbaseListLayoutImpl.elementQualifier(tags, 2));
+			Result result = table.get(get);
+			assertEquals("d", PerElementHbaseListLayoutImpl.toString(
+					result.getValue(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, PerElementHbaseListLayoutImpl.elementQualifier(tags, 1))));
+			assertEquals("c", PerElementHbaseListLayoutImpl.toString(
+					result.getValue(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, PerElementHbaseListLayoutImpl.elementQualifier(tags, 2))));
+		}
+
+		resource.load(readOptions());
+		try {
+			TObject root = (TObject) resource.getContents().get(0);
+			EList<String> list = listOf(root);
+			assertEquals(1, list.size());
+			assertEquals(Arrays.asList("e"), copyOf(list));
+			THistory<Object> history = root.eGetAllBetween(0, Long.MAX_VALUE, tags, 0, false);
+			List<Object> states = history.getValueList();
+			assertTrue(states.size() >= 8);
+			assertEquals(Arrays.asList(Arrays.asList("a"), Arrays.asList("a", "b"), Arrays.asList("a", "b", "c"), Arrays.asList("a", "b"),
+					Arrays.asList("a"), Arrays.asList("a", "d"), Arrays.asList(), Arrays.asList("e")), states.subList(states.size() - 8, states.size()));
+			checkHistory(root, history);
+		} finally {
+			resource.unload();
+		}
+	}
+
+	protected void checkRoundTrip(ListLayout layout, int checkpointInterval, long seed) throws Exception {
+		checkRoundTrip(layout, checkpointInterval, seed, VALUES);
+	}
+
+	/**
+	 * Applies {@link #MODIFICATIONS} random modifications, using the given
+	 * <code>values</code>, to a list stored with the given <code>layout</code>
+	 * and to a {@link ListLayout#SERIALIZED} one, and checks that, once
+	 * reloaded, both have the same states, and that each of them is the state
+	 * of the list after the corresponding modification
+	 */
+	protected void checkRoundTrip(ListLayout layout, int checkpointInterval, long seed, String[] values) throws Exception {
+		URI expectedURI = uriOf(MessageFormat.format("roundTripSerialized{0}", seed));
+		URI actualURI = uriOf(MessageFormat.format("roundTrip{0}{1}", layout, seed));
+		List<List<Object>> states = new ArrayList<>();
+		HbaseTResourceImpl expectedResource = new HbaseTResourceImpl(expectedURI);
+		HbaseTResourceImpl actualResource = new HbaseTResourceImpl(actualURI);
+		expectedResource.load(options(ListLayout.SERIALIZED, checkpointInterval));
+		actualResource.load(options(layout, checkpointInterval));
+		try {
+			EObject expectedRoot = EcoreUtil.create(node);
+			EObject actualRoot = EcoreUtil.create(node);
+			expectedResource.getContents().add(expectedRoot);
+			actualResource.getContents().add(actualRoot);
+			Random random = new Random(seed);
+			for (int modification = 0; modification < MODIFICATIONS; modification++) {
+				List<Object> state = modify(random, values, expectedRoot, actualRoot);
+				assertEquals(state, copyOf(listOf(expectedRoot)));
+				assertEquals(state, copyOf(listOf(actualRoot)));
+				states.add(state);
+			}
+		} finally {
+			expectedResource.unload();
+			actualResource.unload();
+		}
+
+		// The layout is taken from the tables
+		expectedResource.load(readOptions());
+		actualResource.load(readOptions());
+		try {
+			TObject expectedRoot = (TObject) expectedResource.getContents().get(0);
+			TObject actualRoot = (TObject) actualResource.getContents().get(0);
+			THistory<Object> expectedHistory = expectedRoot.eGetAllBetween(0, Long.MAX_VALUE, tags, 0, false);
+			THistory<Object> actualHistory = actualRoot.eGetAllBetween(0, Long.MAX_VALUE, tags, 0, false);
+			assertEquals(expectedHistory.getValueList(), actualHistory.getValueList());
+			List<Object> actualStates = actualHistory.getValueList();
+			assertTrue(actualStates.size() >= states.size());
+			assertEquals(states, actualStates.subList(actualStates.size() - states.size(), actualStates.size()));
+
+			checkHistory(actualRoot, actualHistory);
+			checkHistory(expectedRoot, expectedHistory);
+		} finally {
+			expectedResource.unload();
+			actualResource.unload();
+		}
+	}
+
+	@Test
+	public void testConcurrentAddsSerialized() throws Exception {
+		checkConcurrentAdds(ListLayout.SERIALIZED, WriteMode.DIRECT);
+	}
+
+	@Test
+	public void testConcurrentAddsPerElement() throws Exception {
+		checkConcurrentAdds(ListLayout.PER_ELEMENT, WriteMode.DIRECT);
+	}
+
+	@Test
+	public void testConcurrentAddsDelta() throws Exception {
+		checkConcurrentAdds(ListLayout.DELTA, WriteMode.DIRECT);
+	}
+
+	@Test
+	public void testConcurrentBufferedAddsSerialized() throws Exception {
+		checkConcurrentAdds(ListLayout.SERIALIZED, WriteMode.BUFFERED);
+	}
+
+	@Test
+	public void testConcurrentBufferedAddsPerElement() throws Exception {
+		checkConcurrentAdds(ListLayout.PER_ELEMENT, WriteMode.BUFFERED);
+	}
+
+	@Test
+	public void testConcurrentBufferedAddsDelta() throws Exception {
+		checkConcurrentAdds(ListLayout.DELTA, WriteMode.BUFFERED);
+	}
+
+	/**
+	 * {@link #WRITERS} threads, each one with its own resource, add
+	 * {@link #ADDS} values to the same list at the same time, and none of the
+	 * additions may be lost. Since every writer inserts at the size it has
+	 * cached, which the other writers may have increased, the order of the
+	 * values is not checked.
+	 */
+	protected void checkConcurrentAdds(ListLayout layout, WriteMode writeMode) throws Exception {
+		URI uri = uriOf(MessageFormat.format("concurrentAdds{0}{1}", layout, writeMode));
+		HbaseTResourceImpl resource = new HbaseTResourceImpl(uri);
+		resource.load(options(layout, 3));
+		resource.getContents().add(EcoreUtil.create(node));
+		resource.unload();
+
+		Map<String, Object> writerOptions = readOptions();
+		writerOptions.put(HbaseTResourceOptions.WRITE_MODE, writeMode);
+		CyclicBarrier barrier = new CyclicBarrier(WRITERS);
+		ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+		try {
+			List<Future<?>> writers = new ArrayList<>();
+			for (int writer = 0; writer < WRITERS; writer++) {
+				String prefix = "writer" + writer + "-";
+				writers.add(executor.submit(() -> {
+					HbaseTResourceImpl writerResource = new HbaseTResourceImpl(uri);
+					writerResource.load(writerOptions);
+					try {
+						EList<String> list = listOf(writerResource.getContents().get(0));
+						barrier.await();
+						for (int index = 0; index < ADDS; index++) {
+							list.add(prefix + index);
+						}
+						writerResource.save(Collections.emptyMap());
+					} finally {
+						writerResource.unload();
+					}
+					return null;
+				}));
+			}
+			for (Future<?> writer : writers) {
+				writer.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		List<String> expected = new ArrayList<>();
+		for (int writer = 0; writer < WRITERS; writer++) {
+			for (int index = 0; index < ADDS; index++) {
+				expected.add("writer" + writer + "-" + index);
+			}
+		}
+		resource.load(readOptions());
+		try {
+			List<String> actual = new ArrayList<>(listOf(resource.getContents().get(0)));
+			Collections.sort(expected);
+			Collections.sort(actual);
+			assertEquals(expected, actual);
+		} finally {
+			resource.unload();
+		}
+	}
+
+	/**
+	 * Checks the reads at the timestamps of the given <code>history</code>, and
+	 * the other ways of reading it
+	 */
+	protected void checkHistory(TObject root, THistory<Object> history) {
+		for (int index = 0; index < history.size(); index++) {
+			long timestamp = history.getTimestamp(index);
+			int last = index;
+			while (last + 1 < history.size() && history.getTimestamp(last + 1) == timestamp) {
+				last++;
+			}
+			// A read at a given millisecond sees the last version written within it
+			assertEquals(history.getValue(last), copyOf(root.eGetAt(timestamp, tags)));
+		}
+
+		List<Object> descending = new ArrayList<>(history.getValueList());
+		Collections.reverse(descending);
+		int limit = Math.min(10, history.size());
+		assertEquals(descending.subList(0, limit), root.eGetAllBetween(0, Long.MAX_VALUE, tags, limit, true).getValueList());
+
+		List<Object> cursorValues = new ArrayList<>();
+		try (THistoryCursor<Object> cursor = root.eGetAllBetweenCursor(0, Long.MAX_VALUE, tags, false)) {
+			while (cursor.next()) {
+				cursorValues.add(cursor.getValue());
+			}
+		}
+		assertEquals(history.getValueList(), cursorValues);
+		assertEquals(history.getValue(history.size() - 1), copyOf(listOf(root)));
+	}
+
+	/**
+	 * Applies the same random modification to the lists of both roots, and
+	 * returns the expected state. Modifications that would not change the
+	 * list are not applied, since layouts may not record them.
+	 */
+	protected static List<Object> modify(Random random, String[] values, EObject expectedRoot, EObject actualRoot) {
+		List<Object> state = copyOf(listOf(expectedRoot));
+		boolean set = expectedRoot.eIsSet(tags);
+		int size = state.size();
+		String value = values[random.nextInt(values.length)];
+		int operation = random.nextInt(20);
+		int index;
+		if (operation == 0 && set) {
+			expectedRoot.eUnset(tags);
+			actualRoot.eUnset(tags);
+			return new ArrayList<>();
+		} else if (operation == 1 && size > 0) {
+			listOf(expectedRoot).clear();
+			listOf(actualRoot).clear();
+			return new ArrayList<>();
+		} else if (operation < 6 && size > 1) {
+			int source = random.nextInt(size);
+			int target = (source + 1 + random.nextInt(size - 1)) % size;
+			listOf(expectedRoot).move(target, source);
+			listOf(actualRoot).move(target, source);
+			state.add(target, state.remove(source));
+		} else if (operation < 10 && size > 0) {
+			index = random.nextInt(size);
+			listOf(expectedRoot).remove(index);
+			listOf(actualRoot).remove(index);
+			state.remove(index);
+		} else if (operation < 13 && size > 0 && !Objects.equals(value, state.get(index = random.nextInt(size)))) {
+			listOf(expectedRoot).set(index, value);
+			listOf(actualRoot).set(index, value);
+			state.set(index, value);
+		} else {
+			index = random.nextInt(size + 1);
+			listOf(expectedRoot).add(index, value);
+			listOf(actualRoot).add(index, value);
+			state.add(index, value);
+		}
+		return state;
+	}
+}
@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.Store;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import edu.uoc.som.temf.TURI;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.impl.TFactoryImpl;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+import edu.uoc.som.temf.hbase.impl.HbaseTResourceImpl;
+
+/**
+ * Compares the storage and the read latency of a list that grows one element
+ * at a time in {@link ListLayout#SERIALIZED} and {@link ListLayout#DELTA}.
+ * <p>
+ * The setup of every trial starts a mini-cluster and writes, with consecutive
+ * timestamps, the cells that the layout writes when <code>size</code>
+ * elements are appended one by one, and prints the size of the store files
+ * of the table once flushed. The benchmarks read the latest state of the
+ * list, one of its elements, and its state when it had half of its elements.
+ * <p>
+ * Every version of a {@link ListLayout#SERIALIZED} list holds the whole list,
+ * so its storage grows quadratically with the size (about 35 GB for 100,000
+ * appends): {@link #main(String[])} only grows it up to 10,000 elements,
+ * and grows the {@link ListLayout#DELTA} list up to 100,000.
+ *
+ * @author agomez
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListLayoutGrowthBenchmark {
+
+	protected static final int BATCH_SIZE = 100;
+
+	@Param({ "SERIALIZED", "DELTA" })
+	public ListLayout layout;
+
+	@Param({ "1000", "10000" })
+	public int size;
+
+	protected HBaseTestingUtility util;
+
+	protected EAttribute items;
+
+	protected HbaseTResourceImpl resource;
+
+	protected TObject root;
+
+	protected long firstTimestamp;
+
+	@Setup
+	public void setUp() throws Exception {
+		util = new HBaseTestingUtility();
+		util.startMiniCluster();
+
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("growth");
+		ePackage.setNsURI("http://growth");
+		ePackage.setNsPrefix("growth");
+		ePackage.setEFactoryInstance(new TFactoryImpl());
+		EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName("Element");
+		items = EcoreFactory.eINSTANCE.createEAttribute();
+		items.setName("items");
+		items.setEType(EcorePackage.Literals.ESTRING);
+		items.setUpperBound(-1);
+		items.setUnique(false);
+		eClass.getEStructuralFeatures().add(items);
+		ePackage.getEClassifiers().add(eClass);
+		EPackage.Registry.INSTANCE.put(ePackage.getNsURI(), ePackage);
+
+		String authority = MessageFormat.format("localhost:{0,number,#}", util.getZkCluster().getClientPort());
+		URI uri = TURI.createTHBaseURI(authority, "growth");
+		Map<String, Object> options = new HashMap<>();
+		options.put(HbaseTResourceOptions.LIST_LAYOUT, layout);
+		resource = new HbaseTResourceImpl(uri);
+		resource.load(options);
+		TObject element = (TObject) EcoreUtil.create(eClass);
+		resource.getContents().add(element);
+		String id = element.tId();
+		resource.unload();
+
+		TableName tableName = DirectWriteHbaseResourceTStoreImpl.tableName(uri);
+		long valueBytes = grow(tableName, Bytes.toBytes(id));
+		long storeFileBytes = flush(tableName);
+		System.out.println(MessageFormat.format("{0} list of {1} elements: {2} bytes of values, {3} bytes of store files", layout, size, valueBytes,
+				storeFileBytes));
+
+		resource.load(Collections.emptyMap());
+		root = (TObject) resource.getContents().get(0);
+		if (listOf(root).size() != size) {
+			throw new IllegalStateException(MessageFormat.format("Unexpected size {0}", listOf(root).size()));
+		}
+	}
+
+	/**
+	 * Flushes the table until its memstores are empty (a flush requested while
+	 * another one is running is ignored), and returns the size of its store
+	 * files
+	 */
+	protected long flush(TableName tableName) throws IOException, InterruptedException {
+		List<HRegion> regions = util.getHBaseCluster().getRegions(tableName);
+		while (regions.stream().anyMatch(region -> region.getMemstoreSize() > 0)) {
+			util.getHBaseAdmin().flush(tableName);
+			Thread.sleep(1000);
+		}
+		long storeFileBytes = 0;
+		for (HRegion region : regions) {
+			for (Store store : region.getStores()) {
+				storeFileBytes += store.getStorefilesSize();
+			}
+		}
+		return storeFileBytes;
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		resource.unload();
+		util.shutdownMiniCluster();
+	}
+
+	/**
+	 * Writes the cells of <code>size</code> consecutive appends, one
+	 * millisecond apart and ending one second ago, and returns the number of
+	 * bytes of their values
+	 */
+	protected long grow(TableName tableName, byte[] row) throws IOException {
+		HbaseListLayout listLayout = DirectWriteHbaseResourceTStoreImpl.createListLayout(null, layout, util.getHBaseAdmin().getTableDescriptor(tableName));
+		firstTimestamp = System.currentTimeMillis() - size - 1000;
+		String[] values = new String[size];
+		long valueBytes = 0;
+		try (Table table = util.getConnection().getTable(tableName)) {
+			List<Put> puts = new ArrayList<>(BATCH_SIZE);
+			for (int index = 0; index < size; index++) {
+				values[index] = "item" + index;
+				Put put = new Put(row, firstTimestamp + index);
+				append(listLayout, put, values, index);
+				valueBytes += put.getFamilyCellMap().values().stream().flatMap(List::stream).mapToLong(cell -> cell.getValueLength()).sum();
+				puts.add(put);
+				if (puts.size() == BATCH_SIZE) {
+					table.put(puts);
+					puts.clear();
+				}
+			}
+			table.put(puts);
+		}
+		return valueBytes;
+	}
+
+	/**
+	 * Adds to the given {@link Put} the cells written when
+	 * <code>values[index]</code> is appended to the list
+	 */
+	protected void append(HbaseListLayout listLayout, Put put, String[] values, int index) {
+		if (index == 0) {
+			listLayout.initialize(put, items, new String[] { values[0] });
+		} else if (listLayout instanceof DeltaHbaseListLayoutImpl) {
+			// As DeltaHbaseListLayoutImpl#add, which would compare the whole
+			// lists in DeltaHbaseListLayoutImpl#replace
+			DeltaHbaseListLayoutImpl deltaLayout = (DeltaHbaseListLayoutImpl) listLayout;
+			byte[] record = deltaLayout.checkpointOf(index) == index
+					? Bytes.add(new byte[] { DeltaHbaseListLayoutImpl.CHECKPOINT }, StringArrayCodec.encode(Arrays.copyOf(values, index + 1)))
+					: DeltaHbaseListLayoutImpl.delta(DeltaHbaseListLayoutImpl.ADD, index, values[index]);
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, DeltaHbaseListLayoutImpl.recordQualifier(items, index), record);
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, DeltaHbaseListLayoutImpl.versionQualifier(items), Bytes.toBytes(index));
+		} else {
+			listLayout.replace(put, items, index - 1, null, Arrays.copyOf(values, index + 1));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	protected EList<String> listOf(TObject object) {
+		return (EList<String>) object.eGet(items);
+	}
+
+	/**
+	 * Reads the latest state of the whole list
+	 */
+	@Benchmark
+	public Object[] readLatest() {
+		return listOf(root).toArray();
+	}
+
+	/**
+	 * Reads the element in the middle of the latest state of the list
+	 */
+	@Benchmark
+	public String readElement() {
+		return listOf(root).get(size / 2);
+	}
+
+	/**
+	 * Reads the state of the list when it had half of its elements
+	 */
+	@Benchmark
+	public Object readHalf() {
+		return root.eGetAt(firstTimestamp + size / 2, items);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(ListLayoutGrowthBenchmark.class.getName())
+				.build();
+		new Runner(options).run();
+		Options deltaOptions = new OptionsBuilder()
+				.include(ListLayoutGrowthBenchmark.class.getName())
+				.param("layout", ListLayout.DELTA.name())
+				.param("size", "100000")
+				.build();
+		new Runner(deltaOptions).run();
+	}
+}
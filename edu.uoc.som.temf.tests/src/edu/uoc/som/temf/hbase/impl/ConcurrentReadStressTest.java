@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.uoc.som.temf.Logger;
+import edu.uoc.som.temf.TURI;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.TResource;
+import edu.uoc.som.temf.core.impl.TFactoryImpl;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.AccessMode;
+
+/**
+ * Reads the same {@link HbaseTResourceImpl} in
+ * {@link AccessMode#CONCURRENT} mode from an increasing number of threads,
+ * checking every value read, and reports the read throughput for every
+ * number of threads. Once the rows are cached, the reads of both the latest
+ * state (answered from the row cache) and a past state (answered from a
+ * pinned snapshot) are CPU-bound, so their throughput should grow with the
+ * number of threads as long as there are idle cores. The throughput depends
+ * on the load of the machine, so it is only logged, not checked.
+ *
+ * @author agomez
+ *
+ */
+public class ConcurrentReadStressTest {
+
+	protected static final int OBJECTS = 2000;
+
+	protected static final long MEASUREMENT_MILLIS = 2000;
+
+	protected static HBaseTestingUtility util;
+
+	protected static EClass node;
+
+	protected static EAttribute name;
+
+	protected static EReference children;
+
+	protected static HbaseTResourceImpl resource;
+
+	protected static EObject root;
+
+	protected static long pastTimestamp;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		util = new HBaseTestingUtility();
+		util.startMiniCluster();
+
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("stress");
+		ePackage.setNsURI("http://stress");
+		ePackage.setNsPrefix("stress");
+		ePackage.setEFactoryInstance(new TFactoryImpl());
+		node = EcoreFactory.eINSTANCE.createEClass();
+		node.setName("Node");
+		name = EcoreFactory.eINSTANCE.createEAttribute();
+		name.setName("name");
+		name.setEType(EcorePackage.Literals.ESTRING);
+		children = EcoreFactory.eINSTANCE.createEReference();
+		children.setName("children");
+		children.setEType(node);
+		children.setContainment(true);
+		children.setUpperBound(-1);
+		node.getEStructuralFeatures().add(name);
+		node.getEStructuralFeatures().add(children);
+		ePackage.getEClassifiers().add(node);
+		EPackage.Registry.INSTANCE.put(ePackage.getNsURI(), ePackage);
+
+		Map<String, Object> options = new HashMap<>();
+		options.put(HbaseTResourceOptions.ACCESS_MODE, AccessMode.CONCURRENT);
+		options.put(HbaseTResourceOptions.ROW_CACHE_SIZE, 64L * 1024 * 1024);
+		String authority = MessageFormat.format("localhost:{0,number,#}", util.getZkCluster().getClientPort());
+		URI uri = TURI.createTHBaseURI(authority, "stress");
+		resource = new HbaseTResourceImpl(uri);
+		resource.load(options);
+
+		root = EcoreUtil.create(node);
+		root.eSet(name, "root");
+		for (int index = 0; index < OBJECTS; index++) {
+			EObject child = EcoreUtil.create(node);
+			child.eSet(name, "past" + index);
+			childrenOf(root).add(child);
+		}
+		resource.getContents().add(root);
+		resource.save(options);
+		Thread.sleep(2);
+		pastTimestamp = System.currentTimeMillis();
+		Thread.sleep(2);
+		for (int index = 0; index < OBJECTS; index++) {
+			childrenOf(root).get(index).eSet(name, "latest" + index);
+		}
+		resource.save(options);
+	}
+
+	@AfterClass
+	public static void tearDown() throws Exception {
+		if (resource != null) {
+			resource.unload();
+		}
+		util.shutdownMiniCluster();
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static EList<EObject> childrenOf(EObject eObject) {
+		return (EList<EObject>) eObject.eGet(children);
+	}
+
+	/**
+	 * Reads the latest state of the objects from every thread
+	 */
+	@Test
+	public void testLatestReadsScale() throws Exception {
+		checkScaling("latest", index -> {
+			EObject child = childrenOf(root).get(index);
+			assertEquals("latest" + index, child.eGet(name));
+		});
+	}
+
+	/**
+	 * Reads a past state of the objects from every thread, while a view pins
+	 * the snapshot at that timestamp
+	 */
+	@Test
+	public void testHistoricalReadsScale() throws Exception {
+		TResource view = resource.viewAt(pastTimestamp);
+		try {
+			TObject pastRoot = (TObject) view.getContents().get(0);
+			checkScaling("past", index -> {
+				@SuppressWarnings("unchecked")
+				List<EObject> pastChildren = (List<EObject>) pastRoot.eGetAt(pastTimestamp, children);
+				TObject child = (TObject) pastChildren.get(index);
+				assertEquals("past" + index, child.eGetAt(pastTimestamp, name));
+			});
+		} finally {
+			view.unload();
+		}
+	}
+
+	@FunctionalInterface
+	protected interface Read {
+		void read(int index) throws Exception;
+	}
+
+	/**
+	 * Performs the given <code>read</code> with 1, 2, 4... threads up to the
+	 * number of available cores (the reads check the values read), and logs
+	 * the throughput and the speedup with respect to a single thread
+	 */
+	protected void checkScaling(String label, Read read) throws Exception {
+		// Warm up the caches
+		for (int index = 0; index < OBJECTS; index++) {
+			read.read(index);
+		}
+		int cores = Runtime.getRuntime().availableProcessors();
+		double singleThreadThroughput = 0;
+		for (int threads = 1; threads <= Math.max(cores, 2); threads *= 2) {
+			double throughput = measure(threads, read);
+			if (threads == 1) {
+				singleThreadThroughput = throughput;
+			}
+			Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("{0} reads with {1} threads: {2,number,#} reads/s (speedup {3,number,#.##})",
+					label, threads, throughput, throughput / singleThreadThroughput));
+		}
+	}
+
+	/**
+	 * Returns the number of reads per second performed by the given number of
+	 * <code>threads</code> during {@link #MEASUREMENT_MILLIS}, each one of them
+	 * reading all the objects in turn
+	 */
+	protected double measure(int threads, Read read) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			AtomicBoolean stop = new AtomicBoolean();
+			List<Future<Long>> futures = new ArrayList<>();
+			for (int thread = 0; thread < threads; thread++) {
+				int currentThread = thread;
+				futures.add(executor.submit(() -> {
+					start.await();
+					long reads = 0;
+					for (int index = currentThread; !stop.get(); index = (index + 1) % OBJECTS) {
+						read.read(index);
+						reads++;
+					}
+					return reads;
+				}));
+			}
+			long startTime = System.nanoTime();
+			start.countDown();
+			Thread.sleep(MEASUREMENT_MILLIS);
+			stop.set(true);
+			long reads = 0;
+			for (Future<Long> future : futures) {
+				reads += future.get();
+			}
+			return reads / ((System.nanoTime() - startTime) / 1e9);
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+}
@@ -10,6 +10,7 @@
  ******************************************************************************/
 package edu.uoc.som.temf;
 
+import java.io.File;
 import java.text.MessageFormat;
 import java.util.List;
 
@@ -20,6 +21,8 @@ public class TURI extends URI {
 	private static final String FILE_SCHEME = "file";
 
 	public static final String TEMF_HBASE_SCHEME = "temf-hbase";
+
+	public static final String TEMF_FILE_SCHEME = "temf-file";
 	
 	protected URI internalUri;
 	
@@ -29,7 +32,7 @@ public class TURI extends URI {
 	}
 
 	public static URI createTURI(URI uri) {
-		if (TEMF_HBASE_SCHEME.equals(uri.scheme())) {
+		if (TEMF_HBASE_SCHEME.equals(uri.scheme()) || TEMF_FILE_SCHEME.equals(uri.scheme())) {
 			return new TURI(uri.hashCode(), uri);
 		} else {
 			throw new IllegalArgumentException(MessageFormat.format("Unsupported URI type {0}", uri.toString()));
@@ -47,6 +50,22 @@ public class TURI extends URI {
 		return new TURI(uri.hashCode(), uri);
 	}
 
+	/**
+	 * Creates the URI of a resource stored in the given local
+	 * <code>directory</code>
+	 */
+	public static URI createTFileURI(File directory) {
+		URI fileUri = URI.createFileURI(directory.getAbsolutePath());
+		URI uri = URI.createHierarchicalURI(
+				TURI.TEMF_FILE_SCHEME,
+				fileUri.authority(),
+				fileUri.device(),
+				fileUri.segments(),
+				null,
+				null);
+		return new TURI(uri.hashCode(), uri);
+	}
+
 	@Override
 	public boolean isArchive() {
 		return internalUri.isArchive();
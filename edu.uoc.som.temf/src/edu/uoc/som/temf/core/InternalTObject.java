@@ -20,6 +20,13 @@ public interface InternalTObject extends TObject, InternalEObject {
 	public Resource.Internal tResource();
 
 	public void tSetResource(Resource.Internal resource);
+
+	/**
+	 * Sets the {@link Resource} of this object, and the store of the
+	 * {@link Resource}, without copying the current values of the object into
+	 * the new store, since they have already been written in it
+	 */
+	public void tBasicSetResource(Resource.Internal resource);
 	
 	
 }
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * A sequence of values indexed by the (epoch millis) timestamp at which they
+ * were written, sorted in ascending or {@link #isDescending() descending} order
+ * of timestamp. Several versions written within the same millisecond may share
+ * their timestamp.
+ * <p>
+ * Timestamps and values are kept in parallel arrays, so that long histories
+ * can be queried without allocating a {@link Date} or a map entry per
+ * version. Use {@link #toSortedMap()} to get the equivalent {@link SortedMap}.
+ *
+ * @author agomez
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public class THistory<V> {
+
+	protected final boolean descending;
+
+	protected long[] timestamps;
+
+	protected Object[] values;
+
+	protected int size;
+
+	public THistory(boolean descending) {
+		this(descending, 8);
+	}
+
+	public THistory(boolean descending, int capacity) {
+		this.descending = descending;
+		this.timestamps = new long[Math.max(capacity, 1)];
+		this.values = new Object[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Appends a value; values must be appended in the order of the history
+	 */
+	public void add(long timestamp, V value) {
+		if (size == timestamps.length) {
+			timestamps = Arrays.copyOf(timestamps, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		timestamps[size] = timestamp;
+		values[size] = value;
+		size++;
+	}
+
+	/**
+	 * Whether the values are sorted from the newest to the oldest
+	 */
+	public boolean isDescending() {
+		return descending;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public long getTimestamp(int index) {
+		checkIndex(index);
+		return timestamps[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V getValue(int index) {
+		checkIndex(index);
+		return (V) values[index];
+	}
+
+	/**
+	 * Returns a copy of the timestamps of this history
+	 */
+	public long[] getTimestamps() {
+		return Arrays.copyOf(timestamps, size);
+	}
+
+	/**
+	 * Returns a copy of the values of this history
+	 */
+	public Object[] getValues() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * Returns an unmodifiable {@link List} view of the values of this history
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> getValueList() {
+		return Collections.unmodifiableList((List<V>) Arrays.asList(values).subList(0, size));
+	}
+
+	/**
+	 * Returns a new history with the result of applying the given
+	 * <code>function</code> to the values of this history
+	 */
+	public <W> THistory<W> map(Function<? super V, ? extends W> function) {
+		THistory<W> result = new THistory<>(descending, size);
+		for (int index = 0; index < size; index++) {
+			result.add(timestamps[index], function.apply(getValue(index)));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the equivalent {@link SortedMap}, whose iteration order is the
+	 * order of this history. Of the values that share a timestamp, only the
+	 * newest one is kept.
+	 */
+	public SortedMap<Date, V> toSortedMap() {
+		SortedMap<Date, V> result = descending ? new TreeMap<>(Collections.reverseOrder()) : new TreeMap<>();
+		for (int index = 0; index < size; index++) {
+			if (descending) {
+				result.putIfAbsent(new Date(timestamps[index]), getValue(index));
+			} else {
+				result.put(new Date(timestamps[index]), getValue(index));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int index = 0; index < size; index++) {
+			if (index > 0) {
+				builder.append(", ");
+			}
+			builder.append(timestamps[index]).append('=').append(values[index] instanceof Object[] ? Arrays.toString((Object[]) values[index]) : values[index]);
+		}
+		return builder.append(']').toString();
+	}
+
+	protected void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import edu.uoc.som.temf.Logger;
+
+/**
+ * A lazy cursor over the versions of a history, which are fetched in pages
+ * (see {@link THistory}) as the cursor advances. Only the current page is kept
+ * in memory, so that histories of any length can be processed.
+ * <p>
+ * Cursors are positioned before the first version; {@link #next()} moves to
+ * the next one. Cursors must be {@link #close() closed} when they are no
+ * longer needed, which releases the underlying resources and allows to stop
+ * reading a history early. They are closed automatically once exhausted.
+ * Errors found while fetching a page are logged, and end the cursor.
+ *
+ * @author agomez
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public abstract class THistoryCursor<V> implements Closeable {
+
+	/**
+	 * A transformation of the pages of a cursor, which may access the store
+	 */
+	@FunctionalInterface
+	public interface PageFunction<V, W> {
+		THistory<W> apply(THistory<V> page) throws IOException;
+	}
+
+	protected THistory<V> page;
+
+	protected int position = -1;
+
+	protected boolean closed;
+
+	/**
+	 * Fetches the next page of the history, or returns <code>null</code> if
+	 * there are no more versions
+	 */
+	protected abstract THistory<V> nextPage() throws IOException;
+
+	/**
+	 * Releases the resources held by this cursor
+	 */
+	protected void release() {
+	}
+
+	/**
+	 * Moves to the next version, fetching a new page if needed
+	 *
+	 * @return <code>false</code> if there are no more versions
+	 */
+	public boolean next() {
+		while (!closed) {
+			if (page != null && position + 1 < page.size()) {
+				position++;
+				return true;
+			}
+			try {
+				page = nextPage();
+			} catch (IOException e) {
+				Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to read the next versions of the history: {0}", e.getMessage()));
+				page = null;
+			}
+			position = -1;
+			if (page == null) {
+				close();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the timestamp of the current version
+	 */
+	public long getTimestamp() {
+		checkPosition();
+		return page.getTimestamp(position);
+	}
+
+	/**
+	 * Returns the value of the current version
+	 */
+	public V getValue() {
+		checkPosition();
+		return page.getValue(position);
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			page = null;
+			release();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Returns a cursor over the result of applying the given
+	 * <code>function</code> to the values of this cursor, which must not be
+	 * used afterwards
+	 */
+	public <W> THistoryCursor<W> map(Function<? super V, ? extends W> function) {
+		return mapPages(page -> page.map(function));
+	}
+
+	/**
+	 * Returns a cursor over the result of applying the given
+	 * <code>function</code> to the pages of this cursor, which must not be used
+	 * afterwards. Allows to transform a whole page at once, e.g., to resolve the
+	 * objects it references with a single request.
+	 */
+	public <W> THistoryCursor<W> mapPages(PageFunction<V, W> function) {
+		THistoryCursor<V> source = this;
+		return new THistoryCursor<W>() {
+			@Override
+			protected THistory<W> nextPage() throws IOException {
+				THistory<V> page = source.nextPage();
+				return page != null ? function.apply(page) : null;
+			}
+
+			@Override
+			protected void release() {
+				source.close();
+			}
+		};
+	}
+
+	/**
+	 * Returns a sequential {@link Stream} of the remaining versions, indexed by
+	 * their timestamp, which closes this cursor when it is closed
+	 */
+	public Stream<Entry<Long, V>> stream() {
+		return StreamSupport.stream(new Spliterators.AbstractSpliterator<Entry<Long, V>>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super Entry<Long, V>> action) {
+				if (!next()) {
+					return false;
+				}
+				action.accept(new SimpleImmutableEntry<>(getTimestamp(), getValue()));
+				return true;
+			}
+		}, false).onClose(this::close);
+	}
+
+	protected void checkPosition() {
+		if (page == null || position < 0) {
+			throw new NoSuchElementException();
+		}
+	}
+
+	/**
+	 * Returns a cursor over an already fetched {@link THistory}
+	 */
+	public static <V> THistoryCursor<V> of(THistory<V> history) {
+		return new THistoryCursor<V>() {
+			private boolean fetched;
+
+			@Override
+			protected THistory<V> nextPage() {
+				if (fetched) {
+					return null;
+				}
+				fetched = true;
+				return history;
+			}
+		};
+	}
+
+	/**
+	 * Returns a cursor without versions
+	 */
+	public static <V> THistoryCursor<V> empty() {
+		return of(new THistory<>(false, 1));
+	}
+}
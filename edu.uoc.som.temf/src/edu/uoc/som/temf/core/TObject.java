@@ -27,4 +27,38 @@ public interface TObject extends EObject {
 
 	SortedMap<Date, Object> eGetAllBetween(Date startDate, Date endDate, EStructuralFeature feature);
 
+	/**
+	 * Returns at most <code>limit</code> values of the given <code>feature</code>
+	 * between the given dates, starting from the newest ones if
+	 * <code>descending</code> is <code>true</code>. A <code>limit</code> of
+	 * <code>0</code> returns all the values.
+	 */
+	SortedMap<Date, Object> eGetAllBetween(Date startDate, Date endDate, EStructuralFeature feature, int limit, boolean descending);
+
+	/*
+	 * Timestamp-based variants of the methods above. Timestamps are expressed in
+	 * milliseconds since the epoch, being Long.MAX_VALUE the latest state.
+	 */
+
+	EList<EObject> eContents(long timestamp);
+
+	Object eGetAt(long timestamp, EStructuralFeature feature);
+
+	/**
+	 * Returns at most <code>limit</code> values of the given <code>feature</code>
+	 * between the given timestamps (both inclusive), starting from the newest
+	 * ones if <code>descending</code> is <code>true</code>. A <code>limit</code>
+	 * of <code>0</code> returns all the values.
+	 */
+	THistory<Object> eGetAllBetween(long startTimestamp, long endTimestamp, EStructuralFeature feature, int limit, boolean descending);
+
+	/**
+	 * Returns a lazy {@link THistoryCursor} over the values of the given
+	 * <code>feature</code> between the given timestamps (both inclusive), in
+	 * ascending or <code>descending</code> order. Values are fetched as the
+	 * cursor advances, so that histories of any length can be processed. The
+	 * cursor must be closed when it is no longer needed.
+	 */
+	THistoryCursor<Object> eGetAllBetweenCursor(long startTimestamp, long endTimestamp, EStructuralFeature feature, boolean descending);
+
 }
@@ -10,10 +10,13 @@
  *******************************************************************************/
 package edu.uoc.som.temf.core;
 
+import java.io.IOException;
 import java.util.Date;
+import java.util.stream.Stream;
 
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
 
@@ -27,4 +30,90 @@ public interface TResource extends Resource, Resource.Internal {
 	
 	public abstract TreeIterator<EObject> getAllContents(Date date);
 	
+	/**
+	 * @see #getContents(Date)
+	 */
+	public abstract EList<EObject> getContents(long timestamp);
+	
+	/**
+	 * @see #getAllContents(Date)
+	 */
+	public abstract TreeIterator<EObject> getAllContents(long timestamp);
+
+	/**
+	 * Returns the objects contained in this resource at the given
+	 * <code>date</code> that were instances of the given {@link EClass} (or of
+	 * any of its subclasses), or the latest ones if <code>date</code> is
+	 * <code>null</code>. The returned {@link Stream} must be closed once it has
+	 * been consumed.
+	 */
+	public abstract Stream<EObject> allInstancesAt(EClass eClass, Date date);
+
+	/**
+	 * @see #allInstancesAt(EClass, Date)
+	 */
+	public abstract Stream<EObject> allInstancesAt(EClass eClass, long timestamp);
+
+	/**
+	 * Returns the objects that were instances of the given {@link EClass} (or
+	 * of any of its subclasses) contained in this resource at any moment
+	 * between the given dates (both inclusive). A <code>null</code>
+	 * <code>startDate</code> means the beginning of the history, and a
+	 * <code>null</code> <code>endDate</code> the latest state. The returned
+	 * {@link Stream} must be closed once it has been consumed.
+	 */
+	public abstract Stream<EObject> allInstancesBetween(EClass eClass, Date startDate, Date endDate);
+
+	/**
+	 * @see #allInstancesBetween(EClass, Date, Date)
+	 */
+	public abstract Stream<EObject> allInstancesBetween(EClass eClass, long startTimestamp, long endTimestamp);
+
+	/**
+	 * Returns a read-only view of this resource pinned at the given
+	 * <code>date</code>, whose objects navigate the state at that moment with
+	 * the plain EMF API. All the reads made through the view share the values
+	 * already read, so that each object is read at most once. If
+	 * <code>date</code> is <code>null</code>, the view reads the latest state,
+	 * and every value is read when it is first accessed through the view.
+	 */
+	public abstract TResource viewAt(Date date);
+
+	/**
+	 * @see #viewAt(Date)
+	 */
+	public abstract TResource viewAt(long timestamp);
+
+	/**
+	 * Starts a change set of the calling thread: all the modifications it
+	 * makes to the resource until {@link #commitChangeSet()} is called are
+	 * committed together, with a single timestamp, so that a read at any
+	 * moment sees either all of them or none. Until then, they are only seen
+	 * by the reads of the latest state made by the same thread. Change sets
+	 * can not be nested.
+	 * <p>
+	 * Stores that can not write several objects atomically (such as HBase)
+	 * only guarantee this for the modifications of every single object, and
+	 * report the objects that could not be written with a
+	 * {@link edu.uoc.som.temf.core.exceptions.ChangeSetCommitException}.
+	 * 
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if the calling thread has already started a change set
+	 */
+	public abstract void beginChangeSet() throws IOException;
+
+	/**
+	 * Commits the change set in progress, and returns the timestamp shared by
+	 * all its modifications (which can be used with {@link #viewAt(long)}).
+	 * 
+	 * @throws IOException
+	 *             if the change set could not be committed, which is a
+	 *             {@link edu.uoc.som.temf.core.exceptions.ChangeSetCommitException}
+	 *             if it has been partially committed
+	 * @throws IllegalStateException
+	 *             if the calling thread has not started a change set
+	 */
+	public abstract long commitChangeSet() throws IOException;
+	
 }
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.core.exceptions;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Signals that a change set could only be partially committed, because the
+ * store can not write all its modifications atomically and some of them could
+ * not be written (or were rejected, since another writer modified the same
+ * data in the meantime). The rows (i.e., the IDs of the objects) that have
+ * been written, and those that have not, are reported, so that the caller can
+ * repair or retry the change set.
+ *
+ * @author agomez
+ *
+ */
+public class ChangeSetCommitException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final long timestamp;
+
+	protected final List<String> writtenRows;
+
+	protected final List<String> failedRows;
+
+	public ChangeSetCommitException(String message, long timestamp, List<String> writtenRows, List<String> failedRows, Throwable t) {
+		super(message, t);
+		this.timestamp = timestamp;
+		this.writtenRows = Collections.unmodifiableList(writtenRows);
+		this.failedRows = Collections.unmodifiableList(failedRows);
+	}
+
+	/**
+	 * Returns the timestamp of the modifications that have been written
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the rows whose modifications have been written, either
+	 * completely or partially (if they also appear in {@link #getFailedRows()})
+	 */
+	public List<String> getWrittenRows() {
+		return writtenRows;
+	}
+
+	/**
+	 * Returns the rows some of whose modifications have not been written
+	 */
+	public List<String> getFailedRows() {
+		return failedRows;
+	}
+}
@@ -0,0 +1,413 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.core.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.NotificationChain;
+import org.eclipse.emf.common.util.AbstractTreeIterator;
+import org.eclipse.emf.common.util.ECollections;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.ETypedElement;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.InternalEObject.EStore;
+import org.eclipse.emf.ecore.impl.EClassifierImpl;
+import org.eclipse.emf.ecore.impl.EReferenceImpl;
+import org.eclipse.emf.ecore.impl.EStoreEObjectImpl;
+import org.eclipse.emf.ecore.impl.EStoreEObjectImpl.EStoreEList;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+
+import edu.uoc.som.temf.core.InternalTObject;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.TResource;
+import edu.uoc.som.temf.estores.TStore;
+
+/**
+ * Base class of the persistent {@link TResource}s, whose contents are kept in
+ * their {@link #eStore()} as the many-valued
+ * {@link #getRootContentsFeature()} of a dummy root object, identified by
+ * {@link #ROOT_EOBJECT_ID}.
+ *
+ * @author agomez
+ *
+ */
+public abstract class AbstractTResourceImpl extends ResourceImpl implements TResource {
+
+	/**
+	 * Fake {@link EStructuralFeature} that represents the
+	 * {@link Resource#getContents()} feature.
+	 *
+	 * @author agomez
+	 *
+	 */
+	protected static class ResourceContentsEStructuralFeature extends EReferenceImpl {
+		protected static final String RESOURCE__CONTENTS__FEATURE_NAME = "eContents";
+
+		public ResourceContentsEStructuralFeature() {
+			this.setUpperBound(ETypedElement.UNBOUNDED_MULTIPLICITY);
+			this.setLowerBound(0);
+			this.setName(RESOURCE__CONTENTS__FEATURE_NAME);
+			this.setEType(new EClassifierImpl() {
+			});
+			this.setFeatureID(RESOURCE__CONTENTS);
+		}
+	}
+
+	/**
+	 * Dummy {@link EObject} that represents the root entry point for this
+	 * {@link Resource}
+	 *
+	 * @author agomez
+	 *
+	 */
+	protected static final class DummyRootEObject extends TObjectImpl {
+		protected static final String ROOT_EOBJECT_ID = "ROOT";
+
+		public DummyRootEObject(Resource.Internal resource) {
+			super();
+			this.id = ROOT_EOBJECT_ID;
+			eSetDirectResource(resource);
+		}
+	}
+
+	protected static final ResourceContentsEStructuralFeature ROOT_CONTENTS_ESTRUCTURALFEATURE = new ResourceContentsEStructuralFeature();
+
+	/**
+	 * Id of the (dummy) object whose {@link #getRootContentsFeature()} holds
+	 * the contents of every {@link AbstractTResourceImpl}
+	 */
+	public static final String ROOT_EOBJECT_ID = DummyRootEObject.ROOT_EOBJECT_ID;
+
+	protected final DummyRootEObject DUMMY_ROOT_EOBJECT = new DummyRootEObject(this);
+
+	/**
+	 * The object that is being added to the contents of this resource, if any
+	 */
+	protected EObject attachingRoot;
+
+	protected AbstractTResourceImpl(URI uri) {
+		super(uri);
+	}
+
+	/**
+	 * Returns the fake {@link EStructuralFeature} of the object identified by
+	 * {@link #ROOT_EOBJECT_ID} that holds the contents of the resource
+	 */
+	public static EStructuralFeature getRootContentsFeature() {
+		return ROOT_CONTENTS_ESTRUCTURALFEATURE;
+	}
+
+	@Override
+	public abstract TStore eStore();
+
+	@Override
+	public EList<EObject> getContents() {
+		return new ResourceContentsEStoreEList(DUMMY_ROOT_EOBJECT, ROOT_CONTENTS_ESTRUCTURALFEATURE, eStore());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public EList<EObject> getContents(Date date) {
+		return ECollections.unmodifiableEList((EList<EObject>)(Object)ECollections.asEList(eStore().toArrayAt(date, DUMMY_ROOT_EOBJECT, ROOT_CONTENTS_ESTRUCTURALFEATURE)));
+	}
+
+	public TreeIterator<EObject> getAllContents(final Date date) {
+		return new AbstractTreeIterator<EObject>(this, false) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Iterator<EObject> getChildren(Object object) {
+				return object == AbstractTResourceImpl.this ? AbstractTResourceImpl.this.getContents(date).iterator()
+						: ((TObject) object).eContents(date).iterator();
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public EList<EObject> getContents(long timestamp) {
+		return ECollections.unmodifiableEList((EList<EObject>)(Object)ECollections.asEList(eStore().toArrayAt(timestamp, DUMMY_ROOT_EOBJECT, ROOT_CONTENTS_ESTRUCTURALFEATURE)));
+	}
+
+	@Override
+	public TreeIterator<EObject> getAllContents(final long timestamp) {
+		return new AbstractTreeIterator<EObject>(this, false) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Iterator<EObject> getChildren(Object object) {
+				return object == AbstractTResourceImpl.this ? AbstractTResourceImpl.this.getContents(timestamp).iterator()
+						: ((TObject) object).eContents(timestamp).iterator();
+			}
+		};
+	}
+
+	@Override
+	public String getURIFragment(EObject eObject) {
+		if (eObject.eResource() != this) {
+			return "/-1";
+		} else {
+			// Try to adapt as a TObject and return the ID
+			TObject tObject = TObjectAdapterFactoryImpl.getAdapter(eObject, TObject.class);
+			if (tObject != null) {
+				return (tObject.tId());
+			}
+		}
+		return super.getURIFragment(eObject);
+	}
+
+	/**
+	 * Stores the given objects (a root object being added to the contents of
+	 * this resource, followed by all its contents) at once, before they are
+	 * attached, and returns the ones that have been stored. The rest of them
+	 * copy their features one by one when they are attached. Stores none of
+	 * them by default.
+	 */
+	protected Set<InternalTObject> persistInBulk(List<InternalTObject> objects) {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Adds the given root object to the contents of this resource, which has
+	 * already been stored in the {@link #eStore()}. The object may be detached
+	 * from its former container meanwhile, and is kept as the
+	 * {@link #attachingRoot}.
+	 */
+	protected NotificationChain attachRoot(InternalEObject eObject, NotificationChain notifications) {
+		attachingRoot = eObject;
+		try {
+			notifications = eObject.eSetResource(this, notifications);
+			attached(eObject);
+			return notifications;
+		} finally {
+			attachingRoot = null;
+		}
+	}
+
+	/**
+	 * Notifies that the given objects (a root object that has been added to
+	 * the contents of this resource, followed by all its contents) have been
+	 * attached. Does nothing by default.
+	 */
+	protected void attachedInBulk(List<InternalTObject> objects) {
+	}
+
+	/**
+	 * An {@link EStoreEList} whose additions to the store can be intercepted by
+	 * overriding {@link #storeAdd(int, Object)}. Subclasses with a concrete type
+	 * argument can not override {@link #delegateAdd(int, Object)} themselves:
+	 * javac reports a name clash between the signatures declared by
+	 * {@link org.eclipse.emf.common.util.DelegatingEList} and {@link EStoreEObjectImpl.BasicEStoreEList}.
+	 *
+	 * @author agomez
+	 *
+	 */
+	protected abstract static class StoreAddingEStoreEList<E> extends EStoreEObjectImpl.EStoreEList<E> {
+		protected static final long serialVersionUID = 1L;
+
+		protected StoreAddingEStoreEList(InternalEObject owner, EStructuralFeature eStructuralFeature, EStore store) {
+			super(owner, eStructuralFeature, store);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected void delegateAdd(int index, Object object) {
+			storeAdd(index, (E) object);
+		}
+
+		/**
+		 * Adds the <code>object</code> to the store at the given
+		 * <code>index</code>
+		 */
+		protected void storeAdd(int index, E object) {
+			super.delegateAdd(index, object);
+		}
+	}
+
+	/**
+	 * A notifying {@link EStoreEList} list implementation for supporting
+	 * {@link Resource#getContents}.
+	 *
+	 * @author agomez
+	 *
+	 */
+	protected class ResourceContentsEStoreEList extends StoreAddingEStoreEList<EObject> {
+		protected static final long serialVersionUID = 1L;
+
+		protected ResourceContentsEStoreEList(InternalEObject owner, EStructuralFeature eStructuralFeature,
+				EStore store) {
+			super(owner, eStructuralFeature, store);
+		}
+
+		@Override
+		protected EObject validate(int index, EObject object) {
+			if (!canContainNull() && object == null) {
+				throw new IllegalArgumentException("The 'no null' constraint is violated");
+			}
+			return object;
+		}
+
+		@Override
+		public Object getNotifier() {
+			return AbstractTResourceImpl.this;
+		}
+
+		@Override
+		public int getFeatureID() {
+			return RESOURCE__CONTENTS;
+		}
+
+		@Override
+		protected boolean isNotificationRequired() {
+			return AbstractTResourceImpl.this.eNotificationRequired();
+		}
+
+		@Override
+		protected boolean useEquals() {
+			return false;
+		}
+
+		@Override
+		protected boolean hasInverse() {
+			return true;
+		}
+
+		@Override
+		protected boolean isUnique() {
+			return true;
+		}
+
+		@Override
+		public NotificationChain inverseAdd(EObject object, NotificationChain notifications) {
+			return attachRoot((InternalEObject) object, notifications);
+		}
+
+		@Override
+		public NotificationChain inverseRemove(EObject object, NotificationChain notifications) {
+			InternalEObject eObject = (InternalEObject) object;
+			if (AbstractTResourceImpl.this.isLoaded || unloadingContents != null) {
+				AbstractTResourceImpl.this.detached(eObject);
+			}
+			return eObject.eSetResource(null, notifications);
+		}
+
+		@Override
+		protected void storeAdd(int index, EObject object) {
+			// Maintain a list of hard links to the elements while moving them
+			// to the new resource. If a garbage collection happens while
+			// traversing the children elements, some unsaved objects that are
+			// referenced from a saved object may be garbage collected before
+			// they have been completely stored
+			List<InternalTObject> hardLinksList = new ArrayList<>();
+
+			// Collect all contents
+			hardLinksList.add(TObjectAdapterFactoryImpl.getAdapter(object, InternalTObject.class));
+			for (Iterator<EObject> it = object.eAllContents(); it.hasNext();) {
+				hardLinksList.add(TObjectAdapterFactoryImpl.getAdapter(it.next(), InternalTObject.class));
+			}
+
+			Set<InternalTObject> persistedElements = persistInBulk(hardLinksList);
+
+			// The delegate add has to be processed before adding the child
+			// elements to the resource so that the root element is created
+			super.storeAdd(index, object);
+
+			// Iterate using the hard links list instead the getAllContents
+			// We ensure that using the hardLinksList it is not taken out by JIT
+			// compiler
+			for (InternalTObject internalElement : hardLinksList) {
+				if (persistedElements.contains(internalElement)) {
+					internalElement.tBasicSetResource(AbstractTResourceImpl.this);
+				} else {
+					internalElement.tSetResource(AbstractTResourceImpl.this);
+				}
+			}
+
+			attachedInBulk(hardLinksList);
+		}
+
+		@Override
+		protected EObject delegateRemove(int index) {
+			EObject object = super.delegateRemove(index);
+			List<EObject> hardLinksList = new ArrayList<>();
+			InternalTObject eObject = TObjectAdapterFactoryImpl.getAdapter(object, InternalTObject.class);
+			// Collect all contents
+			hardLinksList.add(object);
+			for (Iterator<EObject> it = eObject.eAllContents(); it.hasNext(); hardLinksList.add(it.next()))
+				;
+			// Iterate using the hard links list instead the getAllContents
+			// We ensure that using the hardLinksList it is not taken out by JIT
+			// compiler
+			for (EObject element : hardLinksList) {
+				InternalTObject internalElement = TObjectAdapterFactoryImpl.getAdapter(element,
+						InternalTObject.class);
+				internalElement.tSetResource(null);
+			}
+			return object;
+		}
+
+		@Override
+		protected void didAdd(int index, EObject object) {
+			super.didAdd(index, object);
+			if (index == size() - 1) {
+				loaded();
+			}
+			modified();
+		}
+
+		@Override
+		protected void didRemove(int index, EObject object) {
+			super.didRemove(index, object);
+			modified();
+		}
+
+		@Override
+		protected void didSet(int index, EObject newObject, EObject oldObject) {
+			super.didSet(index, newObject, oldObject);
+			modified();
+		}
+
+		@Override
+		protected void didClear(int oldSize, Object[] oldData) {
+			if (oldSize == 0) {
+				loaded();
+			} else {
+				super.didClear(oldSize, oldData);
+			}
+		}
+
+		protected void loaded() {
+			if (!AbstractTResourceImpl.this.isLoaded()) {
+				Notification notification = AbstractTResourceImpl.this.setLoaded(true);
+				if (notification != null) {
+					AbstractTResourceImpl.this.eNotify(notification);
+				}
+			}
+		}
+
+		protected void modified() {
+			if (isTrackingModification()) {
+				setModified(true);
+			}
+		}
+	}
+}
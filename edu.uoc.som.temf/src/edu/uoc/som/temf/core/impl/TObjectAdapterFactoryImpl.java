@@ -11,6 +11,7 @@
 package edu.uoc.som.temf.core.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
@@ -29,9 +30,11 @@ public class TObjectAdapterFactoryImpl {
 	 * {@link WeakHashMap} that stores the EObjects that have been already
 	 * adapted to avoid duplication of {@link TObject}s. We use a
 	 * {@link WeakHashMap} since the adaptor is no longer needed when the
-	 * original {@link EObject} has been garbage collected
+	 * original {@link EObject} has been garbage collected. All the accesses
+	 * are synchronized on the map, since objects may be adapted by several
+	 * threads concurrently
 	 */
-	protected static Map<InternalEObject, InternalTObject> adaptedObjects = new WeakHashMap<>();	
+	protected static Map<InternalEObject, InternalTObject> adaptedObjects = Collections.synchronizedMap(new WeakHashMap<>());	
 	
 	@SuppressWarnings("unchecked")
 	public static <T> T getAdapter(Object adaptableObject, Class<T> adapterType) {
@@ -39,15 +42,11 @@ public class TObjectAdapterFactoryImpl {
 			return (T) adaptableObject;
 		} else if (adapterType.isAssignableFrom(InternalTObject.class) 
 				&& adaptableObject instanceof InternalEObject) {
-			{
-				EObject adapter = adaptedObjects.get(adaptableObject);
-				if (adapter != null) {
-					if (adapterType.isAssignableFrom(adapter.getClass())) {
-						return (T) adapter;
-					}
+			synchronized (adaptedObjects) {
+				EObject existingAdapter = adaptedObjects.get(adaptableObject);
+				if (existingAdapter != null && adapterType.isAssignableFrom(existingAdapter.getClass())) {
+					return (T) existingAdapter;
 				}
-			}
-			{
 				// Compute the interfaces that the proxy has to implement
 				// These are the current interfaces + TObject
 				List<Class<?>> interfaces = new ArrayList<>();
@@ -31,10 +31,12 @@ import org.eclipse.emf.ecore.resource.Resource.Internal;
 import org.eclipse.emf.ecore.util.EcoreUtil;
 
 import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
 import edu.uoc.som.temf.core.InternalTObject;
 import edu.uoc.som.temf.core.TResource;
 import edu.uoc.som.temf.estores.TStore;
-import edu.uoc.som.temf.estores.impl.OwnedTransientTStoreImpl;
+import edu.uoc.som.temf.estores.impl.SlotTransientTStoreImpl;
 
 public class TObjectImpl extends MinimalEStoreEObjectImpl implements InternalTObject {
 
@@ -95,16 +97,19 @@ public class TObjectImpl extends MinimalEStoreEObjectImpl implements InternalTOb
 
 	@Override
 	public int eContainerFeatureID() {
+		// Only the roots have a direct resource, so check the resource of the
+		// object instead. Its container may have not been read yet.
 		if (eContainerFeatureID == UNSETTED_FEATURE_ID) {
-			if (eDirectResource() instanceof TResource) {
+			if (tResource instanceof TResource) {
 				EReference containingFeature = (EReference) eStore().getContainingFeature(this);
 				if (containingFeature != null) {
 					EReference oppositeFeature = containingFeature.getEOpposite();
 					if (oppositeFeature != null) {
 						eBasicSetContainerFeatureID(eClass().getFeatureID(oppositeFeature));
 					} else {
+						InternalEObject container = eInternalContainer() != null ? eInternalContainer() : eStore().getContainer(this);
 						eBasicSetContainerFeatureID(InternalEObject.EOPPOSITE_FEATURE_BASE
-								- eInternalContainer().eClass().getFeatureID(containingFeature));
+								- container.eClass().getFeatureID(containingFeature));
 					}
 				}
 			}
@@ -139,7 +144,7 @@ public class TObjectImpl extends MinimalEStoreEObjectImpl implements InternalTOb
 		if (resource instanceof TResource) {
 			eStore = ((TResource) resource).eStore();
 		} else {
-			eStore = new OwnedTransientTStoreImpl(this);
+			eStore = tCreateTransientStore();
 		}
 		// Move contents from oldStore to eStore
 		if (oldStore != null && eStore != null && eStore != oldStore) {
@@ -161,10 +166,33 @@ public class TObjectImpl extends MinimalEStoreEObjectImpl implements InternalTOb
 		}
 	}
 
+	@Override
+	public void tBasicSetResource(Internal resource) {
+		this.tResource = resource;
+		if (resource instanceof TResource) {
+			eStore = ((TResource) resource).eStore();
+		} else {
+			eStore = tCreateTransientStore();
+		}
+	}
+
+	/**
+	 * Returns a new store for the data of this object while it is not
+	 * contained in a {@link TResource}. The default store is a
+	 * {@link SlotTransientTStoreImpl}, which only keeps the latest values.
+	 * Subclasses whose detached objects are queried in time (e.g., with
+	 * {@link #eGetAt(long, EStructuralFeature)}) may return a
+	 * {@link edu.uoc.som.temf.estores.impl.TemporalTransientTStoreImpl}
+	 * instead, which keeps the history of every feature.
+	 */
+	protected TStore tCreateTransientStore() {
+		return new SlotTransientTStoreImpl(this);
+	}
+
 	@Override
 	public TStore eStore() {
 		if (eStore == null) {
-			eStore = new OwnedTransientTStoreImpl(this);
+			eStore = tCreateTransientStore();
 		}
 		return eStore;
 	}
@@ -183,7 +211,32 @@ public class TObjectImpl extends MinimalEStoreEObjectImpl implements InternalTOb
 		EList<EObject> contents = ECollections.newBasicEList();
 		if (eStructuralFeatures != null) {
 			for (EStructuralFeature feature : eStructuralFeatures) {
-				contents.addAll((Collection<? extends EObject>) eGetAt(date, feature));
+				Object value = eGetAt(date, feature);
+				if (feature.isMany()) {
+					contents.addAll((Collection<? extends EObject>) value);
+				} else if (value != null) {
+					contents.add((EObject) value);
+				}
+			}
+		}
+		return ECollections.unmodifiableEList(contents);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public EList<EObject> eContents(long timestamp) {
+		EStructuralFeature[] eStructuralFeatures = ((EClassImpl.FeatureSubsetSupplier) this.eClass()
+				.getEAllStructuralFeatures()).containments();
+
+		EList<EObject> contents = ECollections.newBasicEList();
+		if (eStructuralFeatures != null) {
+			for (EStructuralFeature feature : eStructuralFeatures) {
+				Object value = eGetAt(timestamp, feature);
+				if (feature.isMany()) {
+					contents.addAll((Collection<? extends EObject>) value);
+				} else if (value != null) {
+					contents.add((EObject) value);
+				}
 			}
 		}
 		return ECollections.unmodifiableEList(contents);
@@ -214,6 +267,26 @@ public class TObjectImpl extends MinimalEStoreEObjectImpl implements InternalTOb
 	public SortedMap<Date, Object> eGetAllBetween(Date startDate, Date endDate, EStructuralFeature feature) {
 		return dynamicGetAllBetween(startDate, endDate, eDynamicFeatureID(feature));
 	}
+
+	@Override
+	public SortedMap<Date, Object> eGetAllBetween(Date startDate, Date endDate, EStructuralFeature feature, int limit, boolean descending) {
+		return dynamicGetAllBetween(startDate, endDate, eDynamicFeatureID(feature), limit, descending);
+	}
+
+	@Override
+	public Object eGetAt(long timestamp, EStructuralFeature feature) {
+		return dynamicGetAt(timestamp, eDynamicFeatureID(feature));
+	}
+
+	@Override
+	public THistory<Object> eGetAllBetween(long startTimestamp, long endTimestamp, EStructuralFeature feature, int limit, boolean descending) {
+		return dynamicGetAllBetween(startTimestamp, endTimestamp, eDynamicFeatureID(feature), limit, descending);
+	}
+
+	@Override
+	public THistoryCursor<Object> eGetAllBetweenCursor(long startTimestamp, long endTimestamp, EStructuralFeature feature, boolean descending) {
+		return dynamicGetAllBetweenCursor(startTimestamp, endTimestamp, eDynamicFeatureID(feature), descending);
+	}
 	
 	@Override
 	public Object dynamicGet(int dynamicFeatureID) {
@@ -235,20 +308,53 @@ public class TObjectImpl extends MinimalEStoreEObjectImpl implements InternalTOb
 	}
 	
 	public SortedMap<Date, Object> dynamicGetAllBetween(Date startDate, Date endDate, int dynamicFeatureID) {
+		return dynamicGetAllBetween(startDate, endDate, dynamicFeatureID, 0, false);
+	}
+
+	public SortedMap<Date, Object> dynamicGetAllBetween(Date startDate, Date endDate, int dynamicFeatureID, int limit, boolean descending) {
 		EStructuralFeature feature = eDynamicFeature(dynamicFeatureID);
-		SortedMap<Date, Object> result = new TreeMap<>();
+		SortedMap<Date, Object> result = descending ? new TreeMap<>(Collections.reverseOrder()) : new TreeMap<>();
 		if (feature.isMany()) {
-			SortedMap<Date, Object[]> all = eStore().toArrayAllBetween(startDate, endDate, this, feature);
+			SortedMap<Date, Object[]> all = eStore().toArrayAllBetween(startDate, endDate, this, feature, limit, descending);
 			for (Entry<Date, Object[]> entry : all.entrySet()) {
 				result.put(entry.getKey(), ECollections.unmodifiableEList(ECollections.asEList(entry.getValue())));
 			}
 		} else {
-			SortedMap<Date, Object> all = eStore().getAllBetween(startDate, endDate, this, feature, EStore.NO_INDEX);
+			SortedMap<Date, Object> all = eStore().getAllBetween(startDate, endDate, this, feature, EStore.NO_INDEX, limit, descending);
 			result.putAll(all);
 		}
 		return Collections.unmodifiableSortedMap(result);
 	}
 
+	public Object dynamicGetAt(long timestamp, int dynamicFeatureID) {
+		EStructuralFeature feature = eDynamicFeature(dynamicFeatureID);
+		if (feature.isMany()) {
+			return ECollections.unmodifiableEList(ECollections.asEList(eStore().toArrayAt(timestamp, this, feature)));
+		} else {
+			return eStore().getAt(timestamp, this, feature, EStore.NO_INDEX);
+		}
+	}
+
+	public THistory<Object> dynamicGetAllBetween(long startTimestamp, long endTimestamp, int dynamicFeatureID, int limit, boolean descending) {
+		EStructuralFeature feature = eDynamicFeature(dynamicFeatureID);
+		if (feature.isMany()) {
+			return eStore().toArrayAllBetween(startTimestamp, endTimestamp, this, feature, limit, descending)
+					.map(array -> ECollections.unmodifiableEList(ECollections.asEList(array)));
+		} else {
+			return eStore().getAllBetween(startTimestamp, endTimestamp, this, feature, EStore.NO_INDEX, limit, descending);
+		}
+	}
+
+	public THistoryCursor<Object> dynamicGetAllBetweenCursor(long startTimestamp, long endTimestamp, int dynamicFeatureID, boolean descending) {
+		EStructuralFeature feature = eDynamicFeature(dynamicFeatureID);
+		if (feature.isMany()) {
+			return eStore().toArrayAllBetweenCursor(startTimestamp, endTimestamp, this, feature, descending)
+					.map(array -> ECollections.unmodifiableEList(ECollections.asEList(array)));
+		} else {
+			return eStore().getAllBetweenCursor(startTimestamp, endTimestamp, this, feature, EStore.NO_INDEX, descending);
+		}
+	}
+
 	@Override
 	public void dynamicUnset(int dynamicFeatureID) {
 		EStructuralFeature feature = eDynamicFeature(dynamicFeatureID);
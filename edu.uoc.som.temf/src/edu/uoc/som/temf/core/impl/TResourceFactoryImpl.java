@@ -16,6 +16,7 @@ import org.eclipse.emf.ecore.resource.Resource;
 
 import edu.uoc.som.temf.TURI;
 import edu.uoc.som.temf.core.TResourceFactory;
+import edu.uoc.som.temf.file.impl.FileTResourceImpl;
 import edu.uoc.som.temf.hbase.impl.HbaseTResourceImpl;
 
 public class TResourceFactoryImpl implements TResourceFactory {
@@ -24,6 +25,8 @@ public class TResourceFactoryImpl implements TResourceFactory {
 	public Resource createResource(URI uri) {
 		if (StringUtils.equals(TURI.TEMF_HBASE_SCHEME, uri.scheme())) {
 			return new HbaseTResourceImpl(uri);
+		} else if (StringUtils.equals(TURI.TEMF_FILE_SCHEME, uri.scheme())) {
+			return new FileTResourceImpl(uri);
 		} else {
 			return null;
 		}
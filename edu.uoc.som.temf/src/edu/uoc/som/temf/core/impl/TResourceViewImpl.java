@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.core.impl;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.ECollections;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.TResource;
+import edu.uoc.som.temf.estores.SearcheableResourceTStore;
+import edu.uoc.som.temf.estores.TStore;
+import edu.uoc.som.temf.estores.impl.SnapshotTStoreImpl;
+
+/**
+ * A read-only view of a {@link TResource} pinned at a given timestamp. The
+ * objects of the view navigate the state of the resource at that timestamp
+ * with the plain EMF API (e.g., {@link EObject#eGet(org.eclipse.emf.ecore.EStructuralFeature)}
+ * or {@link EObject#eContents()}), and all the reads made through the view
+ * share a single {@link SnapshotTStoreImpl}, which reads every feature of
+ * every object at most once.
+ * <p>
+ * The view is only valid while the viewed resource is loaded. The temporal
+ * queries (such as {@link #getContents(Date)}) are delegated to the viewed
+ * resource.
+ *
+ * @author agomez
+ *
+ */
+public class TResourceViewImpl extends ResourceImpl implements TResource {
+
+	protected final TResource resource;
+
+	protected final long timestamp;
+
+	protected final SnapshotTStoreImpl eStore;
+
+	protected EList<EObject> snapshotContents;
+
+	/**
+	 * Creates a view of the given <code>resource</code>, whose state is read
+	 * from the given <code>eStore</code>, at the given <code>timestamp</code>
+	 */
+	public TResourceViewImpl(TResource resource, SearcheableResourceTStore eStore, long timestamp) {
+		super(resource.getURI());
+		this.resource = resource;
+		this.timestamp = timestamp;
+		this.eStore = createSnapshotEStore(eStore);
+		this.isLoaded = true;
+	}
+
+	protected SnapshotTStoreImpl createSnapshotEStore(SearcheableResourceTStore eStore) {
+		return new SnapshotTStoreImpl(eStore, this, timestamp);
+	}
+
+	/**
+	 * Returns the viewed {@link TResource}
+	 */
+	public TResource getResource() {
+		return resource;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public TStore eStore() {
+		return eStore;
+	}
+
+	@Override
+	public synchronized EList<EObject> getContents() {
+		if (snapshotContents == null) {
+			EList<EObject> contents = new BasicEList<>();
+			if (isLoaded) {
+				for (EObject eObject : resource.getContents(timestamp)) {
+					contents.add(eStore.toSnapshot(eObject));
+				}
+			}
+			snapshotContents = ECollections.unmodifiableEList(contents);
+		}
+		return snapshotContents;
+	}
+
+	@Override
+	public EList<EObject> getContents(Date date) {
+		return resource.getContents(date);
+	}
+
+	@Override
+	public TreeIterator<EObject> getAllContents(Date date) {
+		return resource.getAllContents(date);
+	}
+
+	@Override
+	public EList<EObject> getContents(long timestamp) {
+		return resource.getContents(timestamp);
+	}
+
+	@Override
+	public TreeIterator<EObject> getAllContents(long timestamp) {
+		return resource.getAllContents(timestamp);
+	}
+
+	@Override
+	public Stream<EObject> allInstancesAt(EClass eClass, Date date) {
+		return resource.allInstancesAt(eClass, date);
+	}
+
+	@Override
+	public Stream<EObject> allInstancesAt(EClass eClass, long timestamp) {
+		return resource.allInstancesAt(eClass, timestamp);
+	}
+
+	@Override
+	public Stream<EObject> allInstancesBetween(EClass eClass, Date startDate, Date endDate) {
+		return resource.allInstancesBetween(eClass, startDate, endDate);
+	}
+
+	@Override
+	public Stream<EObject> allInstancesBetween(EClass eClass, long startTimestamp, long endTimestamp) {
+		return resource.allInstancesBetween(eClass, startTimestamp, endTimestamp);
+	}
+
+	@Override
+	public TResource viewAt(Date date) {
+		return resource.viewAt(date);
+	}
+
+	@Override
+	public TResource viewAt(long timestamp) {
+		return resource.viewAt(timestamp);
+	}
+
+	@Override
+	public EObject getEObject(String uriFragment) {
+		EObject eObject = eStore.getEObject(uriFragment);
+		if (eObject != null) {
+			return eObject;
+		} else {
+			return super.getEObject(uriFragment);
+		}
+	}
+
+	@Override
+	public String getURIFragment(EObject eObject) {
+		if (eObject.eResource() == this) {
+			TObject tObject = TObjectAdapterFactoryImpl.getAdapter(eObject, TObject.class);
+			if (tObject != null) {
+				return tObject.tId();
+			}
+		}
+		return super.getURIFragment(eObject);
+	}
+
+	@Override
+	public void save(Map<?, ?> options) throws IOException {
+		throw new UnsupportedOperationException(MessageFormat.format("The view of {0} at {1,number,#} is read-only", getURI(), timestamp));
+	}
+
+	@Override
+	public void beginChangeSet() throws IOException {
+		throw new UnsupportedOperationException(MessageFormat.format("The view of {0} at {1,number,#} is read-only", getURI(), timestamp));
+	}
+
+	@Override
+	public long commitChangeSet() throws IOException {
+		throw new UnsupportedOperationException(MessageFormat.format("The view of {0} at {1,number,#} is read-only", getURI(), timestamp));
+	}
+
+	@Override
+	protected synchronized void doUnload() {
+		snapshotContents = null;
+		eStore.clear();
+	}
+}
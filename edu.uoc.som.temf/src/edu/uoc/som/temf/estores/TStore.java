@@ -19,6 +19,9 @@ import org.eclipse.emf.ecore.ETypedElement;
 import org.eclipse.emf.ecore.InternalEObject;
 import org.eclipse.emf.ecore.InternalEObject.EStore;
 
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
+
 /**
  * This interface extends the {@link EStore} interface and allows to query an {@link EStore}
  * at a given moment in time 
@@ -66,6 +69,33 @@ public interface TStore extends InternalEObject.EStore {
 	 * @return the value at the index in the content of the object's feature.
 	 */
 	SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index);
+
+	/**
+	 * Returns at most <code>limit</code> values at the index in the
+	 * {@link EObject#eGet(EStructuralFeature,boolean) content} of the object's
+	 * feature between the given moments, starting from the newest ones if
+	 * <code>descending</code> is <code>true</code>, or from the oldest ones
+	 * otherwise.
+	 * 
+	 * @param startDate
+	 *            the starting date
+	 * @param endDate
+	 *            the end date
+	 * @param object
+	 *            the object in question.
+	 * @param feature
+	 *            a feature of the object.
+	 * @param index
+	 *            an index within the content or {@link #NO_INDEX}.
+	 * @param limit
+	 *            the maximum number of values to return, or <code>0</code> to
+	 *            return all of them.
+	 * @param descending
+	 *            whether the values are returned (and sorted) from the newest to
+	 *            the oldest.
+	 * @return the values at the index in the content of the object's feature.
+	 */
+	SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index, int limit, boolean descending);
 	
 	/**
 	 * Returns whether the object's feature is considered set at a given moment.
@@ -219,6 +249,32 @@ public interface TStore extends InternalEObject.EStore {
 	 * @return a new array of the values in the content of the object's feature.
 	 */
 	SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature);
+
+	/**
+	 * Returns at most <code>limit</code> arrays of the values in the
+	 * {@link EObject#eGet(EStructuralFeature,boolean) content} of the object's
+	 * feature between the given moments, starting from the newest ones if
+	 * <code>descending</code> is <code>true</code>, or from the oldest ones
+	 * otherwise.
+	 * 
+	 * @param startDate
+	 *            the starting date
+	 * @param endDate
+	 *            the end date
+	 * @param object
+	 *            the object in question.
+	 * @param feature
+	 *            a {@link ETypedElement#isMany() many-valued} feature of the
+	 *            object.
+	 * @param limit
+	 *            the maximum number of arrays to return, or <code>0</code> to
+	 *            return all of them.
+	 * @param descending
+	 *            whether the arrays are returned (and sorted) from the newest to
+	 *            the oldest.
+	 * @return the arrays of the values in the content of the object's feature.
+	 */
+	SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int limit, boolean descending);
 	
 	/**
 	 * Returns the hash code of the {@link EObject#eGet(EStructuralFeature,boolean)
@@ -256,4 +312,121 @@ public interface TStore extends InternalEObject.EStore {
 	 */
 	EStructuralFeature getContainingFeatureAt(Date date, InternalEObject object);
 
+	/*
+	 * Timestamp-based variants of the methods above. Timestamps are expressed in
+	 * milliseconds since the epoch, being Long.MAX_VALUE the latest state. Stores
+	 * that keep finer timestamps (e.g., to distinguish several versions written
+	 * within the same millisecond) convert them, so that a read at a given
+	 * millisecond sees the last version written within it, and the histories
+	 * include all the versions, which can share the same timestamp.
+	 */
+
+	/**
+	 * @see #getAt(Date, InternalEObject, EStructuralFeature, int)
+	 */
+	Object getAt(long timestamp, InternalEObject object, EStructuralFeature feature, int index);
+
+	/**
+	 * Returns at most <code>limit</code> values at the index in the
+	 * {@link EObject#eGet(EStructuralFeature,boolean) content} of the object's
+	 * feature between the given timestamps (both inclusive), as a
+	 * {@link THistory}.
+	 * 
+	 * @see #getAllBetween(Date, Date, InternalEObject, EStructuralFeature, int,
+	 *      int, boolean)
+	 */
+	THistory<Object> getAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, int limit, boolean descending);
+
+	/**
+	 * Returns a lazy {@link THistoryCursor} over the values at the index in the
+	 * {@link EObject#eGet(EStructuralFeature,boolean) content} of the object's
+	 * feature between the given timestamps (both inclusive), in ascending or
+	 * <code>descending</code> order of timestamp. Values are fetched as the
+	 * cursor advances, and the cursor must be closed when it is no longer
+	 * needed.
+	 * 
+	 * @see #getAllBetween(long, long, InternalEObject, EStructuralFeature, int,
+	 *      int, boolean)
+	 */
+	THistoryCursor<Object> getAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, boolean descending);
+
+	/**
+	 * @see #isSetAt(Date, InternalEObject, EStructuralFeature)
+	 */
+	boolean isSetAt(long timestamp, InternalEObject object, EStructuralFeature feature);
+
+	/**
+	 * @see #isEmptyAt(Date, InternalEObject, EStructuralFeature)
+	 */
+	boolean isEmptyAt(long timestamp, InternalEObject object, EStructuralFeature feature);
+
+	/**
+	 * @see #sizeAt(Date, InternalEObject, EStructuralFeature)
+	 */
+	int sizeAt(long timestamp, InternalEObject object, EStructuralFeature feature);
+
+	/**
+	 * @see #containsAt(Date, InternalEObject, EStructuralFeature, Object)
+	 */
+	boolean containsAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value);
+
+	/**
+	 * @see #indexOfAt(Date, InternalEObject, EStructuralFeature, Object)
+	 */
+	int indexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value);
+
+	/**
+	 * @see #lastIndexOfAt(Date, InternalEObject, EStructuralFeature, Object)
+	 */
+	int lastIndexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value);
+
+	/**
+	 * @see #toArrayAt(Date, InternalEObject, EStructuralFeature)
+	 */
+	Object[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature);
+
+	/**
+	 * @see #toArrayAt(Date, InternalEObject, EStructuralFeature, Object[])
+	 */
+	<T> T[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature, T[] array);
+
+	/**
+	 * Returns at most <code>limit</code> arrays of the values in the
+	 * {@link EObject#eGet(EStructuralFeature,boolean) content} of the object's
+	 * feature between the given timestamps (both inclusive), as a
+	 * {@link THistory}.
+	 * 
+	 * @see #toArrayAllBetween(Date, Date, InternalEObject, EStructuralFeature,
+	 *      int, boolean)
+	 */
+	THistory<Object[]> toArrayAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int limit, boolean descending);
+
+	/**
+	 * Returns a lazy {@link THistoryCursor} over the arrays of the values in the
+	 * {@link EObject#eGet(EStructuralFeature,boolean) content} of the object's
+	 * feature between the given timestamps (both inclusive), in ascending or
+	 * <code>descending</code> order of timestamp. Arrays are fetched as the
+	 * cursor advances, and the cursor must be closed when it is no longer
+	 * needed.
+	 * 
+	 * @see #toArrayAllBetween(long, long, InternalEObject, EStructuralFeature,
+	 *      int, boolean)
+	 */
+	THistoryCursor<Object[]> toArrayAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, boolean descending);
+
+	/**
+	 * @see #hashCodeAt(Date, InternalEObject, EStructuralFeature)
+	 */
+	int hashCodeAt(long timestamp, InternalEObject object, EStructuralFeature feature);
+
+	/**
+	 * @see #getContainerAt(Date, InternalEObject)
+	 */
+	InternalEObject getContainerAt(long timestamp, InternalEObject object);
+
+	/**
+	 * @see #getContainingFeatureAt(Date, InternalEObject)
+	 */
+	EStructuralFeature getContainingFeatureAt(long timestamp, InternalEObject object);
+
 }
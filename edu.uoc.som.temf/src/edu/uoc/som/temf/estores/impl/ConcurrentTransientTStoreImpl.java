@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.estores.impl;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.InternalEObject.EStore;
+
+/**
+ * An {@link EStore} implementation that stores the data in memory, and that
+ * can be accessed by several threads concurrently. Unlike
+ * {@link SynchronizedTransientTStoreImpl}, there is no global monitor:
+ * <ul>
+ * <li>Single-valued features are kept in a {@link ConcurrentHashMap}.</li>
+ * <li>Many-valued features are kept in a {@link ConcurrentHashMap} of
+ * {@link FeatureValues}, whose elements are a copy-on-write array: reads never
+ * block, and always observe a consistent state of the list.</li>
+ * <li>The modifications of a list (including compound ones, such as
+ * {@link #move(InternalEObject, EStructuralFeature, int, int)}) are atomic:
+ * they are serialized by the lock of the list, and publish the new array in
+ * a single write, so modifications of different features do not contend.</li>
+ * </ul>
+ * Every modification copies the list, so this store suits read-mostly models
+ * and short lists.
+ *
+ * @author agomez
+ *
+ */
+public class ConcurrentTransientTStoreImpl implements InternalEObject.EStore {
+
+	/**
+	 * Placeholder of <code>null</code> values, which are not accepted by
+	 * {@link ConcurrentHashMap}s
+	 */
+	protected static final Object NULL = new Object();
+
+	protected static final Object[] EMPTY = new Object[0];
+
+	/**
+	 * The values of a many-valued feature, or <code>null</code> if it is unset
+	 */
+	protected static class FeatureValues {
+
+		protected volatile Object[] elements;
+	}
+
+	protected ConcurrentMap<EStoreEntryKey, Object> singleMap = new ConcurrentHashMap<>();
+	protected ConcurrentMap<EStoreEntryKey, FeatureValues> manyMap = new ConcurrentHashMap<>();
+
+	public static class EStoreEntryKey {
+
+		protected final InternalEObject eObject;
+		protected final EStructuralFeature eStructuralFeature;
+
+		public EStoreEntryKey(InternalEObject eObject, EStructuralFeature eStructuralFeature) {
+			this.eObject = eObject;
+			this.eStructuralFeature = eStructuralFeature;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((eObject == null) ? 0 : eObject.hashCode());
+			result = prime * result + ((eStructuralFeature == null) ? 0 : eStructuralFeature.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			EStoreEntryKey other = (EStoreEntryKey) obj;
+			if (eObject == null) {
+				if (other.eObject != null)
+					return false;
+			} else if (!eObject.equals(other.eObject))
+				return false;
+			if (eStructuralFeature == null) {
+				if (other.eStructuralFeature != null)
+					return false;
+			} else if (!eStructuralFeature.equals(other.eStructuralFeature))
+				return false;
+			return true;
+		}
+
+		public InternalEObject getEObject() {
+			return eObject;
+		}
+
+		public EStructuralFeature getEStructuralFeature() {
+			return eStructuralFeature;
+		}
+	}
+
+	protected static Object mask(Object value) {
+		return value != null ? value : NULL;
+	}
+
+	protected static Object unmask(Object value) {
+		return value != NULL ? value : null;
+	}
+
+	protected static void checkIndex(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(MessageFormat.format("Index: {0}, Size: {1}", index, size));
+		}
+	}
+
+	/**
+	 * Returns the current elements of the feature of the given
+	 * <code>entry</code>, which must not be modified
+	 */
+	protected Object[] elements(EStoreEntryKey entry) {
+		FeatureValues values = manyMap.get(entry);
+		Object[] elements = values != null ? values.elements : null;
+		return elements != null ? elements : EMPTY;
+	}
+
+	protected FeatureValues values(EStoreEntryKey entry) {
+		return manyMap.computeIfAbsent(entry, key -> new FeatureValues());
+	}
+
+	@Override
+	public Object get(InternalEObject eObject, EStructuralFeature feature, int index) {
+		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
+		if (index == NO_INDEX) {
+			return unmask(singleMap.get(entry));
+		} else {
+			FeatureValues values = manyMap.get(entry);
+			if (values != null && values.elements != null) {
+				Object[] elements = values.elements;
+				checkIndex(index, elements.length);
+				return elements[index];
+			} else {
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public Object set(InternalEObject eObject, EStructuralFeature feature, int index, Object value) {
+		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
+		if (index == NO_INDEX) {
+			return unmask(singleMap.put(entry, mask(value)));
+		} else {
+			FeatureValues values = values(entry);
+			synchronized (values) {
+				Object[] elements = values.elements != null ? values.elements : EMPTY;
+				checkIndex(index, elements.length);
+				Object[] newElements = elements.clone();
+				newElements[index] = value;
+				values.elements = newElements;
+				return elements[index];
+			}
+		}
+	}
+
+	@Override
+	public void add(InternalEObject eObject, EStructuralFeature feature, int index, Object value) {
+		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
+		FeatureValues values = values(entry);
+		synchronized (values) {
+			Object[] elements = values.elements != null ? values.elements : EMPTY;
+			checkIndex(index, elements.length + 1);
+			Object[] newElements = new Object[elements.length + 1];
+			System.arraycopy(elements, 0, newElements, 0, index);
+			newElements[index] = value;
+			System.arraycopy(elements, index, newElements, index + 1, elements.length - index);
+			values.elements = newElements;
+		}
+	}
+
+	@Override
+	public Object remove(InternalEObject eObject, EStructuralFeature feature, int index) {
+		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
+		FeatureValues values = values(entry);
+		synchronized (values) {
+			Object[] elements = values.elements != null ? values.elements : EMPTY;
+			checkIndex(index, elements.length);
+			Object[] newElements = new Object[elements.length - 1];
+			System.arraycopy(elements, 0, newElements, 0, index);
+			System.arraycopy(elements, index + 1, newElements, index, elements.length - index - 1);
+			values.elements = newElements;
+			return elements[index];
+		}
+	}
+
+	@Override
+	public Object move(InternalEObject eObject, EStructuralFeature feature, int targetIndex, int sourceIndex) {
+		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
+		FeatureValues values = values(entry);
+		synchronized (values) {
+			Object[] elements = values.elements != null ? values.elements : EMPTY;
+			checkIndex(sourceIndex, elements.length);
+			checkIndex(targetIndex, elements.length);
+			Object movedObject = elements[sourceIndex];
+			Object[] newElements = elements.clone();
+			if (sourceIndex < targetIndex) {
+				System.arraycopy(elements, sourceIndex + 1, newElements, sourceIndex, targetIndex - sourceIndex);
+			} else {
+				System.arraycopy(elements, targetIndex, newElements, targetIndex + 1, sourceIndex - targetIndex);
+			}
+			newElements[targetIndex] = movedObject;
+			values.elements = newElements;
+			return movedObject;
+		}
+	}
+
+	@Override
+	public void clear(InternalEObject eObject, EStructuralFeature feature) {
+		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
+		FeatureValues values = manyMap.get(entry);
+		if (values != null) {
+			synchronized (values) {
+				if (values.elements != null) {
+					values.elements = EMPTY;
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean isSet(InternalEObject eObject, EStructuralFeature feature) {
+		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
+		if (!feature.isMany()) {
+			return singleMap.containsKey(entry);
+		} else {
+			FeatureValues values = manyMap.get(entry);
+			return values != null && values.elements != null;
+		}
+	}
+
+	@Override
+	public void unset(InternalEObject eObject, EStructuralFeature feature) {
+		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
+		if (!feature.isMany()) {
+			singleMap.remove(entry);
+		} else {
+			FeatureValues values = manyMap.get(entry);
+			if (values != null) {
+				synchronized (values) {
+					values.elements = null;
+				}
+			}
+		}
+	}
+
+	@Override
+	public int size(InternalEObject eObject, EStructuralFeature feature) {
+		return elements(new EStoreEntryKey(eObject, feature)).length;
+	}
+
+	@Override
+	public int indexOf(InternalEObject eObject, EStructuralFeature feature, Object value) {
+		return Arrays.asList(elements(new EStoreEntryKey(eObject, feature))).indexOf(value);
+	}
+
+	@Override
+	public int lastIndexOf(InternalEObject eObject, EStructuralFeature feature, Object value) {
+		return Arrays.asList(elements(new EStoreEntryKey(eObject, feature))).lastIndexOf(value);
+	}
+
+	@Override
+	public Object[] toArray(InternalEObject eObject, EStructuralFeature feature) {
+		return elements(new EStoreEntryKey(eObject, feature)).clone();
+	}
+
+	@Override
+	public <T> T[] toArray(InternalEObject eObject, EStructuralFeature feature, T[] array) {
+		return Arrays.asList(elements(new EStoreEntryKey(eObject, feature))).toArray(array);
+	}
+
+	@Override
+	public boolean isEmpty(InternalEObject eObject, EStructuralFeature feature) {
+		return elements(new EStoreEntryKey(eObject, feature)).length == 0;
+	}
+
+	@Override
+	public boolean contains(InternalEObject eObject, EStructuralFeature feature, Object value) {
+		return indexOf(eObject, feature, value) != -1;
+	}
+
+	@Override
+	public int hashCode(InternalEObject eObject, EStructuralFeature feature) {
+		return Arrays.asList(elements(new EStoreEntryKey(eObject, feature))).hashCode();
+	}
+
+	@Override
+	public InternalEObject getContainer(InternalEObject eObject) {
+		return null;
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeature(InternalEObject eObject) {
+		// This should never be called.
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public EObject create(EClass eClass) {
+		throw new UnsupportedOperationException();
+	}
+}
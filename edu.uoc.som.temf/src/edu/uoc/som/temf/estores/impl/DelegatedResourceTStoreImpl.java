@@ -19,6 +19,8 @@ import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.InternalEObject;
 import org.eclipse.emf.ecore.resource.Resource;
 
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
 import edu.uoc.som.temf.estores.SearcheableResourceEStore;
 import edu.uoc.som.temf.estores.SearcheableResourceTStore;
 
@@ -57,6 +59,10 @@ public class DelegatedResourceTStoreImpl implements SearcheableResourceTStore {
 		return eStore.getAllBetween(startDate, endDate, object, feature, index);
 	}
 
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index, int limit, boolean descending) {
+		return eStore.getAllBetween(startDate, endDate, object, feature, index, limit, descending);
+	}
+
 	public boolean isSetAt(Date date, InternalEObject object, EStructuralFeature feature) {
 		return eStore.isSetAt(date, object, feature);
 	}
@@ -166,6 +172,95 @@ public class DelegatedResourceTStoreImpl implements SearcheableResourceTStore {
 		return eStore.toArrayAllBetween(startDate, endDate, object, feature);
 	}
 
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int limit, boolean descending) {
+		return eStore.toArrayAllBetween(startDate, endDate, object, feature, limit, descending);
+	}
+
+	@Override
+	public Object getAt(long timestamp, InternalEObject object, EStructuralFeature feature, int index) {
+		return eStore.getAt(timestamp, object, feature, index);
+	}
+
+	@Override
+	public THistory<Object> getAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, int limit,
+			boolean descending) {
+		return eStore.getAllBetween(startTimestamp, endTimestamp, object, feature, index, limit, descending);
+	}
+
+	@Override
+	public THistoryCursor<Object> getAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index,
+			boolean descending) {
+		return eStore.getAllBetweenCursor(startTimestamp, endTimestamp, object, feature, index, descending);
+	}
+
+	@Override
+	public boolean isSetAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return eStore.isSetAt(timestamp, object, feature);
+	}
+
+	@Override
+	public boolean isEmptyAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return eStore.isEmptyAt(timestamp, object, feature);
+	}
+
+	@Override
+	public int sizeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return eStore.sizeAt(timestamp, object, feature);
+	}
+
+	@Override
+	public boolean containsAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		return eStore.containsAt(timestamp, object, feature, value);
+	}
+
+	@Override
+	public int indexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		return eStore.indexOfAt(timestamp, object, feature, value);
+	}
+
+	@Override
+	public int lastIndexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		return eStore.lastIndexOfAt(timestamp, object, feature, value);
+	}
+
+	@Override
+	public Object[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return eStore.toArrayAt(timestamp, object, feature);
+	}
+
+	@Override
+	public <T> T[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature, T[] array) {
+		return eStore.toArrayAt(timestamp, object, feature, array);
+	}
+
+	@Override
+	public THistory<Object[]> toArrayAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int limit,
+			boolean descending) {
+		return eStore.toArrayAllBetween(startTimestamp, endTimestamp, object, feature, limit, descending);
+	}
+
+	@Override
+	public THistoryCursor<Object[]> toArrayAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature,
+			boolean descending) {
+		return eStore.toArrayAllBetweenCursor(startTimestamp, endTimestamp, object, feature, descending);
+	}
+
+	@Override
+	public int hashCodeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return eStore.hashCodeAt(timestamp, object, feature);
+	}
+
+	@Override
+	public InternalEObject getContainerAt(long timestamp, InternalEObject object) {
+		return eStore.getContainerAt(timestamp, object);
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeatureAt(long timestamp, InternalEObject object) {
+		return eStore.getContainingFeatureAt(timestamp, object);
+	}
+
 
 	public int hashCode(InternalEObject object, EStructuralFeature feature) {
 		return eStore.hashCode(object, feature);
@@ -17,6 +17,8 @@ import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.InternalEObject;
 import org.eclipse.emf.ecore.InternalEObject.EStore;
 
+import com.google.common.cache.CacheBuilder;
+
 import edu.uoc.som.temf.estores.SearcheableResourceEStore;
 import edu.uoc.som.temf.estores.SearcheableResourceTStore;
 
@@ -91,16 +93,37 @@ public class EStructuralFeatureCachingDelegatedTStoreImpl extends DelegatedResou
 	}
 
 	public EStructuralFeatureCachingDelegatedTStoreImpl(SearcheableResourceTStore eStore, int cacheSize) {
+		this(eStore, cacheSize, false);
+	}
+
+	/**
+	 * Creates a cache of <code>cacheSize</code> entries, which can be accessed
+	 * by several threads concurrently if <code>concurrent</code> is
+	 * <code>true</code>
+	 */
+	public EStructuralFeatureCachingDelegatedTStoreImpl(SearcheableResourceTStore eStore, int cacheSize, boolean concurrent) {
 		super(eStore);
-		this.cache = new LRUMap<>(cacheSize);
+		this.cache = concurrent ? CacheBuilder.newBuilder().maximumSize(cacheSize).<MapKey, Object> build().asMap() : new LRUMap<>(cacheSize);
 	}
 	
+	/**
+	 * Caches the given <code>value</code>; <code>null</code> values are not
+	 * cached (concurrent maps do not accept them)
+	 */
+	protected void cache(MapKey key, Object value) {
+		if (value != null) {
+			cache.put(key, value);
+		} else {
+			cache.remove(key);
+		}
+	}
+
 	@Override
 	public Object get(InternalEObject object, EStructuralFeature feature, int index) {
 		Object returnValue = cache.get(new MapKey(object, feature, index));
 		if (returnValue == null) { 
 			returnValue = super.get(object, feature, index);
-			cache.put(new MapKey(object, feature, index), returnValue);
+			cache(new MapKey(object, feature, index), returnValue);
 		}
 		return returnValue;
 	}
@@ -108,14 +131,14 @@ public class EStructuralFeatureCachingDelegatedTStoreImpl extends DelegatedResou
 	@Override
 	public Object set(InternalEObject object, EStructuralFeature feature, int index, Object value) {
 		Object returnValue = super.set(object, feature, index, value);
-		cache.put(new MapKey(object, feature, index), value);
+		cache(new MapKey(object, feature, index), value);
 		return returnValue;
 	}
 	
 	@Override
 	public void add(InternalEObject object, EStructuralFeature feature, int index, Object value) {
 		super.add(object, feature, index, value);
-		cache.put(new MapKey(object, feature, index), value);
+		cache(new MapKey(object, feature, index), value);
 		int size = size(object, feature);
 		for (int i = index + 1; i < size; i++) {
 			cache.remove(new MapKey(object, feature, i));
@@ -148,7 +171,7 @@ public class EStructuralFeatureCachingDelegatedTStoreImpl extends DelegatedResou
 		for (int i = Math.min(sourceIndex, targetIndex); i < size; i++) {
 			cache.remove(new MapKey(object, feature, i));
 		}
-		cache.put(new MapKey(object, feature, targetIndex), returnValue);
+		cache(new MapKey(object, feature, targetIndex), returnValue);
 		return returnValue;
 	}
 	
@@ -0,0 +1,451 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.estores.impl;
+
+import java.lang.reflect.Array;
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.SortedMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.estores.SearcheableResourceEStore;
+import edu.uoc.som.temf.estores.SearcheableResourceTStore;
+
+/**
+ * A {@link SearcheableResourceEStore} wrapper that caches the results of the
+ * historical queries, i.e., the values, sizes and list snapshots in effect at a
+ * given timestamp, and the histories between two timestamps.
+ * <p>
+ * Since the history of an object is never modified (only new versions are
+ * appended), the result of a query about a timestamp that is old enough never
+ * changes, and can be cached without ever being invalidated. Only the queries
+ * about timestamps older than the <em>watermark</em>, i.e., the current time
+ * minus a safety lag that accounts for the clock skew between the clients and
+ * the servers and for the modifications still in flight, are cached; the rest
+ * are always delegated. Clients that write versions with explicit timestamps
+ * older than the watermark must {@link #invalidateAll()} the cache.
+ * <p>
+ * The cache is bounded both by its number of entries and by the (estimated)
+ * heap size of the cached values, and evicts the least recently used entries
+ * first.
+ *
+ * @author agomez
+ *
+ */
+public class HistoricalCachingDelegatedTStoreImpl extends DelegatedResourceTStoreImpl implements SearcheableResourceTStore {
+
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+
+	public static final long DEFAULT_CACHE_WEIGHT = 64 * 1024 * 1024;
+
+	public static final long DEFAULT_WATERMARK_LAG = 60 * 1000;
+
+	protected enum Query {
+		GET, IS_SET, SIZE, TO_ARRAY, CONTAINER, CONTAINING_FEATURE, ALL_BETWEEN, TO_ARRAY_ALL_BETWEEN
+	}
+
+	protected static class HistoricalKey {
+		protected final Query query;
+		protected final InternalEObject object;
+		protected final EStructuralFeature feature;
+		protected final int index;
+		protected final long startTimestamp;
+		protected final long endTimestamp;
+		protected final int limit;
+		protected final boolean descending;
+
+		public HistoricalKey(Query query, InternalEObject object, EStructuralFeature feature, int index, long timestamp) {
+			this(query, object, feature, index, timestamp, timestamp, 0, false);
+		}
+
+		public HistoricalKey(Query query, InternalEObject object, EStructuralFeature feature, int index, long startTimestamp, long endTimestamp, int limit,
+				boolean descending) {
+			this.query = query;
+			this.object = object;
+			this.feature = feature;
+			this.index = index;
+			this.startTimestamp = startTimestamp;
+			this.endTimestamp = endTimestamp;
+			this.limit = limit;
+			this.descending = descending;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + query.hashCode();
+			result = prime * result + ((object == null) ? 0 : object.hashCode());
+			result = prime * result + ((feature == null) ? 0 : feature.hashCode());
+			result = prime * result + index;
+			result = prime * result + (int) (startTimestamp ^ (startTimestamp >>> 32));
+			result = prime * result + (int) (endTimestamp ^ (endTimestamp >>> 32));
+			result = prime * result + limit;
+			result = prime * result + (descending ? 1231 : 1237);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			HistoricalKey other = (HistoricalKey) obj;
+			return query == other.query && object == other.object && feature == other.feature && index == other.index
+					&& startTimestamp == other.startTimestamp && endTimestamp == other.endTimestamp && limit == other.limit
+					&& descending == other.descending;
+		}
+	}
+
+	protected static class CachedValue {
+
+		protected final Object value;
+
+		protected final long weight;
+
+		protected CachedValue(Object value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * Estimated heap size of an entry, excluding its value
+	 */
+	protected static final long ENTRY_WEIGHT = 128;
+
+	protected final int cacheSize;
+
+	protected final long cacheWeight;
+
+	protected final long watermarkLag;
+
+	protected final LinkedHashMap<HistoricalKey, CachedValue> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+	protected long weight;
+
+	protected long hits;
+
+	protected long misses;
+
+	protected long evictions;
+
+	public HistoricalCachingDelegatedTStoreImpl(SearcheableResourceTStore eStore) {
+		this(eStore, DEFAULT_CACHE_SIZE, DEFAULT_CACHE_WEIGHT, DEFAULT_WATERMARK_LAG);
+	}
+
+	/**
+	 * Creates a cache of at most <code>cacheSize</code> entries, whose values
+	 * take at most <code>cacheWeight</code> bytes, for the queries about
+	 * timestamps older than <code>watermarkLag</code> milliseconds ago
+	 */
+	public HistoricalCachingDelegatedTStoreImpl(SearcheableResourceTStore eStore, int cacheSize, long cacheWeight, long watermarkLag) {
+		super(eStore);
+		this.cacheSize = cacheSize;
+		this.cacheWeight = cacheWeight;
+		this.watermarkLag = watermarkLag;
+	}
+
+	@Override
+	public Object getAt(Date date, InternalEObject object, EStructuralFeature feature, int index) {
+		return date != null ? getAt(date.getTime(), object, feature, index) : super.getAt(date, object, feature, index);
+	}
+
+	@Override
+	public Object getAt(long timestamp, InternalEObject object, EStructuralFeature feature, int index) {
+		return cached(new HistoricalKey(Query.GET, object, feature, index, timestamp), timestamp, () -> super.getAt(timestamp, object, feature, index));
+	}
+
+	@Override
+	public boolean isSetAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return date != null ? isSetAt(date.getTime(), object, feature) : super.isSetAt(date, object, feature);
+	}
+
+	@Override
+	public boolean isSetAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return cached(new HistoricalKey(Query.IS_SET, object, feature, 0, timestamp), timestamp, () -> super.isSetAt(timestamp, object, feature));
+	}
+
+	@Override
+	public boolean isEmptyAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return date != null ? isEmptyAt(date.getTime(), object, feature) : super.isEmptyAt(date, object, feature);
+	}
+
+	@Override
+	public boolean isEmptyAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return isImmutable(timestamp) ? sizeAt(timestamp, object, feature) == 0 : super.isEmptyAt(timestamp, object, feature);
+	}
+
+	@Override
+	public int sizeAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return date != null ? sizeAt(date.getTime(), object, feature) : super.sizeAt(date, object, feature);
+	}
+
+	@Override
+	public int sizeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return cached(new HistoricalKey(Query.SIZE, object, feature, 0, timestamp), timestamp, () -> super.sizeAt(timestamp, object, feature));
+	}
+
+	@Override
+	public Object[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return date != null ? toArrayAt(date.getTime(), object, feature) : super.toArrayAt(date, object, feature);
+	}
+
+	@Override
+	public Object[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		Object[] array = cached(new HistoricalKey(Query.TO_ARRAY, object, feature, 0, timestamp), timestamp,
+				() -> super.toArrayAt(timestamp, object, feature));
+		return isImmutable(timestamp) ? array.clone() : array;
+	}
+
+	@Override
+	public <T> T[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature, T[] array) {
+		return date != null ? toArrayAt(date.getTime(), object, feature, array) : super.toArrayAt(date, object, feature, array);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature, T[] array) {
+		if (!isImmutable(timestamp)) {
+			return super.toArrayAt(timestamp, object, feature, array);
+		}
+		Object[] objects = cached(new HistoricalKey(Query.TO_ARRAY, object, feature, 0, timestamp), timestamp,
+				() -> super.toArrayAt(timestamp, object, feature));
+		int size = objects.length;
+		if (array.length < size) {
+			array = (T[]) Array.newInstance(array.getClass().getComponentType(), size);
+		}
+		System.arraycopy(objects, 0, array, 0, size);
+		if (array.length > size) {
+			array[size] = null;
+		}
+		return array;
+	}
+
+	@Override
+	public InternalEObject getContainerAt(Date date, InternalEObject object) {
+		return date != null ? getContainerAt(date.getTime(), object) : super.getContainerAt(date, object);
+	}
+
+	@Override
+	public InternalEObject getContainerAt(long timestamp, InternalEObject object) {
+		return cached(new HistoricalKey(Query.CONTAINER, object, null, 0, timestamp), timestamp, () -> super.getContainerAt(timestamp, object));
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeatureAt(Date date, InternalEObject object) {
+		return date != null ? getContainingFeatureAt(date.getTime(), object) : super.getContainingFeatureAt(date, object);
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeatureAt(long timestamp, InternalEObject object) {
+		return cached(new HistoricalKey(Query.CONTAINING_FEATURE, object, null, 0, timestamp), timestamp,
+				() -> super.getContainingFeatureAt(timestamp, object));
+	}
+
+	@Override
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index) {
+		return getAllBetween(startDate, endDate, object, feature, index, 0, false);
+	}
+
+	@Override
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index, int limit,
+			boolean descending) {
+		if (endDate == null) {
+			return super.getAllBetween(startDate, endDate, object, feature, index, limit, descending);
+		}
+		return getAllBetween(startDate != null ? startDate.getTime() : 0, endDate.getTime(), object, feature, index, limit, descending).toSortedMap();
+	}
+
+	@Override
+	public THistory<Object> getAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, int limit,
+			boolean descending) {
+		if (!isImmutable(endTimestamp)) {
+			return super.getAllBetween(startTimestamp, endTimestamp, object, feature, index, limit, descending);
+		}
+		THistory<Object> history = cached(new HistoricalKey(Query.ALL_BETWEEN, object, feature, index, startTimestamp, endTimestamp, limit, descending),
+				endTimestamp, () -> super.getAllBetween(startTimestamp, endTimestamp, object, feature, index, limit, descending));
+		return history.map(Function.identity());
+	}
+
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature) {
+		return toArrayAllBetween(startDate, endDate, object, feature, 0, false);
+	}
+
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int limit,
+			boolean descending) {
+		if (endDate == null) {
+			return super.toArrayAllBetween(startDate, endDate, object, feature, limit, descending);
+		}
+		return toArrayAllBetween(startDate != null ? startDate.getTime() : 0, endDate.getTime(), object, feature, limit, descending).toSortedMap();
+	}
+
+	@Override
+	public THistory<Object[]> toArrayAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int limit,
+			boolean descending) {
+		if (!isImmutable(endTimestamp)) {
+			return super.toArrayAllBetween(startTimestamp, endTimestamp, object, feature, limit, descending);
+		}
+		THistory<Object[]> history = cached(new HistoricalKey(Query.TO_ARRAY_ALL_BETWEEN, object, feature, 0, startTimestamp, endTimestamp, limit, descending),
+				endTimestamp, () -> super.toArrayAllBetween(startTimestamp, endTimestamp, object, feature, limit, descending));
+		return history.map(Object[]::clone);
+	}
+
+	/**
+	 * Whether the state of the resource at the given <code>timestamp</code> can
+	 * no longer change, i.e., whether <code>timestamp</code> is older than the
+	 * watermark
+	 */
+	protected boolean isImmutable(long timestamp) {
+		return timestamp <= System.currentTimeMillis() - watermarkLag;
+	}
+
+	/**
+	 * Returns the cached result of the query identified by <code>key</code> about
+	 * the given <code>timestamp</code>, loading and caching it if it is not
+	 * cached yet. The result is not cached if the <code>timestamp</code> is not
+	 * older than the watermark.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> T cached(HistoricalKey key, long timestamp, Supplier<T> loader) {
+		if (!isImmutable(timestamp)) {
+			return loader.get();
+		}
+		synchronized (this) {
+			CachedValue cachedValue = cache.get(key);
+			if (cachedValue != null) {
+				hits++;
+				return (T) cachedValue.value;
+			}
+			misses++;
+		}
+		T value = loader.get();
+		put(key, value);
+		return value;
+	}
+
+	protected synchronized void put(HistoricalKey key, Object value) {
+		long valueWeight = ENTRY_WEIGHT + weigh(value);
+		if (valueWeight > cacheWeight) {
+			return;
+		}
+		CachedValue previous = cache.put(key, new CachedValue(value, valueWeight));
+		if (previous != null) {
+			weight -= previous.weight;
+		}
+		weight += valueWeight;
+		Iterator<CachedValue> iterator = cache.values().iterator();
+		while ((weight > cacheWeight || cache.size() > cacheSize) && iterator.hasNext()) {
+			weight -= iterator.next().weight;
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Estimates the heap size of a cached value. Objects that are shared with
+	 * the rest of the resource (such as {@link InternalEObject}s) only count as
+	 * a reference.
+	 */
+	protected long weigh(Object value) {
+		if (value instanceof String) {
+			return 40 + 2L * ((String) value).length();
+		} else if (value instanceof Object[]) {
+			Object[] array = (Object[]) value;
+			long result = 16 + 8L * array.length;
+			for (Object element : array) {
+				result += weigh(element);
+			}
+			return result;
+		} else if (value instanceof THistory) {
+			THistory<?> history = (THistory<?>) value;
+			long result = 48 + 16L * history.size();
+			for (int index = 0; index < history.size(); index++) {
+				result += weigh(history.getValue(index));
+			}
+			return result;
+		} else {
+			return 8;
+		}
+	}
+
+	/**
+	 * Discards all the cached results, e.g., after writing versions with
+	 * explicit timestamps older than the watermark
+	 */
+	public synchronized void invalidateAll() {
+		cache.clear();
+		weight = 0;
+	}
+
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	public long getCacheWeight() {
+		return cacheWeight;
+	}
+
+	public long getWatermarkLag() {
+		return watermarkLag;
+	}
+
+	public synchronized int getEntryCount() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the estimated heap size of the cached results
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized double getHitRate() {
+		return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return MessageFormat.format("{0} of {1} entries, {2} of {3} bytes; {4} hits, {5} misses ({6,number,percent} hit rate), {7} evictions", cache.size(),
+				cacheSize, weight, cacheWeight, hits, misses, getHitRate(), evictions);
+	}
+}
@@ -11,11 +11,14 @@
 package edu.uoc.som.temf.estores.impl;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections4.map.LRUMap;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.InternalEObject;
 
+import com.google.common.cache.CacheBuilder;
+
 import edu.uoc.som.temf.estores.SearcheableResourceEStore;
 import edu.uoc.som.temf.estores.SearcheableResourceTStore;
 
@@ -75,27 +78,69 @@ public class IsSetCachingDelegatedTStoreImpl extends DelegatedResourceTStoreImpl
 		}
 	}
 	
-	protected static final int DEFAULT_IS_SET_CACHE_SIZE = 10000;
+	public static final int DEFAULT_IS_SET_CACHE_SIZE = 10000;
 	
 	protected Map<MapKey, Boolean> isSetCache;
+
+	/**
+	 * The number of pending calls to {@link #resume()} (see {@link #suspend()})
+	 */
+	protected final AtomicInteger suspensions = new AtomicInteger();
 	
 	public IsSetCachingDelegatedTStoreImpl(SearcheableResourceTStore eStore) {
 		this(eStore, DEFAULT_IS_SET_CACHE_SIZE);
 	}
 
 	public IsSetCachingDelegatedTStoreImpl(SearcheableResourceTStore eStore, int sizeCacheSize) {
+		this(eStore, sizeCacheSize, false);
+	}
+
+	/**
+	 * Creates a cache of <code>sizeCacheSize</code> entries, which can be
+	 * accessed by several threads concurrently if <code>concurrent</code> is
+	 * <code>true</code>
+	 */
+	public IsSetCachingDelegatedTStoreImpl(SearcheableResourceTStore eStore, int sizeCacheSize, boolean concurrent) {
 		super(eStore);
-		this.isSetCache = new LRUMap<>(sizeCacheSize);
+		this.isSetCache = concurrent ? CacheBuilder.newBuilder().maximumSize(sizeCacheSize).<MapKey, Boolean> build().asMap() : new LRUMap<>(sizeCacheSize);
+	}
+
+	/**
+	 * Suspends the cache until {@link #resume()} is called: the cached values are
+	 * discarded, and the calls are forwarded to the underlying store without
+	 * being cached. This allows different threads to see different states of
+	 * the store, such as while one of them has a change set in progress.
+	 */
+	public void suspend() {
+		suspensions.incrementAndGet();
+		isSetCache.clear();
+	}
+
+	/**
+	 * Resumes the cache suspended by {@link #suspend()}
+	 */
+	public void resume() {
+		isSetCache.clear();
+		suspensions.decrementAndGet();
+	}
+
+	protected boolean isSuspended() {
+		return suspensions.get() > 0;
 	}
 	
 	@Override
 	public void unset(InternalEObject object, EStructuralFeature feature) {
 		super.unset(object, feature);
-		isSetCache.put(new MapKey(object, feature), false);
+		if (!isSuspended()) {
+			isSetCache.put(new MapKey(object, feature), false);
+		}
 	}
 
 	@Override
 	public boolean isSet(InternalEObject object, EStructuralFeature feature) {
+		if (isSuspended()) {
+			return eStore.isSet(object, feature);
+		}
 		MapKey key = new MapKey(object, feature);
 		Boolean isSet = isSetCache.get(key);
 		if (isSet != null) {
@@ -110,7 +155,9 @@ public class IsSetCachingDelegatedTStoreImpl extends DelegatedResourceTStoreImpl
 	@Override
 	public void add(InternalEObject object, EStructuralFeature feature, int index, Object value) {
 		eStore.add(object, feature, index, value);
-		isSetCache.put(new MapKey(object, feature), true); 
+		if (!isSuspended()) {
+			isSetCache.put(new MapKey(object, feature), true);
+		}
 	}
 
 	@Override
@@ -123,27 +170,33 @@ public class IsSetCachingDelegatedTStoreImpl extends DelegatedResourceTStoreImpl
 	@Override
 	public Object set(InternalEObject object, EStructuralFeature feature, int index, Object value) {
 		Object returnValue = eStore.set(object, feature, index, value);
-		isSetCache.put(new MapKey(object, feature), true); 
+		if (!isSuspended()) {
+			isSetCache.put(new MapKey(object, feature), true);
+		}
 		return returnValue;
 	}
 
 	@Override
 	public void clear(InternalEObject object, EStructuralFeature feature) {
-		isSetCache.put(new MapKey(object, feature), false); 
+		if (!isSuspended()) {
+			isSetCache.put(new MapKey(object, feature), false);
+		}
 		eStore.clear(object, feature);
 	}
 	
 	@Override
 	public Object move(InternalEObject object, EStructuralFeature feature, int targetIndex, int sourceIndex) {
 		Object returnValue = super.move(object, feature, targetIndex, sourceIndex);
-		isSetCache.put(new MapKey(object, feature), true);
+		if (!isSuspended()) {
+			isSetCache.put(new MapKey(object, feature), true);
+		}
 		return returnValue;
 	}
 	
 	@Override
 	public boolean contains(InternalEObject object, EStructuralFeature feature, Object value) {
 		boolean returnValue = super.contains(object, feature, value);
-		if (returnValue == true) {
+		if (returnValue == true && !isSuspended()) {
 			isSetCache.put(new MapKey(object, feature), true);
 		}
 		return returnValue;
@@ -152,7 +205,7 @@ public class IsSetCachingDelegatedTStoreImpl extends DelegatedResourceTStoreImpl
 	@Override
 	public Object get(InternalEObject object, EStructuralFeature feature, int index) {
 		Object returnValue = super.get(object, feature, index);
-		if (returnValue != null) {
+		if (returnValue != null && !isSuspended()) {
 			isSetCache.put(new MapKey(object, feature), true);
 		}
 		return returnValue;
@@ -50,6 +50,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		return super.getAt(date, object, feature, index);
 	}
 
+	@Override
+	public Object getAt(long timestamp, InternalEObject object, EStructuralFeature feature, int index) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called get for {0}.{1}[{2}] @ {3,number,#}", object, feature.getName(), index, timestamp));
+		return super.getAt(timestamp, object, feature, index);
+	}
+
 	@Override
 	public Object set(InternalEObject object, EStructuralFeature feature, int index, Object value) {
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called set for {0}.{1}[{2}] with value {3}", object, feature.getName(), index, value));
@@ -68,6 +74,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		return super.isSetAt(date, object, feature);
 	}
 
+	@Override
+	public boolean isSetAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called isSet for {0}.{1} @ {2,number,#}", object, feature.getName(), timestamp));
+		return super.isSetAt(timestamp, object, feature);
+	}
+
 	@Override
 	public void unset(InternalEObject object, EStructuralFeature feature) {
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called unSet for {0}.{1}", object, feature.getName()));
@@ -85,6 +97,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called isEmtpy for {0}.{1} @ {2}", object, feature.getName(), date));
 		return super.isEmptyAt(date, object, feature);
 	}
+
+	@Override
+	public boolean isEmptyAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called isEmtpy for {0}.{1} @ {2,number,#}", object, feature.getName(), timestamp));
+		return super.isEmptyAt(timestamp, object, feature);
+	}
 	
 	@Override
 	public int size(InternalEObject object, EStructuralFeature feature) {
@@ -97,6 +115,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called size for {0}.{1} @ {2}", object, feature.getName(), date));
 		return super.sizeAt(date, object, feature);
 	}
+
+	@Override
+	public int sizeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called size for {0}.{1} @ {2,number,#}", object, feature.getName(), timestamp));
+		return super.sizeAt(timestamp, object, feature);
+	}
 	
 	@Override
 	public boolean contains(InternalEObject object, EStructuralFeature feature, Object value) {
@@ -110,6 +134,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		return super.containsAt(date, object, feature, value);
 	}
 
+	@Override
+	public boolean containsAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called contains for {0}.{1} with value {2} @ {3,number,#}", object, feature.getName(), value, timestamp));
+		return super.containsAt(timestamp, object, feature, value);
+	}
+
 	@Override
 	public int indexOf(InternalEObject object, EStructuralFeature feature, Object value) {
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called indexOf for {0}.{1} with value {2}", object, feature.getName(), value));
@@ -122,6 +152,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		return super.indexOfAt(date, object, feature, value);
 	}
 
+	@Override
+	public int indexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called indexOf for {0}.{1} with value {2} @ {3,number,#}", object, feature.getName(), value, timestamp));
+		return super.indexOfAt(timestamp, object, feature, value);
+	}
+
 	@Override
 	public int lastIndexOf(InternalEObject object, EStructuralFeature feature, Object value) {
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called lastIndexOf for {0}.{1} with value {2}", object, feature.getName(), value));
@@ -134,6 +170,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		return super.lastIndexOfAt(date, object, feature, value);
 	}
 
+	@Override
+	public int lastIndexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called lastIndexOf for {0}.{1} with value {2} @ {3,number,#}", object, feature.getName(), value, timestamp));
+		return super.lastIndexOfAt(timestamp, object, feature, value);
+	}
+
 	@Override
 	public void add(InternalEObject object, EStructuralFeature feature, int index, Object value) {
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called add for {0}.{1}[{2}] with value {3}", object, feature.getName(), index, value));
@@ -170,6 +212,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called toArray for {0}.{1} @ {2}", object, feature.getName(), date));
 		return super.toArrayAt(date, object, feature);
 	}
+
+	@Override
+	public Object[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called toArray for {0}.{1} @ {2,number,#}", object, feature.getName(), timestamp));
+		return super.toArrayAt(timestamp, object, feature);
+	}
 	
 	@Override
 	public <T> T[] toArray(InternalEObject object, EStructuralFeature feature, T[] array) {
@@ -182,6 +230,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called toArray for {0}.{1} @ {2}", object, feature.getName(), date));
 		return super.toArrayAt(date, object, feature, array);
 	}
+
+	@Override
+	public <T> T[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature, T[] array) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called toArray for {0}.{1} @ {2,number,#}", object, feature.getName(), timestamp));
+		return super.toArrayAt(timestamp, object, feature, array);
+	}
 	
 	@Override
 	public int hashCode(InternalEObject object, EStructuralFeature feature) {
@@ -195,6 +249,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		return super.hashCodeAt(date, object, feature);
 	}
 
+	@Override
+	public int hashCodeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called hashCode for {0}.{1} @ {2,number,#}", object, feature.getName(), timestamp));
+		return super.hashCodeAt(timestamp, object, feature);
+	}
+
 	@Override
 	public InternalEObject getContainer(InternalEObject object) {
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called getContainer for {0}", object));
@@ -207,6 +267,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		return super.getContainerAt(date, object);
 	}
 
+	@Override
+	public InternalEObject getContainerAt(long timestamp, InternalEObject object) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called getContainer for {0} @ {1,number,#}", object, timestamp));
+		return super.getContainerAt(timestamp, object);
+	}
+
 	@Override
 	public EStructuralFeature getContainingFeature(InternalEObject object) {
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called getContainingFeature for {0}", object));
@@ -219,6 +285,12 @@ public class LoggingDelegatedResourceTStoreImpl extends DelegatedResourceTStoreI
 		return super.getContainingFeatureAt(date, object);
 	}
 
+	@Override
+	public EStructuralFeature getContainingFeatureAt(long timestamp, InternalEObject object) {
+		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called getContainingFeature for {0} @ {1,number,#}", object, timestamp));
+		return super.getContainingFeatureAt(timestamp, object);
+	}
+
 	@Override
 	public EObject create(EClass eClass) {
 		Logger.log(Logger.SEVERITY_INFO, MessageFormat.format("Called create for {0}", eClass.getName()));
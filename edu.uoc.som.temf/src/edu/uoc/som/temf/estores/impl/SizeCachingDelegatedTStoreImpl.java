@@ -11,11 +11,14 @@
 package edu.uoc.som.temf.estores.impl;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections4.map.LRUMap;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.InternalEObject;
 
+import com.google.common.cache.CacheBuilder;
+
 import edu.uoc.som.temf.estores.SearcheableResourceEStore;
 import edu.uoc.som.temf.estores.SearcheableResourceTStore;
 
@@ -75,9 +78,14 @@ public class SizeCachingDelegatedTStoreImpl extends DelegatedResourceTStoreImpl
 		}
 	}
 	
-	protected static final int DEFAULT_SIZE_CACHE_SIZE = 10000;
+	public static final int DEFAULT_SIZE_CACHE_SIZE = 10000;
 	
 	protected Map<MapKey, Integer> sizeCache;
+
+	/**
+	 * The number of pending calls to {@link #resume()} (see {@link #suspend()})
+	 */
+	protected final AtomicInteger suspensions = new AtomicInteger();
 	
 	
 	public SizeCachingDelegatedTStoreImpl(SearcheableResourceTStore eStore) {
@@ -85,18 +93,56 @@ public class SizeCachingDelegatedTStoreImpl extends DelegatedResourceTStoreImpl
 	}
 
 	public SizeCachingDelegatedTStoreImpl(SearcheableResourceTStore eStore, int sizeCacheSize) {
+		this(eStore, sizeCacheSize, false);
+	}
+
+	/**
+	 * Creates a cache of <code>sizeCacheSize</code> entries, which can be
+	 * accessed by several threads concurrently if <code>concurrent</code> is
+	 * <code>true</code>
+	 */
+	public SizeCachingDelegatedTStoreImpl(SearcheableResourceTStore eStore, int sizeCacheSize, boolean concurrent) {
 		super(eStore);
-		this.sizeCache = new LRUMap<>(sizeCacheSize);
+		this.sizeCache = concurrent ? CacheBuilder.newBuilder().maximumSize(sizeCacheSize).<MapKey, Integer> build().asMap() : new LRUMap<>(sizeCacheSize);
+	}
+
+	/**
+	 * Suspends the cache until {@link #resume()} is called: the cached sizes are
+	 * discarded, and the calls are forwarded to the underlying store without
+	 * being cached. This allows different threads to see different states of
+	 * the store, such as while one of them has a change set in progress.
+	 */
+	public void suspend() {
+		suspensions.incrementAndGet();
+		sizeCache.clear();
+	}
+
+	/**
+	 * Resumes the cache suspended by {@link #suspend()}
+	 */
+	public void resume() {
+		sizeCache.clear();
+		suspensions.decrementAndGet();
+	}
+
+	protected boolean isSuspended() {
+		return suspensions.get() > 0;
 	}
 	
 	@Override
 	public void unset(InternalEObject object, EStructuralFeature feature) {
 		super.unset(object, feature);
+		if (isSuspended()) {
+			return;
+		}
 		sizeCache.put(new MapKey(object, feature), 0);
 	}
 
 	@Override
 	public boolean isEmpty(InternalEObject object, EStructuralFeature feature) {
+		if (isSuspended()) {
+			return super.isEmpty(object, feature);
+		}
 		Integer size = sizeCache.get(new MapKey(object, feature));
 		if (size != null) {
 			return size == 0;
@@ -107,6 +153,9 @@ public class SizeCachingDelegatedTStoreImpl extends DelegatedResourceTStoreImpl
 
 	@Override
 	public int size(InternalEObject object, EStructuralFeature feature) {
+		if (isSuspended()) {
+			return super.size(object, feature);
+		}
 		Integer size = sizeCache.get(new MapKey(object, feature));
 		if (size == null) {
 			size = super.size(object, feature); 
@@ -118,24 +167,36 @@ public class SizeCachingDelegatedTStoreImpl extends DelegatedResourceTStoreImpl
 
 	@Override
 	public void add(InternalEObject object, EStructuralFeature feature, int index, Object value) {
+		if (isSuspended()) {
+			super.add(object, feature, index, value);
+			return;
+		}
+		super.add(object, feature, index, value);
 		Integer size = sizeCache.get(new MapKey(object, feature));
 		if (size != null) {
 			sizeCache.put(new MapKey(object, feature), size + 1); 
 		} 
-		super.add(object, feature, index, value);
 	}
 
 	@Override
 	public Object remove(InternalEObject object, EStructuralFeature feature, int index) {
+		if (isSuspended()) {
+			return super.remove(object, feature, index);
+		}
+		Object oldValue = super.remove(object, feature, index);
 		Integer size = sizeCache.get(new MapKey(object, feature));
 		if (size != null) {
 			sizeCache.put(new MapKey(object, feature), size - 1); 
 		} 
-		return super.remove(object, feature, index);
+		return oldValue;
 	}
 
 	@Override
 	public void clear(InternalEObject object, EStructuralFeature feature) {
+		if (isSuspended()) {
+			super.clear(object, feature);
+			return;
+		}
 		sizeCache.put(new MapKey(object, feature), 0); 
 		super.clear(object, feature);
 	}
@@ -0,0 +1,401 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.estores.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedMap;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.InternalEObject.EStore;
+
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
+import edu.uoc.som.temf.estores.TStore;
+
+/**
+ * An {@link EStore} implementation that stores the data of a single
+ * {@link EObject} owner in memory. Unlike {@link OwnedTransientTStoreImpl},
+ * values are not kept in maps, but in an array of slots indexed by the
+ * {@link EClass#getFeatureID(EStructuralFeature) feature ID}, and the values
+ * of many-valued features are kept in growable arrays. Thus, reads do not
+ * allocate any object, and the store only takes an array (allocated on the
+ * first modification) and a list per many-valued feature that is set.
+ * 
+ * @author agomez
+ * 
+ */
+public class SlotTransientTStoreImpl implements TStore {
+
+	/**
+	 * Placeholder of the <code>null</code> values of single-valued features,
+	 * since empty slots denote unset features
+	 */
+	protected static final Object NULL = new Object();
+
+	protected final InternalEObject owner;
+
+	/**
+	 * The value of every feature of the owner, indexed by feature ID, or
+	 * <code>null</code> if no feature has been set yet
+	 */
+	protected Object[] slots;
+
+	public SlotTransientTStoreImpl(InternalEObject owner) {
+		this.owner = owner;
+	}
+
+	protected int featureID(InternalEObject eObject, EStructuralFeature feature) {
+		assert owner == eObject;
+		int featureID = owner.eClass().getFeatureID(feature);
+		if (featureID < 0) {
+			throw new IllegalArgumentException(feature.getName());
+		}
+		return featureID;
+	}
+
+	protected Object slot(InternalEObject eObject, EStructuralFeature feature) {
+		int featureID = featureID(eObject, feature);
+		return slots != null ? slots[featureID] : null;
+	}
+
+	protected Object[] slots() {
+		if (slots == null) {
+			slots = new Object[owner.eClass().getFeatureCount()];
+		}
+		return slots;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected List<Object> list(InternalEObject eObject, EStructuralFeature feature) {
+		return (List<Object>) slot(eObject, feature);
+	}
+
+	/**
+	 * Returns the list of a many-valued feature, which must have been set
+	 */
+	protected List<Object> existingList(InternalEObject eObject, EStructuralFeature feature) {
+		List<Object> list = list(eObject, feature);
+		if (list == null) {
+			throw new IndexOutOfBoundsException(feature.getName());
+		}
+		return list;
+	}
+
+	@Override
+	public Object get(InternalEObject eObject, EStructuralFeature feature, int index) {
+		if (index == NO_INDEX) {
+			Object value = slot(eObject, feature);
+			return value != NULL ? value : null;
+		} else {
+			List<Object> saved = list(eObject, feature);
+			if (saved != null) {
+				return saved.get(index);
+			} else {
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public Object getAt(Date date, InternalEObject object, EStructuralFeature feature, int index) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object getAt(long timestamp, InternalEObject object, EStructuralFeature feature, int index) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index, int limit, boolean descending) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public THistory<Object> getAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, int limit,
+			boolean descending) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public THistoryCursor<Object> getAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index,
+			boolean descending) {
+		throw new UnsupportedOperationException();
+	}
+	
+	@Override
+	public Object set(InternalEObject eObject, EStructuralFeature feature, int index, Object value) {
+		if (index == NO_INDEX) {
+			Object[] slots = slots();
+			int featureID = featureID(eObject, feature);
+			Object oldValue = slots[featureID];
+			slots[featureID] = value != null ? value : NULL;
+			return oldValue != NULL ? oldValue : null;
+		} else {
+			return existingList(eObject, feature).set(index, value);
+		}
+	}
+
+	@Override
+	public void add(InternalEObject eObject, EStructuralFeature feature, int index, Object value) {
+		List<Object> saved = list(eObject, feature);
+		if (saved != null) {
+			saved.add(index, value);
+		} else {
+			List<Object> list = new ArrayList<Object>();
+			list.add(index, value);
+			slots()[featureID(eObject, feature)] = list;
+		}
+	}
+
+	@Override
+	public Object remove(InternalEObject eObject, EStructuralFeature feature, int index) {
+		return existingList(eObject, feature).remove(index);
+	}
+
+	@Override
+	public Object move(InternalEObject eObject, EStructuralFeature feature, int targetIndex, int sourceIndex) {
+		List<Object> list = existingList(eObject, feature);
+		Object movedObject = list.remove(sourceIndex);
+		list.add(targetIndex, movedObject);
+		return movedObject;
+	}
+
+	@Override
+	public void clear(InternalEObject eObject, EStructuralFeature feature) {
+		List<Object> list = list(eObject, feature);
+		if (list != null) {
+			list.clear();
+		}
+	}
+
+	@Override
+	public boolean isSet(InternalEObject eObject, EStructuralFeature feature) {
+		return slot(eObject, feature) != null;
+	}
+
+	@Override
+	public boolean isSetAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isSetAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void unset(InternalEObject eObject, EStructuralFeature feature) {
+		int featureID = featureID(eObject, feature);
+		if (slots != null) {
+			slots[featureID] = null;
+		}
+	}
+
+	@Override
+	public int size(InternalEObject eObject, EStructuralFeature feature) {
+		List<Object> list = list(eObject, feature);
+		return list != null ? list.size() : 0;
+	}
+
+	@Override
+	public int sizeAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int sizeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int indexOf(InternalEObject eObject, EStructuralFeature feature, Object value) {
+		List<Object> list = list(eObject, feature);
+		return list != null ? list.indexOf(value) : -1;
+	}
+
+	@Override
+	public int indexOfAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int indexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int lastIndexOf(InternalEObject eObject, EStructuralFeature feature, Object value) {
+		List<Object> list = list(eObject, feature);
+		return list != null ? list.lastIndexOf(value) : -1;
+	}
+
+	@Override
+	public int lastIndexOfAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int lastIndexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object[] toArray(InternalEObject eObject, EStructuralFeature feature) {
+		List<Object> list = list(eObject, feature);
+		return list != null ? list.toArray() : new Object[] {};
+	}
+
+	@Override
+	public Object[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+	
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int limit, boolean descending) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public THistory<Object[]> toArrayAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int limit,
+			boolean descending) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public THistoryCursor<Object[]> toArrayAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature,
+			boolean descending) {
+		throw new UnsupportedOperationException();
+	}
+	
+	@Override
+	public <T> T[] toArray(InternalEObject eObject, EStructuralFeature feature, T[] array) {
+		List<Object> list = list(eObject, feature);
+		return list != null ? list.toArray(array) : Arrays.copyOf(array, 0);
+	}
+
+	@Override
+	public <T> T[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature, T[] array) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> T[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature, T[] array) {
+		throw new UnsupportedOperationException();
+	}
+	
+	@Override
+	public boolean isEmpty(InternalEObject eObject, EStructuralFeature feature) {
+		List<Object> list = list(eObject, feature);
+		return list != null ? list.isEmpty() : true;
+	}
+
+	@Override
+	public boolean isEmptyAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isEmptyAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean contains(InternalEObject eObject, EStructuralFeature feature, Object value) {
+		List<Object> list = list(eObject, feature);
+		return list != null ? list.contains(value) : false;
+	}
+
+	@Override
+	public boolean containsAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean containsAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int hashCode(InternalEObject eObject, EStructuralFeature feature) {
+		List<Object> list = list(eObject, feature);
+		return list != null ? list.hashCode() : 1;
+	}
+
+	@Override
+	public int hashCodeAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int hashCodeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public InternalEObject getContainer(InternalEObject eObject) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public InternalEObject getContainerAt(Date date, InternalEObject object) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public InternalEObject getContainerAt(long timestamp, InternalEObject object) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeature(InternalEObject eObject) {
+		// This should never be called.
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeatureAt(Date date, InternalEObject object) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeatureAt(long timestamp, InternalEObject object) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public EObject create(EClass eClass) {
+		// Unimplemented
+		// TODO: In which case is needed?
+		throw new UnsupportedOperationException();
+	}
+}
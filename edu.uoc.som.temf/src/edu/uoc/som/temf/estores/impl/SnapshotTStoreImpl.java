@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.estores.impl;
+
+import java.lang.reflect.Array;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import edu.uoc.som.temf.core.InternalTObject;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.impl.TObjectAdapterFactoryImpl;
+import edu.uoc.som.temf.estores.SearcheableResourceEStore;
+import edu.uoc.som.temf.estores.SearcheableResourceTStore;
+
+/**
+ * A read-only {@link SearcheableResourceEStore} that answers the (non-temporal)
+ * queries with the state of the wrapped store at a fixed timestamp, so that
+ * the objects that use it navigate that state with the plain EMF API.
+ * <p>
+ * The objects of the snapshot are distinct from (but have the same IDs as)
+ * the objects of the wrapped store, and the references between them are
+ * resolved within the snapshot. Every feature of every object is read at most
+ * once: the values are memoized the first time they are accessed, and are
+ * never invalidated, since the state at a past timestamp never changes.
+ * Modifications throw an {@link UnsupportedOperationException}. Temporal
+ * queries are delegated to the wrapped store, and return its objects.
+ *
+ * @author agomez
+ *
+ */
+public class SnapshotTStoreImpl extends DelegatedResourceTStoreImpl implements SearcheableResourceTStore {
+
+	protected static final Object UNLOADED = new Object();
+
+	/**
+	 * The memoized state of an object, indexed by feature ID
+	 */
+	protected static class ObjectSnapshot {
+
+		protected final Object[] values;
+
+		protected final Boolean[] isSet;
+
+		protected boolean containerLoaded;
+
+		protected InternalEObject container;
+
+		protected EStructuralFeature containingFeature;
+
+		protected ObjectSnapshot(int featureCount) {
+			values = new Object[featureCount];
+			Arrays.fill(values, UNLOADED);
+			isSet = new Boolean[featureCount];
+		}
+	}
+
+	protected final Resource resource;
+
+	protected final long timestamp;
+
+	/**
+	 * The objects of the snapshot, indexed by ID
+	 */
+	protected final Map<String, InternalTObject> objects = new HashMap<>();
+
+	protected final Map<InternalEObject, ObjectSnapshot> snapshots = new IdentityHashMap<>();
+
+	/**
+	 * Creates a snapshot of the given <code>eStore</code> at the given
+	 * <code>timestamp</code>, whose objects belong to the given
+	 * <code>resource</code>
+	 */
+	public SnapshotTStoreImpl(SearcheableResourceTStore eStore, Resource resource, long timestamp) {
+		super(eStore);
+		this.resource = resource;
+		this.timestamp = timestamp;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public Resource getResource() {
+		return resource;
+	}
+
+	@Override
+	public synchronized EObject getEObject(String id) {
+		InternalTObject object = objects.get(id);
+		return object != null ? object : toSnapshot(eStore.getEObject(id));
+	}
+
+	/**
+	 * Returns the object of the snapshot that corresponds to the given object
+	 * of the wrapped store, i.e., the one with the same ID
+	 */
+	public synchronized InternalTObject toSnapshot(EObject eObject) {
+		if (eObject == null) {
+			return null;
+		}
+		InternalTObject tObject = TObjectAdapterFactoryImpl.getAdapter(eObject, InternalTObject.class);
+		if (tObject.tResource() == resource) {
+			return tObject;
+		}
+		InternalTObject object = objects.get(tObject.tId());
+		if (object == null) {
+			EObject newObject = EcoreUtil.create(eObject.eClass());
+			object = newObject instanceof InternalTObject ? (InternalTObject) newObject
+					: TObjectAdapterFactoryImpl.getAdapter(newObject, InternalTObject.class);
+			object.tSetId(tObject.tId());
+			objects.put(tObject.tId(), object);
+			object.tSetResource((Resource.Internal) resource);
+		}
+		return object;
+	}
+
+	/**
+	 * Discards the memoized state
+	 */
+	public synchronized void clear() {
+		objects.clear();
+		snapshots.clear();
+	}
+
+	protected ObjectSnapshot snapshot(InternalEObject object) {
+		ObjectSnapshot snapshot = snapshots.get(object);
+		if (snapshot == null) {
+			snapshot = new ObjectSnapshot(object.eClass().getFeatureCount());
+			snapshots.put(object, snapshot);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Returns the value of the <code>feature</code> of the <code>object</code>
+	 * at the timestamp of the snapshot, which is an array for many-valued
+	 * features
+	 */
+	protected synchronized Object value(InternalEObject object, EStructuralFeature feature) {
+		int featureID = object.eClass().getFeatureID(feature);
+		ObjectSnapshot snapshot = featureID >= 0 ? snapshot(object) : null;
+		Object value = snapshot != null ? snapshot.values[featureID] : UNLOADED;
+		if (value == UNLOADED) {
+			if (feature.isMany()) {
+				Object[] values = eStore.toArrayAt(timestamp, object, feature);
+				if (feature instanceof EReference) {
+					for (int index = 0; index < values.length; index++) {
+						values[index] = toSnapshot((EObject) values[index]);
+					}
+				}
+				value = values;
+			} else {
+				value = eStore.getAt(timestamp, object, feature, NO_INDEX);
+				if (feature instanceof EReference) {
+					value = toSnapshot((EObject) value);
+				}
+			}
+			if (snapshot != null) {
+				snapshot.values[featureID] = value;
+			}
+		}
+		return value;
+	}
+
+	protected Object[] values(InternalEObject object, EStructuralFeature feature) {
+		return (Object[]) value(object, feature);
+	}
+
+	protected synchronized ObjectSnapshot container(InternalEObject object) {
+		ObjectSnapshot snapshot = snapshot(object);
+		if (!snapshot.containerLoaded) {
+			snapshot.container = toSnapshot(eStore.getContainerAt(timestamp, object));
+			snapshot.containingFeature = snapshot.container != null ? eStore.getContainingFeatureAt(timestamp, object) : null;
+			snapshot.containerLoaded = true;
+		}
+		return snapshot;
+	}
+
+	@Override
+	public Object get(InternalEObject object, EStructuralFeature feature, int index) {
+		return feature.isMany() ? values(object, feature)[index] : value(object, feature);
+	}
+
+	@Override
+	public boolean isSet(InternalEObject object, EStructuralFeature feature) {
+		if (feature.isMany()) {
+			return values(object, feature).length > 0;
+		}
+		synchronized (this) {
+			int featureID = object.eClass().getFeatureID(feature);
+			if (featureID < 0) {
+				return eStore.isSetAt(timestamp, object, feature);
+			}
+			ObjectSnapshot snapshot = snapshot(object);
+			if (snapshot.isSet[featureID] == null) {
+				snapshot.isSet[featureID] = eStore.isSetAt(timestamp, object, feature);
+			}
+			return snapshot.isSet[featureID];
+		}
+	}
+
+	@Override
+	public boolean isEmpty(InternalEObject object, EStructuralFeature feature) {
+		return values(object, feature).length == 0;
+	}
+
+	@Override
+	public int size(InternalEObject object, EStructuralFeature feature) {
+		return values(object, feature).length;
+	}
+
+	@Override
+	public boolean contains(InternalEObject object, EStructuralFeature feature, Object value) {
+		return indexOf(object, feature, value) != -1;
+	}
+
+	@Override
+	public int indexOf(InternalEObject object, EStructuralFeature feature, Object value) {
+		return Arrays.asList(values(object, feature)).indexOf(value);
+	}
+
+	@Override
+	public int lastIndexOf(InternalEObject object, EStructuralFeature feature, Object value) {
+		return Arrays.asList(values(object, feature)).lastIndexOf(value);
+	}
+
+	@Override
+	public Object[] toArray(InternalEObject object, EStructuralFeature feature) {
+		return values(object, feature).clone();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArray(InternalEObject object, EStructuralFeature feature, T[] array) {
+		Object[] values = values(object, feature);
+		int size = values.length;
+		if (array.length < size) {
+			array = (T[]) Array.newInstance(array.getClass().getComponentType(), size);
+		}
+		System.arraycopy(values, 0, array, 0, size);
+		if (array.length > size) {
+			array[size] = null;
+		}
+		return array;
+	}
+
+	@Override
+	public int hashCode(InternalEObject object, EStructuralFeature feature) {
+		return Arrays.asList(values(object, feature)).hashCode();
+	}
+
+	@Override
+	public InternalEObject getContainer(InternalEObject object) {
+		return container(object).container;
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeature(InternalEObject object) {
+		return container(object).containingFeature;
+	}
+
+	@Override
+	public Object set(InternalEObject object, EStructuralFeature feature, int index, Object value) {
+		throw new UnsupportedOperationException(readOnly(object));
+	}
+
+	@Override
+	public void unset(InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException(readOnly(object));
+	}
+
+	@Override
+	public void add(InternalEObject object, EStructuralFeature feature, int index, Object value) {
+		throw new UnsupportedOperationException(readOnly(object));
+	}
+
+	@Override
+	public Object remove(InternalEObject object, EStructuralFeature feature, int index) {
+		throw new UnsupportedOperationException(readOnly(object));
+	}
+
+	@Override
+	public Object move(InternalEObject object, EStructuralFeature feature, int targetIndex, int sourceIndex) {
+		throw new UnsupportedOperationException(readOnly(object));
+	}
+
+	@Override
+	public void clear(InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException(readOnly(object));
+	}
+
+	@Override
+	public EObject create(EClass eClass) {
+		throw new UnsupportedOperationException();
+	}
+
+	protected String readOnly(InternalEObject object) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		return MessageFormat.format("Unable to modify {0}: the snapshot at {1,number,#} is read-only", tObject != null ? tObject.tId() : object, timestamp);
+	}
+}
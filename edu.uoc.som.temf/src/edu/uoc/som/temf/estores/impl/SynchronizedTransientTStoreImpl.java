@@ -29,7 +29,13 @@ import org.eclipse.emf.ecore.InternalEObject.EStore;
  * 
  * @author agomez
  * 
+ * @deprecated Every access goes through the monitor of a single map, and
+ *             compound modifications such as
+ *             {@link #move(InternalEObject, EStructuralFeature, int, int)}
+ *             are not atomic; use {@link ConcurrentTransientTStoreImpl}
+ *             instead
  */
+@Deprecated
 public class SynchronizedTransientTStoreImpl implements InternalEObject.EStore {
 
 	protected Map<EStoreEntryKey, Object> singleMap = Collections.synchronizedMap(new HashMap<EStoreEntryKey, Object>());
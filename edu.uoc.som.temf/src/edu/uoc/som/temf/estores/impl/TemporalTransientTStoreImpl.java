@@ -0,0 +1,903 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.estores.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.LongSupplier;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
+import edu.uoc.som.temf.estores.TStore;
+
+/**
+ * A {@link TStore} implementation that keeps the whole history of the data in
+ * memory, so that temporal queries can be answered without any database.
+ * <p>
+ * Every feature of every object keeps an array of versions sorted by
+ * timestamp, so that the version in effect at any timestamp is found with a
+ * binary search. Single-valued features keep their values, and many-valued
+ * features keep the modification made by every version (see
+ * {@link ListVersions}) plus a copy of the whole list every
+ * {@link #DEFAULT_CHECKPOINT_INTERVAL} versions, so that modifying a list does
+ * not copy it. As in HBase, the versions written in the same millisecond
+ * replace each other, and the history of a feature between two timestamps
+ * includes the version in effect at the first one.
+ * The containment of the objects (i.e., the objects that have been set or
+ * added to a containment {@link EReference}) is kept in the same way.
+ * <p>
+ * If a retention window is given, the versions that were replaced before it
+ * are discarded as new versions are written (or on {@link #prune()}), and the
+ * queries about older timestamps see the oldest retained state.
+ * <p>
+ * Like {@link TransientTStoreImpl}, this store is not thread-safe.
+ *
+ * @author agomez
+ *
+ */
+public class TemporalTransientTStoreImpl implements TStore {
+
+	public static final long UNLIMITED_RETENTION = Long.MAX_VALUE;
+
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+
+	/**
+	 * Placeholder of the versions in which a feature is unset
+	 */
+	protected static final Object UNSET = new Object();
+
+	protected static final Object[] EMPTY = new Object[0];
+
+	/**
+	 * The versions of a feature (or of the containment of an object), sorted
+	 * by timestamp
+	 */
+	protected static class Versions {
+
+		protected long[] timestamps = new long[2];
+
+		protected Object[] values = new Object[2];
+
+		protected int size;
+
+		/**
+		 * Whether older versions have been discarded
+		 */
+		protected boolean pruned;
+
+		/**
+		 * Returns the position of the version in effect at the given
+		 * <code>timestamp</code> (the last one if several versions share its
+		 * timestamp), or <code>-1</code> if there is none
+		 */
+		protected int indexAt(long timestamp) {
+			if (size > 0 && timestamps[size - 1] <= timestamp) {
+				return size - 1;
+			}
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (timestamps[middle] <= timestamp) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return high < 0 && pruned ? 0 : high;
+		}
+
+		/**
+		 * Returns the value of the version at the given position, which is not
+		 * modified by later versions
+		 */
+		protected Object value(int index) {
+			return values[index];
+		}
+
+		protected Object latest() {
+			return size > 0 ? values[size - 1] : UNSET;
+		}
+
+		protected Object at(long timestamp) {
+			int index = indexAt(timestamp);
+			return index >= 0 ? values[index] : UNSET;
+		}
+
+		protected void record(long timestamp, Object value) {
+			if (size > 0 && timestamps[size - 1] >= timestamp) {
+				values[size - 1] = value;
+			} else {
+				append(timestamp, value);
+			}
+		}
+
+		protected void append(long timestamp, Object value) {
+			if (size == timestamps.length) {
+				timestamps = Arrays.copyOf(timestamps, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			timestamps[size] = timestamp;
+			values[size] = value;
+			size++;
+		}
+
+		/**
+		 * Discards the versions replaced before the given <code>horizon</code>
+		 */
+		protected void prune(long horizon) {
+			int first = indexAt(horizon);
+			if (first > 0) {
+				discard(first);
+			}
+		}
+
+		/**
+		 * Discards the versions before the given position
+		 */
+		protected void discard(int first) {
+			System.arraycopy(timestamps, first, timestamps, 0, size - first);
+			System.arraycopy(values, first, values, 0, size - first);
+			Arrays.fill(values, size - first, size, null);
+			size -= first;
+			pruned = true;
+		}
+	}
+
+	/**
+	 * A modification of a many-valued feature
+	 */
+	protected static final class Delta {
+
+		protected static final byte ADD = 0;
+
+		protected static final byte REMOVE = 1;
+
+		protected static final byte SET = 2;
+
+		protected static final byte MOVE = 3;
+
+		protected final byte kind;
+
+		protected final int index;
+
+		/**
+		 * The source index of a {@link #MOVE}
+		 */
+		protected final int sourceIndex;
+
+		protected final Object value;
+
+		protected Delta(byte kind, int index, int sourceIndex, Object value) {
+			this.kind = kind;
+			this.index = index;
+			this.sourceIndex = sourceIndex;
+			this.value = value;
+		}
+
+		protected void apply(List<Object> list) {
+			switch (kind) {
+			case ADD:
+				list.add(index, value);
+				break;
+			case REMOVE:
+				list.remove(index);
+				break;
+			case SET:
+				list.set(index, value);
+				break;
+			case MOVE:
+				list.add(index, list.remove(sourceIndex));
+				break;
+			default:
+				throw new IllegalStateException(Byte.toString(kind));
+			}
+		}
+	}
+
+	/**
+	 * The versions of a many-valued feature. As in the delta layout of the
+	 * HBase store, a version does not keep the whole list, but the
+	 * {@link Delta} applied to the previous one, except one of every
+	 * {@link #checkpointInterval} versions (and the versions that clear or
+	 * unset the feature), which keeps a copy of the whole list (a checkpoint).
+	 * The latest list is kept apart, so that it is read and modified in place,
+	 * and older lists are rebuilt by replaying the deltas recorded since the
+	 * preceding checkpoint.
+	 * <p>
+	 * Unlike the versions of other features, consecutive versions can share a
+	 * timestamp (those of the modifications made in the same millisecond), in
+	 * which case the last one is in effect.
+	 */
+	protected static class ListVersions extends Versions {
+
+		protected final int checkpointInterval;
+
+		/**
+		 * The latest list, or <code>null</code> if the feature is unset
+		 */
+		protected List<Object> current;
+
+		protected List<Object> currentView;
+
+		/**
+		 * The number of deltas recorded since the last checkpoint
+		 */
+		protected int deltas;
+
+		/**
+		 * The position of the last list rebuilt by {@link #replay(int)}, from
+		 * which the following ones are rebuilt, or <code>-1</code>
+		 */
+		protected int replayedIndex = -1;
+
+		protected List<Object> replayed;
+
+		protected ListVersions(int checkpointInterval) {
+			this.checkpointInterval = checkpointInterval;
+		}
+
+		/**
+		 * Returns the latest list, as an unmodifiable view
+		 */
+		@Override
+		protected Object latest() {
+			return current != null ? currentView : UNSET;
+		}
+
+		@Override
+		protected Object at(long timestamp) {
+			int index = indexAt(timestamp);
+			if (index == size - 1) {
+				return latest();
+			} else {
+				return index >= 0 ? replay(index) : UNSET;
+			}
+		}
+
+		@Override
+		protected Object value(int index) {
+			if (index == size - 1) {
+				return current != null ? new ArrayList<>(current) : UNSET;
+			} else {
+				return replay(index);
+			}
+		}
+
+		/**
+		 * Returns a copy of the list of the version at the given position,
+		 * rebuilt from the last rebuilt list if it precedes it and there is no
+		 * checkpoint in between, or from the preceding checkpoint otherwise
+		 */
+		protected Object replay(int index) {
+			int from = index;
+			while (from >= 0 && from != replayedIndex && values[from] instanceof Delta) {
+				from--;
+			}
+			List<Object> list;
+			if (from >= 0 && from == replayedIndex) {
+				list = replayed;
+			} else if (from >= 0 && values[from] != UNSET) {
+				list = new ArrayList<>(Arrays.asList((Object[]) values[from]));
+			} else {
+				list = null;
+			}
+			for (int position = from + 1; position <= index; position++) {
+				if (list == null) {
+					list = new ArrayList<>();
+				}
+				((Delta) values[position]).apply(list);
+			}
+			replayedIndex = index;
+			replayed = list;
+			return list != null ? new ArrayList<>(list) : UNSET;
+		}
+
+		/**
+		 * Records a new version whose value is a {@link Delta} of the latest
+		 * list, or the whole new list (or {@link #UNSET})
+		 */
+		@Override
+		protected void record(long timestamp, Object value) {
+			if (value instanceof Delta) {
+				if (current == null) {
+					setCurrent(new ArrayList<>());
+				}
+				((Delta) value).apply(current);
+				if (++deltas == checkpointInterval) {
+					deltas = 0;
+					value = current.toArray();
+				}
+			} else {
+				setCurrent(value != UNSET ? new ArrayList<>(Arrays.asList((Object[]) value)) : null);
+				deltas = 0;
+			}
+			append(size > 0 ? Math.max(timestamp, timestamps[size - 1]) : timestamp, value);
+		}
+
+		protected void setCurrent(List<Object> list) {
+			current = list;
+			currentView = list != null ? Collections.unmodifiableList(list) : null;
+		}
+
+		/**
+		 * Discards the versions replaced before the given <code>horizon</code>,
+		 * turning the oldest retained version into a checkpoint
+		 */
+		@Override
+		protected void prune(long horizon) {
+			int first = indexAt(horizon);
+			if (first > 0) {
+				if (values[first] instanceof Delta) {
+					Object list = replay(first);
+					values[first] = list != UNSET ? ((List<?>) list).toArray() : UNSET;
+				}
+				discard(first);
+				replayedIndex = -1;
+				replayed = null;
+			}
+		}
+	}
+
+	protected static class ObjectVersions {
+
+		protected final Versions[] features;
+
+		protected Versions containment;
+
+		protected ObjectVersions(int featureCount) {
+			features = new Versions[featureCount];
+		}
+	}
+
+	protected final Map<InternalEObject, ObjectVersions> objects = new IdentityHashMap<>();
+
+	protected final long retention;
+
+	protected final LongSupplier clock;
+
+	protected final int checkpointInterval;
+
+	protected long lastTimestamp;
+
+	public TemporalTransientTStoreImpl() {
+		this(UNLIMITED_RETENTION);
+	}
+
+	/**
+	 * Creates a store that keeps the versions replaced during the last
+	 * <code>retention</code> milliseconds
+	 */
+	public TemporalTransientTStoreImpl(long retention) {
+		this(retention, System::currentTimeMillis);
+	}
+
+	/**
+	 * Creates a store that keeps the versions replaced during the last
+	 * <code>retention</code> milliseconds, and that timestamps the
+	 * modifications with the given <code>clock</code>
+	 */
+	public TemporalTransientTStoreImpl(long retention, LongSupplier clock) {
+		this(retention, clock, DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * Creates a store that keeps the versions replaced during the last
+	 * <code>retention</code> milliseconds, that timestamps the modifications
+	 * with the given <code>clock</code>, and that keeps a copy of the whole
+	 * list of a many-valued feature every <code>checkpointInterval</code>
+	 * versions
+	 */
+	public TemporalTransientTStoreImpl(long retention, LongSupplier clock, int checkpointInterval) {
+		if (checkpointInterval < 1) {
+			throw new IllegalArgumentException(Integer.toString(checkpointInterval));
+		}
+		this.retention = retention;
+		this.clock = clock;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	public long getRetention() {
+		return retention;
+	}
+
+	/**
+	 * Returns the timestamp of a new modification, which is never older than
+	 * the previous ones
+	 */
+	protected long timestamp() {
+		lastTimestamp = Math.max(clock.getAsLong(), lastTimestamp);
+		return lastTimestamp;
+	}
+
+	/**
+	 * Discards the versions replaced before the retention window of all the
+	 * features
+	 */
+	public void prune() {
+		if (retention == UNLIMITED_RETENTION) {
+			return;
+		}
+		long horizon = timestamp() - retention;
+		for (ObjectVersions objectVersions : objects.values()) {
+			for (Versions versions : objectVersions.features) {
+				if (versions != null) {
+					versions.prune(horizon);
+				}
+			}
+			if (objectVersions.containment != null) {
+				objectVersions.containment.prune(horizon);
+			}
+		}
+	}
+
+	protected static long timestamp(Date date) {
+		return date != null ? date.getTime() : Long.MAX_VALUE;
+	}
+
+	protected static long startTimestamp(Date date) {
+		return date != null ? date.getTime() : 0;
+	}
+
+	protected static int featureID(InternalEObject object, EStructuralFeature feature) {
+		int featureID = object.eClass().getFeatureID(feature);
+		if (featureID < 0) {
+			throw new IllegalArgumentException(feature.toString());
+		}
+		return featureID;
+	}
+
+	/**
+	 * Returns the versions of the given <code>feature</code>, or
+	 * <code>null</code> if it has never been modified
+	 */
+	protected Versions versions(InternalEObject object, EStructuralFeature feature) {
+		ObjectVersions objectVersions = objects.get(object);
+		return objectVersions != null ? objectVersions.features[featureID(object, feature)] : null;
+	}
+
+	protected ObjectVersions objectVersions(InternalEObject object) {
+		ObjectVersions objectVersions = objects.get(object);
+		if (objectVersions == null) {
+			objectVersions = new ObjectVersions(object.eClass().getFeatureCount());
+			objects.put(object, objectVersions);
+		}
+		return objectVersions;
+	}
+
+	protected Object latest(InternalEObject object, EStructuralFeature feature) {
+		Versions versions = versions(object, feature);
+		return versions != null ? versions.latest() : UNSET;
+	}
+
+	protected Object at(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		Versions versions = versions(object, feature);
+		return versions != null ? versions.at(timestamp) : UNSET;
+	}
+
+	/**
+	 * Returns the list of a many-valued feature, which must not be modified
+	 */
+	@SuppressWarnings("unchecked")
+	protected static List<Object> list(Object value) {
+		return value != UNSET ? (List<Object>) value : Collections.emptyList();
+	}
+
+	protected static Object single(Object value) {
+		return value != UNSET ? value : null;
+	}
+
+	/**
+	 * Records a new version of the given <code>feature</code>
+	 */
+	protected void record(InternalEObject object, EStructuralFeature feature, Object value) {
+		ObjectVersions objectVersions = objectVersions(object);
+		int featureID = featureID(object, feature);
+		Versions versions = objectVersions.features[featureID];
+		if (versions == null) {
+			versions = objectVersions.features[featureID] = feature.isMany() ? new ListVersions(checkpointInterval) : new Versions();
+		}
+		record(versions, value);
+	}
+
+	protected void record(Versions versions, Object value) {
+		long timestamp = timestamp();
+		versions.record(timestamp, value);
+		if (retention != UNLIMITED_RETENTION) {
+			versions.prune(timestamp - retention);
+		}
+	}
+
+	/**
+	 * Records that the given <code>value</code> is contained in the given
+	 * <code>feature</code> of the <code>object</code>, if it is a containment
+	 * {@link EReference}
+	 */
+	protected void updateContainment(InternalEObject object, EStructuralFeature feature, Object value) {
+		if (feature instanceof EReference && ((EReference) feature).isContainment() && value instanceof InternalEObject) {
+			ObjectVersions objectVersions = objectVersions((InternalEObject) value);
+			if (objectVersions.containment == null) {
+				objectVersions.containment = new Versions();
+			}
+			record(objectVersions.containment, new Object[] { object, feature });
+		}
+	}
+
+	protected static void checkIndex(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+	}
+
+	/**
+	 * Returns the versions of the given <code>feature</code> in effect between
+	 * the given timestamps (both inclusive)
+	 */
+	protected THistory<Object> history(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int limit,
+			boolean descending) {
+		Versions versions = versions(object, feature);
+		if (versions == null || versions.size == 0 || startTimestamp > endTimestamp) {
+			return new THistory<>(descending, 1);
+		}
+		int first = Math.max(versions.indexAt(startTimestamp), 0);
+		int last = versions.indexAt(endTimestamp);
+		if (last < first) {
+			return new THistory<>(descending, 1);
+		}
+		// Only the last of the versions that share a timestamp is in effect
+		int[] indexes = new int[last - first + 1];
+		int total = 0;
+		for (int index = first; index <= last; index++) {
+			if (index == last || versions.timestamps[index + 1] != versions.timestamps[index]) {
+				indexes[total++] = index;
+			}
+		}
+		int count = limit > 0 ? Math.min(limit, total) : total;
+		int offset = descending ? total - count : 0;
+		// Values are computed in ascending order, so that lists are rebuilt
+		// from the previous ones
+		Object[] values = new Object[count];
+		for (int position = 0; position < count; position++) {
+			values[position] = versions.value(indexes[offset + position]);
+		}
+		THistory<Object> history = new THistory<>(descending, count);
+		for (int position = 0; position < count; position++) {
+			int valuePosition = descending ? count - 1 - position : position;
+			history.add(versions.timestamps[indexes[offset + valuePosition]], values[valuePosition]);
+		}
+		return history;
+	}
+
+	@Override
+	public Object get(InternalEObject object, EStructuralFeature feature, int index) {
+		return getAt(Long.MAX_VALUE, object, feature, index);
+	}
+
+	@Override
+	public Object getAt(Date date, InternalEObject object, EStructuralFeature feature, int index) {
+		return getAt(timestamp(date), object, feature, index);
+	}
+
+	@Override
+	public Object getAt(long timestamp, InternalEObject object, EStructuralFeature feature, int index) {
+		Object value = at(timestamp, object, feature);
+		if (index == NO_INDEX) {
+			return single(value);
+		} else if (value == UNSET) {
+			return null;
+		} else {
+			List<Object> values = list(value);
+			checkIndex(index, values.size());
+			return values.get(index);
+		}
+	}
+
+	@Override
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index) {
+		return getAllBetween(startDate, endDate, object, feature, index, 0, false);
+	}
+
+	@Override
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index, int limit, boolean descending) {
+		return getAllBetween(startTimestamp(startDate), timestamp(endDate), object, feature, index, limit, descending).toSortedMap();
+	}
+
+	@Override
+	public THistory<Object> getAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, int limit,
+			boolean descending) {
+		return history(startTimestamp, endTimestamp, object, feature, limit, descending).map(value -> {
+			if (index == NO_INDEX) {
+				return single(value);
+			}
+			List<Object> values = list(value);
+			return index < values.size() ? values.get(index) : null;
+		});
+	}
+
+	@Override
+	public THistoryCursor<Object> getAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index,
+			boolean descending) {
+		return THistoryCursor.of(getAllBetween(startTimestamp, endTimestamp, object, feature, index, 0, descending));
+	}
+
+	@Override
+	public Object set(InternalEObject object, EStructuralFeature feature, int index, Object value) {
+		Object oldValue;
+		if (index == NO_INDEX) {
+			oldValue = single(latest(object, feature));
+			record(object, feature, value);
+		} else {
+			List<Object> values = list(latest(object, feature));
+			checkIndex(index, values.size());
+			oldValue = values.get(index);
+			record(object, feature, new Delta(Delta.SET, index, NO_INDEX, value));
+		}
+		updateContainment(object, feature, value);
+		return oldValue;
+	}
+
+	@Override
+	public void add(InternalEObject object, EStructuralFeature feature, int index, Object value) {
+		checkIndex(index, list(latest(object, feature)).size() + 1);
+		record(object, feature, new Delta(Delta.ADD, index, NO_INDEX, value));
+		updateContainment(object, feature, value);
+	}
+
+	@Override
+	public Object remove(InternalEObject object, EStructuralFeature feature, int index) {
+		List<Object> values = list(latest(object, feature));
+		checkIndex(index, values.size());
+		Object removedObject = values.get(index);
+		record(object, feature, new Delta(Delta.REMOVE, index, NO_INDEX, null));
+		return removedObject;
+	}
+
+	@Override
+	public Object move(InternalEObject object, EStructuralFeature feature, int targetIndex, int sourceIndex) {
+		List<Object> values = list(latest(object, feature));
+		checkIndex(sourceIndex, values.size());
+		checkIndex(targetIndex, values.size());
+		Object movedObject = values.get(sourceIndex);
+		record(object, feature, new Delta(Delta.MOVE, targetIndex, sourceIndex, null));
+		return movedObject;
+	}
+
+	@Override
+	public void clear(InternalEObject object, EStructuralFeature feature) {
+		if (latest(object, feature) != UNSET) {
+			record(object, feature, EMPTY);
+		}
+	}
+
+	@Override
+	public boolean isSet(InternalEObject object, EStructuralFeature feature) {
+		return isSetAt(Long.MAX_VALUE, object, feature);
+	}
+
+	@Override
+	public boolean isSetAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return isSetAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public boolean isSetAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return at(timestamp, object, feature) != UNSET;
+	}
+
+	@Override
+	public void unset(InternalEObject object, EStructuralFeature feature) {
+		if (latest(object, feature) != UNSET) {
+			record(object, feature, UNSET);
+		}
+	}
+
+	@Override
+	public int size(InternalEObject object, EStructuralFeature feature) {
+		return sizeAt(Long.MAX_VALUE, object, feature);
+	}
+
+	@Override
+	public int sizeAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return sizeAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public int sizeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return list(at(timestamp, object, feature)).size();
+	}
+
+	@Override
+	public int indexOf(InternalEObject object, EStructuralFeature feature, Object value) {
+		return indexOfAt(Long.MAX_VALUE, object, feature, value);
+	}
+
+	@Override
+	public int indexOfAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		return indexOfAt(timestamp(date), object, feature, value);
+	}
+
+	@Override
+	public int indexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		return list(at(timestamp, object, feature)).indexOf(value);
+	}
+
+	@Override
+	public int lastIndexOf(InternalEObject object, EStructuralFeature feature, Object value) {
+		return lastIndexOfAt(Long.MAX_VALUE, object, feature, value);
+	}
+
+	@Override
+	public int lastIndexOfAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		return lastIndexOfAt(timestamp(date), object, feature, value);
+	}
+
+	@Override
+	public int lastIndexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		return list(at(timestamp, object, feature)).lastIndexOf(value);
+	}
+
+	@Override
+	public Object[] toArray(InternalEObject object, EStructuralFeature feature) {
+		return toArrayAt(Long.MAX_VALUE, object, feature);
+	}
+
+	@Override
+	public Object[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return toArrayAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public Object[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return list(at(timestamp, object, feature)).toArray();
+	}
+
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature) {
+		return toArrayAllBetween(startDate, endDate, object, feature, 0, false);
+	}
+
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int limit, boolean descending) {
+		return toArrayAllBetween(startTimestamp(startDate), timestamp(endDate), object, feature, limit, descending).toSortedMap();
+	}
+
+	@Override
+	public THistory<Object[]> toArrayAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int limit,
+			boolean descending) {
+		return history(startTimestamp, endTimestamp, object, feature, limit, descending).map(value -> list(value).toArray());
+	}
+
+	@Override
+	public THistoryCursor<Object[]> toArrayAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature,
+			boolean descending) {
+		return THistoryCursor.of(toArrayAllBetween(startTimestamp, endTimestamp, object, feature, 0, descending));
+	}
+
+	@Override
+	public <T> T[] toArray(InternalEObject object, EStructuralFeature feature, T[] array) {
+		return toArrayAt(Long.MAX_VALUE, object, feature, array);
+	}
+
+	@Override
+	public <T> T[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature, T[] array) {
+		return toArrayAt(timestamp(date), object, feature, array);
+	}
+
+	@Override
+	public <T> T[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature, T[] array) {
+		return list(at(timestamp, object, feature)).toArray(array);
+	}
+
+	@Override
+	public boolean isEmpty(InternalEObject object, EStructuralFeature feature) {
+		return isEmptyAt(Long.MAX_VALUE, object, feature);
+	}
+
+	@Override
+	public boolean isEmptyAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return isEmptyAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public boolean isEmptyAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return list(at(timestamp, object, feature)).isEmpty();
+	}
+
+	@Override
+	public boolean contains(InternalEObject object, EStructuralFeature feature, Object value) {
+		return containsAt(Long.MAX_VALUE, object, feature, value);
+	}
+
+	@Override
+	public boolean containsAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		return containsAt(timestamp(date), object, feature, value);
+	}
+
+	@Override
+	public boolean containsAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		return indexOfAt(timestamp, object, feature, value) != -1;
+	}
+
+	@Override
+	public int hashCode(InternalEObject object, EStructuralFeature feature) {
+		return hashCodeAt(Long.MAX_VALUE, object, feature);
+	}
+
+	@Override
+	public int hashCodeAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return hashCodeAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public int hashCodeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return list(at(timestamp, object, feature)).hashCode();
+	}
+
+	/**
+	 * Returns the container and the containing feature of the object at the
+	 * given <code>timestamp</code>, or <code>null</code> if it is not
+	 * contained
+	 */
+	protected Object[] containmentAt(long timestamp, InternalEObject object) {
+		ObjectVersions objectVersions = objects.get(object);
+		Object containment = objectVersions != null && objectVersions.containment != null ? objectVersions.containment.at(timestamp) : UNSET;
+		return containment != UNSET ? (Object[]) containment : null;
+	}
+
+	@Override
+	public InternalEObject getContainer(InternalEObject object) {
+		return getContainerAt(Long.MAX_VALUE, object);
+	}
+
+	@Override
+	public InternalEObject getContainerAt(Date date, InternalEObject object) {
+		return getContainerAt(timestamp(date), object);
+	}
+
+	@Override
+	public InternalEObject getContainerAt(long timestamp, InternalEObject object) {
+		Object[] containment = containmentAt(timestamp, object);
+		return containment != null ? (InternalEObject) containment[0] : null;
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeature(InternalEObject object) {
+		return getContainingFeatureAt(Long.MAX_VALUE, object);
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeatureAt(Date date, InternalEObject object) {
+		return getContainingFeatureAt(timestamp(date), object);
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeatureAt(long timestamp, InternalEObject object) {
+		Object[] containment = containmentAt(timestamp, object);
+		return containment != null ? (EStructuralFeature) containment[1] : null;
+	}
+
+	@Override
+	public EObject create(EClass eClass) {
+		throw new UnsupportedOperationException();
+	}
+}
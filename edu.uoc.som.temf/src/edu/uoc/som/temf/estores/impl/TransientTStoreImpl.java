@@ -24,6 +24,8 @@ import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.InternalEObject;
 import org.eclipse.emf.ecore.InternalEObject.EStore;
 
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
 import edu.uoc.som.temf.estores.TStore;
 
 /**
@@ -115,10 +117,32 @@ public class TransientTStoreImpl implements TStore {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public Object getAt(long timestamp, InternalEObject object, EStructuralFeature feature, int index) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index) {
 		throw new UnsupportedOperationException();
 	}
+
+	@Override
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index, int limit, boolean descending) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public THistory<Object> getAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, int limit,
+			boolean descending) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public THistoryCursor<Object> getAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index,
+			boolean descending) {
+		throw new UnsupportedOperationException();
+	}
 	
 	@Override
 	public Object set(InternalEObject eObject, EStructuralFeature feature, int index, Object value) {
@@ -182,6 +206,11 @@ public class TransientTStoreImpl implements TStore {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public boolean isSetAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public void unset(InternalEObject eObject, EStructuralFeature feature) {
 		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
@@ -204,6 +233,11 @@ public class TransientTStoreImpl implements TStore {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public int sizeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public int indexOf(InternalEObject eObject, EStructuralFeature feature, Object value) {
 		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
@@ -216,6 +250,11 @@ public class TransientTStoreImpl implements TStore {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public int indexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public int lastIndexOf(InternalEObject eObject, EStructuralFeature feature, Object value) {
 		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
@@ -228,6 +267,11 @@ public class TransientTStoreImpl implements TStore {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public int lastIndexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public Object[] toArray(InternalEObject eObject, EStructuralFeature feature) {
 		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
@@ -239,11 +283,33 @@ public class TransientTStoreImpl implements TStore {
 	public Object[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature) {
 		throw new UnsupportedOperationException();
 	}
+
+	@Override
+	public Object[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
 	
 	@Override
 	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature) {
 		throw new UnsupportedOperationException();
 	}
+
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int limit, boolean descending) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public THistory<Object[]> toArrayAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int limit,
+			boolean descending) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public THistoryCursor<Object[]> toArrayAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature,
+			boolean descending) {
+		throw new UnsupportedOperationException();
+	}
 	
 	@Override
 	public <T> T[] toArray(InternalEObject eObject, EStructuralFeature feature, T[] array) {
@@ -256,6 +322,11 @@ public class TransientTStoreImpl implements TStore {
 	public <T> T[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature, T[] array) {
 		throw new UnsupportedOperationException();
 	}
+
+	@Override
+	public <T> T[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature, T[] array) {
+		throw new UnsupportedOperationException();
+	}
 	
 	@Override
 	public boolean isEmpty(InternalEObject eObject, EStructuralFeature feature) {
@@ -269,6 +340,11 @@ public class TransientTStoreImpl implements TStore {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public boolean isEmptyAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public boolean contains(InternalEObject eObject, EStructuralFeature feature, Object value) {
 		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
@@ -281,6 +357,11 @@ public class TransientTStoreImpl implements TStore {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public boolean containsAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public int hashCode(InternalEObject eObject, EStructuralFeature feature) {
 		EStoreEntryKey entry = new EStoreEntryKey(eObject, feature);
@@ -292,6 +373,11 @@ public class TransientTStoreImpl implements TStore {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public int hashCodeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public InternalEObject getContainer(InternalEObject eObject) {
 		throw new UnsupportedOperationException();
@@ -302,6 +388,11 @@ public class TransientTStoreImpl implements TStore {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public InternalEObject getContainerAt(long timestamp, InternalEObject object) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public EStructuralFeature getContainingFeature(InternalEObject eObject) {
 		// This should never be called.
@@ -313,6 +404,11 @@ public class TransientTStoreImpl implements TStore {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public EStructuralFeature getContainingFeatureAt(long timestamp, InternalEObject object) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public EObject create(EClass eClass) {
 		// Unimplemented
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.file;
+
+import java.text.MessageFormat;
+import java.util.Map;
+
+import edu.uoc.som.temf.core.exceptions.InvalidOptionsException;
+import edu.uoc.som.temf.file.impl.FileTResourceImpl;
+
+/**
+ * Keys (and their accepted values) of the options that can be passed to
+ * {@link FileTResourceImpl#load(java.util.Map)} and
+ * {@link FileTResourceImpl#save(java.util.Map)}.
+ *
+ * Numeric and enumerated options can be given either as {@link Number}s and
+ * {@link Enum}s, or as {@link String}s.
+ *
+ * @author agomez
+ *
+ */
+public interface FileTResourceOptions {
+
+	/**
+	 * Size (in bytes) of the segment files of the log. Every segment is
+	 * memory-mapped as a whole, so it can not exceed 2 GB. The size is only
+	 * taken into account when a new segment is created; existing segments keep
+	 * their size. Defaults to <code>64</code> MB.
+	 */
+	public static final String SEGMENT_SIZE = "temf.file.segment.size";
+
+	/**
+	 * When the modifications are forced to the storage device. Accepts a
+	 * {@link SyncMode} or its name. Defaults to {@link SyncMode#ON_SAVE}.
+	 */
+	public static final String SYNC_MODE = "temf.file.sync.mode";
+
+	public enum SyncMode {
+		/**
+		 * Modifications are forced to the storage device when the resource is
+		 * saved or unloaded, and when a segment is filled. A crash of the
+		 * operating system may lose the modifications made since then, but
+		 * never leaves the log inconsistent
+		 */
+		ON_SAVE,
+		/**
+		 * Every modification is forced to the storage device before it returns
+		 */
+		ALWAYS
+	}
+
+	public static Object getOption(Map<?, ?> options, String key, Object defaultValue) {
+		Object value = options != null ? options.get(key) : null;
+		return value != null ? value : defaultValue;
+	}
+
+	public static long getLongOption(Map<?, ?> options, String key, long defaultValue) {
+		Object value = getOption(options, key, defaultValue);
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		} else {
+			try {
+				return Long.parseLong(value.toString());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(new InvalidOptionsException(MessageFormat.format("key = {0}; value = {1}", key, value)));
+			}
+		}
+	}
+
+	public static <E extends Enum<E>> E getEnumOption(Map<?, ?> options, String key, E defaultValue) {
+		Object value = getOption(options, key, defaultValue);
+		try {
+			return Enum.valueOf(defaultValue.getDeclaringClass(), value.toString());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(new InvalidOptionsException(MessageFormat.format("key = {0}; value = {1}", key, value)));
+		}
+	}
+
+}
@@ -0,0 +1,750 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.file.estores.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EPackage.Registry;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.jboss.util.collection.SoftValueHashMap;
+
+import edu.uoc.som.temf.Logger;
+import edu.uoc.som.temf.TURI;
+import edu.uoc.som.temf.core.InternalTObject;
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.impl.AbstractTResourceImpl;
+import edu.uoc.som.temf.core.impl.TObjectAdapterFactoryImpl;
+import edu.uoc.som.temf.estores.SearcheableResourceTStore;
+import edu.uoc.som.temf.file.FileTResourceOptions;
+import edu.uoc.som.temf.file.FileTResourceOptions.SyncMode;
+import edu.uoc.som.temf.hbase.estores.impl.StringArrayCodec;
+
+/**
+ * A {@link SearcheableResourceTStore} that persists the resource in a local
+ * {@link FileTLog}, stored in the directory identified by the URI of the
+ * resource (see {@link TURI#createTFileURI(File)}), so that the temporal
+ * queries can be answered without any database server.
+ * <p>
+ * The data is organized as in
+ * {@link edu.uoc.som.temf.hbase.estores.impl.DirectWriteHbaseResourceTStoreImpl}
+ * using {@link edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout#SERIALIZED}:
+ * every object is a row, every feature is a cell whose versions are the
+ * successive values of the feature (the whole list, for many-valued
+ * features), and the type and the containment of the objects are kept in
+ * their own cells. Values are read directly from the mapped segments of the
+ * log.
+ *
+ * @author agomez
+ *
+ */
+public class FileResourceTStoreImpl implements SearcheableResourceTStore {
+
+	@SuppressWarnings("unchecked")
+	protected Map<Object, InternalTObject> loadedEObjects = new SoftValueHashMap();
+
+	protected Resource.Internal resource;
+
+	protected FileTLog log;
+
+	public FileResourceTStoreImpl(Resource.Internal resource) throws IOException {
+		this(resource, Collections.emptyMap());
+	}
+
+	public FileResourceTStoreImpl(Resource.Internal resource, Map<?, ?> options) throws IOException {
+		this.resource = resource;
+		String path = TURI.createTURI(resource.getURI()).toFileString();
+		this.log = new FileTLog(new File(path),
+				FileTResourceOptions.getLongOption(options, FileTResourceOptions.SEGMENT_SIZE, FileTLog.DEFAULT_SEGMENT_SIZE),
+				FileTResourceOptions.getEnumOption(options, FileTResourceOptions.SYNC_MODE, SyncMode.ON_SAVE) == SyncMode.ALWAYS);
+	}
+
+	@Override
+	public Resource.Internal getResource() {
+		return resource;
+	}
+
+	/**
+	 * Returns the {@link FileTLog} where the resource is stored
+	 */
+	public FileTLog getLog() {
+		return log;
+	}
+
+	@Override
+	public Object get(InternalEObject object, EStructuralFeature feature, int index) {
+		return getAt(Long.MAX_VALUE, object, feature, index);
+	}
+
+	@Override
+	public Object getAt(Date date, InternalEObject object, EStructuralFeature feature, int index) {
+		return getAt(timestamp(date), object, feature, index);
+	}
+
+	@Override
+	public Object getAt(long timestamp, InternalEObject object, EStructuralFeature feature, int index) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		if (!feature.isMany()) {
+			return toValue(feature, getString(tObject, feature.getName(), timestamp));
+		} else {
+			String[] array = getArray(tObject, feature, timestamp);
+			return toValue(feature, index >= 0 && index < array.length ? array[index] : null);
+		}
+	}
+
+	@Override
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index) {
+		return getAllBetween(startDate, endDate, object, feature, index, 0, false);
+	}
+
+	@Override
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index, int limit, boolean descending) {
+		return getAllBetween(startTimestamp(startDate), timestamp(endDate), object, feature, index, limit, descending).toSortedMap();
+	}
+
+	@Override
+	public THistory<Object> getAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, int limit, boolean descending) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		if (!feature.isMany()) {
+			return log.history(tObject.tId(), feature.getName(), startTimestamp, endTimestamp, limit, descending)
+					.map(buffer -> toValue(feature, toString(buffer)));
+		} else {
+			return getAllArrays(tObject, feature, startTimestamp, endTimestamp, limit, descending)
+					.map(array -> toValue(feature, index < array.length ? array[index] : null));
+		}
+	}
+
+	@Override
+	public THistoryCursor<Object> getAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, boolean descending) {
+		return THistoryCursor.of(getAllBetween(startTimestamp, endTimestamp, object, feature, index, 0, descending));
+	}
+
+	@Override
+	public Object set(InternalEObject object, EStructuralFeature feature, int index, Object value) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		Object oldValue = isSet(object, feature) ? get(object, feature, index) : null;
+		try {
+			String serializedValue = serialize(tObject, feature, value);
+			if (!feature.isMany()) {
+				log.append(tObject.tId(), feature.getName(), serializedValue != null ? serializedValue.getBytes(StandardCharsets.UTF_8) : null);
+			} else {
+				String[] array = getArray(tObject, feature, Long.MAX_VALUE);
+				checkIndex(index, array.length);
+				array[index] = serializedValue;
+				writeArray(tObject, feature, array);
+			}
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to set information for element ''{0}''", object));
+		}
+		return oldValue;
+	}
+
+	@Override
+	public boolean isSet(InternalEObject object, EStructuralFeature feature) {
+		return isSetAt(Long.MAX_VALUE, object, feature);
+	}
+
+	@Override
+	public boolean isSetAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return isSetAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public boolean isSetAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		return log.valueAt(tObject.tId(), feature.getName(), timestamp) != null;
+	}
+
+	@Override
+	public void add(InternalEObject object, EStructuralFeature feature, int index, Object value) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		try {
+			String[] array = getArray(tObject, feature, Long.MAX_VALUE);
+			writeArray(tObject, feature, (String[]) ArrayUtils.add(array, index, serialize(tObject, feature, value)));
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR,
+					MessageFormat.format("Unable to add ''{0}'' to ''{1}'' for element ''{2}''", value, feature.getName(), object));
+		}
+	}
+
+	@Override
+	public Object remove(InternalEObject object, EStructuralFeature feature, int index) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		String[] array = getArray(tObject, feature, Long.MAX_VALUE);
+		checkIndex(index, array.length);
+		String oldValue = array[index];
+		try {
+			writeArray(tObject, feature, (String[]) ArrayUtils.remove(array, index));
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR,
+					MessageFormat.format("Unable to delete ''{0}[{1}''] for element ''{2}''", feature.getName(), index, object));
+		}
+		return toValue(feature, oldValue);
+	}
+
+	@Override
+	public Object move(InternalEObject object, EStructuralFeature feature, int targetIndex, int sourceIndex) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		String[] array = getArray(tObject, feature, Long.MAX_VALUE);
+		checkIndex(sourceIndex, array.length);
+		checkIndex(targetIndex, array.length);
+		String movedValue = array[sourceIndex];
+		try {
+			array = (String[]) ArrayUtils.remove(array, sourceIndex);
+			writeArray(tObject, feature, (String[]) ArrayUtils.add(array, targetIndex, movedValue));
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to move ''{0}[{1}]'' to ''{2}'' for element ''{3}''",
+					feature.getName(), sourceIndex, targetIndex, object));
+		}
+		return toValue(feature, movedValue);
+	}
+
+	@Override
+	public void unset(InternalEObject object, EStructuralFeature feature) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		try {
+			log.append(tObject.tId(), feature.getName(), null);
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to unset ''{0}'' for element ''{1}''", feature.getName(), object));
+		}
+	}
+
+	@Override
+	public void clear(InternalEObject object, EStructuralFeature feature) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		try {
+			writeArray(tObject, feature, new String[] {});
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to clear ''{0}'' for element ''{1}''", feature.getName(), object));
+		}
+	}
+
+	@Override
+	public boolean isEmpty(InternalEObject object, EStructuralFeature feature) {
+		return isEmptyAt(Long.MAX_VALUE, object, feature);
+	}
+
+	@Override
+	public boolean isEmptyAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return isEmptyAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public boolean isEmptyAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return sizeAt(timestamp, object, feature) == 0;
+	}
+
+	@Override
+	public int size(InternalEObject object, EStructuralFeature feature) {
+		return sizeAt(Long.MAX_VALUE, object, feature);
+	}
+
+	@Override
+	public int sizeAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return sizeAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public int sizeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return getArray(TObjectAdapterFactoryImpl.getAdapter(object, TObject.class), feature, timestamp).length;
+	}
+
+	@Override
+	public boolean contains(InternalEObject object, EStructuralFeature feature, Object value) {
+		return containsAt(Long.MAX_VALUE, object, feature, value);
+	}
+
+	@Override
+	public boolean containsAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		return containsAt(timestamp(date), object, feature, value);
+	}
+
+	@Override
+	public boolean containsAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		return indexOfAt(timestamp, object, feature, value) != -1;
+	}
+
+	@Override
+	public int indexOf(InternalEObject object, EStructuralFeature feature, Object value) {
+		return indexOfAt(Long.MAX_VALUE, object, feature, value);
+	}
+
+	@Override
+	public int indexOfAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		return indexOfAt(timestamp(date), object, feature, value);
+	}
+
+	@Override
+	public int indexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		return ArrayUtils.indexOf(getArray(tObject, feature, timestamp), toSerializedValue(feature, value));
+	}
+
+	@Override
+	public int lastIndexOf(InternalEObject object, EStructuralFeature feature, Object value) {
+		return lastIndexOfAt(Long.MAX_VALUE, object, feature, value);
+	}
+
+	@Override
+	public int lastIndexOfAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		return lastIndexOfAt(timestamp(date), object, feature, value);
+	}
+
+	@Override
+	public int lastIndexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		return ArrayUtils.lastIndexOf(getArray(tObject, feature, timestamp), toSerializedValue(feature, value));
+	}
+
+	@Override
+	public Object[] toArray(InternalEObject object, EStructuralFeature feature) {
+		return toArrayAt(Long.MAX_VALUE, object, feature);
+	}
+
+	@Override
+	public Object[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return toArrayAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public Object[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return toValues(feature, getArray(TObjectAdapterFactoryImpl.getAdapter(object, TObject.class), feature, timestamp));
+	}
+
+	@Override
+	public <T> T[] toArray(InternalEObject object, EStructuralFeature feature, T[] array) {
+		return toArrayAt(Long.MAX_VALUE, object, feature, array);
+	}
+
+	@Override
+	public <T> T[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature, T[] array) {
+		return toArrayAt(timestamp(date), object, feature, array);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature, T[] array) {
+		Object[] objects = toArrayAt(timestamp, object, feature);
+		int size = objects.length;
+		T[] result = array.length < size ? Arrays.copyOf(array, size) : array;
+		for (int index = 0; index < size; index++) {
+			result[index] = (T) objects[index];
+		}
+		return result;
+	}
+
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature) {
+		return toArrayAllBetween(startDate, endDate, object, feature, 0, false);
+	}
+
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int limit, boolean descending) {
+		return toArrayAllBetween(startTimestamp(startDate), timestamp(endDate), object, feature, limit, descending).toSortedMap();
+	}
+
+	@Override
+	public THistory<Object[]> toArrayAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int limit, boolean descending) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		return getAllArrays(tObject, feature, startTimestamp, endTimestamp, limit, descending).map(array -> toValues(feature, array));
+	}
+
+	@Override
+	public THistoryCursor<Object[]> toArrayAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, boolean descending) {
+		return THistoryCursor.of(toArrayAllBetween(startTimestamp, endTimestamp, object, feature, 0, descending));
+	}
+
+	@Override
+	public int hashCode(InternalEObject object, EStructuralFeature feature) {
+		return hashCodeAt(Long.MAX_VALUE, object, feature);
+	}
+
+	@Override
+	public int hashCodeAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return hashCodeAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public int hashCodeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return Arrays.hashCode(toArrayAt(timestamp, object, feature));
+	}
+
+	@Override
+	public InternalEObject getContainer(InternalEObject object) {
+		return getContainerAt(Long.MAX_VALUE, object);
+	}
+
+	@Override
+	public InternalEObject getContainerAt(Date date, InternalEObject object) {
+		return getContainerAt(timestamp(date), object);
+	}
+
+	@Override
+	public InternalEObject getContainerAt(long timestamp, InternalEObject object) {
+		String[] containment = getContainment(object, timestamp);
+		return containment != null ? (InternalEObject) getEObject(containment[0]) : null;
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeature(InternalEObject object) {
+		return getContainingFeatureAt(Long.MAX_VALUE, object);
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeatureAt(Date date, InternalEObject object) {
+		return getContainingFeatureAt(timestamp(date), object);
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeatureAt(long timestamp, InternalEObject object) {
+		String[] containment = getContainment(object, timestamp);
+		EObject container = containment != null ? getEObject(containment[0]) : null;
+		return container != null ? container.eClass().getEStructuralFeature(containment[1]) : null;
+	}
+
+	@Override
+	public EObject create(EClass eClass) {
+		// This should not be called
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public EObject getEObject(String id) {
+		if (StringUtils.isEmpty(id)) {
+			return null;
+		}
+		InternalTObject tObject = loadedEObjects.get(id);
+		if (tObject == null) {
+			EClass eClass = resolveInstanceOf(id);
+			if (eClass == null) {
+				Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Element {0} does not have an associated EClass", id));
+				return null;
+			}
+			EObject eObject = EcoreUtil.create(eClass);
+			if (eObject instanceof InternalTObject) {
+				tObject = (InternalTObject) eObject;
+			} else {
+				tObject = TObjectAdapterFactoryImpl.getAdapter(eObject, InternalTObject.class);
+			}
+			tObject.tSetId(id);
+			loadedEObjects.put(id, tObject);
+		}
+		if (tObject.tResource() != getResource()) {
+			tObject.tSetResource(getResource());
+		}
+		return tObject;
+	}
+
+	/**
+	 * Returns the {@link EClass} of the object identified by <code>id</code>,
+	 * which is taken from the last version of its type cell that is set if the
+	 * object is not contained in the resource any longer
+	 */
+	protected EClass resolveInstanceOf(String id) {
+		String[] type = getArray(id, FileTLog.TYPE_COLUMN, Long.MAX_VALUE);
+		if (type == null) {
+			for (ByteBuffer buffer : log.history(id, FileTLog.TYPE_COLUMN, 0, Long.MAX_VALUE, 0, true).getValueList()) {
+				if (buffer != null) {
+					type = StringArrayCodec.decode(buffer);
+					break;
+				}
+			}
+		}
+		return resolveEClass(type);
+	}
+
+	/**
+	 * Returns the {@link EClass} identified by the given value of a type cell,
+	 * i.e., the namespace URI of its package and its name
+	 */
+	protected static EClass resolveEClass(String[] type) {
+		if (type != null) {
+			EPackage ePackage = Registry.INSTANCE.getEPackage(type[0]);
+			return ePackage != null ? (EClass) ePackage.getEClassifier(type[1]) : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the IDs of the objects that were instances of the given
+	 * {@link EClass} (or of any of its subclasses) contained in the resource at
+	 * any moment between <code>startTimestamp</code> and
+	 * <code>endTimestamp</code> (both inclusive). The objects are found in the
+	 * index of the {@link FileTLog}: the type cell of an object is set while
+	 * it is contained in the resource (see
+	 * {@link #updateInstanceOf(List, boolean)}), and the object is one of its
+	 * contents if its containment cell is set or if it is one of the root
+	 * objects of the resource.
+	 */
+	public List<String> allInstancesBetween(EClass eClass, long startTimestamp, long endTimestamp) {
+		Set<String> rootIds = new HashSet<>();
+		THistory<ByteBuffer> rootContents = log.history(AbstractTResourceImpl.ROOT_EOBJECT_ID, AbstractTResourceImpl.getRootContentsFeature().getName(), startTimestamp, endTimestamp, 0, false);
+		for (ByteBuffer buffer : rootContents.getValueList()) {
+			String[] array = StringArrayCodec.decode(buffer);
+			if (array != null) {
+				rootIds.addAll(Arrays.asList(array));
+			}
+		}
+		Map<List<String>, Boolean> matchingTypes = new HashMap<>();
+		List<String> result = new ArrayList<>();
+		for (String id : log.rows(FileTLog.TYPE_COLUMN)) {
+			String[] type = getTypeBetween(id, startTimestamp, endTimestamp);
+			if (type != null && matchingTypes.computeIfAbsent(Arrays.asList(type), key -> isInstance(eClass, resolveEClass(type)))
+					&& (rootIds.contains(id) || log.valueAt(id, FileTLog.CONTAINMENT_COLUMN, endTimestamp) != null)) {
+				result.add(id);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the value of any version of the type cell of the given object
+	 * in effect between <code>startTimestamp</code> and
+	 * <code>endTimestamp</code> that is set, or <code>null</code> if there is
+	 * none
+	 */
+	protected String[] getTypeBetween(String id, long startTimestamp, long endTimestamp) {
+		for (ByteBuffer buffer : log.history(id, FileTLog.TYPE_COLUMN, startTimestamp, endTimestamp, 0, false).getValueList()) {
+			if (buffer != null) {
+				return StringArrayCodec.decode(buffer);
+			}
+		}
+		return null;
+	}
+
+	protected static boolean isInstance(EClass eClass, EClass type) {
+		return type != null && (eClass == type || eClass.isSuperTypeOf(type));
+	}
+
+	/**
+	 * Records whether the given objects are <code>contained</code> in the
+	 * resource, by writing their type cells, or by deleting them otherwise
+	 */
+	public void updateInstanceOf(List<? extends TObject> objects, boolean contained) throws IOException {
+		for (TObject object : objects) {
+			if (contained) {
+				updateInstanceOf(object);
+			} else if (log.valueAt(object.tId(), FileTLog.TYPE_COLUMN, Long.MAX_VALUE) != null) {
+				log.append(object.tId(), FileTLog.TYPE_COLUMN, null);
+			}
+		}
+	}
+
+	protected void updateLoadedEObjects(InternalTObject eObject) {
+		loadedEObjects.put(eObject.tId(), eObject);
+	}
+
+	protected void updateContainment(TObject object, EReference eReference, TObject referencedObject) throws IOException {
+		if (eReference.isContainment()) {
+			log.append(referencedObject.tId(), FileTLog.CONTAINMENT_COLUMN, StringArrayCodec.encode(new String[] { object.tId(), eReference.getName() }));
+		}
+	}
+
+	protected void updateInstanceOf(TObject object) throws IOException {
+		if (log.valueAt(object.tId(), FileTLog.TYPE_COLUMN, Long.MAX_VALUE) == null) {
+			EClass eClass = object.eClass();
+			log.append(object.tId(), FileTLog.TYPE_COLUMN, StringArrayCodec.encode(new String[] { eClass.getEPackage().getNsURI(), eClass.getName() }));
+		}
+	}
+
+	/**
+	 * Returns the container ID and the containing feature name of the given
+	 * <code>object</code> at the given <code>timestamp</code>, or
+	 * <code>null</code> if it is not contained
+	 */
+	protected String[] getContainment(InternalEObject object, long timestamp) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		return getArray(tObject.tId(), FileTLog.CONTAINMENT_COLUMN, timestamp);
+	}
+
+	/**
+	 * Returns the serialized form of the <code>value</code> of the given
+	 * <code>feature</code> of <code>object</code>, i.e., the literal of an
+	 * attribute value or the ID of a referenced object, recording the type and
+	 * the containment of the latter
+	 */
+	protected String serialize(TObject object, EStructuralFeature feature, Object value) throws IOException {
+		if (feature instanceof EReference && value != null) {
+			InternalTObject referencedObject = TObjectAdapterFactoryImpl.getAdapter(value, InternalTObject.class);
+			updateLoadedEObjects(referencedObject);
+			updateContainment(object, (EReference) feature, referencedObject);
+			updateInstanceOf(referencedObject);
+		}
+		return toSerializedValue(feature, value);
+	}
+
+	protected static String toSerializedValue(EStructuralFeature feature, Object value) {
+		if (value == null) {
+			return null;
+		} else if (feature instanceof EAttribute) {
+			return EcoreUtil.convertToString(((EAttribute) feature).getEAttributeType(), value);
+		} else if (feature instanceof EReference) {
+			TObject tObject = TObjectAdapterFactoryImpl.getAdapter(value, TObject.class);
+			return tObject != null ? tObject.tId() : null;
+		} else {
+			throw new IllegalArgumentException(feature.toString());
+		}
+	}
+
+	/**
+	 * Resolves the serialized <code>value</code> of the given
+	 * {@link EStructuralFeature}, i.e., parses the value of an {@link EAttribute}
+	 * or gets the {@link EObject} identified by the value of an
+	 * {@link EReference}
+	 */
+	protected Object toValue(EStructuralFeature feature, String value) {
+		if (feature instanceof EAttribute) {
+			return value != null ? EcoreUtil.createFromString(((EAttribute) feature).getEAttributeType(), value) : null;
+		} else if (feature instanceof EReference) {
+			return getEObject(value);
+		} else {
+			throw new IllegalArgumentException(feature.toString());
+		}
+	}
+
+	protected static void checkIndex(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(MessageFormat.format("Index: {0}, Size: {1}", index, size));
+		}
+	}
+
+	protected Object[] toValues(EStructuralFeature feature, String[] values) {
+		Object[] result = new Object[values.length];
+		for (int index = 0; index < values.length; index++) {
+			result[index] = toValue(feature, values[index]);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the value of the single-valued cell <code>column</code> of the
+	 * given <code>object</code> at the given <code>timestamp</code>, or
+	 * <code>null</code> if it is not set
+	 */
+	protected String getString(TObject object, String column, long timestamp) {
+		return toString(log.valueAt(object.tId(), column, timestamp));
+	}
+
+	/**
+	 * Returns the values of the many-valued {@link EStructuralFeature}
+	 * {@code feature} of the given <code>object</code> at the given
+	 * <code>timestamp</code>, which are empty if it is not set
+	 */
+	protected String[] getArray(TObject object, EStructuralFeature feature, long timestamp) {
+		String[] array = getArray(object.tId(), feature.getName(), timestamp);
+		return array != null ? array : new String[] {};
+	}
+
+	protected String[] getArray(String id, String column, long timestamp) {
+		return StringArrayCodec.decode(log.valueAt(id, column, timestamp));
+	}
+
+	/**
+	 * Returns all the states of the many-valued {@link EStructuralFeature}
+	 * {@code feature} between <code>startTimestamp</code> and
+	 * <code>endTimestamp</code>
+	 *
+	 * @see FileTLog#history(String, String, long, long, int, boolean)
+	 */
+	protected THistory<String[]> getAllArrays(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, int limit, boolean descending) {
+		return log.history(object.tId(), feature.getName(), startTimestamp, endTimestamp, limit, descending).map(buffer -> {
+			String[] array = StringArrayCodec.decode(buffer);
+			return array != null ? array : new String[] {};
+		});
+	}
+
+	protected void writeArray(TObject object, EStructuralFeature feature, String[] array) throws IOException {
+		log.append(object.tId(), feature.getName(), StringArrayCodec.encode(array));
+	}
+
+	protected static String toString(ByteBuffer buffer) {
+		return buffer != null ? StandardCharsets.UTF_8.decode(buffer).toString() : null;
+	}
+
+	/**
+	 * Returns the timestamp of the given {@link Date}, being <code>null</code>
+	 * the latest possible time
+	 */
+	protected static long timestamp(Date date) {
+		return date != null ? date.getTime() : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the timestamp of the given {@link Date}, being <code>null</code>
+	 * the epoch time
+	 */
+	protected static long startTimestamp(Date date) {
+		return date != null ? date.getTime() : 0;
+	}
+
+	/**
+	 * Forces the modifications to the storage device
+	 */
+	public void flush() throws IOException {
+		log.force();
+	}
+
+	/**
+	 * Starts a change set of the calling thread: the modifications it makes
+	 * until {@link #commitChangeSet()} is called are only seen by its own
+	 * reads of the latest state, and are then written atomically with the
+	 * same timestamp
+	 *
+	 * @see FileTLog#beginGroup()
+	 */
+	public void beginChangeSet() {
+		log.beginGroup();
+	}
+
+	/**
+	 * Ends the change set of the calling thread and returns its timestamp
+	 *
+	 * @see FileTLog#endGroup()
+	 */
+	public long commitChangeSet() throws IOException {
+		return log.endGroup();
+	}
+
+	/**
+	 * Writes a checkpoint of the log and releases it. The store can not be
+	 * used after it has been closed.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		log.close();
+	}
+}
@@ -0,0 +1,874 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.file.estores.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import edu.uoc.som.temf.Logger;
+import edu.uoc.som.temf.core.THistory;
+
+/**
+ * An append-only log of versioned cells, stored in a directory of
+ * memory-mapped segment files, together with an index of the versions of
+ * every cell. A cell is identified by a row (the ID of an object) and a
+ * column (the name of a feature, or one of the reserved
+ * {@link #CONTAINMENT_COLUMN} and {@link #TYPE_COLUMN}), and every write
+ * appends a new version of the cell, timestamped with the time of the write.
+ * <p>
+ * Every record of a segment is made of its length, the CRC-32 of its body,
+ * and its body: the timestamp, the row, the column, and the value of the cell
+ * (a length of <code>-1</code> encodes a deleted cell). Segments are created
+ * with their whole size (and filled with zeros), so the first zero length
+ * marks the end of the records of a segment. Timestamps never go backwards,
+ * and two writes of the same cell in the same millisecond replace each other.
+ * The records appended within a group (see {@link #beginGroup()}) are kept in
+ * memory until the group ends, and are then written together with a single
+ * timestamp, between a begin and a commit marker (two records with an empty
+ * row), so that a read either sees all of them or none.
+ * <p>
+ * The index maps every cell to the timestamps of its versions and the
+ * positions of their records, and is kept in memory. Every segment has its
+ * own index file on disk, with the offsets of its indexed records, which is
+ * written once when the segment is filled, and rewritten (as a checkpoint of
+ * the last segment) when the log is closed, so that the cost of a checkpoint
+ * only depends on the size of a segment. On opening, the records listed by
+ * the index file of every segment are indexed, and the records written after
+ * them are replayed; a record whose CRC does not match (i.e., one torn by a
+ * crash) and everything after it are discarded, as well as a group whose
+ * commit marker was not written. Values are read directly from the mapped
+ * segments, without copying them.
+ * <p>
+ * The directory is locked while the log is open, so that it can only be used
+ * by a single log at a time.
+ *
+ * @author agomez
+ *
+ */
+public class FileTLog implements Closeable {
+
+	public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The position of a cell without versions
+	 */
+	public static final long NO_POSITION = -1;
+
+	/**
+	 * The column that keeps the container of an object and its containing
+	 * feature
+	 */
+	public static final String CONTAINMENT_COLUMN = "\u0000c";
+
+	/**
+	 * The column that keeps the {@link org.eclipse.emf.ecore.EClass} of an
+	 * object
+	 */
+	public static final String TYPE_COLUMN = "\u0000t";
+
+	/**
+	 * The column of the marker that starts the records of a group
+	 */
+	protected static final String GROUP_BEGIN_COLUMN = "\u0000b";
+
+	/**
+	 * The column of the marker that commits the records of a group
+	 */
+	protected static final String GROUP_COMMIT_COLUMN = "\u0000e";
+
+	protected static final String SEGMENT_EXTENSION = ".seg";
+
+	protected static final String INDEX_EXTENSION = ".idx";
+
+	protected static final String LOCK_FILE = "lock";
+
+	protected static final int INDEX_MAGIC = 0x54454D46;
+
+	protected static final int INDEX_VERSION = 2;
+
+	/**
+	 * Length and CRC of the body of a record
+	 */
+	protected static final int HEADER_SIZE = 8;
+
+	/**
+	 * Timestamp, row length, column length and value length
+	 */
+	protected static final int FIXED_BODY_SIZE = 8 + 2 + 2 + 4;
+
+	protected static final int NULL_LENGTH = -1;
+
+	protected static final int MAX_NAME_LENGTH = 0xFFFF;
+
+	protected static final byte[] EMPTY = new byte[0];
+
+	/**
+	 * The versions of a cell, sorted by timestamp
+	 */
+	protected static class Versions {
+
+		protected long[] timestamps = new long[2];
+
+		protected long[] positions = new long[2];
+
+		protected int size;
+
+		/**
+		 * Returns the index of the version in effect at the given
+		 * <code>timestamp</code>, or <code>-1</code> if there is none
+		 */
+		protected int indexAt(long timestamp) {
+			int index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+			return index >= 0 ? index : -index - 2;
+		}
+
+		protected void add(long timestamp, long position) {
+			if (size > 0 && timestamps[size - 1] == timestamp) {
+				positions[size - 1] = position;
+			} else {
+				if (size == timestamps.length) {
+					timestamps = Arrays.copyOf(timestamps, size * 2);
+					positions = Arrays.copyOf(positions, size * 2);
+				}
+				timestamps[size] = timestamp;
+				positions[size] = position;
+				size++;
+			}
+		}
+	}
+
+	/**
+	 * The records appended within a group in progress, which are only written
+	 * when the group ends
+	 */
+	protected static class Group {
+
+		/**
+		 * The values of the cells written by the group, indexed by row and
+		 * column, in order of writing (a <code>null</code> value deletes the
+		 * cell)
+		 */
+		protected final Map<String, Map<String, byte[]>> rows = new LinkedHashMap<>();
+	}
+
+	protected final File directory;
+
+	protected final long segmentSize;
+
+	protected final boolean sync;
+
+	/**
+	 * The mapped segments, in order. Only the last one is written.
+	 */
+	protected final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The channel of the last segment, through which the records are written
+	 * when {@link #sync} is enabled, so that only them (and not the whole
+	 * mapped segment) are forced to the storage device
+	 */
+	protected FileChannel channel;
+
+	/**
+	 * The versions of the cells, indexed by row and column
+	 */
+	protected final Map<String, Map<String, Versions>> rows = new HashMap<>();
+
+	/**
+	 * The offset of the next record in the last segment
+	 */
+	protected int offset;
+
+	protected long lastTimestamp;
+
+	/**
+	 * The groups in progress, indexed by the thread that started them
+	 */
+	protected final Map<Thread, Group> groups = new HashMap<>();
+
+	protected FileChannel lockChannel;
+
+	protected FileLock lock;
+
+	protected boolean closed;
+
+	/**
+	 * Opens (or creates) the log stored in the given <code>directory</code>,
+	 * whose new segments will have <code>segmentSize</code> bytes. If
+	 * <code>sync</code> is <code>true</code>, every record (or group) is forced
+	 * to the storage device as soon as it is appended.
+	 *
+	 * @throws IOException
+	 *             if the log can not be opened, or it is already in use
+	 */
+	public FileTLog(File directory, long segmentSize, boolean sync) throws IOException {
+		if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(MessageFormat.format("Invalid segment size: {0,number,#}", segmentSize));
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.sync = sync;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException(MessageFormat.format("Unable to create directory {0}", directory));
+		}
+		lock();
+		try {
+			openSegments();
+			recover();
+			if (sync) {
+				openChannel();
+			}
+		} catch (IOException | RuntimeException e) {
+			closeChannel();
+			unlock();
+			throw e;
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	protected static long position(int segment, int offset) {
+		return ((long) segment << 32) | offset;
+	}
+
+	protected static int segment(long position) {
+		return (int) (position >>> 32);
+	}
+
+	protected static int offset(long position) {
+		return (int) position;
+	}
+
+	protected File segmentFile(int segment) {
+		return new File(directory, String.format("%08d", segment) + SEGMENT_EXTENSION);
+	}
+
+	protected File indexFile(int segment) {
+		return new File(directory, String.format("%08d", segment) + INDEX_EXTENSION);
+	}
+
+	protected void lock() throws IOException {
+		lockChannel = FileChannel.open(new File(directory, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			lock = lockChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			lock = null;
+		}
+		if (lock == null) {
+			lockChannel.close();
+			throw new IOException(MessageFormat.format("The log at {0} is already in use", directory));
+		}
+	}
+
+	protected void unlock() throws IOException {
+		try {
+			lock.release();
+		} finally {
+			lockChannel.close();
+		}
+	}
+
+	protected void openSegments() throws IOException {
+		for (int segment = 0; segmentFile(segment).isFile(); segment++) {
+			File file = segmentFile(segment);
+			segments.add(map(file, file.length()));
+		}
+		if (segments.isEmpty()) {
+			segments.add(map(segmentFile(0), segmentSize));
+		}
+	}
+
+	protected void openChannel() throws IOException {
+		channel = FileChannel.open(segmentFile(segments.size() - 1).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	protected void closeChannel() throws IOException {
+		if (channel != null) {
+			try {
+				channel.close();
+			} finally {
+				channel = null;
+			}
+		}
+	}
+
+	protected static MappedByteBuffer map(File file, long size) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			if (randomAccessFile.length() < size) {
+				randomAccessFile.setLength(size);
+			}
+			return randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+	/**
+	 * Rebuilds the index from the index files of the segments, and replays the
+	 * records written after the ones they list
+	 */
+	protected void recover() throws IOException {
+		int segment = 0;
+		int offset = readIndex(segment);
+		// The offset of the begin marker of the group being replayed (a group
+		// never spans two segments), and the positions of its records
+		int groupOffset = -1;
+		List<Long> groupPositions = new ArrayList<>();
+		while (true) {
+			MappedByteBuffer buffer = segments.get(segment);
+			int length = offset + HEADER_SIZE <= buffer.capacity() ? buffer.getInt(offset) : 0;
+			if (length == 0 && groupOffset == -1 && segment + 1 < segments.size()) {
+				segment++;
+				offset = readIndex(segment);
+				continue;
+			}
+			if (length == 0 || !isValid(buffer, offset, length)) {
+				if (groupOffset != -1) {
+					Logger.log(Logger.SEVERITY_WARNING, MessageFormat.format("Discarding the uncommitted group of the log at {0} from segment {1}, offset {2}",
+							directory, segment, groupOffset));
+					truncate(segment, groupOffset);
+					offset = groupOffset;
+				} else if (length != 0) {
+					Logger.log(Logger.SEVERITY_WARNING, MessageFormat.format("Discarding the torn tail of the log at {0} from segment {1}, offset {2}",
+							directory, segment, offset));
+					truncate(segment, offset);
+				}
+				break;
+			}
+			long position = position(segment, offset);
+			String marker = marker(buffer, position);
+			if (GROUP_BEGIN_COLUMN.equals(marker)) {
+				groupOffset = offset;
+				groupPositions.clear();
+			} else if (GROUP_COMMIT_COLUMN.equals(marker)) {
+				for (long groupPosition : groupPositions) {
+					index(buffer, groupPosition);
+				}
+				groupOffset = -1;
+				groupPositions.clear();
+			} else if (groupOffset != -1) {
+				groupPositions.add(position);
+			} else {
+				index(buffer, position);
+			}
+			offset += HEADER_SIZE + length;
+		}
+		this.offset = offset;
+	}
+
+	protected static boolean isValid(ByteBuffer buffer, int offset, int length) {
+		if (length < FIXED_BODY_SIZE || length > buffer.capacity() - offset - HEADER_SIZE) {
+			return false;
+		}
+		ByteBuffer body = buffer.duplicate();
+		body.limit(offset + HEADER_SIZE + length).position(offset + HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		return (int) crc.getValue() == buffer.getInt(offset + 4);
+	}
+
+	/**
+	 * Discards the records from the given <code>offset</code> of the given
+	 * <code>segment</code> on, including the later segments
+	 */
+	protected void truncate(int segment, int offset) throws IOException {
+		MappedByteBuffer buffer = segments.get(segment);
+		ByteBuffer tail = buffer.duplicate();
+		tail.position(offset);
+		byte[] zeros = new byte[Math.min(tail.remaining(), 64 * 1024)];
+		while (tail.hasRemaining()) {
+			tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+		}
+		buffer.force();
+		while (segments.size() > segment + 1) {
+			segments.remove(segments.size() - 1);
+			Files.delete(segmentFile(segments.size()).toPath());
+			Files.deleteIfExists(indexFile(segments.size()).toPath());
+		}
+	}
+
+	/**
+	 * Adds the record at the given <code>position</code> to the index
+	 */
+	protected void index(ByteBuffer buffer, long position) {
+		int offset = offset(position) + HEADER_SIZE;
+		long timestamp = buffer.getLong(offset);
+		offset += 8;
+		int rowLength = buffer.getShort(offset) & MAX_NAME_LENGTH;
+		String row = decode(buffer, offset + 2, rowLength);
+		offset += 2 + rowLength;
+		int columnLength = buffer.getShort(offset) & MAX_NAME_LENGTH;
+		String column = decode(buffer, offset + 2, columnLength);
+		index(row, column, timestamp, position);
+	}
+
+	/**
+	 * Returns the column of the group marker at the given <code>position</code>,
+	 * or <code>null</code> if the record is not a marker
+	 */
+	protected static String marker(ByteBuffer buffer, long position) {
+		int offset = offset(position) + HEADER_SIZE + 8;
+		if ((buffer.getShort(offset) & MAX_NAME_LENGTH) != 0) {
+			return null;
+		}
+		return decode(buffer, offset + 4, buffer.getShort(offset + 2) & MAX_NAME_LENGTH);
+	}
+
+	protected void index(String row, String column, long timestamp, long position) {
+		rows.computeIfAbsent(row, key -> new HashMap<>(4)).computeIfAbsent(column, key -> new Versions()).add(timestamp, position);
+		lastTimestamp = Math.max(lastTimestamp, timestamp);
+	}
+
+	protected static String decode(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.limit(offset + length).position(offset);
+		return StandardCharsets.UTF_8.decode(bytes).toString();
+	}
+
+	/**
+	 * Indexes the records listed by the index file of the given
+	 * <code>segment</code>
+	 *
+	 * @return the offset of the segment up to which the index file is valid,
+	 *         or the beginning of the segment if there is no valid index file
+	 */
+	protected int readIndex(int segment) {
+		File file = indexFile(segment);
+		if (!file.isFile()) {
+			return 0;
+		}
+		CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), crc))) {
+			if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+				throw new IOException("Unknown index format");
+			}
+			int end = in.readInt();
+			int[] offsets = new int[in.readInt()];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = in.readInt();
+			}
+			long expected = crc.getValue();
+			if (in.readLong() != expected) {
+				throw new IOException("Checksum mismatch");
+			}
+			MappedByteBuffer buffer = segments.get(segment);
+			if (end > buffer.capacity() || (offsets.length > 0 && offsets[offsets.length - 1] >= end)) {
+				throw new IOException("The index is beyond the end of the segment");
+			}
+			for (int offset : offsets) {
+				index(buffer, position(segment, offset));
+			}
+			return end;
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_WARNING, MessageFormat.format("Ignoring the index of segment {0} of the log at {1}, the whole segment will be replayed",
+					segment, directory), e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Writes the index file of the given <code>segment</code>, with the
+	 * offsets of the records (but the group markers) written before
+	 * <code>end</code>
+	 */
+	protected void writeIndex(int segment, int end) throws IOException {
+		MappedByteBuffer buffer = segments.get(segment);
+		int[] offsets = new int[16];
+		int count = 0;
+		for (int offset = 0; offset < end; offset += HEADER_SIZE + buffer.getInt(offset)) {
+			if (marker(buffer, position(segment, offset)) == null) {
+				if (count == offsets.length) {
+					offsets = Arrays.copyOf(offsets, count * 2);
+				}
+				offsets[count++] = offset;
+			}
+		}
+		File temporaryFile = new File(directory, indexFile(segment).getName() + ".tmp");
+		CRC32 crc = new CRC32();
+		try (FileOutputStream fileOut = new FileOutputStream(temporaryFile);
+				DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut), crc))) {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(INDEX_VERSION);
+			out.writeInt(end);
+			out.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				out.writeInt(offsets[i]);
+			}
+			out.flush();
+			out.writeLong(crc.getValue());
+			out.flush();
+			fileOut.getFD().sync();
+		}
+		Files.move(temporaryFile.toPath(), indexFile(segment).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Forces the log to the storage device and writes a checkpoint of the
+	 * index of the last segment, so that the records written until now do
+	 * not need to be replayed when the log is opened again. The index files
+	 * of the previous segments were already written when they were filled.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void checkpoint() throws IOException {
+		checkOpen();
+		force();
+		writeIndex(segments.size() - 1, offset);
+	}
+
+	/**
+	 * Starts a group of the calling thread: the records it appends until
+	 * {@link #endGroup()} is called are kept in memory, and are only seen by
+	 * its own reads of the latest versions (see
+	 * {@link #valueAt(String, String, long)}). Groups can not be nested, and
+	 * the groups in progress when the log is closed are discarded.
+	 *
+	 * @throws IllegalStateException
+	 *             if the calling thread has already started a group
+	 */
+	public synchronized void beginGroup() {
+		checkOpen();
+		if (groups.containsKey(Thread.currentThread())) {
+			throw new IllegalStateException(MessageFormat.format("A group of the log at {0} is already in progress", directory));
+		}
+		groups.put(Thread.currentThread(), new Group());
+	}
+
+	/**
+	 * Ends the group of the calling thread, writing all its records with the
+	 * same timestamp (in the same segment, and between a begin and a commit
+	 * marker), and returns that timestamp. The records are indexed once the
+	 * commit marker has been written, so reads see either all of them or none.
+	 * The records appended afterwards get a later timestamp, so that they do
+	 * not replace the ones of the group.
+	 *
+	 * @throws IllegalStateException
+	 *             if the calling thread has not started a group
+	 * @throws IOException
+	 *             if the records could not be written, in which case the group
+	 *             is discarded
+	 */
+	public synchronized long endGroup() throws IOException {
+		checkOpen();
+		Group group = groups.remove(Thread.currentThread());
+		if (group == null) {
+			throw new IllegalStateException(MessageFormat.format("There is no group of the log at {0} in progress", directory));
+		}
+		long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+		if (group.rows.isEmpty()) {
+			return timestamp;
+		}
+		List<byte[]> names = new ArrayList<>();
+		List<byte[]> values = new ArrayList<>();
+		int size = 2 * (HEADER_SIZE + length(EMPTY, GROUP_BEGIN_COLUMN.getBytes(StandardCharsets.UTF_8), null));
+		for (Entry<String, Map<String, byte[]>> row : group.rows.entrySet()) {
+			byte[] rowBytes = row.getKey().getBytes(StandardCharsets.UTF_8);
+			for (Entry<String, byte[]> column : row.getValue().entrySet()) {
+				byte[] columnBytes = column.getKey().getBytes(StandardCharsets.UTF_8);
+				names.add(rowBytes);
+				names.add(columnBytes);
+				values.add(column.getValue());
+				size += HEADER_SIZE + length(rowBytes, columnBytes, column.getValue());
+			}
+		}
+		if (offset + size > segments.get(segments.size() - 1).capacity()) {
+			roll(size);
+		}
+		write(EMPTY, GROUP_BEGIN_COLUMN.getBytes(StandardCharsets.UTF_8), null, timestamp);
+		long[] positions = new long[values.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = write(names.get(2 * i), names.get(2 * i + 1), values.get(i), timestamp);
+		}
+		write(EMPTY, GROUP_COMMIT_COLUMN.getBytes(StandardCharsets.UTF_8), null, timestamp);
+		if (sync) {
+			channel.force(false);
+		}
+		int i = 0;
+		for (Entry<String, Map<String, byte[]>> row : group.rows.entrySet()) {
+			for (String column : row.getValue().keySet()) {
+				index(row.getKey(), column, timestamp, positions[i++]);
+			}
+		}
+		lastTimestamp = Math.max(lastTimestamp, timestamp + 1);
+		return timestamp;
+	}
+
+	/**
+	 * Forces the records appended to the log to the storage device
+	 */
+	public synchronized void force() throws IOException {
+		checkOpen();
+		if (sync) {
+			channel.force(false);
+		} else {
+			segments.get(segments.size() - 1).force();
+		}
+	}
+
+	/**
+	 * Appends a new version of the cell identified by <code>row</code> and
+	 * <code>column</code>, whose value is <code>value</code> (or which is
+	 * deleted, if <code>value</code> is <code>null</code>). If the calling
+	 * thread has started a group, the version is kept in the group until it
+	 * ends.
+	 *
+	 * @return the timestamp of the new version, or <code>-1</code> if it
+	 *         belongs to a group (whose timestamp is returned by
+	 *         {@link #endGroup()})
+	 * @throws IOException
+	 */
+	public synchronized long append(String row, String column, byte[] value) throws IOException {
+		checkOpen();
+		byte[] rowBytes = row.getBytes(StandardCharsets.UTF_8);
+		byte[] columnBytes = column.getBytes(StandardCharsets.UTF_8);
+		if (rowBytes.length == 0 || rowBytes.length > MAX_NAME_LENGTH || columnBytes.length > MAX_NAME_LENGTH) {
+			throw new IllegalArgumentException(MessageFormat.format("Invalid row or column: {0}/{1}", row, column));
+		}
+		Group group = groups.get(Thread.currentThread());
+		if (group != null) {
+			group.rows.computeIfAbsent(row, key -> new LinkedHashMap<>(4)).put(column, value);
+			return -1;
+		}
+		int length = length(rowBytes, columnBytes, value);
+		if (offset + HEADER_SIZE + length > segments.get(segments.size() - 1).capacity()) {
+			roll(HEADER_SIZE + length);
+		}
+		long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+		long position = write(rowBytes, columnBytes, value, timestamp);
+		if (sync) {
+			channel.force(false);
+		}
+		index(row, column, timestamp, position);
+		return timestamp;
+	}
+
+	/**
+	 * Returns the length of the body of a record
+	 */
+	protected static int length(byte[] row, byte[] column, byte[] value) {
+		return FIXED_BODY_SIZE + row.length + column.length + (value != null ? value.length : 0);
+	}
+
+	/**
+	 * Writes a record at the end of the last segment, which must have enough
+	 * room for it, and returns its position. The record is written through
+	 * the {@link #channel} if {@link #sync} is enabled, and to the mapped
+	 * segment otherwise.
+	 */
+	protected long write(byte[] rowBytes, byte[] columnBytes, byte[] value, long timestamp) throws IOException {
+		int length = length(rowBytes, columnBytes, value);
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+		record.position(HEADER_SIZE);
+		record.putLong(timestamp);
+		record.putShort((short) rowBytes.length).put(rowBytes);
+		record.putShort((short) columnBytes.length).put(columnBytes);
+		record.putInt(value != null ? value.length : NULL_LENGTH);
+		if (value != null) {
+			record.put(value);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), HEADER_SIZE, length);
+		record.putInt(4, (int) crc.getValue());
+		if (sync) {
+			record.putInt(0, length).clear();
+			while (record.hasRemaining()) {
+				channel.write(record, offset + record.position());
+			}
+		} else {
+			MappedByteBuffer buffer = segments.get(segments.size() - 1);
+			record.limit(record.capacity()).position(4);
+			ByteBuffer target = buffer.duplicate();
+			target.position(offset + 4);
+			target.put(record);
+			// The length is written last, so that the record is ignored until
+			// it is complete (the CRC detects the records torn by a crash)
+			buffer.putInt(offset, length);
+		}
+		long position = position(segments.size() - 1, offset);
+		offset += HEADER_SIZE + length;
+		return position;
+	}
+
+	/**
+	 * Starts a new segment, which can hold at least <code>size</code> bytes,
+	 * after forcing the last one and writing its index file
+	 */
+	protected void roll(int size) throws IOException {
+		force();
+		writeIndex(segments.size() - 1, offset);
+		int segment = segments.size();
+		segments.add(map(segmentFile(segment), Math.max(segmentSize, size)));
+		offset = 0;
+		if (sync) {
+			closeChannel();
+			openChannel();
+		}
+	}
+
+	/**
+	 * Returns the position of the version of the given cell in effect at the
+	 * given <code>timestamp</code>, or {@link #NO_POSITION} if there is none
+	 */
+	public synchronized long positionAt(String row, String column, long timestamp) {
+		checkOpen();
+		Versions versions = versions(row, column);
+		int index = versions != null ? versions.indexAt(timestamp) : -1;
+		return index >= 0 ? versions.positions[index] : NO_POSITION;
+	}
+
+	/**
+	 * Returns the versions of the given cell in effect between
+	 * <code>startTimestamp</code> and <code>endTimestamp</code> (both
+	 * inclusive), i.e., the version in effect at <code>startTimestamp</code>
+	 * (if any) and all the later ones, in ascending or <code>descending</code>
+	 * order of timestamp, as returned by {@link #value(long)}. At most
+	 * <code>limit</code> versions are returned (the oldest ones, or the newest
+	 * ones if <code>descending</code>), unless <code>limit</code> is
+	 * <code>0</code>.
+	 */
+	public synchronized THistory<ByteBuffer> history(String row, String column, long startTimestamp, long endTimestamp, int limit, boolean descending) {
+		checkOpen();
+		Versions versions = versions(row, column);
+		if (versions == null) {
+			return new THistory<>(descending, 1);
+		}
+		int first = Math.max(versions.indexAt(startTimestamp), 0);
+		int last = versions.indexAt(endTimestamp);
+		int count = Math.max(last - first + 1, 0);
+		if (limit > 0) {
+			count = Math.min(count, limit);
+		}
+		THistory<ByteBuffer> result = new THistory<>(descending, count);
+		for (int i = 0; i < count; i++) {
+			int index = descending ? last - i : first + i;
+			result.add(versions.timestamps[index], value(versions.positions[index]));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the rows that have at least one version of the given
+	 * <code>column</code>
+	 */
+	public synchronized List<String> rows(String column) {
+		checkOpen();
+		List<String> result = new ArrayList<>();
+		for (Entry<String, Map<String, Versions>> row : rows.entrySet()) {
+			if (row.getValue().containsKey(column)) {
+				result.add(row.getKey());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the value of the version of the given cell in effect at the
+	 * given <code>timestamp</code>, as returned by {@link #value(long)}, or
+	 * <code>null</code> if there is none. The reads of the latest versions
+	 * (i.e., at {@link Long#MAX_VALUE}) made by a thread with a group in
+	 * progress see the records appended to the group.
+	 */
+	public synchronized ByteBuffer valueAt(String row, String column, long timestamp) {
+		checkOpen();
+		Group group = timestamp == Long.MAX_VALUE ? groups.get(Thread.currentThread()) : null;
+		Map<String, byte[]> groupColumns = group != null ? group.rows.get(row) : null;
+		if (groupColumns != null && groupColumns.containsKey(column)) {
+			byte[] value = groupColumns.get(column);
+			return value != null ? ByteBuffer.wrap(value).asReadOnlyBuffer() : null;
+		}
+		long position = positionAt(row, column, timestamp);
+		return position != NO_POSITION ? value(position) : null;
+	}
+
+	protected Versions versions(String row, String column) {
+		Map<String, Versions> columns = rows.get(row);
+		return columns != null ? columns.get(column) : null;
+	}
+
+	/**
+	 * Returns a read-only view of the value of the record at the given
+	 * <code>position</code>, backed by the mapped segment, or <code>null</code>
+	 * if it deletes the cell
+	 */
+	public ByteBuffer value(long position) {
+		ByteBuffer buffer = segments.get(segment(position));
+		int offset = offset(position) + HEADER_SIZE + 8;
+		offset += 2 + (buffer.getShort(offset) & MAX_NAME_LENGTH);
+		offset += 2 + (buffer.getShort(offset) & MAX_NAME_LENGTH);
+		int length = buffer.getInt(offset);
+		if (length == NULL_LENGTH) {
+			return null;
+		}
+		ByteBuffer value = buffer.asReadOnlyBuffer();
+		value.limit(offset + 4 + length).position(offset + 4);
+		return value.slice();
+	}
+
+	protected void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException(MessageFormat.format("The log at {0} is closed", directory));
+		}
+	}
+
+	/**
+	 * Writes a checkpoint and releases the directory. The log can not be used
+	 * after it has been closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			checkpoint();
+		} finally {
+			closed = true;
+			segments.clear();
+			rows.clear();
+			groups.clear();
+			try {
+				closeChannel();
+			} finally {
+				unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ ******************************************************************************/
+package edu.uoc.som.temf.file.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.resource.Resource;
+
+import edu.uoc.som.temf.Logger;
+import edu.uoc.som.temf.TURI;
+import edu.uoc.som.temf.core.InternalTObject;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.TResource;
+import edu.uoc.som.temf.core.exceptions.InvalidOptionsException;
+import edu.uoc.som.temf.core.impl.AbstractTResourceImpl;
+import edu.uoc.som.temf.core.impl.TObjectAdapterFactoryImpl;
+import edu.uoc.som.temf.core.impl.TResourceViewImpl;
+import edu.uoc.som.temf.estores.SearcheableResourceEStore;
+import edu.uoc.som.temf.estores.SearcheableResourceTStore;
+import edu.uoc.som.temf.estores.TStore;
+import edu.uoc.som.temf.estores.impl.IsSetCachingDelegatedTStoreImpl;
+import edu.uoc.som.temf.estores.impl.SizeCachingDelegatedTStoreImpl;
+import edu.uoc.som.temf.file.estores.impl.FileResourceTStoreImpl;
+import edu.uoc.som.temf.file.estores.impl.FileTLog;
+
+/**
+ * A {@link TResource} persisted in a local directory, which is identified by
+ * a {@link TURI#TEMF_FILE_SCHEME} URI (see {@link TURI#createTFileURI(File)}).
+ * The directory keeps the log of all the versions of the resource (see
+ * {@link FileResourceTStoreImpl}), so the resource offers the same temporal
+ * queries as an HBase-backed one without any database server. The directory
+ * is locked until the resource is unloaded.
+ *
+ * @author agomez
+ *
+ */
+public class FileTResourceImpl extends AbstractTResourceImpl {
+
+	protected Map<?, ?> options;
+
+	protected SearcheableResourceTStore eStore;
+
+	/**
+	 * The innermost {@link TStore} of {@link #eStore}, i.e., the one that actually
+	 * accesses the log
+	 */
+	protected FileResourceTStoreImpl fileEStore;
+
+	protected boolean isPersistent = false;
+
+	public FileTResourceImpl(URI uri) {
+		super(uri);
+		this.eStore = null;
+		this.isPersistent = false;
+	}
+
+	@Override
+	public void load(Map<?, ?> options) throws IOException {
+		try {
+			isLoading = true;
+			if (isLoaded) {
+				return;
+			} else {
+				this.options = options;
+				this.isPersistent = true;
+				this.eStore = createResourceEStore();
+			}
+			isLoaded = true;
+		} finally {
+			isLoading = false;
+		}
+	}
+
+	@Override
+	public void save(Map<?, ?> options) throws IOException {
+		if (this.options != null && options != null) {
+			// Check that the save options do not collide with previous load options
+			for (Entry<?, ?> entry : options.entrySet()) {
+				Object key = entry.getKey();
+				Object value = entry.getValue();
+				if (this.options.containsKey(key) && value != null) {
+					if (!value.equals(this.options.get(key))) {
+						throw new IOException(new InvalidOptionsException(
+								MessageFormat.format("key = {0}; value = {1}", key.toString(), value.toString())));
+					}
+				}
+			}
+		}
+
+		if (!isLoaded() || !this.isPersistent) {
+			this.options = options;
+			this.isPersistent = true;
+			this.eStore = createResourceEStore();
+			this.isLoaded = true;
+		}
+
+		// Make sure that every modification reaches the storage device
+		fileEStore.flush();
+	}
+
+	@Override
+	public Stream<EObject> allInstancesAt(EClass eClass, Date date) {
+		return allInstancesAt(eClass, date != null ? date.getTime() : Long.MAX_VALUE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * File resources do not index their objects by type, so all the contents
+	 * at the given <code>timestamp</code> are traversed.
+	 */
+	@Override
+	public Stream<EObject> allInstancesAt(EClass eClass, long timestamp) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(getAllContents(timestamp), Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.filter(eClass::isInstance);
+	}
+
+	@Override
+	public Stream<EObject> allInstancesBetween(EClass eClass, Date startDate, Date endDate) {
+		return allInstancesBetween(eClass, startDate != null ? startDate.getTime() : 0, endDate != null ? endDate.getTime() : Long.MAX_VALUE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The instances are found in the index of the {@link FileTLog}, from the
+	 * versions of the type and containment cells of the objects, which does
+	 * not see the modifications of a change set in progress.
+	 *
+	 * @see FileResourceTStoreImpl#allInstancesBetween(EClass, long, long)
+	 */
+	@Override
+	public Stream<EObject> allInstancesBetween(EClass eClass, long startTimestamp, long endTimestamp) {
+		return fileEStore.allInstancesBetween(eClass, startTimestamp, endTimestamp).stream()
+				.map(fileEStore::getEObject)
+				.filter(Objects::nonNull);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * All the contents of the object are moved to the {@link #eStore()} too,
+	 * so that their history starts when they are attached, and their type
+	 * cells are written, unless it is a root object whose contents have
+	 * already been moved while adding it.
+	 *
+	 * @see FileResourceTStoreImpl#updateInstanceOf(List, boolean)
+	 */
+	@Override
+	public void attached(EObject eObject) {
+		super.attached(eObject);
+		if (eObject != attachingRoot) {
+			List<InternalTObject> objects = new ArrayList<>();
+			objects.add(TObjectAdapterFactoryImpl.getAdapter(eObject, InternalTObject.class));
+			for (Iterator<EObject> it = getAllProperContents(eObject); it.hasNext();) {
+				InternalTObject internalElement = TObjectAdapterFactoryImpl.getAdapter(it.next(), InternalTObject.class);
+				if (internalElement.tResource() != this) {
+					internalElement.tSetResource(this);
+				}
+				objects.add(internalElement);
+			}
+			updateInstanceOf(objects, true);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The type cells of the object and all its contents are deleted, unless
+	 * it is being moved to the root objects of this resource.
+	 *
+	 * @see FileResourceTStoreImpl#updateInstanceOf(List, boolean)
+	 */
+	@Override
+	public void detached(EObject eObject) {
+		super.detached(eObject);
+		if (eObject != attachingRoot && unloadingContents == null) {
+			List<TObject> objects = new ArrayList<>();
+			objects.add(TObjectAdapterFactoryImpl.getAdapter(eObject, TObject.class));
+			for (Iterator<EObject> it = getAllProperContents(eObject); it.hasNext();) {
+				objects.add(TObjectAdapterFactoryImpl.getAdapter(it.next(), TObject.class));
+			}
+			updateInstanceOf(objects, false);
+		}
+	}
+
+	@Override
+	protected void attachedInBulk(List<InternalTObject> objects) {
+		updateInstanceOf(objects, true);
+	}
+
+	protected void updateInstanceOf(List<? extends TObject> objects, boolean contained) {
+		if (fileEStore == null) {
+			return;
+		}
+		try {
+			fileEStore.updateInstanceOf(objects, contained);
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to update the type of {0} elements", objects.size()));
+		}
+	}
+
+	@Override
+	public void beginChangeSet() throws IOException {
+		fileEStore.beginChangeSet();
+	}
+
+	@Override
+	public long commitChangeSet() throws IOException {
+		return fileEStore.commitChangeSet();
+	}
+
+	@Override
+	public TResource viewAt(Date date) {
+		return viewAt(date != null ? date.getTime() : Long.MAX_VALUE);
+	}
+
+	@Override
+	public TResource viewAt(long timestamp) {
+		return new TResourceViewImpl(this, eStore, timestamp);
+	}
+
+	@Override
+	public EObject getEObject(String uriFragment) {
+		EObject eObject = eStore.getEObject(uriFragment);
+		if (eObject != null) {
+			return eObject;
+		} else {
+			return super.getEObject(uriFragment);
+		}
+	}
+
+	protected void shutdown() throws IOException {
+		try {
+			if (this.fileEStore != null) {
+				this.fileEStore.close();
+			}
+		} finally {
+			this.fileEStore = null;
+			this.eStore = null;
+			this.isPersistent = false;
+		}
+	}
+
+	@Override
+	protected void doUnload() {
+		Iterator<EObject> allContents = getAllProperContents(unloadingContents);
+		getErrors().clear();
+		getWarnings().clear();
+		while (allContents.hasNext()) {
+			unloaded((InternalEObject) allContents.next());
+		}
+		try {
+			shutdown();
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, e);
+		}
+	}
+
+	@Override
+	public TStore eStore() {
+		return eStore;
+	}
+
+	/**
+	 * Returns the {@link FileTLog} where this {@link Resource} is stored, or
+	 * <code>null</code> if it is not loaded
+	 */
+	public FileTLog getLog() {
+		return fileEStore != null ? fileEStore.getLog() : null;
+	}
+
+	/**
+	 * Creates the {@link SearcheableResourceEStore} used by this {@link Resource}.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	protected SearcheableResourceTStore createResourceEStore() throws IOException {
+		this.fileEStore = new FileResourceTStoreImpl(this, options);
+		return new IsSetCachingDelegatedTStoreImpl(new SizeCachingDelegatedTStoreImpl(fileEStore));
+	}
+
+	public static void shutdownWithoutUnload(FileTResourceImpl resource) throws IOException {
+		resource.shutdown();
+	}
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+
+/**
+ * Shares the HBase {@link Connection}s among all the resources of the JVM
+ * that use the same ZooKeeper quorum and port. {@link Connection}s are
+ * heavyweight (they look up the cluster in ZooKeeper, cache the location of
+ * the regions, and own the thread pools of the client), but thread-safe, so
+ * every resource {@link #acquire(String, String) acquires} a reference to the
+ * shared one, and {@link #release(Connection) releases} it when it is
+ * unloaded. A {@link Connection} is closed when its last reference is
+ * released.
+ * <p>
+ * The registry also remembers which tables are known to exist through every
+ * {@link Connection}, so that opening a resource whose table has already been
+ * checked (or created) does not require a request to the master. Only
+ * positive results are remembered: tables deleted by other clients are not
+ * detected until the {@link Connection} is closed.
+ *
+ * @author agomez
+ *
+ */
+public class HbaseConnectionRegistry {
+
+	public static final String DEFAULT_CLIENT_PORT = "2181";
+
+	public static final HbaseConnectionRegistry INSTANCE = new HbaseConnectionRegistry();
+
+	protected static class SharedConnection {
+
+		protected final String key;
+
+		protected final Connection connection;
+
+		protected int references;
+
+		protected SharedConnection(String key, Connection connection) {
+			this.key = key;
+			this.connection = connection;
+		}
+	}
+
+	/**
+	 * The shared {@link Connection}s, indexed by <code>quorum:port</code>
+	 */
+	protected final Map<String, SharedConnection> connections = new HashMap<>();
+
+	protected final Map<Connection, SharedConnection> sharedConnections = new IdentityHashMap<>();
+
+	/**
+	 * The tables known to exist through every {@link Connection}, including
+	 * the ones not acquired from this registry (which are weakly referenced)
+	 */
+	protected final Map<Connection, Set<TableName>> existingTables = Collections.synchronizedMap(new WeakHashMap<>());
+
+	protected HbaseConnectionRegistry() {
+	}
+
+	/**
+	 * Returns a reference to the {@link Connection} to the cluster whose
+	 * ZooKeeper quorum is <code>quorum</code> and listens on
+	 * <code>port</code> (or on the {@link #DEFAULT_CLIENT_PORT} if it is
+	 * <code>null</code>), creating it if there is none. The reference must be
+	 * {@link #release(Connection) released} when it is no longer used.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized Connection acquire(String quorum, String port) throws IOException {
+		String clientPort = port != null ? port : DEFAULT_CLIENT_PORT;
+		String key = MessageFormat.format("{0}:{1}", quorum, clientPort);
+		SharedConnection sharedConnection = connections.get(key);
+		if (sharedConnection == null || sharedConnection.connection.isClosed()) {
+			sharedConnection = new SharedConnection(key, createConnection(quorum, clientPort));
+			connections.put(key, sharedConnection);
+			sharedConnections.put(sharedConnection.connection, sharedConnection);
+		}
+		sharedConnection.references++;
+		return sharedConnection.connection;
+	}
+
+	protected Connection createConnection(String quorum, String port) throws IOException {
+		Configuration conf = HBaseConfiguration.create();
+		conf.set("hbase.zookeeper.quorum", quorum);
+		conf.set("hbase.zookeeper.property.clientPort", port);
+		return ConnectionFactory.createConnection(conf);
+	}
+
+	/**
+	 * Releases a reference to the given <code>connection</code>, and closes it
+	 * if it was the last one. {@link Connection}s that have not been
+	 * {@link #acquire(String, String) acquired} from this registry are closed
+	 * immediately.
+	 *
+	 * @throws IOException
+	 */
+	public void release(Connection connection) throws IOException {
+		synchronized (this) {
+			SharedConnection sharedConnection = sharedConnections.get(connection);
+			if (sharedConnection != null && --sharedConnection.references > 0) {
+				return;
+			}
+			if (sharedConnection != null) {
+				sharedConnections.remove(connection);
+				connections.remove(sharedConnection.key);
+			}
+		}
+		existingTables.remove(connection);
+		connection.close();
+	}
+
+	/**
+	 * Returns the number of references to the given <code>connection</code>
+	 * that have not been released yet, or <code>0</code> if it has not been
+	 * acquired from this registry
+	 */
+	public synchronized int getReferences(Connection connection) {
+		SharedConnection sharedConnection = sharedConnections.get(connection);
+		return sharedConnection != null ? sharedConnection.references : 0;
+	}
+
+	/**
+	 * Returns whether the table <code>tableName</code> exists, only asking the
+	 * master if it is not already known to exist through the given
+	 * <code>connection</code>
+	 *
+	 * @throws IOException
+	 */
+	public boolean tableExists(Connection connection, TableName tableName) throws IOException {
+		if (tables(connection).contains(tableName)) {
+			return true;
+		}
+		boolean exists;
+		try (Admin admin = connection.getAdmin()) {
+			exists = admin.tableExists(tableName);
+		}
+		if (exists) {
+			tables(connection).add(tableName);
+		}
+		return exists;
+	}
+
+	/**
+	 * Creates the table described by <code>tableDescriptor</code>, and
+	 * remembers that it exists
+	 *
+	 * @throws IOException
+	 */
+	public void createTable(Connection connection, HTableDescriptor tableDescriptor) throws IOException {
+		try (Admin admin = connection.getAdmin()) {
+			admin.createTable(tableDescriptor);
+		}
+		tables(connection).add(tableDescriptor.getTableName());
+	}
+
+	protected Set<TableName> tables(Connection connection) {
+		synchronized (existingTables) {
+			Set<TableName> tables = existingTables.get(connection);
+			if (tables == null) {
+				tables = ConcurrentHashMap.newKeySet();
+				existingTables.put(connection, tables);
+			}
+			return tables;
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase;
+
+import java.text.MessageFormat;
+import java.util.Map;
+
+import edu.uoc.som.temf.core.exceptions.InvalidOptionsException;
+import edu.uoc.som.temf.hbase.estores.impl.HFileBulkImporter;
+import edu.uoc.som.temf.hbase.estores.impl.HbaseHistoryImporter;
+import edu.uoc.som.temf.hbase.estores.impl.HybridLogicalClock;
+import edu.uoc.som.temf.hbase.impl.HbaseTResourceImpl;
+
+/**
+ * Keys (and their accepted values) of the options that can be passed to
+ * {@link HbaseTResourceImpl#load(java.util.Map)} and
+ * {@link HbaseTResourceImpl#save(java.util.Map)}.
+ *
+ * Numeric and enumerated options can be given either as {@link Number}s and
+ * {@link Enum}s, or as {@link String}s.
+ *
+ * @author agomez
+ *
+ */
+public interface HbaseTResourceOptions {
+
+	/**
+	 * How modifications are sent to HBase. Accepts a {@link WriteMode} or its
+	 * name. Defaults to {@link WriteMode#DIRECT}.
+	 */
+	public static final String WRITE_MODE = "temf.hbase.write.mode";
+
+	/**
+	 * Size (in bytes) of the client-side write buffer when using
+	 * {@link WriteMode#BUFFERED}, and of the batches sent by an
+	 * {@link HbaseHistoryImporter}. The buffer is flushed when it is exceeded.
+	 */
+	public static final String WRITE_BUFFER_SIZE = "temf.hbase.write.buffer.size";
+
+	/**
+	 * Maximum time (in milliseconds) a mutation may stay in the client-side write
+	 * buffer when using {@link WriteMode#BUFFERED}. A value of <code>0</code>
+	 * disables time-based flushes.
+	 */
+	public static final String WRITE_BUFFER_FLUSH_INTERVAL = "temf.hbase.write.buffer.flush.interval";
+
+	/**
+	 * How the values of many-valued features are stored. Accepts a
+	 * {@link ListLayout} or its name. The layout is only taken into account when
+	 * the table is created; afterwards, the layout the table was created with is
+	 * always used. Defaults to {@link ListLayout#SERIALIZED}.
+	 */
+	public static final String LIST_LAYOUT = "temf.hbase.list.layout";
+
+	/**
+	 * Number of versions between two checkpoints of a list when using
+	 * {@link ListLayout#DELTA}. Like the layout, it is only taken into account
+	 * when the table is created. Defaults to <code>100</code>.
+	 */
+	public static final String LIST_CHECKPOINT_INTERVAL = "temf.hbase.list.checkpoint.interval";
+
+	/**
+	 * How the timestamps of the modifications are assigned. Accepts a
+	 * {@link TimestampMode} or its name. Like the list layout, it is only taken
+	 * into account when the table is created. Defaults to
+	 * {@link TimestampMode#SERVER}.
+	 */
+	public static final String TIMESTAMP_MODE = "temf.hbase.timestamp.mode";
+
+	/**
+	 * Maximum size (in bytes) of the cache that keeps the latest version of the
+	 * whole rows of recently accessed objects, so that reading several features
+	 * of the same object only requires one request. Since only local
+	 * modifications invalidate the cache, it should not be enabled when other
+	 * clients modify the resource concurrently. Defaults to <code>0</code>,
+	 * which disables the cache.
+	 */
+	public static final String ROW_CACHE_SIZE = "temf.hbase.row.cache.size";
+
+	/**
+	 * Number of versions fetched per request by the cursors that read the
+	 * history of a feature lazily. Defaults to <code>1000</code>.
+	 */
+	public static final String HISTORY_PAGE_SIZE = "temf.hbase.history.page.size";
+
+	/**
+	 * Maximum number of entries of the cache that keeps the results of the
+	 * historical queries (the values, sizes and list snapshots in effect at a
+	 * timestamp, and the histories between two timestamps) about timestamps
+	 * older than {@link #HISTORY_CACHE_WATERMARK_LAG}. Since the history is
+	 * never modified, these results are never invalidated. Defaults to
+	 * <code>0</code>, which disables the cache.
+	 */
+	public static final String HISTORY_CACHE_SIZE = "temf.hbase.history.cache.size";
+
+	/**
+	 * Maximum (estimated) size in bytes of the results kept by the cache of
+	 * historical queries (see {@link #HISTORY_CACHE_SIZE}). Defaults to
+	 * <code>64</code> MB.
+	 */
+	public static final String HISTORY_CACHE_WEIGHT = "temf.hbase.history.cache.weight";
+
+	/**
+	 * Time (in milliseconds) after which the state of the resource is
+	 * considered immutable, and the results of the historical queries about it
+	 * can be cached (see {@link #HISTORY_CACHE_SIZE}). It must exceed the clock
+	 * skew between the clients and the region servers. Defaults to
+	 * <code>60000</code>.
+	 */
+	public static final String HISTORY_CACHE_WATERMARK_LAG = "temf.hbase.history.cache.watermark.lag";
+
+	/**
+	 * Maximum size (in bytes) of the cache of whole rows shared by the
+	 * read-only views of the resource pinned at the same past timestamp (see
+	 * {@link HbaseTResourceImpl#viewAt(long)}), so that every row is read at
+	 * most once per timestamp. Defaults to <code>64</code> MB; <code>0</code>
+	 * disables the cache.
+	 */
+	public static final String VIEW_CACHE_SIZE = "temf.hbase.view.cache.size";
+
+	/**
+	 * Whether the resource can be accessed by several threads concurrently.
+	 * Accepts an {@link AccessMode} or its name. Defaults to
+	 * {@link AccessMode#SINGLE_THREADED}.
+	 */
+	public static final String ACCESS_MODE = "temf.hbase.access.mode";
+
+	/**
+	 * Number of objects written per request when a tree of objects that have
+	 * never been stored is attached to the resource, in which case the whole
+	 * state of every object is written with a single mutation. Defaults to
+	 * <code>1000</code>; <code>0</code> disables the bulk writes, so that the
+	 * features of the attached objects are copied one by one.
+	 */
+	public static final String BULK_BATCH_SIZE = "temf.hbase.bulk.batch.size";
+
+	/**
+	 * Maximum number of batches (see {@link #BULK_BATCH_SIZE}) written
+	 * concurrently when attaching a tree of objects. Defaults to <code>4</code>.
+	 */
+	public static final String BULK_PARALLELISM = "temf.hbase.bulk.parallelism";
+
+	/**
+	 * Maximum size (in bytes) of the cells kept in memory by an
+	 * {@link HFileBulkImporter} before they are sorted and written as a new
+	 * HFile of every family. Defaults to <code>128</code> MB.
+	 */
+	public static final String BULK_IMPORT_BUFFER_SIZE = "temf.hbase.bulk.import.buffer.size";
+
+	/**
+	 * Directory (as a Hadoop path or URI) in which an {@link HFileBulkImporter}
+	 * writes the HFiles before loading them. Defaults to a new directory in
+	 * the temporary directory of the local file system, which is deleted once
+	 * the HFiles are loaded.
+	 */
+	public static final String BULK_IMPORT_STAGING_DIRECTORY = "temf.hbase.bulk.import.staging.directory";
+
+	public enum WriteMode {
+		/**
+		 * Every modification is immediately written to the table
+		 */
+		DIRECT,
+		/**
+		 * Modifications are queued in a client-side buffer and sent in batches.
+		 * Pending modifications are visible to the reads of the same resource, and
+		 * they are always flushed on save and unload.
+		 */
+		BUFFERED
+	}
+
+	public enum AccessMode {
+		/**
+		 * The resource is accessed by a single thread at a time, which is the
+		 * usual EMF contract
+		 */
+		SINGLE_THREADED,
+		/**
+		 * Every thread reads the table through its own handle, and the caches
+		 * and the loaded objects of the resource are kept in concurrent maps,
+		 * so that any number of threads can read the resource (both its
+		 * current and its historical state) concurrently, and share the same
+		 * object instances.
+		 * <p>
+		 * The EMF lists of the objects are not thread-safe, so modifications
+		 * must be exclusive with respect to the reads of the modified objects
+		 * (e.g., using a {@link java.util.concurrent.locks.ReadWriteLock}).
+		 * Under that contract, a modification is visible to every read that
+		 * starts after it returns: the lock orders the threads, and the
+		 * modification has either been written to the table
+		 * ({@link WriteMode#DIRECT}) or queued in the buffer that is merged
+		 * with every read ({@link WriteMode#BUFFERED}).
+		 */
+		CONCURRENT
+	}
+
+	public enum ListLayout {
+		/**
+		 * The whole list is stored in a single cell, which is rewritten (and a new
+		 * version of the whole list is kept) on every modification
+		 */
+		SERIALIZED,
+		/**
+		 * Every position of the list is stored in its own cell, together with a
+		 * cell that keeps the size of the list. Appending or removing the last
+		 * element only writes a constant amount of data, and any historical state
+		 * is rebuilt from the versions of the position cells
+		 */
+		PER_ELEMENT,
+		/**
+		 * Every modification of the list is stored as a delta in its own cell, and
+		 * the whole list is stored (as a checkpoint) once every
+		 * {@link HbaseTResourceOptions#LIST_CHECKPOINT_INTERVAL} modifications. Any
+		 * state is rebuilt by replaying the deltas from the preceding checkpoint
+		 */
+		DELTA
+	}
+
+	public enum TimestampMode {
+		/**
+		 * Timestamps are assigned by the region servers, in milliseconds since
+		 * the epoch. Several modifications of the same feature within the same
+		 * millisecond are stored as a single version, i.e., only the last of them
+		 * is kept in the history
+		 */
+		SERVER,
+		/**
+		 * Timestamps are assigned by the resource from a
+		 * {@link HybridLogicalClock}, which adds a logical counter to the
+		 * milliseconds since the epoch, so that every modification is stored as
+		 * a different version. The timestamps accepted and returned by the
+		 * resource and its store are still milliseconds since the epoch: the
+		 * versions written within the same millisecond all appear in the
+		 * histories, sharing their timestamp, and a read at a given millisecond
+		 * sees the last version written within it
+		 */
+		HYBRID_LOGICAL
+	}
+
+	public static Object getOption(Map<?, ?> options, String key, Object defaultValue) {
+		Object value = options != null ? options.get(key) : null;
+		return value != null ? value : defaultValue;
+	}
+
+	public static long getLongOption(Map<?, ?> options, String key, long defaultValue) {
+		Object value = getOption(options, key, defaultValue);
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		} else {
+			try {
+				return Long.parseLong(value.toString());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(new InvalidOptionsException(MessageFormat.format("key = {0}; value = {1}", key, value)));
+			}
+		}
+	}
+
+	public static <E extends Enum<E>> E getEnumOption(Map<?, ?> options, String key, E defaultValue) {
+		Object value = getOption(options, key, defaultValue);
+		try {
+			return Enum.valueOf(defaultValue.getDeclaringClass(), value.toString());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(new InvalidOptionsException(MessageFormat.format("key = {0}; value = {1}", key, value)));
+		}
+	}
+
+}
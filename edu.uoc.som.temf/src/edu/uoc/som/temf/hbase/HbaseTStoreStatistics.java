@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Query;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+
+/**
+ * Counts the requests sent to HBase by a store, and the cells and bytes they
+ * transfer. Requests are grouped by operation, which is the
+ * {@link Get#getId() id} of the {@link Get}, {@link Scan} or {@link Mutation}.
+ * Every batch of results returned by a scanner counts as a request.
+ * <p>
+ * Sizes are the serialized sizes of the transferred cells, so they do not
+ * include the RPC overhead.
+ *
+ * @author agomez
+ *
+ */
+public class HbaseTStoreStatistics {
+
+	/**
+	 * Operation under which requests without an id are counted
+	 */
+	public static final String UNNAMED_OPERATION = "other";
+
+	public static class OperationStatistics {
+
+		protected final LongAdder requests = new LongAdder();
+
+		protected final LongAdder cells = new LongAdder();
+
+		protected final LongAdder bytes = new LongAdder();
+
+		protected void record(int cells, long bytes) {
+			this.requests.increment();
+			this.cells.add(cells);
+			this.bytes.add(bytes);
+		}
+
+		public long getRequests() {
+			return requests.sum();
+		}
+
+		public long getCells() {
+			return cells.sum();
+		}
+
+		public long getBytes() {
+			return bytes.sum();
+		}
+
+		public double getBytesPerRequest() {
+			long requests = getRequests();
+			return requests > 0 ? (double) getBytes() / requests : 0;
+		}
+
+		@Override
+		public String toString() {
+			return MessageFormat.format("{0} requests, {1} cells, {2} bytes ({3,number,#.#} bytes/request)", getRequests(), getCells(), getBytes(),
+					getBytesPerRequest());
+		}
+	}
+
+	protected final ConcurrentMap<String, OperationStatistics> reads = new ConcurrentHashMap<>();
+
+	protected final ConcurrentMap<String, OperationStatistics> writes = new ConcurrentHashMap<>();
+
+	public void recordRead(Query query, Result result) {
+		long bytes = 0;
+		Cell[] cells = result.rawCells();
+		if (cells != null) {
+			for (Cell cell : cells) {
+				bytes += CellUtil.estimatedSerializedSizeOf(cell);
+			}
+		}
+		statistics(reads, query.getId()).record(cells != null ? cells.length : 0, bytes);
+	}
+
+	public void recordWrite(Mutation mutation) {
+		int count = 0;
+		long bytes = 0;
+		for (List<Cell> cells : mutation.getFamilyCellMap().values()) {
+			for (Cell cell : cells) {
+				count++;
+				bytes += CellUtil.estimatedSerializedSizeOf(cell);
+			}
+		}
+		statistics(writes, mutation.getId()).record(count, bytes);
+	}
+
+	/**
+	 * Returns the statistics of the reads, indexed by operation
+	 */
+	public SortedMap<String, OperationStatistics> getReads() {
+		return Collections.unmodifiableSortedMap(new TreeMap<>(reads));
+	}
+
+	/**
+	 * Returns the statistics of the writes, indexed by operation
+	 */
+	public SortedMap<String, OperationStatistics> getWrites() {
+		return Collections.unmodifiableSortedMap(new TreeMap<>(writes));
+	}
+
+	public long getBytesRead() {
+		return reads.values().stream().mapToLong(OperationStatistics::getBytes).sum();
+	}
+
+	public long getBytesWritten() {
+		return writes.values().stream().mapToLong(OperationStatistics::getBytes).sum();
+	}
+
+	public void reset() {
+		reads.clear();
+		writes.clear();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(MessageFormat.format("Read {0} bytes:", getBytesRead()));
+		for (Entry<String, OperationStatistics> entry : getReads().entrySet()) {
+			builder.append(MessageFormat.format("\n  {0}: {1}", entry.getKey(), entry.getValue()));
+		}
+		builder.append(MessageFormat.format("\nWritten {0} bytes:", getBytesWritten()));
+		for (Entry<String, OperationStatistics> entry : getWrites().entrySet()) {
+			builder.append(MessageFormat.format("\n  {0}: {1}", entry.getKey(), entry.getValue()));
+		}
+		return builder.toString();
+	}
+
+	protected static OperationStatistics statistics(ConcurrentMap<String, OperationStatistics> map, String operation) {
+		return map.computeIfAbsent(operation != null ? operation : UNNAMED_OPERATION,
+				key -> new OperationStatistics());
+	}
+}
@@ -0,0 +1,466 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ ******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.eclipse.emf.ecore.resource.Resource;
+
+import edu.uoc.som.temf.Logger;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+
+/**
+ * A {@link DirectWriteHbaseResourceTStoreImpl} that queues its {@link Put}s in
+ * a {@link BufferedMutator} instead of sending them one by one.
+ * <p>
+ * The cells of the pending {@link Put}s are also kept in memory, so that reads
+ * of the current state of a row see the modifications that have not been sent
+ * yet. Historical reads, scans, and reads that can not be merged with the
+ * pending cells flush the buffer before querying the table.
+ * <p>
+ * The buffer is flushed when its size exceeds the configured limit, when the
+ * configured flush interval elapses, and when {@link #flush()} or
+ * {@link #close()} are called. Errors that happen while flushing in the
+ * background are kept, together with the pending cells, and reported by the
+ * next flush requested by a client (e.g., {@link #flush()} or a read that
+ * needs the table to be up to date).
+ * <p>
+ * The rows of the objects attached by this store are only known by this store
+ * until they are flushed, so the reads of these rows are answered from their
+ * pending cells, and their conditional mutations are checked against them and
+ * queued as the rest of mutations. Conditional mutations of other rows are
+ * sent right away, after flushing the pending cells of the row if any, so
+ * other resources may see them before the mutations that were queued earlier
+ * (e.g., a reference to an object whose row has not been flushed yet).
+ * <p>
+ * The {@link #pendingCells} are guarded by a {@link ReadWriteLock}: reads that
+ * merge pending cells share it, and writes and flushes hold it exclusively.
+ * Reads of rows without pending cells do not take it at all.
+ *
+ * @author agomez
+ *
+ */
+public class BufferedWriteHbaseResourceTStoreImpl extends DirectWriteHbaseResourceTStoreImpl {
+
+	public static final long DEFAULT_WRITE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	protected final long writeBufferSize;
+
+	protected final long flushInterval;
+
+	protected BufferedMutator mutator;
+
+	/**
+	 * Cells of the {@link Put}s that have not been flushed yet, indexed by row,
+	 * family and qualifier. Rows can be looked up without locking, but their
+	 * cells must be read while holding the read {@link #lock}, and modified
+	 * while holding the write one.
+	 */
+	protected NavigableMap<byte[], NavigableMap<byte[], NavigableMap<byte[], Cell>>> pendingCells = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+
+	/**
+	 * Guards the {@link #pendingCells} and the rest of the state of the buffer
+	 */
+	protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	protected long pendingSize = 0;
+
+	/**
+	 * Rows that were not in the table when this store wrote their type, i.e.,
+	 * the rows of the objects attached by this store, whose whole state is held
+	 * by the {@link #pendingCells} until they are flushed
+	 */
+	protected NavigableSet<byte[]> createdRows = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+
+	protected long lastFlush = System.currentTimeMillis();
+
+	/**
+	 * Write failures that have not been reported yet, which may be recorded by
+	 * the threads of the {@link #mutator}
+	 */
+	protected Queue<Exception> failures = new ConcurrentLinkedQueue<>();
+
+	protected ScheduledExecutorService flusher;
+
+	public BufferedWriteHbaseResourceTStoreImpl(Resource.Internal resource, Connection connection) throws IOException {
+		this(resource, connection, Collections.emptyMap());
+	}
+
+	public BufferedWriteHbaseResourceTStoreImpl(Resource.Internal resource, Connection connection, Map<?, ?> options) throws IOException {
+		super(resource, connection, options);
+		this.writeBufferSize = HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.WRITE_BUFFER_SIZE, DEFAULT_WRITE_BUFFER_SIZE);
+		this.flushInterval = HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.WRITE_BUFFER_FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL);
+		BufferedMutatorParams params = new BufferedMutatorParams(tableName);
+		params.writeBufferSize(writeBufferSize);
+		params.listener(new BufferedMutator.ExceptionListener() {
+			@Override
+			public void onException(RetriesExhaustedWithDetailsException exception, BufferedMutator mutator) {
+				failures.add(exception);
+			}
+		});
+		this.mutator = connection.getBufferedMutator(params);
+		if (flushInterval > 0) {
+			flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, MessageFormat.format("temf-flusher-{0}", tableName.getNameAsString()));
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleWithFixedDelay(() -> flushIfExpired(), flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	protected Result get(Get get) throws IOException {
+		if (!pendingCells.containsKey(get.getRow())) {
+			return super.get(get);
+		} else if (!isMergeable(get)) {
+			flushBuffer();
+			return super.get(get);
+		}
+		lock.readLock().lock();
+		try {
+			NavigableMap<byte[], NavigableMap<byte[], Cell>> rowCells = pendingCells.get(get.getRow());
+			if (rowCells == null) {
+				return super.get(get);
+			}
+			// The cells of the change set of this thread (if any) are newer
+			Result result = isCreated(get) ? Result.EMPTY_RESULT : super.get(get);
+			return mergeChangeSet(get, merge(get, result, rowCells));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected Result[] get(List<Get> gets) throws IOException {
+		boolean pending = false;
+		for (Get get : gets) {
+			if (pendingCells.containsKey(get.getRow())) {
+				if (!isMergeable(get)) {
+					flushBuffer();
+					break;
+				}
+				pending = true;
+			}
+		}
+		if (!pending) {
+			return super.get(gets);
+		}
+		lock.readLock().lock();
+		try {
+			List<Get> tableGets = new ArrayList<>(gets.size());
+			for (Get get : gets) {
+				if (!isCreated(get)) {
+					tableGets.add(get);
+				}
+			}
+			Result[] tableResults = super.get(tableGets);
+			Result[] results = new Result[gets.size()];
+			for (int index = 0, tableIndex = 0; index < results.length; index++) {
+				Get get = gets.get(index);
+				results[index] = isCreated(get) ? Result.EMPTY_RESULT : tableResults[tableIndex++];
+				NavigableMap<byte[], NavigableMap<byte[], Cell>> rowCells = pendingCells.get(get.getRow());
+				if (rowCells != null) {
+					results[index] = mergeChangeSet(get, merge(get, results[index], rowCells));
+				}
+			}
+			return results;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Whether the given {@link Get} can be answered from the
+	 * {@link #pendingCells} alone, because it reads the latest state of one of
+	 * the {@link #createdRows}. Must be called while holding the {@link #lock}.
+	 */
+	protected boolean isCreated(Get get) {
+		return createdRows.contains(get.getRow()) && isMergeable(get);
+	}
+
+	@Override
+	protected ResultScanner getScanner(Scan scan) throws IOException {
+		if (!pendingCells.isEmpty() || !failures.isEmpty()) {
+			flushBuffer();
+		}
+		return super.getScanner(scan);
+	}
+
+	@Override
+	protected void put(Put put) throws IOException {
+		if (changeSets.get() != null) {
+			super.put(put);
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			stamp(put);
+			mutator.mutate(put);
+			statistics.recordWrite(put);
+			invalidate(put.getRow());
+			addCells(pendingCells, put);
+			pendingSize += put.heapSize();
+			if (pendingSize >= writeBufferSize) {
+				flushBuffer();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * {@link BufferedMutator}s do not support conditional mutations, so outside
+	 * a change set the {@link Put} is checked and written atomically by the
+	 * table, as in the superclass, after flushing the buffer if the row has
+	 * pending cells. The exception are the {@link #createdRows}: no other
+	 * writer can modify them, so their {@link Put}s are checked against the
+	 * {@link #pendingCells} and queued. Within a change set, the check is
+	 * repeated on commit as in the superclass.
+	 */
+	@Override
+	protected boolean checkAndPut(byte[] row, byte[] family, byte[] qualifier, byte[] value, Put put) throws IOException {
+		if (changeSets.get() != null) {
+			return super.checkAndPut(row, family, qualifier, value, put);
+		}
+		lock.writeLock().lock();
+		try {
+			if (createdRows.contains(row)) {
+				if (!matchesPending(row, family, qualifier, value)) {
+					return false;
+				}
+				put(put);
+				return true;
+			} else if (pendingCells.containsKey(row)) {
+				flushBuffer();
+			}
+			return super.checkAndPut(row, family, qualifier, value, put);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Whether the value of the given column in the {@link #pendingCells}
+	 * matches the expected <code>value</code> (<code>null</code> meaning that
+	 * the column must not exist). Must be called while holding the
+	 * {@link #lock}.
+	 */
+	protected boolean matchesPending(byte[] row, byte[] family, byte[] qualifier, byte[] value) {
+		NavigableMap<byte[], NavigableMap<byte[], Cell>> rowCells = pendingCells.get(row);
+		NavigableMap<byte[], Cell> familyCells = rowCells != null ? rowCells.get(family) : null;
+		Cell cell = familyCells != null ? familyCells.get(qualifier) : null;
+		byte[] current = cell != null ? CellUtil.cloneValue(cell) : null;
+		return value == null ? current == null : Arrays.equals(value, current);
+	}
+
+	/**
+	 * Outside a change set, the type is queued rather than written with a
+	 * conditional mutation: the objects are only written with their own type,
+	 * so a concurrent writer can only write the same cells. A row that is not
+	 * in the table belongs to an object that is being attached by this store,
+	 * and it is added to the {@link #createdRows}.
+	 */
+	@Override
+	protected boolean putInstanceOf(Put put) throws IOException {
+		if (changeSets.get() != null) {
+			return super.putInstanceOf(put);
+		}
+		byte[] row = put.getRow();
+		Get get = new Get(row);
+		get.setId("updateInstanceOf");
+		get.setFilter(new FirstKeyOnlyFilter());
+		lock.writeLock().lock();
+		try {
+			boolean created = super.get(get).isEmpty();
+			if (created ? !matchesPending(row, TYPE_FAMILY, ECLASS_QUALIFIER, null) : !matches(row, TYPE_FAMILY, ECLASS_QUALIFIER, null)) {
+				return false;
+			}
+			if (created) {
+				createdRows.add(row);
+			}
+			put(put);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Outside a change set, the {@link Put}s are queued as the rest of
+	 * mutations, instead of being written directly in the table
+	 */
+	@Override
+	protected void writeAll(List<Put> puts) throws IOException {
+		if (changeSets.get() != null) {
+			super.writeAll(puts);
+			return;
+		}
+		for (Put put : puts) {
+			put(put);
+		}
+	}
+
+	/**
+	 * Flushes the buffer before starting the change set, so that the earlier
+	 * modifications of the calling thread are written before the ones of the
+	 * change set, and their failures are reported
+	 */
+	@Override
+	public void beginChangeSet() throws IOException {
+		flushBuffer();
+		super.beginChangeSet();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (flusher != null) {
+			flusher.shutdownNow();
+		}
+		try {
+			flush();
+		} finally {
+			try {
+				mutator.close();
+			} finally {
+				super.close();
+			}
+		}
+	}
+
+	/**
+	 * Sends all the buffered mutations to the region servers, and throws an
+	 * {@link IOException} if any of them (including the ones sent in the
+	 * background) could not be written
+	 */
+	protected void flushBuffer() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (!tryFlushBuffer()) {
+				reportFailures();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Sends all the buffered mutations to the region servers. Returns
+	 * <code>true</code> if there are no write failures, in which case the
+	 * {@link #pendingCells} are discarded. Otherwise, the {@link #pendingCells}
+	 * are kept (and still read) until the failures are reported by
+	 * {@link #reportFailures()}. Must be called while holding the write
+	 * {@link #lock}.
+	 */
+	protected boolean tryFlushBuffer() {
+		try {
+			mutator.flush();
+		} catch (IOException e) {
+			failures.add(e);
+		}
+		lastFlush = System.currentTimeMillis();
+		if (failures.isEmpty()) {
+			discardPendingCells();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Flushes the buffer from the background flusher. Failures can not be thrown
+	 * from there, so they are reported by the next flush requested by a client
+	 */
+	protected void flushIfExpired() {
+		lock.writeLock().lock();
+		try {
+			if (pendingSize > 0 && System.currentTimeMillis() - lastFlush >= flushInterval) {
+				tryFlushBuffer();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Must be called while holding the write {@link #lock}
+	 */
+	protected void discardPendingCells() {
+		for (byte[] row : pendingCells.keySet()) {
+			invalidate(row);
+		}
+		pendingCells.clear();
+		createdRows.clear();
+		pendingSize = 0;
+	}
+
+	/**
+	 * Throws an {@link IOException} with the write failures recorded so far, if
+	 * any. The {@link #pendingCells} are discarded before, so that the following
+	 * reads return what was actually written. Must be called while holding the
+	 * write {@link #lock}.
+	 */
+	protected void reportFailures() throws IOException {
+		if (!failures.isEmpty()) {
+			List<Exception> reported = new ArrayList<>();
+			for (Exception failure = failures.poll(); failure != null; failure = failures.poll()) {
+				reported.add(failure);
+			}
+			discardPendingCells();
+			// The types that were queued may have not been written
+			instancesOf.clear();
+			IOException exception = new IOException(MessageFormat.format(
+					"Unable to write {0} buffered mutation batch(es) in ''{1}''", reported.size(), tableName.getNameAsString()),
+					reported.get(0));
+			for (Exception e : reported.subList(1, reported.size())) {
+				exception.addSuppressed(e);
+			}
+			Logger.log(Logger.SEVERITY_ERROR, exception);
+			throw exception;
+		}
+	}
+}
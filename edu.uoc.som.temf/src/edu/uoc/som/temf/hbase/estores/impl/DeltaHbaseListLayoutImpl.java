@@ -0,0 +1,444 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ ******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+import edu.uoc.som.temf.Logger;
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+
+/**
+ * {@link HbaseListLayout} for {@link ListLayout#DELTA}.
+ * <p>
+ * Every modification of a feature named <code>f</code> is numbered with a
+ * consecutive version <code>v</code> and recorded in its own column,
+ * <code>f\0v</code> (being <code>v</code> a 4-byte big-endian integer), whose
+ * value is either the change performed by the modification (a delta) or, every
+ * <code>checkpointInterval</code> versions, the whole list (a checkpoint). The
+ * column <code>f\0</code> keeps the latest version, and its versions map each
+ * timestamp to the state of the list in effect at that moment.
+ * <p>
+ * The state at version <code>v</code> is rebuilt by replaying the records
+ * from the checkpoint at <code>v - v % checkpointInterval</code> up to
+ * <code>v</code>, so reads never process more than
+ * <code>checkpointInterval</code> records, while writes only store the
+ * changed values except once every <code>checkpointInterval</code>
+ * modifications.
+ * <p>
+ * Every modification is written only if the version column still holds the
+ * version it was computed from, so concurrent writers never record two
+ * modifications with the same version: the one that loses the race reads the
+ * list again and retries.
+ *
+ * @author agomez
+ *
+ */
+public class DeltaHbaseListLayoutImpl implements HbaseListLayout {
+
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+
+	protected static final byte SEPARATOR = 0x00;
+
+	protected static final byte CHECKPOINT = 0x00;
+	protected static final byte UNSET = 0x01;
+	protected static final byte ADD = 0x02;
+	protected static final byte REMOVE = 0x03;
+	protected static final byte SET = 0x04;
+	protected static final byte MOVE = 0x05;
+	protected static final byte CLEAR = 0x06;
+
+	/**
+	 * Marker that precedes the UTF-8 bytes of a non-<code>null</code> value in
+	 * a delta
+	 */
+	protected static final byte VALUE_MARKER = 0x01;
+
+	protected DirectWriteHbaseResourceTStoreImpl store;
+
+	protected int checkpointInterval;
+
+	public DeltaHbaseListLayoutImpl(DirectWriteHbaseResourceTStoreImpl store) {
+		this(store, DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	public DeltaHbaseListLayoutImpl(DirectWriteHbaseResourceTStoreImpl store, int checkpointInterval) {
+		this.store = store;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	@Override
+	public boolean isSet(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		return toArray(object, feature, timestamp) != null;
+	}
+
+	@Override
+	public int size(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		String[] array = toArray(object, feature, timestamp);
+		return array != null ? array.length : 0;
+	}
+
+	@Override
+	public String get(TObject object, EStructuralFeature feature, int index, long timestamp) throws IOException {
+		return toArray(object, feature, timestamp)[index];
+	}
+
+	@Override
+	public String[] toArray(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		return readState(object, feature, readVersion(object, feature, timestamp));
+	}
+
+	/**
+	 * Reads the versions of the list that were in effect between
+	 * <code>startTimestamp</code> and <code>endTimestamp</code> from the history
+	 * of the version column, and replays, in a single pass, all the records
+	 * from the checkpoint preceding the first of them. When <code>limit</code>
+	 * is set, only the records needed by the requested versions are replayed.
+	 */
+	@Override
+	public THistory<String[]> toArrayAllBetween(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, int limit, boolean descending)
+			throws IOException {
+		THistory<Cell> versions = new THistory<>(descending);
+		store.visitHistory(object, versionQualifier(feature), startTimestamp, endTimestamp, limit, descending, cell -> versions.add(cell.getTimestamp(), cell));
+		return replay(object, feature, versions);
+	}
+
+	/**
+	 * Reads the history of the version column in pages, and replays the records
+	 * of every page from the checkpoint preceding its first version
+	 */
+	@Override
+	public THistoryCursor<String[]> openAllBetween(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, boolean descending) {
+		return store.openHistory(object, versionQualifier(feature), startTimestamp, endTimestamp, descending).mapPages(page -> replay(object, feature, page));
+	}
+
+	/**
+	 * Rebuilds the states of the list for the given cells of the version column,
+	 * replaying in a single pass all the records from the checkpoint preceding
+	 * the oldest of them
+	 */
+	protected THistory<String[]> replay(TObject object, EStructuralFeature feature, THistory<Cell> versions) throws IOException {
+		THistory<String[]> result = new THistory<>(versions.isDescending(), versions.size());
+		if (versions.isEmpty()) {
+			return result;
+		}
+		// Versions in chronological order
+		Cell[] cells = new Cell[versions.size()];
+		for (int index = 0; index < cells.length; index++) {
+			cells[versions.isDescending() ? cells.length - 1 - index : index] = versions.getValue(index);
+		}
+		byte[] versionQualifier = versionQualifier(feature);
+		int firstVersion = Bytes.toInt(cells[0].getValueArray(), cells[0].getValueOffset());
+		int lastVersion = Bytes.toInt(cells[cells.length - 1].getValueArray(), cells[cells.length - 1].getValueOffset());
+
+		String[][] states = new String[cells.length][];
+		Replay replay = new Replay();
+		int next = 0;
+		for (Cell record : readRecords(object, feature, checkpointOf(firstVersion), lastVersion)) {
+			int version = Bytes.toInt(record.getQualifierArray(), record.getQualifierOffset() + versionQualifier.length);
+			replay.apply(record);
+			while (next < cells.length && Bytes.toInt(cells[next].getValueArray(), cells[next].getValueOffset()) == version) {
+				states[next] = replay.state != null ? replay.state.toArray(new String[replay.state.size()]) : new String[] {};
+				next++;
+			}
+		}
+		for (int index = 0; index < cells.length; index++) {
+			int position = versions.isDescending() ? cells.length - 1 - index : index;
+			result.add(cells[position].getTimestamp(), states[position]);
+		}
+		return result;
+	}
+
+	@Override
+	public void set(TObject object, EStructuralFeature feature, int index, String value) throws IOException {
+		while (!write(object, feature, readVersion(object, feature, Long.MAX_VALUE), delta(SET, index, value), array -> {
+			array[index] = value;
+			return array;
+		})) {
+			// Modified by another writer, retry
+		}
+	}
+
+	@Override
+	public void add(TObject object, EStructuralFeature feature, int index, String value) throws IOException {
+		while (!write(object, feature, readVersion(object, feature, Long.MAX_VALUE), delta(ADD, index, value),
+				array -> (String[]) ArrayUtils.add(array != null ? array : new String[] {}, index, value))) {
+			// Modified by another writer, retry
+		}
+	}
+
+	@Override
+	public String remove(TObject object, EStructuralFeature feature, int index) throws IOException {
+		while (true) {
+			int version = readVersion(object, feature, Long.MAX_VALUE);
+			String oldValue = readState(object, feature, version)[index];
+			if (write(object, feature, version, delta(REMOVE, index), current -> (String[]) ArrayUtils.remove(current, index))) {
+				return oldValue;
+			}
+		}
+	}
+
+	@Override
+	public String move(TObject object, EStructuralFeature feature, int targetIndex, int sourceIndex) throws IOException {
+		while (true) {
+			int version = readVersion(object, feature, Long.MAX_VALUE);
+			String movedValue = readState(object, feature, version)[sourceIndex];
+			if (write(object, feature, version, delta(MOVE, targetIndex, sourceIndex),
+					current -> (String[]) ArrayUtils.add(ArrayUtils.remove(current, sourceIndex), targetIndex, movedValue))) {
+				return movedValue;
+			}
+		}
+	}
+
+	@Override
+	public void clear(TObject object, EStructuralFeature feature) throws IOException {
+		while (!write(object, feature, readVersion(object, feature, Long.MAX_VALUE), new byte[] { CLEAR }, array -> new String[] {})) {
+			// Modified by another writer, retry
+		}
+	}
+
+	@Override
+	public void unset(TObject object, EStructuralFeature feature) throws IOException {
+		while (!write(object, feature, readVersion(object, feature, Long.MAX_VALUE), new byte[] { UNSET }, array -> null)) {
+			// Modified by another writer, retry
+		}
+	}
+
+	/**
+	 * The initial state is stored as a checkpoint of the first version
+	 */
+	@Override
+	public void initialize(Put put, EStructuralFeature feature, String[] values) {
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, recordQualifier(feature, 0),
+				Bytes.add(new byte[] { CHECKPOINT }, StringArrayCodec.encode(values)));
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, versionQualifier(feature), Bytes.toBytes(0));
+	}
+
+	/**
+	 * The new state is recorded as the version that follows
+	 * <code>revision</code>: as a delta if it differs from the previous state
+	 * by a single addition, removal or replacement, and as a checkpoint
+	 * otherwise
+	 */
+	@Override
+	public void replace(Put put, EStructuralFeature feature, int revision, String[] oldValues, String[] newValues) {
+		int newVersion = revision + 1;
+		byte[] record;
+		if (newValues == null) {
+			record = new byte[] { UNSET };
+		} else if (newVersion % checkpointInterval == 0 || (record = delta(oldValues, newValues)) == null) {
+			record = Bytes.add(new byte[] { CHECKPOINT }, StringArrayCodec.encode(newValues));
+		}
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, recordQualifier(feature, newVersion), record);
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, versionQualifier(feature), Bytes.toBytes(newVersion));
+	}
+
+	/**
+	 * Writes the record of the version that follows <code>version</code>: the
+	 * given <code>delta</code> or, if the new version is a checkpoint version, a
+	 * checkpoint of the state obtained by applying <code>change</code> to the
+	 * state at <code>version</code>.
+	 * <p>
+	 * The record is only written if the version column still holds
+	 * <code>version</code>.
+	 *
+	 * @return <code>false</code> if the list has been modified by another
+	 *         writer since <code>version</code> was read, and nothing has been
+	 *         written
+	 */
+	protected boolean write(TObject object, EStructuralFeature feature, int version, byte[] delta, UnaryOperator<String[]> change) throws IOException {
+		int newVersion = version + 1;
+		byte[] record;
+		if (newVersion % checkpointInterval == 0) {
+			String[] state = change.apply(readState(object, feature, version));
+			record = state != null ? Bytes.add(new byte[] { CHECKPOINT }, StringArrayCodec.encode(state)) : new byte[] { UNSET };
+		} else {
+			record = delta;
+		}
+		Put put = new Put(Bytes.toBytes(object.tId()));
+		put.setId("list.write");
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, recordQualifier(feature, newVersion), record);
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, versionQualifier(feature), Bytes.toBytes(newVersion));
+		return store.checkAndPut(put.getRow(), DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, versionQualifier(feature),
+				version >= 0 ? Bytes.toBytes(version) : null, put);
+	}
+
+	/**
+	 * Returns the version of the list at the given <code>timestamp</code>, or
+	 * <code>-1</code> if the list had never been modified
+	 */
+	protected int readVersion(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		Get get = new Get(Bytes.toBytes(object.tId()));
+		get.setId("list.version");
+		get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, versionQualifier(feature));
+		get.setTimeRange(0, DirectWriteHbaseResourceTStoreImpl.endOf(timestamp));
+		byte[] value = store.get(get).getValue(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, versionQualifier(feature));
+		return value != null ? Bytes.toInt(value) : -1;
+	}
+
+	/**
+	 * Rebuilds the list at the given <code>version</code>
+	 */
+	protected String[] readState(TObject object, EStructuralFeature feature, int version) throws IOException {
+		if (version < 0) {
+			return null;
+		}
+		Replay replay = new Replay();
+		for (Cell record : readRecords(object, feature, checkpointOf(version), version)) {
+			replay.apply(record);
+		}
+		return replay.state != null ? replay.state.toArray(new String[replay.state.size()]) : null;
+	}
+
+	/**
+	 * Reads the records between the <code>from</code> and <code>to</code>
+	 * versions (both inclusive), sorted by version
+	 */
+	protected Cell[] readRecords(TObject object, EStructuralFeature feature, int from, int to) throws IOException {
+		Get get = new Get(Bytes.toBytes(object.tId()));
+		get.setId("list.records");
+		get.addFamily(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY);
+		get.setFilter(new ColumnRangeFilter(recordQualifier(feature, from), true, recordQualifier(feature, to), true));
+		Result result = store.get(get);
+		return result.rawCells();
+	}
+
+	protected int checkpointOf(int version) {
+		return version - version % checkpointInterval;
+	}
+
+	protected static byte[] versionQualifier(EStructuralFeature feature) {
+		return Bytes.add(Bytes.toBytes(feature.getName()), new byte[] { SEPARATOR });
+	}
+
+	protected static byte[] recordQualifier(EStructuralFeature feature, int version) {
+		return Bytes.add(versionQualifier(feature), Bytes.toBytes(version));
+	}
+
+	protected static byte[] delta(byte type, int index) {
+		return Bytes.add(new byte[] { type }, Bytes.toBytes(index));
+	}
+
+	protected static byte[] delta(byte type, int first, int second) {
+		return Bytes.add(new byte[] { type }, Bytes.toBytes(first), Bytes.toBytes(second));
+	}
+
+	protected static byte[] delta(byte type, int index, String value) {
+		if (value == null) {
+			return delta(type, index);
+		}
+		return Bytes.add(delta(type, index), new byte[] { VALUE_MARKER }, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns the delta that turns <code>oldValues</code> into
+	 * <code>newValues</code>, or <code>null</code> if they do not differ by a
+	 * single operation
+	 */
+	protected static byte[] delta(String[] oldValues, String[] newValues) {
+		if (oldValues == null) {
+			return null;
+		} else if (newValues.length == 0) {
+			return oldValues.length > 0 ? new byte[] { CLEAR } : null;
+		}
+		int common = Math.min(oldValues.length, newValues.length);
+		int prefix = 0;
+		while (prefix < common && Objects.equals(oldValues[prefix], newValues[prefix])) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < common - prefix && Objects.equals(oldValues[oldValues.length - 1 - suffix], newValues[newValues.length - 1 - suffix])) {
+			suffix++;
+		}
+		int removed = oldValues.length - prefix - suffix;
+		int added = newValues.length - prefix - suffix;
+		if (removed == 0 && added == 1) {
+			return delta(ADD, prefix, newValues[prefix]);
+		} else if (removed == 1 && added == 0) {
+			return delta(REMOVE, prefix);
+		} else if (removed == 1 && added == 1) {
+			return delta(SET, prefix, newValues[prefix]);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Applies records, in version order, to an initially unset list
+	 */
+	protected static class Replay {
+
+		protected List<String> state;
+
+		protected void apply(Cell record) {
+			byte[] bytes = record.getValueArray();
+			int offset = record.getValueOffset();
+			int length = record.getValueLength();
+			byte type = bytes[offset];
+			switch (type) {
+				case CHECKPOINT:
+					String[] array = StringArrayCodec.decode(bytes, offset + 1, length - 1);
+					state = new ArrayList<>(array.length + 16);
+					for (String value : array) {
+						state.add(value);
+					}
+					break;
+				case UNSET:
+					state = null;
+					break;
+				case CLEAR:
+					state = new ArrayList<>();
+					break;
+				case ADD:
+					if (state == null) {
+						state = new ArrayList<>();
+					}
+					state.add(Bytes.toInt(bytes, offset + 1), value(bytes, offset, length));
+					break;
+				case REMOVE:
+					state.remove(Bytes.toInt(bytes, offset + 1));
+					break;
+				case SET:
+					state.set(Bytes.toInt(bytes, offset + 1), value(bytes, offset, length));
+					break;
+				case MOVE:
+					state.add(Bytes.toInt(bytes, offset + 1), state.remove(Bytes.toInt(bytes, offset + 1 + Bytes.SIZEOF_INT)));
+					break;
+				default:
+					Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unknown list record type ''{0}''", type));
+			}
+		}
+
+		protected static String value(byte[] bytes, int offset, int length) {
+			int valueOffset = 1 + Bytes.SIZEOF_INT + 1;
+			return length >= valueOffset
+					? new String(bytes, offset + valueOffset, length - valueOffset, StandardCharsets.UTF_8)
+					: null;
+		}
+	}
+}
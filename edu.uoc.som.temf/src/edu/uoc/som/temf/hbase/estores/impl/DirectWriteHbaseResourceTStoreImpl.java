@@ -10,33 +10,65 @@
  ******************************************************************************/
 package edu.uoc.som.temf.hbase.estores.impl;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InterruptedIOException;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.KeepDeletedCells;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.RowMutations;
+import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
+import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
@@ -44,18 +76,134 @@ import org.eclipse.emf.ecore.EPackage.Registry;
 import org.eclipse.emf.ecore.EReference;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.InternalEObject.EStore;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.jboss.util.collection.SoftValueHashMap;
 
+import com.google.common.cache.CacheBuilder;
+
 import edu.uoc.som.temf.Logger;
 import edu.uoc.som.temf.core.InternalTObject;
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
 import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.core.exceptions.ChangeSetCommitException;
 import edu.uoc.som.temf.core.impl.TObjectAdapterFactoryImpl;
 import edu.uoc.som.temf.estores.SearcheableResourceTStore;
+import edu.uoc.som.temf.hbase.HbaseConnectionRegistry;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.AccessMode;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.TimestampMode;
+import edu.uoc.som.temf.hbase.HbaseTStoreStatistics;
 
 public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTStore {
 
+	/**
+	 * The modifications of a change set in progress, which are only written
+	 * when it is committed
+	 */
+	protected static class ChangeSet {
+
+		/**
+		 * The cells written by the change set, indexed by row, family and
+		 * qualifier
+		 */
+		protected final NavigableMap<byte[], NavigableMap<byte[], NavigableMap<byte[], Cell>>> cells = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+		/**
+		 * The conditional writes of the change set whose checks must be
+		 * repeated on commit, indexed by row
+		 */
+		protected final NavigableMap<byte[], List<Condition>> conditions = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+		/**
+		 * Returns the {@link Condition} under which the given column of the
+		 * given <code>row</code> has been written, or <code>null</code> if it
+		 * has been written unconditionally (or not at all)
+		 */
+		protected Condition conditionOf(byte[] row, byte[] family, byte[] qualifier) {
+			List<Condition> rowConditions = conditions.get(row);
+			if (rowConditions != null) {
+				for (Condition condition : rowConditions) {
+					if (condition.covers(family, qualifier)) {
+						return condition;
+					}
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Whether the change set has written the given column of the given
+		 * <code>row</code>
+		 */
+		protected boolean contains(byte[] row, byte[] family, byte[] qualifier) {
+			NavigableMap<byte[], NavigableMap<byte[], Cell>> rowCells = cells.get(row);
+			NavigableMap<byte[], Cell> familyCells = rowCells != null ? rowCells.get(family) : null;
+			return familyCells != null && familyCells.containsKey(qualifier);
+		}
+
+		/**
+		 * Makes the cells of the {@link Put} be written under the given
+		 * <code>condition</code>, instead of the one under which they were
+		 * written before (if any)
+		 */
+		protected void claim(Condition condition, Put put) {
+			List<Condition> rowConditions = conditions.get(put.getRow());
+			for (Entry<byte[], List<Cell>> entry : put.getFamilyCellMap().entrySet()) {
+				for (Cell cell : entry.getValue()) {
+					byte[] qualifier = CellUtil.cloneQualifier(cell);
+					for (Condition other : rowConditions) {
+						other.release(entry.getKey(), qualifier);
+					}
+					condition.columns.computeIfAbsent(entry.getKey(), key -> new TreeSet<>(Bytes.BYTES_COMPARATOR)).add(qualifier);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A check made by a conditional write of a change set against the
+	 * committed state of the table (see
+	 * {@link DirectWriteHbaseResourceTStoreImpl#checkAndPut(byte[], byte[], byte[], byte[], Put)}),
+	 * together with the columns written under it, which are only written on
+	 * commit if the check still holds
+	 */
+	protected static class Condition {
+
+		protected final byte[] family;
+
+		protected final byte[] qualifier;
+
+		protected final byte[] value;
+
+		/**
+		 * The qualifiers of the columns written under this condition, indexed
+		 * by family
+		 */
+		protected final NavigableMap<byte[], NavigableSet<byte[]>> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+		protected Condition(byte[] family, byte[] qualifier, byte[] value) {
+			this.family = family;
+			this.qualifier = qualifier;
+			this.value = value;
+		}
+
+		protected boolean covers(byte[] family, byte[] qualifier) {
+			NavigableSet<byte[]> qualifiers = columns.get(family);
+			return qualifiers != null && qualifiers.contains(qualifier);
+		}
+
+		protected void release(byte[] family, byte[] qualifier) {
+			NavigableSet<byte[]> qualifiers = columns.get(family);
+			if (qualifiers != null) {
+				qualifiers.remove(qualifier);
+			}
+		}
+	}
+
 	protected static final byte[] PROPERTY_FAMILY = Bytes.toBytes("p");
 	protected static final byte[] TYPE_FAMILY = Bytes.toBytes("t");
 	protected static final byte[] METAMODEL_QUALIFIER = Bytes.toBytes("m");
@@ -64,6 +212,29 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	protected static final byte[] CONTAINER_QUALIFIER = Bytes.toBytes("n");
 	protected static final byte[] CONTAINING_FEATURE_QUALIFIER = Bytes.toBytes("g");
 
+	/**
+	 * Family of the rows of the {@link HbaseTypeIndex}
+	 */
+	protected static final byte[] INDEX_FAMILY = Bytes.toBytes("i");
+
+	/**
+	 * {@link HTableDescriptor} attribute that records the {@link ListLayout} of
+	 * the table
+	 */
+	protected static final String LIST_LAYOUT_ATTRIBUTE = "TEMF_LIST_LAYOUT";
+
+	/**
+	 * {@link HTableDescriptor} attribute that records the checkpoint interval of
+	 * a table using {@link ListLayout#DELTA}
+	 */
+	protected static final String LIST_CHECKPOINT_INTERVAL_ATTRIBUTE = "TEMF_LIST_CHECKPOINT_INTERVAL";
+
+	/**
+	 * {@link HTableDescriptor} attribute that records the {@link TimestampMode}
+	 * of the table
+	 */
+	protected static final String TIMESTAMP_MODE_ATTRIBUTE = "TEMF_TIMESTAMP_MODE";
+
 	// // TODO: Change in final version by short version to save space
 //	protected static final byte[] PROPERTY_FAMILY = Bytes.toBytes("property");
 //	protected static final byte[] TYPE_FAMILY = Bytes.toBytes("type");
@@ -73,39 +244,270 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 //	protected static final byte[] CONTAINER_QUALIFIER = Bytes.toBytes("container");
 //	protected static final byte[] CONTAINING_FEATURE_QUALIFIER = Bytes.toBytes("containingFeature");
 
+	public static final int DEFAULT_HISTORY_PAGE_SIZE = 1000;
+
+	public static final long DEFAULT_VIEW_CACHE_SIZE = 64 * 1024 * 1024;
+
+	public static final int DEFAULT_BULK_BATCH_SIZE = 1000;
+
+	public static final int DEFAULT_BULK_PARALLELISM = 4;
+
 	@SuppressWarnings("unchecked")
 	protected Map<Object, InternalTObject> loadedEObjects = new SoftValueHashMap();
 
 	protected Connection connection;
 
+	protected TableName tableName;
+
 	protected Table table;
 
+	/**
+	 * The handles of the table of every thread when using
+	 * {@link AccessMode#CONCURRENT}, or <code>null</code> if the
+	 * {@link #table} is shared (since {@link Table}s are not thread-safe)
+	 */
+	protected ThreadLocal<Table> tables;
+
+	/**
+	 * The handles of the table created for the threads, which are closed
+	 * together with the store
+	 */
+	protected final Queue<Table> openTables = new ConcurrentLinkedQueue<>();
+
 	protected Resource.Internal resource;
 
+	protected HbaseListLayout listLayout;
+
+	protected HbaseTStoreStatistics statistics = new HbaseTStoreStatistics();
+
+	/**
+	 * The clock that assigns the timestamps of the written cells when using
+	 * {@link TimestampMode#HYBRID_LOGICAL}, or <code>null</code> if they are
+	 * assigned by the region servers
+	 */
+	protected HybridLogicalClock clock;
+
+	/**
+	 * The change set in progress of every thread (see {@link #beginChangeSet()})
+	 */
+	protected final ThreadLocal<ChangeSet> changeSets = new ThreadLocal<>();
+
+	/**
+	 * Cache of the latest version of whole rows, or <code>null</code> if it is
+	 * disabled
+	 */
+	protected HbaseRowCache rowCache;
+
+	/**
+	 * The index of the instances of every {@link EClass}, or <code>null</code>
+	 * if the table does not have one
+	 */
+	protected HbaseTypeIndex typeIndex;
+
+	/**
+	 * The ids of the objects whose type is known to be written in the table,
+	 * so that {@link #updateInstanceOf(TObject)} only writes (and checks) it
+	 * once per object
+	 */
+	protected final Set<String> instancesOf = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * A cache of whole rows as they were at a pinned timestamp, shared by all
+	 * the reads of the state at that timestamp while it is pinned
+	 */
+	protected static class PinnedSnapshot {
+
+		protected final HbaseRowCache rows;
+
+		/**
+		 * Only modified while computing the mapping of its timestamp in
+		 * {@link DirectWriteHbaseResourceTStoreImpl#snapshots}
+		 */
+		protected int pins;
+
+		protected PinnedSnapshot(HbaseRowCache rows) {
+			this.rows = rows;
+		}
+	}
+
+	/**
+	 * The {@link PinnedSnapshot}s, indexed by their timestamp. The snapshots
+	 * are looked up by every read without locking, and are only pinned and
+	 * unpinned atomically per timestamp.
+	 */
+	protected final ConcurrentMap<Long, PinnedSnapshot> snapshots = new ConcurrentHashMap<>();
+
+	/**
+	 * Maximum size (in bytes) of the rows cached by every
+	 * {@link PinnedSnapshot}
+	 */
+	protected long snapshotCacheSize;
+
+	/**
+	 * Number of versions read per request by the history cursors
+	 */
+	protected int historyPageSize;
+
+	/**
+	 * Number of objects written per request by {@link #bulkPersist(List)}, or
+	 * <code>0</code> if bulk writes are disabled
+	 */
+	protected int bulkBatchSize;
+
+	/**
+	 * Maximum number of batches written concurrently by
+	 * {@link #bulkPersist(List)}
+	 */
+	protected int bulkParallelism;
+
 	public DirectWriteHbaseResourceTStoreImpl(Resource.Internal resource, Connection connection) throws IOException {
+		this(resource, connection, Collections.emptyMap());
+	}
+
+	public DirectWriteHbaseResourceTStoreImpl(Resource.Internal resource, Connection connection, Map<?, ?> options) throws IOException {
 		this.connection = connection;
 		this.resource = resource;
+		ListLayout requestedLayout = HbaseTResourceOptions.getEnumOption(options, HbaseTResourceOptions.LIST_LAYOUT, ListLayout.SERIALIZED);
 
-		TableName tableName = TableName.valueOf(resource.getURI().path().replaceFirst("/", "").replaceAll("/", "_"));
-
-		if (!connection.getAdmin().tableExists(tableName)) {
-			HTableDescriptor desc = new HTableDescriptor(tableName);
-			HColumnDescriptor typeFamily = new HColumnDescriptor(TYPE_FAMILY);
-			HColumnDescriptor containmentFamily = new HColumnDescriptor(CONTAINMENT_FAMILY);
-			containmentFamily.setMaxVersions(Integer.MAX_VALUE);
-			containmentFamily.setMinVersions(Integer.MAX_VALUE);
-			containmentFamily.setKeepDeletedCells(KeepDeletedCells.TRUE);
-			HColumnDescriptor propertyFamily = new HColumnDescriptor(PROPERTY_FAMILY);
-			propertyFamily.setMaxVersions(Integer.MAX_VALUE);
-			propertyFamily.setMinVersions(Integer.MAX_VALUE);
-			propertyFamily.setKeepDeletedCells(KeepDeletedCells.TRUE);
-			desc.addFamily(typeFamily);
-			desc.addFamily(containmentFamily);
-			desc.addFamily(propertyFamily);
-			connection.getAdmin().createTable(desc);
+		tableName = tableName(resource.getURI());
+
+		if (!HbaseConnectionRegistry.INSTANCE.tableExists(connection, tableName)) {
+			HbaseConnectionRegistry.INSTANCE.createTable(connection, createTableDescriptor(tableName, requestedLayout, options));
 		}
 
 		table = connection.getTable(tableName);
+
+		// Tables created before list layouts existed do not have the attribute
+		HTableDescriptor tableDescriptor = table.getTableDescriptor();
+		String tableLayout = tableDescriptor.getValue(LIST_LAYOUT_ATTRIBUTE);
+		ListLayout layout = tableLayout != null ? ListLayout.valueOf(tableLayout) : ListLayout.SERIALIZED;
+		if (layout != requestedLayout && options != null && options.containsKey(HbaseTResourceOptions.LIST_LAYOUT)) {
+			Logger.log(Logger.SEVERITY_WARNING, MessageFormat.format(
+					"Table ''{0}'' uses the ''{1}'' list layout, ignoring the requested ''{2}'' layout", tableName, layout, requestedLayout));
+		}
+		listLayout = createListLayout(layout, tableDescriptor);
+
+		TimestampMode timestampMode = timestampMode(tableDescriptor);
+		if (options != null && options.containsKey(HbaseTResourceOptions.TIMESTAMP_MODE)
+				&& timestampMode != HbaseTResourceOptions.getEnumOption(options, HbaseTResourceOptions.TIMESTAMP_MODE, TimestampMode.SERVER)) {
+			Logger.log(Logger.SEVERITY_WARNING, MessageFormat.format(
+					"Table ''{0}'' uses the ''{1}'' timestamp mode, ignoring the requested one", tableName, timestampMode));
+		}
+		if (timestampMode == TimestampMode.HYBRID_LOGICAL) {
+			clock = new HybridLogicalClock();
+		}
+
+		// Tables created before the type index existed do not have its family
+		if (tableDescriptor.hasFamily(INDEX_FAMILY)) {
+			typeIndex = new HbaseTypeIndex(this);
+		}
+
+		long rowCacheSize = HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.ROW_CACHE_SIZE, 0);
+		if (rowCacheSize > 0) {
+			rowCache = new HbaseRowCache(rowCacheSize);
+		}
+		historyPageSize = (int) HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.HISTORY_PAGE_SIZE, DEFAULT_HISTORY_PAGE_SIZE);
+		snapshotCacheSize = HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.VIEW_CACHE_SIZE, DEFAULT_VIEW_CACHE_SIZE);
+		bulkBatchSize = (int) HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.BULK_BATCH_SIZE, DEFAULT_BULK_BATCH_SIZE);
+		bulkParallelism = (int) HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.BULK_PARALLELISM, DEFAULT_BULK_PARALLELISM);
+
+		if (HbaseTResourceOptions.getEnumOption(options, HbaseTResourceOptions.ACCESS_MODE, AccessMode.SINGLE_THREADED) == AccessMode.CONCURRENT) {
+			tables = new ThreadLocal<>();
+			loadedEObjects = CacheBuilder.newBuilder().softValues().<Object, InternalTObject> build().asMap();
+		}
+	}
+
+	/**
+	 * Returns the name of the table that stores the resource identified by
+	 * <code>uri</code>
+	 */
+	public static TableName tableName(URI uri) {
+		return TableName.valueOf(uri.path().replaceFirst("/", "").replaceAll("/", "_"));
+	}
+
+	/**
+	 * Describes a new table that stores its lists using the given
+	 * {@link ListLayout}
+	 */
+	protected static HTableDescriptor createTableDescriptor(TableName tableName, ListLayout layout, Map<?, ?> options) {
+		HTableDescriptor desc = new HTableDescriptor(tableName);
+		HColumnDescriptor typeFamily = new HColumnDescriptor(TYPE_FAMILY);
+		HColumnDescriptor containmentFamily = new HColumnDescriptor(CONTAINMENT_FAMILY);
+		containmentFamily.setMaxVersions(Integer.MAX_VALUE);
+		containmentFamily.setMinVersions(Integer.MAX_VALUE);
+		containmentFamily.setKeepDeletedCells(KeepDeletedCells.TRUE);
+		HColumnDescriptor propertyFamily = new HColumnDescriptor(PROPERTY_FAMILY);
+		propertyFamily.setMaxVersions(Integer.MAX_VALUE);
+		propertyFamily.setMinVersions(Integer.MAX_VALUE);
+		propertyFamily.setKeepDeletedCells(KeepDeletedCells.TRUE);
+		desc.addFamily(typeFamily);
+		desc.addFamily(containmentFamily);
+		HColumnDescriptor indexFamily = new HColumnDescriptor(INDEX_FAMILY);
+		indexFamily.setMaxVersions(Integer.MAX_VALUE);
+		indexFamily.setMinVersions(Integer.MAX_VALUE);
+		indexFamily.setKeepDeletedCells(KeepDeletedCells.TRUE);
+		desc.addFamily(propertyFamily);
+		desc.addFamily(indexFamily);
+		desc.setValue(LIST_LAYOUT_ATTRIBUTE, layout.name());
+		if (layout == ListLayout.DELTA) {
+			desc.setValue(LIST_CHECKPOINT_INTERVAL_ATTRIBUTE, Long.toString(HbaseTResourceOptions.getLongOption(options,
+					HbaseTResourceOptions.LIST_CHECKPOINT_INTERVAL, DeltaHbaseListLayoutImpl.DEFAULT_CHECKPOINT_INTERVAL)));
+		}
+		desc.setValue(TIMESTAMP_MODE_ATTRIBUTE, HbaseTResourceOptions.getEnumOption(options, HbaseTResourceOptions.TIMESTAMP_MODE, TimestampMode.SERVER).name());
+		return desc;
+	}
+
+	/**
+	 * Returns the {@link TimestampMode} of the table with the given descriptor
+	 */
+	protected static TimestampMode timestampMode(HTableDescriptor tableDescriptor) {
+		// Tables created before timestamp modes existed do not have the attribute
+		String timestampMode = tableDescriptor.getValue(TIMESTAMP_MODE_ATTRIBUTE);
+		return timestampMode != null ? TimestampMode.valueOf(timestampMode) : TimestampMode.SERVER;
+	}
+
+	/**
+	 * Returns the earliest timestamp of the table with the given descriptor at
+	 * the given time (in milliseconds since the epoch)
+	 */
+	protected static long startTimestamp(HTableDescriptor tableDescriptor, long millis) {
+		return timestampMode(tableDescriptor) == TimestampMode.HYBRID_LOGICAL ? HybridLogicalClock.toStartTimestamp(millis) : millis;
+	}
+
+	/**
+	 * Returns the handle of the table of the current thread
+	 *
+	 * @throws IOException
+	 */
+	protected Table table() throws IOException {
+		if (tables == null) {
+			return table;
+		}
+		Table threadTable = tables.get();
+		if (threadTable == null) {
+			threadTable = connection.getTable(tableName);
+			openTables.add(threadTable);
+			tables.set(threadTable);
+		}
+		return threadTable;
+	}
+
+	protected HbaseListLayout createListLayout(ListLayout layout, HTableDescriptor tableDescriptor) {
+		return createListLayout(this, layout, tableDescriptor);
+	}
+
+	protected static HbaseListLayout createListLayout(DirectWriteHbaseResourceTStoreImpl store, ListLayout layout, HTableDescriptor tableDescriptor) {
+		switch (layout) {
+			case PER_ELEMENT:
+				return new PerElementHbaseListLayoutImpl(store);
+			case DELTA:
+				String checkpointInterval = tableDescriptor.getValue(LIST_CHECKPOINT_INTERVAL_ATTRIBUTE);
+				return new DeltaHbaseListLayoutImpl(store, checkpointInterval != null
+						? Integer.parseInt(checkpointInterval) : DeltaHbaseListLayoutImpl.DEFAULT_CHECKPOINT_INTERVAL);
+			case SERIALIZED:
+			default:
+				return new SerializedHbaseListLayoutImpl(store);
+		}
 	}
 
 	@Override
@@ -113,6 +515,120 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 		return resource;
 	}
 
+	/**
+	 * Returns the {@link HbaseTStoreStatistics} of the requests sent by this
+	 * store
+	 */
+	public HbaseTStoreStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Returns the {@link HbaseRowCache} of this store, or <code>null</code> if
+	 * it is disabled
+	 */
+	public HbaseRowCache getRowCache() {
+		return rowCache;
+	}
+
+	/**
+	 * Returns the {@link HbaseTypeIndex} of this store, or <code>null</code> if
+	 * the table does not have one
+	 */
+	public HbaseTypeIndex getTypeIndex() {
+		return typeIndex;
+	}
+
+	/**
+	 * Records in the {@link HbaseTypeIndex} that the given objects have been
+	 * attached to the resource (if <code>contained</code>) or detached from
+	 * it, writing all their index rows in batches (see
+	 * {@link #writeAll(List)}) unless bulk writes are disabled. Does nothing if
+	 * the table does not have an index.
+	 *
+	 * @throws IOException
+	 */
+	public void updateTypeIndex(Collection<? extends TObject> objects, boolean contained) throws IOException {
+		if (typeIndex == null || objects.isEmpty()) {
+			return;
+		}
+		List<Put> puts = new ArrayList<>();
+		for (TObject object : objects) {
+			puts.addAll(HbaseTypeIndex.toPuts(object.tId(), object.eClass(), contained, HConstants.LATEST_TIMESTAMP));
+		}
+		if (bulkBatchSize > 0) {
+			writeAll(puts);
+		} else {
+			for (Put put : puts) {
+				put(put);
+			}
+		}
+	}
+
+	/**
+	 * Pins the state of the resource at the given (past) <code>timestamp</code>:
+	 * until it is {@link #unpinSnapshot(long) unpinned} as many times as it has
+	 * been pinned, the reads of the state at that <code>timestamp</code> are
+	 * answered from whole rows, which are read (as they were at that
+	 * <code>timestamp</code>) on the first miss and shared by all the subsequent
+	 * reads. Since the past state of a row never changes, the cached rows are
+	 * never invalidated.
+	 *
+	 * @return the cache of the rows at the given <code>timestamp</code>, or
+	 *         <code>null</code> if it is disabled (see
+	 *         {@link HbaseTResourceOptions#VIEW_CACHE_SIZE})
+	 */
+	public HbaseRowCache pinSnapshot(long timestamp) {
+		if (snapshotCacheSize <= 0 || timestamp == Long.MAX_VALUE) {
+			return null;
+		}
+		return snapshots.compute(toTableTimestamp(timestamp), (tableTimestamp, snapshot) -> {
+			if (snapshot == null) {
+				snapshot = new PinnedSnapshot(new HbaseRowCache(snapshotCacheSize));
+			}
+			snapshot.pins++;
+			return snapshot;
+		}).rows;
+	}
+
+	/**
+	 * Releases a pin of the state at the given <code>timestamp</code> (see
+	 * {@link #pinSnapshot(long)})
+	 */
+	public void unpinSnapshot(long timestamp) {
+		snapshots.computeIfPresent(toTableTimestamp(timestamp), (tableTimestamp, snapshot) -> --snapshot.pins > 0 ? snapshot : null);
+	}
+
+	/**
+	 * Returns the cache of whole rows that can answer the given {@link Get}, if
+	 * any: the {@link #rowCache} for the reads of the latest state, or a
+	 * {@link PinnedSnapshot} for the reads of the state at a pinned timestamp
+	 */
+	protected HbaseRowCache getRowCache(Get get) {
+		if (rowCache != null && HbaseRowCache.isCacheable(get)) {
+			return rowCache;
+		}
+		long end = get.getTimeRange().getMax();
+		if (!snapshots.isEmpty() && end != HConstants.LATEST_TIMESTAMP) {
+			PinnedSnapshot snapshot = snapshots.get(end - 1);
+			if (snapshot != null && HbaseRowCache.isCacheable(get, end - 1)) {
+				return snapshot.rows;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a {@link Get} of the whole row read by the given {@link Get}, in
+	 * the same time range
+	 */
+	protected static Get rowGet(Get get) throws IOException {
+		Get rowGet = new Get(get.getRow());
+		rowGet.setId("row");
+		rowGet.setTimeRange(get.getTimeRange().getMin(), get.getTimeRange().getMax());
+		return rowGet;
+	}
+
 	@Override
 	public Object get(InternalEObject object, EStructuralFeature feature, int index) {
 		return getAt(null, object, feature, index);
@@ -120,72 +636,118 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 
 	@Override
 	public Object getAt(Date date, InternalEObject object, EStructuralFeature feature, int index) {
+		return getAt(timestamp(date), object, feature, index);
+	}
+
+	@Override
+	public Object getAt(long timestamp, InternalEObject object, EStructuralFeature feature, int index) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
 		if (feature instanceof EAttribute) {
-			return getAt(date, tObject, (EAttribute) feature, index);
+			return getAt(toTableTimestamp(timestamp), tObject, (EAttribute) feature, index);
 		} else if (feature instanceof EReference) {
-			return getAt(date, tObject, (EReference) feature, index);
+			return getAt(toTableTimestamp(timestamp), tObject, (EReference) feature, index);
 		} else {
 			throw new IllegalArgumentException(feature.toString());
 		}
 	}
 
-	protected Object getAt(Date date, TObject object, EAttribute eAttribute, int index) {
-		Object value = getFromTable(null, date, object, eAttribute);
+	protected Object getAt(long timestamp, TObject object, EAttribute eAttribute, int index) {
 		if (!eAttribute.isMany()) {
-			return parseValue(eAttribute, (String) value);
+			return parseValue(eAttribute, (String) getFromTable(object, eAttribute, timestamp));
 		} else {
-			String[] array = (String[]) value;
-			return parseValue(eAttribute, array[index]);
+			return parseValue(eAttribute, getFromList(object, eAttribute, index, timestamp));
 		}
 	}
 
-	protected Object getAt(Date date, TObject object, EReference eReference, int index) {
-		Object value = getFromTable(null, date, object, eReference);
+	protected Object getAt(long timestamp, TObject object, EReference eReference, int index) {
 		if (!eReference.isMany()) {
-			return getEObject((String) value);
+			return getEObject((String) getFromTable(object, eReference, timestamp));
 		} else {
-			String[] array = (String[]) value;
-			return getEObject(array[index]);
+			return getEObject(getFromList(object, eReference, index, timestamp));
 		}
 	}
 
 	@Override
 	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index) {
+		return getAllBetween(startDate, endDate, object, feature, index, 0, false);
+	}
+
+	@Override
+	public SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int index, int limit, boolean descending) {
+		return getAllBetween(startTimestamp(startDate), timestamp(endDate), object, feature, index, limit, descending).toSortedMap();
+	}
+
+	@Override
+	public THistory<Object> getAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, int limit, boolean descending) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
 		if (feature instanceof EAttribute) {
-			return getAllBetween(startDate, endDate, tObject, (EAttribute) feature, index);
+			return toMillis(getAllBetween(toTableStartTimestamp(startTimestamp), toTableTimestamp(endTimestamp), tObject, (EAttribute) feature, index, limit, descending));
 		} else if (feature instanceof EReference) {
-			return getAllBetween(startDate, endDate, tObject, (EReference) feature, index);
+			return toMillis(getAllBetween(toTableStartTimestamp(startTimestamp), toTableTimestamp(endTimestamp), tObject, (EReference) feature, index, limit, descending));
 		} else {
 			throw new IllegalArgumentException(feature.toString());
 		}
 	}
 	
-	protected SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, TObject object, EAttribute eAttribute, int index) {
-		SortedMap<Date, Object> result = new TreeMap<>();
-		SortedMap<Long, Object> all = getAllFromTable(startDate, endDate, object, eAttribute);
-		for (Entry<Long, Object> entry : all.entrySet()) {
-			if (!eAttribute.isMany()) {
-				result.put(new Date(entry.getKey()), parseValue(eAttribute, (String) entry.getValue()));
-			} else {
-				result.put(new Date(entry.getKey()), parseValue(eAttribute, ((String[]) entry.getValue())[index]));
-			}
+	protected THistory<Object> getAllBetween(long startTimestamp, long endTimestamp, TObject object, EAttribute eAttribute, int index, int limit, boolean descending) {
+		if (!eAttribute.isMany()) {
+			THistory<Object> result = new THistory<>(descending);
+			getAllFromTable(object, eAttribute, startTimestamp, endTimestamp, limit, descending,
+					(value, timestamp) -> result.add(timestamp, parseValue(eAttribute, (String) value)));
+			return result;
+		} else {
+			return getAllFromList(object, eAttribute, startTimestamp, endTimestamp, limit, descending)
+					.map(array -> parseValue(eAttribute, index < array.length ? array[index] : null));
 		}
-		return result;
 	}
 	
-	protected SortedMap<Date, Object> getAllBetween(Date startDate, Date endDate, TObject object, EReference eReference, int index) {
-		SortedMap<Date, Object> result = new TreeMap<>();
-		SortedMap<Long, Object> all = getAllFromTable(startDate, endDate, object, eReference);
-		for (Entry<Long, Object> entry : all.entrySet()) {
-			if (!eReference.isMany()) {
-				result.put(new Date(entry.getKey()), getEObject((String) entry.getValue()));
-			} else {
-				result.put(new Date(entry.getKey()), getEObject(((String[]) entry.getValue())[index]));
-			}
+	protected THistory<Object> getAllBetween(long startTimestamp, long endTimestamp, TObject object, EReference eReference, int index, int limit, boolean descending) {
+		if (!eReference.isMany()) {
+			THistory<String> all = new THistory<>(descending);
+			getAllFromTable(object, eReference, startTimestamp, endTimestamp, limit, descending,
+					(value, timestamp) -> all.add(timestamp, (String) value));
+			Map<String, EClass> eClasses = resolveUnloadedInstancesOf(Collections.singletonList(all.getValueList().toArray(new String[all.size()])));
+			return all.map(id -> getEObject(id, eClasses));
+		} else {
+			return getAllFromList(object, eReference, startTimestamp, endTimestamp, limit, descending)
+					.map(array -> getEObject(index < array.length ? array[index] : null));
+		}
+	}
+
+	@Override
+	public THistoryCursor<Object> getAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int index, boolean descending) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		if (feature instanceof EAttribute) {
+			return toMillis(getAllBetweenCursor(toTableStartTimestamp(startTimestamp), toTableTimestamp(endTimestamp), tObject, (EAttribute) feature, index, descending));
+		} else if (feature instanceof EReference) {
+			return toMillis(getAllBetweenCursor(toTableStartTimestamp(startTimestamp), toTableTimestamp(endTimestamp), tObject, (EReference) feature, index, descending));
+		} else {
+			throw new IllegalArgumentException(feature.toString());
+		}
+	}
+
+	protected THistoryCursor<Object> getAllBetweenCursor(long startTimestamp, long endTimestamp, TObject object, EAttribute eAttribute, int index, boolean descending) {
+		if (!eAttribute.isMany()) {
+			return openHistory(object, Bytes.toBytes(eAttribute.getName()), startTimestamp, endTimestamp, descending)
+					.map(cell -> parseValue(eAttribute, Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength())));
+		} else {
+			return openAllFromList(object, eAttribute, startTimestamp, endTimestamp, descending)
+					.map(array -> parseValue(eAttribute, index < array.length ? array[index] : null));
+		}
+	}
+
+	protected THistoryCursor<Object> getAllBetweenCursor(long startTimestamp, long endTimestamp, TObject object, EReference eReference, int index, boolean descending) {
+		if (!eReference.isMany()) {
+			return openHistory(object, Bytes.toBytes(eReference.getName()), startTimestamp, endTimestamp, descending)
+					.map(cell -> Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()))
+					.mapPages(page -> {
+						Map<String, EClass> eClasses = resolveUnloadedInstancesOf(Collections.singletonList(page.getValueList().toArray(new String[page.size()])));
+						return page.map(id -> getEObject(id, eClasses));
+					});
+		} else {
+			return openAllFromList(object, eReference, startTimestamp, endTimestamp, descending)
+					.map(array -> getEObject(index < array.length ? array[index] : null));
 		}
-		return result;
 	}
 
 	@Override
@@ -203,18 +765,17 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	}
 
 	protected Object set(TObject object, EAttribute eAttribute, int index, Object value) {
-		Put put = new Put(Bytes.toBytes(object.tId()));
-		Object oldValue = isSet((InternalEObject) object, eAttribute) ? getAt(null, object, eAttribute, index) : null;
+		Object oldValue = isSet((InternalEObject) object, eAttribute) ? getAt(Long.MAX_VALUE, object, eAttribute, index) : null;
 		try {
 			if (!eAttribute.isMany()) {
+				Put put = new Put(Bytes.toBytes(object.tId()));
+				put.setId("set");
 				put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(eAttribute.getName()),
 						Bytes.toBytes(serializeValue(eAttribute, value)));
+				put(put);
 			} else {
-				String[] array = (String[]) getFromTable(object, eAttribute);
-				array[index] = serializeValue(eAttribute, value);
-				put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(eAttribute.getName()), toBytes(array));
+				listLayout.set(object, eAttribute, index, serializeValue(eAttribute, value));
 			}
-			table.put(put);
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR,
 					MessageFormat.format("Unable to set information for element ''{0}''", object));
@@ -224,7 +785,8 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 
 	protected Object set(TObject object, EReference eReference, int index, InternalTObject referencedObject) {
 		Put put = new Put(Bytes.toBytes(object.tId()));
-		Object oldValue = isSet((InternalEObject) object, eReference) ? getAt(null, object, eReference, index) : null;
+		put.setId("set");
+		Object oldValue = isSet((InternalEObject) object, eReference) ? getAt(Long.MAX_VALUE, object, eReference, index) : null;
 
 		if (referencedObject != null) {
 			updateLoadedEObjects(referencedObject);
@@ -237,15 +799,12 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 				if (referencedObject != null) {
 					put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(eReference.getName()),
 							Bytes.toBytes(referencedObject.tId()));
-					table.put(put);
+					put(put);
 				} else {
 					unset((InternalEObject) object, eReference);
 				}
 			} else {
-				String[] array = (String[]) getFromTable(object, eReference);
-				array[index] = referencedObject.tId();
-				put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(eReference.getName()), toBytes(array));
-				table.put(put);
+				listLayout.set(object, eReference, index, referencedObject.tId());
 			}
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR,
@@ -261,15 +820,18 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 
 	@Override
 	public boolean isSetAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return isSetAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public boolean isSetAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
 		try {
-			Get get = new Get(Bytes.toBytes(tObject.tId()));
-			if (date != null) {
-				get.setTimeRange(0, date.getTime() + 1);
+			if (!feature.isMany()) {
+				return isSetInTable(tObject, feature, toTableTimestamp(timestamp));
+			} else {
+				return listLayout.isSet(tObject, feature, toTableTimestamp(timestamp));
 			}
-			Result result = table.get(get);
-			byte[] value = result.getValue(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()));
-			return value != null;
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR,
 					MessageFormat.format("Unable to get information for element ''{0}''", tObject));
@@ -293,14 +855,7 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 
 	protected void add(TObject object, EAttribute eAttribute, int index, Object value) {
 		try {
-			Put put = new Put(Bytes.toBytes(object.tId()));
-			String[] array = (String[]) getFromTable(object, eAttribute);
-			if (array == null) {
-				array = new String[] {};
-			}
-			array = (String[]) ArrayUtils.add(array, index, serializeValue(eAttribute, value));
-			put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(eAttribute.getName()), toBytes(array));
-			table.put(put);
+			listLayout.add(object, eAttribute, index, serializeValue(eAttribute, value));
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format(
 					"Unable to add ''{0}'' to ''{1}'' for element ''{2}''", value, eAttribute.getName(), object));
@@ -309,17 +864,10 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 
 	protected void add(TObject object, EReference eReference, int index, InternalTObject referencedObject) {
 		try {
-			Put put = new Put(Bytes.toBytes(object.tId()));
 			updateLoadedEObjects(referencedObject);
 			updateContainment(object, eReference, referencedObject);
 			updateInstanceOf(referencedObject);
-			String[] array = (String[]) getFromTable(object, eReference);
-			if (array == null) {
-				array = new String[] {};
-			}
-			array = (String[]) ArrayUtils.add(array, index, referencedObject.tId());
-			put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(eReference.getName()), toBytes(array));
-			table.put(put);
+			listLayout.add(object, eReference, index, referencedObject.tId());
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR,
 					MessageFormat.format("Unable to add ''{0}'' to ''{1}'' for element ''{2}''", referencedObject,
@@ -341,13 +889,9 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	}
 
 	protected Object remove(TObject object, EAttribute eAttribute, int index) {
-		Put put = new Put(Bytes.toBytes(object.tId()));
-		Object oldValue = getAt(null, object, eAttribute, index);
+		Object oldValue = null;
 		try {
-			String[] array = (String[]) getFromTable(object, eAttribute);
-			array = (String[]) ArrayUtils.remove(array, index);
-			put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(eAttribute.getName()), toBytes(array));
-			table.put(put);
+			oldValue = parseValue(eAttribute, listLayout.remove(object, eAttribute, index));
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to delete ''{0}[{1}''] for element ''{2}''",
 					eAttribute.getName(), index, object));
@@ -356,13 +900,9 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	}
 
 	protected Object remove(TObject object, EReference eReference, int index) {
-		Put put = new Put(Bytes.toBytes(object.tId()));
-		Object oldValue = getAt(null, object, eReference, index);
+		Object oldValue = null;
 		try {
-			String[] array = (String[]) getFromTable(object, eReference);
-			array = (String[]) ArrayUtils.remove(array, index);
-			put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(eReference.getName()), toBytes(array));
-			table.put(put);
+			oldValue = getEObject(listLayout.remove(object, eReference, index));
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to delete ''{0}[{1}''] for element ''{2}''",
 					eReference.getName(), index, object));
@@ -372,21 +912,31 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 
 	@Override
 	public Object move(InternalEObject object, EStructuralFeature feature, int targetIndex, int sourceIndex) {
-		Object movedElement = remove(object, feature, sourceIndex);
-		add(object, feature, targetIndex, movedElement);
-		return movedElement;
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		try {
+			return toValue(feature, listLayout.move(tObject, feature, targetIndex, sourceIndex));
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to move ''{0}[{1}]'' to ''{2}'' for element ''{3}''",
+					feature.getName(), sourceIndex, targetIndex, tObject));
+		}
+		return null;
 	}
 
 	@Override
 	public void unset(InternalEObject object, EStructuralFeature feature) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
-		Put put = new Put(Bytes.toBytes(tObject.tId()));
 		try {
 //			Delete delete = new Delete(Bytes.toBytes(tObject.tId()));
 //			delete.addColumn(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()));
 //			table.delete(delete);
-			put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()), null);
-			table.put(put);
+			if (!feature.isMany()) {
+				Put put = new Put(Bytes.toBytes(tObject.tId()));
+				put.setId("unset");
+				put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()), null);
+				put(put);
+			} else {
+				listLayout.unset(tObject, feature);
+			}
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR,
 					MessageFormat.format("Unable to get containment information for {0}", tObject));
@@ -400,7 +950,12 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	
 	@Override
 	public boolean isEmptyAt(Date date, InternalEObject object, EStructuralFeature feature) {
-		return sizeAt(date, object, feature) == 0;
+		return isEmptyAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public boolean isEmptyAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return sizeAt(timestamp, object, feature) == 0;
 	}
 
 	@Override
@@ -410,9 +965,19 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	
 	@Override
 	public int sizeAt(Date date, InternalEObject object, EStructuralFeature feature) {
+		return sizeAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public int sizeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
-		String[] array = (String[]) getFromTable(null, date, tObject, feature);
-		return array != null ? array.length : 0;
+		try {
+			return listLayout.size(tObject, feature, toTableTimestamp(timestamp));
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR,
+					MessageFormat.format("Unable to get property ''{0}'' for ''{1}''", feature.getName(), tObject));
+		}
+		return 0;
 	}
 
 	@Override
@@ -422,9 +987,14 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 
 	@Override
 	public boolean containsAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
-		return indexOfAt(date, object, feature, value) != -1;
+		return containsAt(timestamp(date), object, feature, value);
 	}
-	
+
+	@Override
+	public boolean containsAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
+		return indexOfAt(timestamp, object, feature, value) != -1;
+	}
+	
 	@Override
 	public int indexOf(InternalEObject object, EStructuralFeature feature, Object value) {
 		return indexOfAt(null, object, feature, value);
@@ -432,8 +1002,13 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	
 	@Override
 	public int indexOfAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		return indexOfAt(timestamp(date), object, feature, value);
+	}
+
+	@Override
+	public int indexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
-		String[] array = (String[]) getFromTable(null, date, tObject, feature);
+		String[] array = getArrayFromList(tObject, feature, toTableTimestamp(timestamp));
 		if (array == null) {
 			return -1;
 		}
@@ -452,8 +1027,13 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	
 	@Override
 	public int lastIndexOfAt(Date date, InternalEObject object, EStructuralFeature feature, Object value) {
+		return lastIndexOfAt(timestamp(date), object, feature, value);
+	}
+
+	@Override
+	public int lastIndexOfAt(long timestamp, InternalEObject object, EStructuralFeature feature, Object value) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
-		String[] array = (String[]) getFromTable(null, date, tObject, feature);
+		String[] array = getArrayFromList(tObject, feature, toTableTimestamp(timestamp));
 		if (array == null) {
 			return -1;
 		}
@@ -468,10 +1048,8 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	@Override
 	public void clear(InternalEObject object, EStructuralFeature feature) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
-		Put put = new Put(Bytes.toBytes(tObject.tId()));
 		try {
-			put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()), toBytes(new String[] {}));
-			table.put(put);
+			listLayout.clear(tObject, feature);
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR,
 					MessageFormat.format("Unable to get containment information for {0}", tObject));
@@ -485,12 +1063,14 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	
 	@Override
 	public Object[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature) {
-		int size = sizeAt(date, object, feature);
-		Object[] result = new Object[size];
-		for (int index = 0; index < size; index++) {
-			result[index] = getAt(date, object, feature, index);
-		}
-		return result;
+		return toArrayAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public Object[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		String[] array = getArrayFromList(tObject, feature, toTableTimestamp(timestamp));
+		return array != null ? toValues(feature, array) : new Object[0];
 	}
 
 	@Override
@@ -498,10 +1078,18 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 		return toArrayAt(null, object, feature, array);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T[] toArrayAt(Date date, InternalEObject object, EStructuralFeature feature, T[] array) {
-		int size = sizeAt(date, object, feature);
+		return toArrayAt(timestamp(date), object, feature, array);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T[] toArrayAt(long timestamp, InternalEObject object, EStructuralFeature feature, T[] array) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+		String[] values = getArrayFromList(tObject, feature, toTableTimestamp(timestamp));
+		Object[] objects = values != null ? toValues(feature, values) : new Object[0];
+		int size = objects.length;
 		T[] result = null;
 		if (array.length < size) {
 			result = Arrays.copyOf(array, size);
@@ -509,29 +1097,53 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 			result = array;
 		}
 		for (int index = 0; index < size; index++) {
-			result[index] = (T) getAt(date, object, feature, index);
+			result[index] = (T) objects[index];
 		}
 		return result;
 	}
 	
 	@Override
 	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature) {
+		return toArrayAllBetween(startDate, endDate, object, feature, 0, false);
+	}
+
+	@Override
+	public SortedMap<Date, Object[]> toArrayAllBetween(Date startDate, Date endDate, InternalEObject object, EStructuralFeature feature, int limit, boolean descending) {
+		return toArrayAllBetween(startTimestamp(startDate), timestamp(endDate), object, feature, limit, descending).toSortedMap();
+	}
+
+	@Override
+	public THistory<Object[]> toArrayAllBetween(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, int limit, boolean descending) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
 
-		SortedMap<Date, Object[]> result = new TreeMap<>();
-		SortedMap<Long, Object> all = getAllFromTable(startDate, endDate, tObject, feature);
+		THistory<String[]> all = toMillis(getAllFromList(tObject, feature, toTableStartTimestamp(startTimestamp), toTableTimestamp(endTimestamp), limit, descending));
 
-		for (Entry<Long, Object> entry : all.entrySet()) {
-			if (feature instanceof EAttribute) {
-				result.put(new Date(entry.getKey()), Arrays.asList((String[]) entry.getValue()).stream().map(v -> parseValue((EAttribute) feature, (String) v)).toArray());
-			} else if (feature instanceof EReference) {
-				result.put(new Date(entry.getKey()), Arrays.asList((String[]) entry.getValue()).stream().map(v -> getEObject((String) v)).toArray());
-			} else {
-				throw new IllegalArgumentException(feature.toString());
-			}
+		if (feature instanceof EAttribute) {
+			return all.map(array -> Arrays.asList(array).stream().map(v -> parseValue((EAttribute) feature, v)).toArray());
+		} else if (feature instanceof EReference) {
+			Map<String, EClass> eClasses = resolveUnloadedInstancesOf(all.getValueList());
+			return all.map(array -> Arrays.asList(array).stream().map(v -> getEObject(v, eClasses)).toArray());
+		} else {
+			throw new IllegalArgumentException(feature.toString());
+		}
+	}
+
+	@Override
+	public THistoryCursor<Object[]> toArrayAllBetweenCursor(long startTimestamp, long endTimestamp, InternalEObject object, EStructuralFeature feature, boolean descending) {
+		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
+
+		THistoryCursor<String[]> all = toMillis(openAllFromList(tObject, feature, toTableStartTimestamp(startTimestamp), toTableTimestamp(endTimestamp), descending));
+
+		if (feature instanceof EAttribute) {
+			return all.map(array -> Arrays.asList(array).stream().map(v -> parseValue((EAttribute) feature, v)).toArray());
+		} else if (feature instanceof EReference) {
+			return all.mapPages(page -> {
+				Map<String, EClass> eClasses = resolveUnloadedInstancesOf(page.getValueList());
+				return page.map(array -> Arrays.asList(array).stream().map(v -> getEObject(v, eClasses)).toArray());
+			});
+		} else {
+			throw new IllegalArgumentException(feature.toString());
 		}
-		
-		return result;
 	}
 
 	@Override
@@ -541,7 +1153,12 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	
 	@Override
 	public int hashCodeAt(Date date, InternalEObject object, EStructuralFeature feature) {
-		return toArrayAt(date, object, feature).hashCode();
+		return hashCodeAt(timestamp(date), object, feature);
+	}
+
+	@Override
+	public int hashCodeAt(long timestamp, InternalEObject object, EStructuralFeature feature) {
+		return toArrayAt(timestamp, object, feature).hashCode();
 	}
 
 	@Override
@@ -551,14 +1168,22 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 
 	@Override
 	public InternalEObject getContainerAt(Date date, InternalEObject object) {
+		return getContainerAt(timestamp(date), object);
+	}
+
+	@Override
+	public InternalEObject getContainerAt(long timestamp, InternalEObject object) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
 		
 		try {
 			Get get = new Get(Bytes.toBytes(tObject.tId()));
-			if (date != null) {
-				get.setTimeRange(0, date.getTime() + 1);
+			get.setId("getContainer");
+			get.addColumn(CONTAINMENT_FAMILY, CONTAINER_QUALIFIER);
+			get.addColumn(CONTAINMENT_FAMILY, CONTAINING_FEATURE_QUALIFIER);
+			if (timestamp != Long.MAX_VALUE) {
+				get.setTimeRange(0, endOf(toTableTimestamp(timestamp)));
 			}
-			Result result = table.get(get);
+			Result result = get(get);
 			String containerId = Bytes.toString(result.getValue(CONTAINMENT_FAMILY, CONTAINER_QUALIFIER));
 			String containingFeatureName = Bytes
 					.toString(result.getValue(CONTAINMENT_FAMILY, CONTAINING_FEATURE_QUALIFIER));
@@ -581,14 +1206,22 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 
 	@Override
 	public EStructuralFeature getContainingFeatureAt(Date date, InternalEObject object) {
+		return getContainingFeatureAt(timestamp(date), object);
+	}
+
+	@Override
+	public EStructuralFeature getContainingFeatureAt(long timestamp, InternalEObject object) {
 		TObject tObject = TObjectAdapterFactoryImpl.getAdapter(object, TObject.class);
 		
 		try {
 			Get get = new Get(Bytes.toBytes(tObject.tId()));
-			if (date != null) {
-				get.setTimeRange(0, date.getTime() + 1);
+			get.setId("getContainingFeature");
+			get.addColumn(CONTAINMENT_FAMILY, CONTAINER_QUALIFIER);
+			get.addColumn(CONTAINMENT_FAMILY, CONTAINING_FEATURE_QUALIFIER);
+			if (timestamp != Long.MAX_VALUE) {
+				get.setTimeRange(0, endOf(toTableTimestamp(timestamp)));
 			}
-			Result result = table.get(get);
+			Result result = get(get);
 			String containerId = Bytes.toString(result.getValue(CONTAINMENT_FAMILY, CONTAINER_QUALIFIER));
 			String containingFeatureName = Bytes
 					.toString(result.getValue(CONTAINMENT_FAMILY, CONTAINING_FEATURE_QUALIFIER));
@@ -613,12 +1246,22 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 
 	@Override
 	public EObject getEObject(String id) {
+		return getEObject(id, Collections.emptyMap());
+	}
+
+	/**
+	 * Returns the {@link EObject} identified by <code>id</code>, taking its
+	 * {@link EClass} from <code>eClasses</code> (as returned by
+	 * {@link #resolveInstancesOf(Collection)}) if the object is not loaded and
+	 * its {@link EClass} has already been resolved
+	 */
+	protected EObject getEObject(String id, Map<String, EClass> eClasses) {
 		if (StringUtils.isEmpty(id)) {
 			return null;
 		}
 		InternalTObject tObject = loadedEObjects.get(id);
 		if (tObject == null) {
-			EClass eClass = resolveInstanceOf(id);
+			EClass eClass = eClasses.containsKey(id) ? eClasses.get(id) : resolveInstanceOf(id);
 			if (eClass != null) {
 				EObject eObject = EcoreUtil.create(eClass);
 				if (eObject instanceof InternalTObject) {
@@ -627,11 +1270,17 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 					tObject = TObjectAdapterFactoryImpl.getAdapter(eObject, InternalTObject.class);
 				}
 				tObject.tSetId(id.toString());
+				tObject.tSetResource(getResource());
+				// Another thread may have loaded the same object meanwhile
+				InternalTObject loadedObject = loadedEObjects.putIfAbsent(id, tObject);
+				if (loadedObject != null) {
+					tObject = loadedObject;
+				}
 			} else {
 				Logger.log(Logger.SEVERITY_ERROR,
 						MessageFormat.format("Element {0} does not have an associated EClass", id));
+				return null;
 			}
-			loadedEObjects.put(id, tObject);
 		}
 		if (tObject.tResource() != getResource()) {
 			tObject.tSetResource(getResource());
@@ -639,15 +1288,23 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 		return tObject;
 	}
 
+	/**
+	 * Returns the {@link EObject}s identified by the given <code>ids</code>. The
+	 * {@link EClass}es of the objects that are not loaded yet are resolved using
+	 * a single batched request.
+	 */
+	protected EObject[] getEObjects(String[] ids) {
+		Map<String, EClass> eClasses = resolveUnloadedInstancesOf(Collections.singletonList(ids));
+		EObject[] result = new EObject[ids.length];
+		for (int index = 0; index < ids.length; index++) {
+			result[index] = getEObject(ids[index], eClasses);
+		}
+		return result;
+	}
+
 	protected EClass resolveInstanceOf(String id) {
 		try {
-			Result result = table.get(new Get(Bytes.toBytes(id)));
-			String nsURI = Bytes.toString(result.getValue(TYPE_FAMILY, METAMODEL_QUALIFIER));
-			String className = Bytes.toString(result.getValue(TYPE_FAMILY, ECLASS_QUALIFIER));
-			if (nsURI != null && className != null) {
-				EClass eClass = (EClass) Registry.INSTANCE.getEPackage(nsURI).getEClassifier(className);
-				return eClass;
-			}
+			return toEClass(get(instanceOfGet(id)));
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR,
 					MessageFormat.format("Unable to get instance of information for {0}", id));
@@ -655,6 +1312,68 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 		return null;
 	}
 
+	/**
+	 * Resolves the {@link EClass}es of the objects identified by the given
+	 * <code>ids</code> using a single batched request. Objects without an
+	 * associated {@link EClass} are mapped to <code>null</code>; if the request
+	 * fails, the returned {@link Map} is empty.
+	 */
+	protected Map<String, EClass> resolveInstancesOf(Collection<String> ids) {
+		Map<String, EClass> eClasses = new HashMap<>();
+		if (ids.isEmpty()) {
+			return eClasses;
+		}
+		List<Get> gets = new ArrayList<>(ids.size());
+		for (String id : ids) {
+			gets.add(instanceOfGet(id));
+		}
+		try {
+			Result[] results = get(gets);
+			for (int index = 0; index < results.length; index++) {
+				eClasses.put(Bytes.toString(gets.get(index).getRow()), toEClass(results[index]));
+			}
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR,
+					MessageFormat.format("Unable to get instance of information for {0} elements", ids.size()));
+		}
+		return eClasses;
+	}
+
+	/**
+	 * Resolves the {@link EClass}es of the objects referenced in the given
+	 * <code>arrays</code> that are not loaded yet
+	 *
+	 * @see #resolveInstancesOf(Collection)
+	 */
+	protected Map<String, EClass> resolveUnloadedInstancesOf(Collection<String[]> arrays) {
+		Set<String> ids = new LinkedHashSet<>();
+		for (String[] array : arrays) {
+			for (String id : array) {
+				if (!StringUtils.isEmpty(id) && !loadedEObjects.containsKey(id)) {
+					ids.add(id);
+				}
+			}
+		}
+		return resolveInstancesOf(ids);
+	}
+
+	protected static Get instanceOfGet(String id) {
+		Get get = new Get(Bytes.toBytes(id));
+		get.setId("resolveInstanceOf");
+		get.addColumn(TYPE_FAMILY, METAMODEL_QUALIFIER);
+		get.addColumn(TYPE_FAMILY, ECLASS_QUALIFIER);
+		return get;
+	}
+
+	protected static EClass toEClass(Result result) {
+		String nsURI = Bytes.toString(result.getValue(TYPE_FAMILY, METAMODEL_QUALIFIER));
+		String className = Bytes.toString(result.getValue(TYPE_FAMILY, ECLASS_QUALIFIER));
+		if (nsURI != null && className != null) {
+			return (EClass) Registry.INSTANCE.getEPackage(nsURI).getEClassifier(className);
+		}
+		return null;
+	}
+
 	protected void updateLoadedEObjects(InternalTObject eObject) {
 		loadedEObjects.put(eObject.tId(), eObject);
 	}
@@ -663,9 +1382,10 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 		if (eReference.isContainment()) {
 			try {
 				Put put = new Put(Bytes.toBytes(referencedObject.tId()));
+				put.setId("updateContainment");
 				put.addColumn(CONTAINMENT_FAMILY, CONTAINER_QUALIFIER, Bytes.toBytes(object.tId()));
 				put.addColumn(CONTAINMENT_FAMILY, CONTAINING_FEATURE_QUALIFIER, Bytes.toBytes(eReference.getName()));
-				table.put(put);
+				put(put);
 			} catch (IOException e) {
 				Logger.log(Logger.SEVERITY_ERROR,
 						MessageFormat.format("Unable to update containment information for {0}", object));
@@ -673,18 +1393,740 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 		}
 	}
 
+	/**
+	 * Writes the type of the given <code>object</code> unless it is already in
+	 * the table. Outside change sets (which may be rolled back), the objects
+	 * whose type has been checked are remembered in {@link #instancesOf}, so
+	 * that it is not checked again.
+	 */
 	protected void updateInstanceOf(TObject object) {
+		boolean cacheable = changeSets.get() == null;
+		if (cacheable && instancesOf.contains(object.tId())) {
+			return;
+		}
 		try {
 			Put put = new Put(Bytes.toBytes(object.tId()));
+			put.setId("updateInstanceOf");
 			put.addColumn(TYPE_FAMILY, METAMODEL_QUALIFIER, Bytes.toBytes(object.eClass().getEPackage().getNsURI()));
 			put.addColumn(TYPE_FAMILY, ECLASS_QUALIFIER, Bytes.toBytes(object.eClass().getName()));
-			table.checkAndPut(Bytes.toBytes(object.tId()), TYPE_FAMILY, ECLASS_QUALIFIER, null, put);
+			putInstanceOf(put);
+			if (cacheable) {
+				instancesOf.add(object.tId());
+			}
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR,
 					MessageFormat.format("Unable to update containment information for {0}", object));
 		}
 	}
 
+	/**
+	 * Writes the {@link Put} with the type of an object if its row does not
+	 * have a type yet
+	 *
+	 * @return <code>true</code> if the {@link Put} has been applied
+	 * @throws IOException
+	 */
+	protected boolean putInstanceOf(Put put) throws IOException {
+		return checkAndPut(put.getRow(), TYPE_FAMILY, ECLASS_QUALIFIER, null, put);
+	}
+
+	/**
+	 * Writes the whole state of the given objects, which are about to be
+	 * attached to the {@link #resource}, with a single {@link Put} per object:
+	 * their type, their container (if it is also one of the given objects),
+	 * and the values held by their current (transient) stores. The
+	 * {@link Put}s are sent in batches of {@link #bulkBatchSize} objects, and up
+	 * to {@link #bulkParallelism} batches are sent concurrently.
+	 * <p>
+	 * Only the objects that have never been stored are written. The rows of
+	 * the other ones (e.g., objects that had been detached from the resource)
+	 * already hold a history, so their values must be written as
+	 * modifications of it.
+	 *
+	 * @return the objects that have been written, whose values need not be
+	 *         copied into this store
+	 * @throws IOException
+	 */
+	public List<InternalTObject> bulkPersist(List<InternalTObject> objects) throws IOException {
+		if (bulkBatchSize <= 0 || objects.isEmpty()) {
+			return Collections.emptyList();
+		}
+		// Pending mutations must reach the table before it is written directly
+		flush();
+		Set<String> ids = new HashSet<>();
+		List<Get> gets = new ArrayList<>(objects.size());
+		for (InternalTObject object : objects) {
+			ids.add(object.tId());
+			gets.add(instanceOfGet(object.tId()));
+		}
+		List<InternalTObject> persisted = new ArrayList<>(objects.size());
+		List<InternalTObject> referenced = new ArrayList<>();
+		List<Put> puts = new ArrayList<>(objects.size());
+		for (int from = 0; from < objects.size(); from += bulkBatchSize) {
+			int to = Math.min(from + bulkBatchSize, objects.size());
+			Result[] results = get(gets.subList(from, to));
+			for (int index = from; index < to; index++) {
+				if (results[index - from].isEmpty()) {
+					InternalTObject object = objects.get(index);
+					puts.add(toPut(object, ids, referenced));
+					persisted.add(object);
+				}
+			}
+		}
+		writeAll(puts);
+		for (InternalTObject object : persisted) {
+			updateLoadedEObjects(object);
+		}
+		// Objects outside the tree are handled as when they are referenced
+		// from an attached object
+		for (InternalTObject object : referenced) {
+			updateLoadedEObjects(object);
+			updateInstanceOf(object);
+		}
+		return persisted;
+	}
+
+	/**
+	 * Builds the {@link Put} that writes the whole state of the given
+	 * <code>object</code>, as described in {@link #bulkPersist(List)}.
+	 * Referenced objects whose id is not in <code>ids</code> are added to
+	 * <code>referenced</code>.
+	 */
+	protected Put toPut(InternalTObject object, Set<String> ids, List<InternalTObject> referenced) {
+		Put put = new Put(Bytes.toBytes(object.tId()));
+		put.setId("bulkPersist");
+		put.addColumn(TYPE_FAMILY, METAMODEL_QUALIFIER, Bytes.toBytes(object.eClass().getEPackage().getNsURI()));
+		put.addColumn(TYPE_FAMILY, ECLASS_QUALIFIER, Bytes.toBytes(object.eClass().getName()));
+		InternalEObject container = object.eInternalContainer();
+		if (container != null) {
+			TObject tContainer = TObjectAdapterFactoryImpl.getAdapter(container, TObject.class);
+			if (ids.contains(tContainer.tId())) {
+				put.addColumn(CONTAINMENT_FAMILY, CONTAINER_QUALIFIER, Bytes.toBytes(tContainer.tId()));
+				put.addColumn(CONTAINMENT_FAMILY, CONTAINING_FEATURE_QUALIFIER, Bytes.toBytes(object.eContainmentFeature().getName()));
+			}
+		}
+		EStore source = object.eStore();
+		for (EStructuralFeature feature : object.eClass().getEAllStructuralFeatures()) {
+			if (!source.isSet(object, feature)) {
+				continue;
+			}
+			if (!feature.isMany()) {
+				String value = toSerializedValue(feature, source.get(object, feature, EStore.NO_INDEX), ids, referenced);
+				if (value != null) {
+					put.addColumn(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()), Bytes.toBytes(value));
+				}
+			} else {
+				Object[] values = source.toArray(object, feature);
+				String[] array = new String[values.length];
+				for (int index = 0; index < values.length; index++) {
+					array[index] = toSerializedValue(feature, values[index], ids, referenced);
+				}
+				listLayout.initialize(put, feature, array);
+			}
+		}
+		return put;
+	}
+
+	protected static String toSerializedValue(EStructuralFeature feature, Object value, Set<String> ids, List<InternalTObject> referenced) {
+		if (feature instanceof EAttribute) {
+			return serializeValue((EAttribute) feature, value);
+		} else if (feature instanceof EReference) {
+			InternalTObject referencedObject = TObjectAdapterFactoryImpl.getAdapter(value, InternalTObject.class);
+			if (referencedObject == null) {
+				return null;
+			}
+			if (!ids.contains(referencedObject.tId())) {
+				referenced.add(referencedObject);
+			}
+			return referencedObject.tId();
+		} else {
+			throw new IllegalArgumentException(feature.toString());
+		}
+	}
+
+	/**
+	 * Writes the given {@link Put}s directly in the {@link Table}, in batches of
+	 * {@link #bulkBatchSize}, sending up to {@link #bulkParallelism} batches
+	 * concurrently. Every concurrent batch uses its own {@link Table}, since
+	 * {@link Table}s are not thread-safe.
+	 *
+	 * @throws IOException
+	 */
+	protected void writeAll(List<Put> puts) throws IOException {
+		if (changeSets.get() != null) {
+			for (Put put : puts) {
+				put(put);
+			}
+			return;
+		}
+		List<List<Put>> batches = new ArrayList<>();
+		for (int from = 0; from < puts.size(); from += bulkBatchSize) {
+			batches.add(new ArrayList<>(puts.subList(from, Math.min(from + bulkBatchSize, puts.size()))));
+		}
+		if (batches.size() <= 1 || bulkParallelism <= 1) {
+			for (List<Put> batch : batches) {
+				write(table(), batch);
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(bulkParallelism, batches.size()));
+		try {
+			List<Future<Void>> futures = new ArrayList<>(batches.size());
+			for (List<Put> batch : batches) {
+				futures.add(executor.submit(() -> {
+					try (Table batchTable = connection.getTable(tableName)) {
+						write(batchTable, batch);
+					}
+					return null;
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(MessageFormat.format("Interrupted while writing {0} objects", puts.size()));
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	protected void write(Table table, List<Put> batch) throws IOException {
+		for (Put put : batch) {
+			stamp(put);
+		}
+		table.put(batch);
+		for (Put put : batch) {
+			statistics.recordWrite(put);
+			invalidate(put.getRow());
+		}
+	}
+
+	/**
+	 * Reads a row from the {@link Table}. All the reads performed by this store
+	 * go through this method, so that subclasses can change how (and from where)
+	 * rows are retrieved.
+	 * <p>
+	 * If the {@link #rowCache} is enabled, reads of the latest state are
+	 * answered from the cached row, which is read as a whole on the first miss.
+	 * The same applies to the reads of the state at a pinned timestamp (see
+	 * {@link #pinSnapshot(long)}).
+	 *
+	 * @param get
+	 * @return the {@link Result} of the {@link Get}
+	 * @throws IOException
+	 */
+	protected Result get(Get get) throws IOException {
+		HbaseRowCache cache = getRowCache(get);
+		if (cache != null) {
+			Result row = cache.get(get.getRow());
+			if (row == null) {
+				long version = cache.getVersion(get.getRow());
+				Get rowGet = rowGet(get);
+				row = table().get(rowGet);
+				statistics.recordRead(rowGet, row);
+				cache.put(get.getRow(), row, version);
+			}
+			return mergeChangeSet(get, HbaseRowCache.project(get, row));
+		}
+		Result result = table().get(get);
+		statistics.recordRead(get, result);
+		return mergeChangeSet(get, result);
+	}
+
+	/**
+	 * Reads a batch of {@link Get}s from the {@link Table} with a single call,
+	 * answering from the cached rows those that can be, as {@link #get(Get)}
+	 * does.
+	 *
+	 * @param gets
+	 * @return the {@link Result}s of the {@link Get}s, in the same order
+	 * @throws IOException
+	 */
+	protected Result[] get(List<Get> gets) throws IOException {
+		Result[] results = new Result[gets.size()];
+		List<Get> tableGets = new ArrayList<>(gets.size());
+		List<Integer> indexes = new ArrayList<>(gets.size());
+		List<HbaseRowCache> caches = new ArrayList<>(gets.size());
+		List<Long> versions = new ArrayList<>(gets.size());
+		for (int index = 0; index < gets.size(); index++) {
+			Get get = gets.get(index);
+			HbaseRowCache cache = getRowCache(get);
+			if (cache != null) {
+				long version = cache.getVersion(get.getRow());
+				Result row = cache.get(get.getRow());
+				if (row != null) {
+					results[index] = HbaseRowCache.project(get, row);
+					continue;
+				}
+				tableGets.add(rowGet(get));
+				versions.add(version);
+			} else {
+				tableGets.add(get);
+				versions.add(0L);
+			}
+			caches.add(cache);
+			indexes.add(index);
+		}
+		if (!tableGets.isEmpty()) {
+			Result[] tableResults = table().get(tableGets);
+			for (int index = 0; index < tableResults.length; index++) {
+				Get tableGet = tableGets.get(index);
+				Get get = gets.get(indexes.get(index));
+				statistics.recordRead(tableGet, tableResults[index]);
+				if (caches.get(index) != null) {
+					caches.get(index).put(get.getRow(), tableResults[index], versions.get(index));
+					results[indexes.get(index)] = HbaseRowCache.project(get, tableResults[index]);
+				} else {
+					results[indexes.get(index)] = tableResults[index];
+				}
+			}
+		}
+		if (changeSets.get() != null) {
+			for (int index = 0; index < results.length; index++) {
+				results[index] = mergeChangeSet(gets.get(index), results[index]);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Opens a scanner on the {@link Table}. As {@link #get(Get)}, all the scans
+	 * performed by this store go through this method, and their {@link Result}s
+	 * are read with {@link #next(ResultScanner, Scan)}. Scans are never answered
+	 * from the cached rows, and do not see the modifications of the current
+	 * change set.
+	 *
+	 * @param scan
+	 * @return the {@link ResultScanner}, which must be closed by the caller
+	 * @throws IOException
+	 */
+	protected ResultScanner getScanner(Scan scan) throws IOException {
+		return table().getScanner(scan);
+	}
+
+	/**
+	 * Reads the next {@link Result} of a scanner opened by
+	 * {@link #getScanner(Scan)}
+	 *
+	 * @param scanner
+	 * @param scan
+	 *            the {@link Scan} the scanner was opened with
+	 * @return the next {@link Result}, or <code>null</code> if the scanner is
+	 *         exhausted
+	 * @throws IOException
+	 */
+	protected Result next(ResultScanner scanner, Scan scan) throws IOException {
+		Result result = scanner.next();
+		if (result != null) {
+			statistics.recordRead(scan, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes a {@link Put} in the {@link Table}. All the writes performed by this
+	 * store go through this method, so that subclasses can change how (and when)
+	 * mutations are sent to the region servers.
+	 *
+	 * @param put
+	 * @throws IOException
+	 */
+	protected void put(Put put) throws IOException {
+		ChangeSet changeSet = changeSets.get();
+		if (changeSet != null) {
+			addCells(changeSet.cells, put);
+			return;
+		}
+		stamp(put);
+		table().put(put);
+		statistics.recordWrite(put);
+		invalidate(put.getRow());
+	}
+
+	/**
+	 * Atomically writes the {@link Put} if the current value of the given column
+	 * matches the expected <code>value</code> (<code>null</code> meaning that the
+	 * column must not exist).
+	 * <p>
+	 * Within a change set, the check is made against the state seen by the
+	 * change set and, unless the column has already been written by the change
+	 * set, it is repeated atomically when the change set is committed, so that
+	 * the {@link Put} is not applied if another writer has modified the column
+	 * in the meantime.
+	 *
+	 * @return <code>true</code> if the {@link Put} has been applied
+	 * @throws IOException
+	 */
+	protected boolean checkAndPut(byte[] row, byte[] family, byte[] qualifier, byte[] value, Put put) throws IOException {
+		ChangeSet changeSet = changeSets.get();
+		if (changeSet != null) {
+			Condition condition = changeSet.conditionOf(row, family, qualifier);
+			boolean committed = condition == null && !changeSet.contains(row, family, qualifier);
+			if (!matches(row, family, qualifier, value)) {
+				return false;
+			}
+			if (committed) {
+				condition = new Condition(family, qualifier, value);
+				changeSet.conditions.computeIfAbsent(row, key -> new ArrayList<>(2)).add(condition);
+			}
+			addCells(changeSet.cells, put);
+			if (condition != null) {
+				changeSet.claim(condition, put);
+			}
+			return true;
+		}
+		stamp(put);
+		statistics.recordWrite(put);
+		try {
+			return table().checkAndPut(row, family, qualifier, value, put);
+		} finally {
+			invalidate(row);
+		}
+	}
+
+	/**
+	 * Whether the current value of the given column, as read by this store,
+	 * matches the expected <code>value</code> (<code>null</code> meaning that
+	 * the column must not exist)
+	 */
+	protected boolean matches(byte[] row, byte[] family, byte[] qualifier, byte[] value) throws IOException {
+		Get get = new Get(row);
+		get.setId("checkAndPut");
+		get.addColumn(family, qualifier);
+		Result result = get(get);
+		byte[] current = result.getValue(family, qualifier);
+		return value == null ? current == null : Arrays.equals(value, current);
+	}
+
+	/**
+	 * Assigns the next timestamp of the {@link #clock} (if any) to all the cells
+	 * of the {@link Put} that do not have an explicit timestamp, so that they
+	 * are written as a single, new version. Must be called before the
+	 * {@link Put} is sent.
+	 */
+	protected void stamp(Put put) throws IOException {
+		if (clock != null) {
+			long timestamp = clock.next();
+			for (List<Cell> cells : put.getFamilyCellMap().values()) {
+				for (Cell cell : cells) {
+					CellUtil.updateLatestStamp(cell, timestamp);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards any cached information about the given <code>row</code>. Must be
+	 * called whenever the <code>row</code> is modified.
+	 */
+	protected void invalidate(byte[] row) {
+		if (rowCache != null) {
+			rowCache.invalidate(row);
+		}
+	}
+
+	/**
+	 * Adds the cells of the {@link Put} to the given <code>cells</code>, indexed
+	 * by row, family and qualifier, replacing the previous cells of the same
+	 * columns
+	 */
+	protected static void addCells(NavigableMap<byte[], NavigableMap<byte[], NavigableMap<byte[], Cell>>> cells, Put put) {
+		NavigableMap<byte[], NavigableMap<byte[], Cell>> rowCells = cells.get(put.getRow());
+		if (rowCells == null) {
+			rowCells = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+			cells.put(put.getRow(), rowCells);
+		}
+		for (Entry<byte[], List<Cell>> entry : put.getFamilyCellMap().entrySet()) {
+			NavigableMap<byte[], Cell> familyCells = rowCells.get(entry.getKey());
+			if (familyCells == null) {
+				familyCells = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+				rowCells.put(entry.getKey(), familyCells);
+			}
+			for (Cell cell : entry.getValue()) {
+				familyCells.put(CellUtil.cloneQualifier(cell), cell);
+			}
+		}
+	}
+
+	/**
+	 * Whether the cells that have not been sent yet can be merged into the
+	 * {@link Result} of the given {@link Get}. Only reads of the latest version
+	 * of the columns, either without {@link Get#getFilter() filters} or with a
+	 * {@link ColumnPrefixFilter} or {@link ColumnRangeFilter}, can be merged.
+	 */
+	protected boolean isMergeable(Get get) {
+		return get.getTimeRange().getMax() == HConstants.LATEST_TIMESTAMP && get.getMaxVersions() == 1
+				&& (get.getFilter() == null || get.getFilter() instanceof ColumnPrefixFilter || get.getFilter() instanceof ColumnRangeFilter);
+	}
+
+	/**
+	 * Returns the {@link Result} of the given {@link Get} with the cells of the
+	 * same row that have not been sent yet (<code>rowCells</code>), which
+	 * replace those of the same columns
+	 */
+	protected Result merge(Get get, Result result, NavigableMap<byte[], NavigableMap<byte[], Cell>> rowCells) {
+		List<Cell> cells = new ArrayList<>();
+		if (!result.isEmpty()) {
+			for (Cell cell : result.rawCells()) {
+				NavigableMap<byte[], Cell> familyCells = rowCells.get(CellUtil.cloneFamily(cell));
+				if (familyCells == null || !familyCells.containsKey(CellUtil.cloneQualifier(cell))) {
+					cells.add(cell);
+				}
+			}
+		}
+		for (Entry<byte[], NavigableMap<byte[], Cell>> familyEntry : rowCells.entrySet()) {
+			for (Entry<byte[], Cell> entry : familyEntry.getValue().entrySet()) {
+				if (isRequested(get, familyEntry.getKey(), entry.getKey())) {
+					cells.add(entry.getValue());
+				}
+			}
+		}
+		Collections.sort(cells, KeyValue.COMPARATOR);
+		return Result.create(cells);
+	}
+
+	/**
+	 * Merges the cells written by the current change set (if any) into the
+	 * {@link Result} of the given {@link Get}, if it reads the latest state of
+	 * the row. Historical reads only see the committed change sets.
+	 */
+	protected Result mergeChangeSet(Get get, Result result) {
+		ChangeSet changeSet = changeSets.get();
+		if (changeSet == null) {
+			return result;
+		}
+		NavigableMap<byte[], NavigableMap<byte[], Cell>> rowCells = changeSet.cells.get(get.getRow());
+		return rowCells != null && isMergeable(get) ? merge(get, result, rowCells) : result;
+	}
+
+	/**
+	 * Whether the column identified by <code>family</code> and
+	 * <code>qualifier</code> is requested by the given {@link Get}, taking into
+	 * account its column prefix or range filter, if any
+	 */
+	protected static boolean isRequested(Get get, byte[] family, byte[] qualifier) {
+		Map<byte[], NavigableSet<byte[]>> familyMap = get.getFamilyMap();
+		Filter filter = get.getFilter();
+		if (filter instanceof ColumnPrefixFilter && !Bytes.startsWith(qualifier, ((ColumnPrefixFilter) filter).getPrefix())) {
+			return false;
+		} else if (filter instanceof ColumnRangeFilter && !isInRange((ColumnRangeFilter) filter, qualifier)) {
+			return false;
+		} else if (familyMap.isEmpty()) {
+			return true;
+		} else if (!familyMap.containsKey(family)) {
+			return false;
+		} else {
+			NavigableSet<byte[]> qualifiers = familyMap.get(family);
+			return qualifiers == null || qualifiers.isEmpty() || qualifiers.contains(qualifier);
+		}
+	}
+
+	protected static boolean isInRange(ColumnRangeFilter filter, byte[] qualifier) {
+		if (filter.getMinColumn() != null) {
+			int comparison = Bytes.compareTo(qualifier, filter.getMinColumn());
+			if (comparison < 0 || (comparison == 0 && !filter.getMinColumnInclusive())) {
+				return false;
+			}
+		}
+		if (filter.getMaxColumn() != null) {
+			int comparison = Bytes.compareTo(qualifier, filter.getMaxColumn());
+			if (comparison > 0 || (comparison == 0 && !filter.getMaxColumnInclusive())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Makes sure that all the mutations issued so far have been persisted. Since
+	 * this store writes directly to the {@link Table}, this is a no-op.
+	 *
+	 * @throws IOException
+	 *             if any of the pending mutations could not be persisted
+	 */
+	public void flush() throws IOException {
+	}
+
+	/**
+	 * Starts a change set of the calling thread: the modifications it makes
+	 * until {@link #commitChangeSet()} is called are kept in memory (and only
+	 * seen by its own reads of the latest state of this store), and are then
+	 * written with the same timestamp, so that the state of the resource at any
+	 * timestamp includes either all or none of the modifications of every row.
+	 *
+	 * @throws IllegalStateException
+	 *             if the calling thread has already started a change set
+	 */
+	public void beginChangeSet() throws IOException {
+		if (changeSets.get() != null) {
+			throw new IllegalStateException(MessageFormat.format("A change set of ''{0}'' is already in progress", tableName));
+		}
+		changeSets.set(new ChangeSet());
+	}
+
+	/**
+	 * Writes the modifications of the change set of the calling thread with a
+	 * single timestamp. The timestamp is assigned by the {@link #clock} when
+	 * using {@link TimestampMode#HYBRID_LOGICAL}, or taken from the clock of the
+	 * client otherwise (which must then be synchronized with the region
+	 * servers).
+	 * <p>
+	 * HBase only supports atomic mutations of single rows, so every row is
+	 * written on its own: the rows without conditional writes are sent as a
+	 * batch of {@link Put}s, and the cells written under every
+	 * {@link Condition} are sent with a
+	 * {@link Table#checkAndMutate(byte[], byte[], byte[], CompareOp, byte[], RowMutations)
+	 * checkAndMutate}, so that they are not applied if another writer has
+	 * modified the checked column since the change set read it. Thus, a failure
+	 * can leave some of the rows written and the others untouched, which is
+	 * reported by a {@link ChangeSetCommitException}.
+	 *
+	 * @return the timestamp of the change set
+	 * @throws IllegalStateException
+	 *             if the calling thread has not started a change set
+	 * @throws ChangeSetCommitException
+	 *             if some of the rows could not be written (or their checks did
+	 *             not hold), which reports the rows that have been written and
+	 *             those that have not. The change set is ended anyway.
+	 */
+	public long commitChangeSet() throws IOException {
+		ChangeSet changeSet = changeSets.get();
+		if (changeSet == null) {
+			throw new IllegalStateException(MessageFormat.format("There is no change set of ''{0}'' in progress", tableName));
+		}
+		changeSets.remove();
+		long timestamp = clock != null ? clock.next() : System.currentTimeMillis();
+		List<Put> puts = new ArrayList<>(changeSet.cells.size());
+		Set<String> writtenRows = new LinkedHashSet<>();
+		Set<String> failedRows = new LinkedHashSet<>();
+		IOException cause = null;
+		try {
+			for (Entry<byte[], NavigableMap<byte[], NavigableMap<byte[], Cell>>> rowEntry : changeSet.cells.entrySet()) {
+				List<Condition> rowConditions = changeSet.conditions.get(rowEntry.getKey());
+				if (rowConditions == null) {
+					puts.add(toPut(rowEntry.getKey(), rowEntry.getValue(), changeSet, null, true, timestamp));
+					continue;
+				}
+				for (int index = 0; index < rowConditions.size(); index++) {
+					Condition condition = rowConditions.get(index);
+					// The cells written unconditionally go with the first condition
+					RowMutations mutations = toRowMutations(rowEntry.getKey(), rowEntry.getValue(), changeSet, condition, index == 0, timestamp);
+					String row = Bytes.toString(rowEntry.getKey());
+					try {
+						for (Mutation mutation : mutations.getMutations()) {
+							statistics.recordWrite(mutation);
+						}
+						if (table().checkAndMutate(rowEntry.getKey(), condition.family, condition.qualifier, CompareOp.EQUAL, condition.value, mutations)) {
+							writtenRows.add(row);
+						} else {
+							failedRows.add(row);
+						}
+					} catch (IOException e) {
+						failedRows.add(row);
+						cause = cause == null ? e : cause;
+					}
+				}
+			}
+			if (!puts.isEmpty()) {
+				Object[] results = new Object[puts.size()];
+				try {
+					table().batch(puts, results);
+				} catch (IOException e) {
+					cause = cause == null ? e : cause;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					cause = cause == null ? new InterruptedIOException(e.getMessage()) : cause;
+				}
+				for (int index = 0; index < results.length; index++) {
+					Put put = puts.get(index);
+					statistics.recordWrite(put);
+					if (results[index] instanceof Result) {
+						writtenRows.add(Bytes.toString(put.getRow()));
+					} else {
+						failedRows.add(Bytes.toString(put.getRow()));
+					}
+				}
+			}
+		} finally {
+			for (byte[] row : changeSet.cells.keySet()) {
+				invalidate(row);
+			}
+		}
+		if (!failedRows.isEmpty()) {
+			ChangeSetCommitException exception = new ChangeSetCommitException(
+					MessageFormat.format("Unable to commit the change set of ''{0}'': {1} row(s) written, {2} row(s) failed", tableName,
+							writtenRows.size(), failedRows.size()),
+					toMillis(timestamp), new ArrayList<>(writtenRows), new ArrayList<>(failedRows), cause);
+			Logger.log(Logger.SEVERITY_ERROR, exception);
+			throw exception;
+		}
+		return toMillis(timestamp);
+	}
+
+	/**
+	 * Returns a {@link Put} that writes the given cells of the
+	 * <code>row</code>, written under the given <code>condition</code> (or
+	 * under none, if it is <code>null</code>) or also unconditionally, if
+	 * <code>unconditional</code> is <code>true</code>, with the given
+	 * <code>timestamp</code>
+	 */
+	protected static Put toPut(byte[] row, NavigableMap<byte[], NavigableMap<byte[], Cell>> rowCells, ChangeSet changeSet, Condition condition,
+			boolean unconditional, long timestamp) {
+		Put put = new Put(row, timestamp);
+		for (Entry<byte[], NavigableMap<byte[], Cell>> familyEntry : rowCells.entrySet()) {
+			for (Entry<byte[], Cell> entry : familyEntry.getValue().entrySet()) {
+				Condition owner = changeSet.conditionOf(row, familyEntry.getKey(), entry.getKey());
+				if (owner == condition || (unconditional && owner == null)) {
+					put.addColumn(familyEntry.getKey(), entry.getKey(), CellUtil.cloneValue(entry.getValue()));
+				}
+			}
+		}
+		return put;
+	}
+
+	/**
+	 * Returns the {@link RowMutations} that write the cells of the
+	 * <code>row</code> written under the given <code>condition</code> (see
+	 * {@link #toPut(byte[], NavigableMap, ChangeSet, Condition, boolean, long)}).
+	 * If there are none (since later writes have taken them over), the checked
+	 * column is rewritten with its expected value, so that the check is still
+	 * made.
+	 */
+	protected static RowMutations toRowMutations(byte[] row, NavigableMap<byte[], NavigableMap<byte[], Cell>> rowCells, ChangeSet changeSet, Condition condition,
+			boolean unconditional, long timestamp) throws IOException {
+		RowMutations mutations = new RowMutations(row);
+		Put put = toPut(row, rowCells, changeSet, condition, unconditional, timestamp);
+		if (!put.isEmpty()) {
+			mutations.add(put);
+		} else if (condition.value != null) {
+			mutations.add(new Put(row, timestamp).addColumn(condition.family, condition.qualifier, condition.value));
+		} else {
+			mutations.add(new Delete(row).addColumns(condition.family, condition.qualifier, timestamp));
+		}
+		return mutations;
+	}
+
+	/**
+	 * Flushes any pending mutation and releases the {@link Table} used by this
+	 * store. The store can not be used after it has been closed.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			Table threadTable;
+			while ((threadTable = openTables.poll()) != null) {
+				threadTable.close();
+			}
+			table.close();
+		}
+	}
+
 	protected static Object parseValue(EAttribute eAttribute, String value) {
 		return value != null ? EcoreUtil.createFromString(eAttribute.getEAttributeType(), value) : null;
 	}
@@ -693,6 +2135,124 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 		return value != null ? EcoreUtil.convertToString(eAttribute.getEAttributeType(), value) : null;
 	}
 
+	/**
+	 * Resolves the serialized <code>values</code> of the given
+	 * {@link EStructuralFeature}, as {@link #toValue(EStructuralFeature, String)}
+	 * does, but resolving the referenced {@link EObject}s in a single batch
+	 */
+	protected Object[] toValues(EStructuralFeature feature, String[] values) {
+		if (feature instanceof EReference) {
+			return getEObjects(values);
+		}
+		Object[] result = new Object[values.length];
+		for (int index = 0; index < values.length; index++) {
+			result[index] = toValue(feature, values[index]);
+		}
+		return result;
+	}
+
+	/**
+	 * Resolves the serialized <code>value</code> of the given
+	 * {@link EStructuralFeature}, i.e., parses the value of an {@link EAttribute}
+	 * or gets the {@link EObject} identified by the value of an
+	 * {@link EReference}
+	 */
+	protected Object toValue(EStructuralFeature feature, String value) {
+		if (feature instanceof EAttribute) {
+			return parseValue((EAttribute) feature, value);
+		} else if (feature instanceof EReference) {
+			return getEObject(value);
+		} else {
+			throw new IllegalArgumentException(feature.toString());
+		}
+	}
+
+	/**
+	 * Returns the timestamp of the given {@link Date}, being <code>null</code>
+	 * the latest possible time
+	 */
+	protected static long timestamp(Date date) {
+		return date != null ? date.getTime() : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the timestamp of the given {@link Date}, being <code>null</code>
+	 * the epoch time
+	 */
+	protected static long startTimestamp(Date date) {
+		return date != null ? date.getTime() : 0;
+	}
+
+	/**
+	 * Returns the latest timestamp of the table within the given millisecond
+	 * since the epoch, being {@link Long#MAX_VALUE} the latest possible time.
+	 * <p>
+	 * The timestamps of the {@link TStore} methods are always expressed in
+	 * milliseconds, while those of the table are the ones of the
+	 * {@link #clock} when using {@link TimestampMode#HYBRID_LOGICAL}: the
+	 * public methods convert them with this method,
+	 * {@link #toTableStartTimestamp(long)} and {@link #toMillis(long)}, and the
+	 * protected methods and the {@link HbaseListLayout}s work with the
+	 * timestamps of the table.
+	 */
+	public long toTableTimestamp(long millis) {
+		return clock != null ? HybridLogicalClock.toTimestamp(millis) : millis;
+	}
+
+	/**
+	 * Returns the earliest timestamp of the table within the given millisecond
+	 * since the epoch
+	 * 
+	 * @see #toTableTimestamp(long)
+	 */
+	public long toTableStartTimestamp(long millis) {
+		return clock != null ? HybridLogicalClock.toStartTimestamp(millis) : millis;
+	}
+
+	/**
+	 * Returns the millisecond since the epoch of the given timestamp of the
+	 * table
+	 * 
+	 * @see #toTableTimestamp(long)
+	 */
+	public long toMillis(long tableTimestamp) {
+		return clock != null ? HybridLogicalClock.toMillis(tableTimestamp) : tableTimestamp;
+	}
+
+	/**
+	 * Returns the given <code>history</code> of the table with its timestamps
+	 * in milliseconds since the epoch, in which the versions written within
+	 * the same millisecond share their timestamp
+	 */
+	protected <V> THistory<V> toMillis(THistory<V> history) {
+		if (clock == null) {
+			return history;
+		}
+		THistory<V> result = new THistory<>(history.isDescending(), history.size());
+		for (int index = 0; index < history.size(); index++) {
+			result.add(HybridLogicalClock.toMillis(history.getTimestamp(index)), history.getValue(index));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the given <code>cursor</code> over the history of the table with
+	 * its timestamps in milliseconds since the epoch
+	 * 
+	 * @see #toMillis(THistory)
+	 */
+	protected <V> THistoryCursor<V> toMillis(THistoryCursor<V> cursor) {
+		return clock != null ? cursor.mapPages(this::toMillis) : cursor;
+	}
+
+	/**
+	 * Returns the (exclusive) upper bound of the time range that includes the
+	 * given <code>timestamp</code>
+	 */
+	protected static long endOf(long timestamp) {
+		return timestamp != Long.MAX_VALUE ? timestamp + 1 : Long.MAX_VALUE;
+	}
+
 	/**
 	 * Gets the latest value for {@link EStructuralFeature} {@code feature} from the
 	 * {@link Table} for the {@link TObject} {@code object}
@@ -704,31 +2264,32 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 	 *         many-valued {@link EStructuralFeature}s
 	 */
 	protected Object getFromTable(TObject object, EStructuralFeature feature) {
-		return getFromTable(null, null, object, feature);
+		return getFromTable(object, feature, Long.MAX_VALUE);
 	}
 	
 	/**
-	 * Gets the latest value for {@link EStructuralFeature} {@code feature} from the
-	 * {@link Table} for the {@link TObject} {@code object} between
-	 * <code>startDate</code> and <code>endDate</code>. 
+	 * Gets the value for {@link EStructuralFeature} {@code feature} from the
+	 * {@link Table} for the {@link TObject} {@code object} at the given
+	 * <code>timestamp</code>. Many-valued {@link EStructuralFeature}s are only
+	 * stored in a single cell when using {@link ListLayout#SERIALIZED}; otherwise,
+	 * use {@link #listLayout}.
 	 * 
-	 * @param startDate
-	 *            the start moment, or <code>null</code> to indicate epoch time
-	 * @param endDate
-	 *            the end moment or <code>null</null> to indicate the latest possible time.
 	 * @param object
 	 * @param feature
+	 * @param timestamp
+	 *            the moment (inclusive), or {@link Long#MAX_VALUE} to indicate the
+	 *            latest possible time
 	 * @return The value of the {@code feature}. It can be a {@link String} for
 	 *         single-valued {@link EStructuralFeature}s or a {@link String}[] for
 	 *         many-valued {@link EStructuralFeature}s
 	 */
-	protected Object getFromTable(Date startDate, Date endDate, TObject object, EStructuralFeature feature) {
-		long start = startDate != null ? startDate.getTime() : 0;
-		long end = endDate != null && endDate.getTime() != Long.MAX_VALUE ? endDate.getTime() + 1 : Long.MAX_VALUE;
+	protected Object getFromTable(TObject object, EStructuralFeature feature, long timestamp) {
 		try {
 			Get get = new Get(Bytes.toBytes(object.tId()));
-			get.setTimeRange(start, end);
-			Result result = table.get(get);
+			get.setId("getFromTable");
+			get.addColumn(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()));
+			get.setTimeRange(0, endOf(timestamp));
+			Result result = get(get);
 			byte[] bytes = result.getValue(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()));
 			if (!feature.isMany()) {
 				return bytes != null && bytes.length > 0 ? Bytes.toString(bytes) : null;
@@ -741,93 +2302,229 @@ public class DirectWriteHbaseResourceTStoreImpl implements SearcheableResourceTS
 		}
 		return null;
 	}
-	
+
+	/**
+	 * Whether the cell of {@link EStructuralFeature} {@code feature} of the
+	 * {@link TObject} {@code object} has a (non-empty) value at the given
+	 * <code>timestamp</code>
+	 */
+	protected boolean isSetInTable(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		Get get = new Get(Bytes.toBytes(object.tId()));
+		get.setId("isSet");
+		get.addColumn(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()));
+		get.setTimeRange(0, endOf(timestamp));
+		Result result = get(get);
+		byte[] value = result.getValue(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()));
+		return value != null && value.length > 0;
+	}
 
 	/**
 	 * Gets all the values for {@link EStructuralFeature} {@code feature} from the
 	 * {@link Table} for the {@link TObject} {@code object} between
-	 * <code>startDate</code> and <code>endDate</code>.
+	 * <code>startTimestamp</code> and <code>endTimestamp</code>.
 	 * 
-	 * @param startDate
-	 *            the start moment, or <code>null</code> to indicate epoch time
-	 * @param endDate
-	 *            the end moment or <code>null</null> to indicate the latest
-	 *            possible time.
 	 * @param object
 	 * @param feature
-	 * @return The values of the {@code feature}. It can be a {@link String}[] for
-	 *         single-valued {@link EStructuralFeature}s or a {@link String}[][] for
-	 *         many-valued {@link EStructuralFeature}s
+	 * @param startTimestamp
+	 *            the start moment (inclusive), or <code>0</code> to indicate
+	 *            epoch time
+	 * @param endTimestamp
+	 *            the end moment (inclusive), or {@link Long#MAX_VALUE} to indicate
+	 *            the latest possible time.
+	 * @param consumer
+	 *            receives the values of the {@code feature} and their
+	 *            timestamps. Values can be {@link String}s for single-valued
+	 *            {@link EStructuralFeature}s or {@link String}[]s for many-valued
+	 *            {@link EStructuralFeature}s
 	 */
-	protected SortedMap<Long, Object> getAllFromTable(Date startDate, Date endDate, TObject object, EStructuralFeature feature) {
-		long start = startDate != null ? startDate.getTime() : 0;
-		long end = endDate != null && endDate.getTime() != Long.MAX_VALUE ? endDate.getTime() + 1 : Long.MAX_VALUE;
-		SortedMap<Long, Object> resultMap = new TreeMap<>();
+	protected void getAllFromTable(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, int limit, boolean descending,
+			ObjLongConsumer<Object> consumer) {
 		try {
-			// Get the curent value at 'start'
-			{
-				Get get = new Get(Bytes.toBytes(object.tId()));
-				get.setTimeRange(0, start + 1);
-				Result result = table.get(get);
-				if (!result.isEmpty()) {
-					if (!feature.isMany()) {
-						resultMap.put(result.rawCells()[0].getTimestamp(), Bytes.toString(result.getValue(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()))));
-					} else {
-						resultMap.put(result.rawCells()[0].getTimestamp(), toStrings(result.getValue(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()))));
-					}
+			visitHistory(object, Bytes.toBytes(feature.getName()), startTimestamp, endTimestamp, limit, descending, cell -> {
+				if (!feature.isMany()) {
+					consumer.accept(Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()), cell.getTimestamp());
+				} else {
+					consumer.accept(toStrings(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()), cell.getTimestamp());
 				}
-			}
-			// Get the values between 'start' and 'end'
-			{
-				Get get = new Get(Bytes.toBytes(object.tId()));
-				get.setTimeRange(start, end);
-				get.setMaxVersions();
-				Result result = table.get(get);
-				List<Cell> columnCells = result.getColumnCells(PROPERTY_FAMILY, Bytes.toBytes(feature.getName()));
-				for (Cell cell : columnCells) {
-					if (!feature.isMany()) {
-						resultMap.put(cell.getTimestamp(), Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()));
+			});
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to get property ''{0}'' for ''{1}''", feature.getName(), object));
+		}
+	}
+
+	/**
+	 * Visits the cells of the property column identified by
+	 * <code>qualifier</code> that are in effect between <code>startTimestamp</code> and
+	 * <code>endTimestamp</code>, i.e., the cell in effect at
+	 * <code>startTimestamp</code> (if any) and all the later ones, in ascending
+	 * or <code>descending</code> order of timestamp. At most <code>limit</code>
+	 * cells are visited, unless <code>limit</code> is <code>0</code>.
+	 * <p>
+	 * The history is read in a single batched request, made of a {@link Get} of
+	 * the versions of the column written between <code>startTimestamp</code>
+	 * and <code>endTimestamp</code> (limited in the server when the newest
+	 * <code>limit</code> versions are requested), and a {@link Get} of the
+	 * latest version written before <code>startTimestamp</code>. Older versions
+	 * are not transferred, and the cells are visited without decoding or
+	 * sorting them again.
+	 */
+	protected void visitHistory(TObject object, byte[] qualifier, long startTimestamp, long endTimestamp, int limit, boolean descending,
+			Consumer<Cell> visitor) throws IOException {
+		List<Get> gets = new ArrayList<>(2);
+		{
+			Get get = new Get(Bytes.toBytes(object.tId()));
+			get.setId("history");
+			get.addColumn(PROPERTY_FAMILY, qualifier);
+			get.setTimeRange(startTimestamp, endOf(endTimestamp));
+			get.setMaxVersions(descending && limit > 0 ? limit : Integer.MAX_VALUE);
+			gets.add(get);
+		}
+		if (startTimestamp > 0) {
+			Get get = new Get(Bytes.toBytes(object.tId()));
+			get.setId("history");
+			get.addColumn(PROPERTY_FAMILY, qualifier);
+			get.setTimeRange(0, startTimestamp);
+			gets.add(get);
+		}
+
+		// Cells are sorted from the newest to the oldest; in ascending order,
+		// the visited cells are the oldest ones, which are found last
+		Deque<Cell> cells = new ArrayDeque<>();
+		int count = 0;
+		boolean inEffect = false;
+		results: for (Result result : get(gets)) {
+			if (!result.isEmpty()) {
+				for (Cell cell : result.rawCells()) {
+					if (inEffect) {
+						// A cell written exactly at 'startTimestamp' was found
+						break results;
+					}
+					inEffect = cell.getTimestamp() <= startTimestamp;
+					if (descending) {
+						if (limit > 0 && count == limit) {
+							break results;
+						}
+						visitor.accept(cell);
+						count++;
 					} else {
-						resultMap.put(cell.getTimestamp(), toStrings(cell.getValueArray()));
+						cells.push(cell);
+						if (limit > 0 && cells.size() > limit) {
+							cells.removeLast();
+						}
 					}
 				}
 			}
+		}
+		for (Cell cell : cells) {
+			visitor.accept(cell);
+		}
+	}
+
+	/**
+	 * Returns a lazy cursor over the same cells visited by
+	 * {@link #visitHistory(TObject, byte[], long, long, int, boolean, Consumer)},
+	 * which are read in pages of {@link #historyPageSize} cells as the cursor
+	 * advances.
+	 * 
+	 * @see HbaseHistoryCursor
+	 */
+	protected THistoryCursor<Cell> openHistory(TObject object, byte[] qualifier, long startTimestamp, long endTimestamp, boolean descending) {
+		return new HbaseHistoryCursor(this, Bytes.toBytes(object.tId()), qualifier, startTimestamp, endTimestamp, descending, historyPageSize);
+	}
+
+	/**
+	 * Gets the value at position <code>index</code> of the many-valued
+	 * {@link EStructuralFeature} {@code feature} at the given
+	 * <code>timestamp</code> using the {@link #listLayout}
+	 */
+	protected String getFromList(TObject object, EStructuralFeature feature, int index, long timestamp) {
+		try {
+			return listLayout.get(object, feature, index, timestamp);
 		} catch (IOException e) {
-			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to get property ''{0}'' for ''{1}''", feature.getName(), object));
+			Logger.log(Logger.SEVERITY_ERROR,
+					MessageFormat.format("Unable to get property ''{0}'' for ''{1}''", feature.getName(), object));
 		}
-		return resultMap;
+		return null;
 	}
-	
-	protected static byte[] toBytes(String[] strings) {
+
+	/**
+	 * Gets the values of the many-valued {@link EStructuralFeature}
+	 * {@code feature} at the given <code>timestamp</code> using the
+	 * {@link #listLayout}, or <code>null</code> if the feature is not set
+	 */
+	protected String[] getArrayFromList(TObject object, EStructuralFeature feature, long timestamp) {
 		try {
-			ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-			ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
-			objectOutputStream.writeObject(strings);
-			objectOutputStream.flush();
-			objectOutputStream.close();
-			return byteArrayOutputStream.toByteArray();
+			return listLayout.toArray(object, feature, timestamp);
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR,
-					MessageFormat.format("Unable to convert ''{0}'' to byte[]", strings.toString()));
+					MessageFormat.format("Unable to get property ''{0}'' for ''{1}''", feature.getName(), object));
 		}
 		return null;
 	}
 
-	protected static String[] toStrings(byte[] bytes) {
-		if (bytes == null) {
-			return null;
+	/**
+	 * Gets all the states of the many-valued {@link EStructuralFeature}
+	 * {@code feature} between <code>startTimestamp</code> and
+	 * <code>endTimestamp</code> using the {@link #listLayout}
+	 * 
+	 * @see HbaseListLayout#toArrayAllBetween(TObject, EStructuralFeature, long,
+	 *      long, int, boolean)
+	 */
+	protected THistory<String[]> getAllFromList(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, int limit, boolean descending) {
+		try {
+			return listLayout.toArrayAllBetween(object, feature, startTimestamp, endTimestamp, limit, descending);
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR,
+					MessageFormat.format("Unable to get property ''{0}'' for ''{1}''", feature.getName(), object));
 		}
-		String[] result = null;
-		ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-		try (ObjectInputStream objectInputStream = new ObjectInputStream(byteArrayInputStream)) {
-			result = (String[]) objectInputStream.readObject();
+		return new THistory<>(descending);
+	}
+
+	/**
+	 * Returns a lazy cursor over the states of the many-valued
+	 * {@link EStructuralFeature} {@code feature} between
+	 * <code>startTimestamp</code> and <code>endTimestamp</code> using the
+	 * {@link #listLayout}
+	 * 
+	 * @see HbaseListLayout#openAllBetween(TObject, EStructuralFeature, long,
+	 *      long, boolean)
+	 */
+	protected THistoryCursor<String[]> openAllFromList(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, boolean descending) {
+		try {
+			return listLayout.openAllBetween(object, feature, startTimestamp, endTimestamp, descending);
 		} catch (IOException e) {
 			Logger.log(Logger.SEVERITY_ERROR,
-					MessageFormat.format("Unable to convert ''{0}'' to String[]", bytes.toString()));
-		} catch (ClassNotFoundException e) {
-			Logger.log(Logger.SEVERITY_ERROR, e);
+					MessageFormat.format("Unable to get property ''{0}'' for ''{1}''", feature.getName(), object));
+		}
+		return THistoryCursor.empty();
+	}
+
+	/**
+	 * Returns at most <code>limit</code> entries of the given chronologically
+	 * sorted <code>history</code> as a {@link THistory}, starting from the
+	 * newest ones if <code>descending</code> is <code>true</code>. A
+	 * <code>limit</code> of <code>0</code> returns all the entries.
+	 */
+	protected static <V> THistory<V> limit(NavigableMap<Long, V> history, int limit, boolean descending) {
+		THistory<V> result = new THistory<>(descending, limit > 0 ? Math.min(limit, history.size()) : history.size());
+		for (Entry<Long, V> entry : (descending ? history.descendingMap() : history).entrySet()) {
+			if (limit > 0 && result.size() == limit) {
+				break;
+			}
+			result.add(entry.getKey(), entry.getValue());
 		}
 		return result;
+	}
+	
+	protected static byte[] toBytes(String[] strings) {
+		return StringArrayCodec.encode(strings);
+	}
+
+	protected static String[] toStrings(byte[] bytes) {
+		return StringArrayCodec.decode(bytes);
+	}
 
+	protected static String[] toStrings(byte[] bytes, int offset, int length) {
+		return StringArrayCodec.decode(bytes, offset, length);
 	}
 }
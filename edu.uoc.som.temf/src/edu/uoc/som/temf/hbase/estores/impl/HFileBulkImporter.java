@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
+import org.eclipse.emf.ecore.xmi.impl.XMLParserPoolImpl;
+
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.hbase.HbaseConnectionRegistry;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+import edu.uoc.som.temf.hbase.impl.HbaseTResourceImpl;
+
+/**
+ * Imports a model into the (new) table of a {@link HbaseTResourceImpl}
+ * bypassing the write path of the region servers: the rows of the objects
+ * are written as sorted HFiles in a staging directory, using the same layout
+ * written by {@link DirectWriteHbaseResourceTStoreImpl}, and then bulk loaded
+ * into the table.
+ * <p>
+ * The cells are kept in memory until their size exceeds
+ * {@link HbaseTResourceOptions#BULK_IMPORT_BUFFER_SIZE}, and are then sorted
+ * and written as a new HFile of every family, so the memory needed to write
+ * the HFiles does not depend on the size of the model. All the cells are
+ * written with the same timestamp, i.e., the whole model appears at once in
+ * the history of the resource.
+ *
+ * @author agomez
+ *
+ */
+public class HFileBulkImporter {
+
+	public static final long DEFAULT_BUFFER_SIZE = 128 * 1024 * 1024;
+
+	protected final Connection connection;
+
+	protected final TableName tableName;
+
+	protected final HTableDescriptor tableDescriptor;
+
+	protected final HbaseListLayout listLayout;
+
+	protected final long bufferSize;
+
+	protected final String stagingDirectory;
+
+	/**
+	 * The ids of the objects written so far, and of the objects referenced by
+	 * them
+	 */
+	protected Map<EObject, String> ids = new IdentityHashMap<>();
+
+	/**
+	 * The referenced objects that are not contained in the imported
+	 * {@link Resource}, whose type is also written
+	 */
+	protected Set<EObject> externalObjects = new LinkedHashSet<>();
+
+	/**
+	 * The cells that have not been written yet, indexed by family
+	 */
+	protected Map<byte[], List<Cell>> cells = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+	protected long bufferedSize;
+
+	protected long cellCount;
+
+	/**
+	 * Creates an importer into the table of the {@link HbaseTResourceImpl}
+	 * identified by <code>uri</code>, which must not exist yet. The
+	 * {@link HbaseTResourceOptions} that define the layout of a new table are
+	 * taken into account.
+	 */
+	public HFileBulkImporter(Connection connection, URI uri, Map<?, ?> options) {
+		this.connection = connection;
+		this.tableName = DirectWriteHbaseResourceTStoreImpl.tableName(uri);
+		ListLayout layout = HbaseTResourceOptions.getEnumOption(options, HbaseTResourceOptions.LIST_LAYOUT, ListLayout.SERIALIZED);
+		this.tableDescriptor = DirectWriteHbaseResourceTStoreImpl.createTableDescriptor(tableName, layout, options);
+		// The layout is only used to encode new lists, which does not require
+		// a store
+		this.listLayout = DirectWriteHbaseResourceTStoreImpl.createListLayout(null, layout, tableDescriptor);
+		this.bufferSize = HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.BULK_IMPORT_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+		Object directory = HbaseTResourceOptions.getOption(options, HbaseTResourceOptions.BULK_IMPORT_STAGING_DIRECTORY, null);
+		this.stagingDirectory = directory != null ? directory.toString() : null;
+	}
+
+	/**
+	 * Loads the XMI (or XML) model identified by <code>modelURI</code> and
+	 * imports it
+	 *
+	 * @return the number of cells written
+	 * @throws IOException
+	 * @see #importResource(Resource, long)
+	 */
+	public long importModel(URI modelURI) throws IOException {
+		Resource resource = loadModel(modelURI);
+		try {
+			return importResource(resource, System.currentTimeMillis());
+		} finally {
+			resource.unload();
+		}
+	}
+
+	/**
+	 * Loads the XMI (or XML) model identified by <code>modelURI</code> in a new
+	 * {@link ResourceSet}, using the load options that speed up the parsing of
+	 * large models
+	 *
+	 * @throws IOException
+	 */
+	protected static Resource loadModel(URI modelURI) throws IOException {
+		ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(Resource.Factory.Registry.DEFAULT_EXTENSION,
+				new XMIResourceFactoryImpl());
+		Map<Object, Object> loadOptions = new HashMap<>();
+		loadOptions.put(XMLResource.OPTION_DEFER_IDREF_RESOLUTION, Boolean.TRUE);
+		loadOptions.put(XMLResource.OPTION_USE_PARSER_POOL, new XMLParserPoolImpl());
+		loadOptions.put(XMLResource.OPTION_USE_XML_NAME_TO_FEATURE_MAP, new HashMap<>());
+		Resource resource = resourceSet.createResource(modelURI);
+		resource.load(loadOptions);
+		return resource;
+	}
+
+	/**
+	 * Creates the table, writes the contents of the given {@link Resource} as
+	 * HFiles (see {@link #writeHFiles(Resource, long, Path)}) in the staging
+	 * directory and bulk loads them into the table. The contents appear in the
+	 * history at the given <code>timestamp</code>, in milliseconds since the
+	 * epoch.
+	 *
+	 * @return the number of cells written
+	 * @throws IOException
+	 *             if the table already exists, or the contents could not be
+	 *             written or loaded
+	 */
+	public long importResource(Resource resource, long timestamp) throws IOException {
+		if (HbaseConnectionRegistry.INSTANCE.tableExists(connection, tableName)) {
+			throw new IOException(MessageFormat.format("Table ''{0}'' already exists", tableName));
+		}
+		Path directory = stagingDirectory != null ? new Path(stagingDirectory)
+				: new Path(new File(System.getProperty("java.io.tmpdir"), "temf-" + EcoreUtil.generateUUID()).toURI());
+		FileSystem fileSystem = directory.getFileSystem(connection.getConfiguration());
+		try {
+			long count = writeHFiles(resource, timestamp, directory);
+			HbaseConnectionRegistry.INSTANCE.createTable(connection, tableDescriptor);
+			bulkLoad(directory);
+			return count;
+		} finally {
+			if (stagingDirectory == null) {
+				fileSystem.delete(directory, true);
+			}
+		}
+	}
+
+	/**
+	 * Writes the rows of the contents of the given {@link Resource} as HFiles
+	 * in <code>directory</code>, which contains a subdirectory per family: a
+	 * row per object, with its type, its containment and the values of its
+	 * features, its rows of the {@link HbaseTypeIndex}, and the row that holds
+	 * the contents of the resource.
+	 * Referenced objects that are not contained in the {@link Resource} are
+	 * written as when they are referenced from a stored object, i.e., only
+	 * their type.
+	 *
+	 * @return the number of cells written
+	 * @throws IOException
+	 */
+	public long writeHFiles(Resource resource, long timestamp, Path directory) throws IOException {
+		long cellTimestamp = DirectWriteHbaseResourceTStoreImpl.startTimestamp(tableDescriptor, timestamp);
+		ids.clear();
+		externalObjects.clear();
+		cellCount = 0;
+		List<EObject> roots = resource.getContents();
+		EStructuralFeature rootContents = HbaseTResourceImpl.getRootContentsFeature();
+		String[] rootIds = new String[roots.size()];
+		for (int index = 0; index < rootIds.length; index++) {
+			rootIds[index] = idOf(resource, roots.get(index));
+		}
+		Put rootPut = new Put(Bytes.toBytes(HbaseTResourceImpl.ROOT_EOBJECT_ID));
+		listLayout.initialize(rootPut, rootContents, rootIds);
+		add(rootPut, cellTimestamp, directory);
+		for (EObject root : roots) {
+			add(toPut(resource, root, HbaseTResourceImpl.ROOT_EOBJECT_ID, rootContents), cellTimestamp, directory);
+			addTypeIndex(resource, root, cellTimestamp, directory);
+			for (Iterator<EObject> it = root.eAllContents(); it.hasNext();) {
+				EObject object = it.next();
+				add(toPut(resource, object, idOf(resource, object.eContainer()), object.eContainmentFeature()), cellTimestamp, directory);
+				addTypeIndex(resource, object, cellTimestamp, directory);
+			}
+		}
+		for (EObject object : externalObjects) {
+			add(toPut(resource, object, null, null), cellTimestamp, directory);
+		}
+		flush(directory);
+		return cellCount;
+	}
+
+	/**
+	 * Loads the HFiles written in <code>directory</code> into the table, which
+	 * must exist
+	 *
+	 * @throws IOException
+	 */
+	public void bulkLoad(Path directory) throws IOException {
+		try (Admin admin = connection.getAdmin();
+				Table table = connection.getTable(tableName);
+				RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+			new LoadIncrementalHFiles(connection.getConfiguration()).doBulkLoad(directory, admin, table, regionLocator);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(MessageFormat.format("Unable to load the HFiles in ''{0}''", directory), e);
+		}
+	}
+
+	/**
+	 * Builds the {@link Put} that writes the type, the containment (if
+	 * <code>containerId</code> is not <code>null</code>) and the values of the
+	 * features of the given <code>object</code>. External objects are only
+	 * written with their type.
+	 */
+	protected Put toPut(Resource resource, EObject object, String containerId, EStructuralFeature containingFeature) {
+		Put put = new Put(Bytes.toBytes(idOf(resource, object)));
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.TYPE_FAMILY, DirectWriteHbaseResourceTStoreImpl.METAMODEL_QUALIFIER,
+				Bytes.toBytes(object.eClass().getEPackage().getNsURI()));
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.TYPE_FAMILY, DirectWriteHbaseResourceTStoreImpl.ECLASS_QUALIFIER,
+				Bytes.toBytes(object.eClass().getName()));
+		if (externalObjects.contains(object)) {
+			return put;
+		}
+		if (containerId != null) {
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.CONTAINMENT_FAMILY, DirectWriteHbaseResourceTStoreImpl.CONTAINER_QUALIFIER,
+					Bytes.toBytes(containerId));
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.CONTAINMENT_FAMILY, DirectWriteHbaseResourceTStoreImpl.CONTAINING_FEATURE_QUALIFIER,
+					Bytes.toBytes(containingFeature.getName()));
+		}
+		for (EStructuralFeature feature : object.eClass().getEAllStructuralFeatures()) {
+			// Containers are stored in the containment family of the row
+			if (feature.isDerived() || (feature instanceof EReference && ((EReference) feature).isContainer()) || !object.eIsSet(feature)) {
+				continue;
+			}
+			if (!feature.isMany()) {
+				String value = toSerializedValue(resource, feature, object.eGet(feature));
+				if (value != null) {
+					put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, Bytes.toBytes(feature.getName()), Bytes.toBytes(value));
+				}
+			} else {
+				List<?> values = (List<?>) object.eGet(feature);
+				String[] array = new String[values.size()];
+				for (int index = 0; index < array.length; index++) {
+					array[index] = toSerializedValue(resource, feature, values.get(index));
+				}
+				listLayout.initialize(put, feature, array);
+			}
+		}
+		return put;
+	}
+
+	/**
+	 * Buffers the rows of the {@link HbaseTypeIndex} that record that the given
+	 * <code>object</code> is contained in the resource
+	 */
+	protected void addTypeIndex(Resource resource, EObject object, long timestamp, Path directory) throws IOException {
+		for (Put put : HbaseTypeIndex.toPuts(idOf(resource, object), object.eClass(), true, timestamp)) {
+			add(put, timestamp, directory);
+		}
+	}
+
+	protected String toSerializedValue(Resource resource, EStructuralFeature feature, Object value) {
+		if (feature instanceof EAttribute) {
+			return DirectWriteHbaseResourceTStoreImpl.serializeValue((EAttribute) feature, value);
+		} else if (feature instanceof EReference) {
+			if (value == null) {
+				return null;
+			}
+			EObject referencedObject = (EObject) value;
+			if (referencedObject.eResource() != resource) {
+				externalObjects.add(referencedObject);
+			}
+			return idOf(resource, referencedObject);
+		} else {
+			throw new IllegalArgumentException(feature.toString());
+		}
+	}
+
+	/**
+	 * Returns the id of the given <code>object</code>: its XMI id, if any, the
+	 * id of a {@link TObject}, or a new unique id otherwise
+	 */
+	protected String idOf(Resource resource, EObject object) {
+		String id = ids.get(object);
+		if (id == null) {
+			if (resource instanceof XMLResource && object.eResource() == resource) {
+				id = ((XMLResource) resource).getID(object);
+			}
+			if (id == null && object instanceof TObject) {
+				id = ((TObject) object).tId();
+			}
+			if (id == null) {
+				id = EcoreUtil.generateUUID();
+			}
+			ids.put(object, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Buffers the cells of the given {@link Put} with the given
+	 * <code>timestamp</code>, and writes all the buffered cells if their size
+	 * exceeds the {@link #bufferSize}
+	 */
+	protected void add(Put put, long timestamp, Path directory) throws IOException {
+		for (Entry<byte[], List<Cell>> entry : put.getFamilyCellMap().entrySet()) {
+			List<Cell> familyCells = cells.get(entry.getKey());
+			if (familyCells == null) {
+				familyCells = new ArrayList<>();
+				cells.put(entry.getKey(), familyCells);
+			}
+			for (Cell cell : entry.getValue()) {
+				KeyValue keyValue = new KeyValue(put.getRow(), entry.getKey(), CellUtil.cloneQualifier(cell), timestamp, KeyValue.Type.Put,
+						CellUtil.cloneValue(cell));
+				familyCells.add(keyValue);
+				bufferedSize += keyValue.heapSize();
+			}
+		}
+		if (bufferedSize >= bufferSize) {
+			flush(directory);
+		}
+	}
+
+	/**
+	 * Sorts the buffered cells and writes them as a new HFile of every family
+	 */
+	protected void flush(Path directory) throws IOException {
+		Configuration conf = new Configuration(connection.getConfiguration());
+		// HFiles that are only written do not need a block cache
+		conf.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.0f);
+		FileSystem fileSystem = directory.getFileSystem(conf);
+		HFileContext context = new HFileContextBuilder().withBlockSize(HConstants.DEFAULT_BLOCKSIZE).build();
+		for (Entry<byte[], List<Cell>> entry : cells.entrySet()) {
+			List<Cell> familyCells = entry.getValue();
+			if (familyCells.isEmpty()) {
+				continue;
+			}
+			Collections.sort(familyCells, KeyValue.COMPARATOR);
+			StoreFile.Writer writer = new StoreFile.WriterBuilder(conf, new CacheConfig(conf), fileSystem)
+					.withOutputDir(new Path(directory, Bytes.toString(entry.getKey())))
+					.withComparator(KeyValue.COMPARATOR)
+					.withFileContext(context)
+					.build();
+			try {
+				for (Cell cell : familyCells) {
+					writer.append(cell);
+				}
+				writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+				writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(false));
+				writer.appendTrackedTimestampsToMetadata();
+			} finally {
+				writer.close();
+			}
+			cellCount += familyCells.size();
+			familyCells.clear();
+		}
+		bufferedSize = 0;
+	}
+}
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ ******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
+
+/**
+ * A {@link THistoryCursor} over the cells of a property column that are in
+ * effect between two timestamps, i.e., the cell in effect at the start
+ * timestamp (if any) and all the later ones, which are read in pages of
+ * <code>pageSize</code> cells.
+ * <p>
+ * HBase returns the versions of a column from the newest to the oldest, so
+ * descending cursors read the pages from a {@link ResultScanner} over the
+ * column, and only keep the current page in memory. Ascending cursors first
+ * scan the timestamps of the versions (without their values), and then read
+ * the values of every page, from the oldest one, with a {@link Get} restricted
+ * to its time range; they keep the timestamps (but not the values) of the
+ * versions in memory.
+ *
+ * @author agomez
+ *
+ */
+public class HbaseHistoryCursor extends THistoryCursor<Cell> {
+
+	protected final DirectWriteHbaseResourceTStoreImpl store;
+
+	protected final byte[] row;
+
+	protected final byte[] qualifier;
+
+	protected final long startTimestamp;
+
+	protected final long endTimestamp;
+
+	protected final boolean descending;
+
+	protected final int pageSize;
+
+	protected Scan scan;
+
+	protected ResultScanner scanner;
+
+	/**
+	 * Timestamp of the oldest cell read in the time range (descending cursors)
+	 */
+	protected long oldest = Long.MAX_VALUE;
+
+	/**
+	 * Whether the cell in effect at <code>startTimestamp</code> has already
+	 * been looked for
+	 */
+	protected boolean inEffectRead;
+
+	/**
+	 * Timestamps of the versions in the time range, from the oldest to the
+	 * newest, and position of the next one to be read (ascending cursors)
+	 */
+	protected long[] timestamps;
+
+	protected int count;
+
+	protected int next;
+
+	public HbaseHistoryCursor(DirectWriteHbaseResourceTStoreImpl store, byte[] row, byte[] qualifier, long startTimestamp, long endTimestamp,
+			boolean descending, int pageSize) {
+		this.store = store;
+		this.row = row;
+		this.qualifier = qualifier;
+		this.startTimestamp = startTimestamp;
+		this.endTimestamp = endTimestamp;
+		this.descending = descending;
+		this.pageSize = Math.max(pageSize, 1);
+	}
+
+	@Override
+	protected THistory<Cell> nextPage() throws IOException {
+		return descending ? nextDescendingPage() : nextAscendingPage();
+	}
+
+	protected THistory<Cell> nextDescendingPage() throws IOException {
+		if (!inEffectRead) {
+			if (scanner == null) {
+				scan = scan(false);
+				scanner = store.getScanner(scan);
+			}
+			Result result = store.next(scanner, scan);
+			if (result != null && !result.isEmpty()) {
+				THistory<Cell> page = new THistory<>(true, result.size());
+				for (Cell cell : result.rawCells()) {
+					page.add(cell.getTimestamp(), cell);
+					oldest = cell.getTimestamp();
+				}
+				return page;
+			}
+			closeScanner();
+			inEffectRead = true;
+			Cell cell = oldest != startTimestamp ? readInEffect() : null;
+			if (cell != null) {
+				THistory<Cell> page = new THistory<>(true, 1);
+				page.add(cell.getTimestamp(), cell);
+				return page;
+			}
+		}
+		return null;
+	}
+
+	protected THistory<Cell> nextAscendingPage() throws IOException {
+		if (!inEffectRead) {
+			readTimestamps();
+			inEffectRead = true;
+			Cell cell = count == 0 || timestamps[0] != startTimestamp ? readInEffect() : null;
+			if (cell != null) {
+				THistory<Cell> page = new THistory<>(false, 1);
+				page.add(cell.getTimestamp(), cell);
+				return page;
+			}
+		}
+		if (next >= count) {
+			return null;
+		}
+		int last = Math.min(next + pageSize, count) - 1;
+		Get get = new Get(row);
+		get.setId("history");
+		get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, qualifier);
+		get.setTimeRange(timestamps[next], timestamps[last] + 1);
+		get.setMaxVersions(last - next + 1);
+		Result result = store.get(get);
+		next = last + 1;
+		THistory<Cell> page = new THistory<>(false, result.size());
+		if (!result.isEmpty()) {
+			Cell[] cells = result.rawCells();
+			for (int index = cells.length - 1; index >= 0; index--) {
+				page.add(cells[index].getTimestamp(), cells[index]);
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * Scans the timestamps of the versions in the time range
+	 */
+	protected void readTimestamps() throws IOException {
+		timestamps = new long[16];
+		scan = scan(true);
+		scanner = store.getScanner(scan);
+		try {
+			Result result;
+			while ((result = store.next(scanner, scan)) != null && !result.isEmpty()) {
+				for (Cell cell : result.rawCells()) {
+					if (count == timestamps.length) {
+						timestamps = Arrays.copyOf(timestamps, count * 2);
+					}
+					timestamps[count++] = cell.getTimestamp();
+				}
+			}
+		} finally {
+			closeScanner();
+		}
+		// Oldest first
+		for (int index = 0; index < count / 2; index++) {
+			long timestamp = timestamps[index];
+			timestamps[index] = timestamps[count - 1 - index];
+			timestamps[count - 1 - index] = timestamp;
+		}
+	}
+
+	/**
+	 * Reads the latest cell written before <code>startTimestamp</code>
+	 */
+	protected Cell readInEffect() throws IOException {
+		if (startTimestamp <= 0) {
+			return null;
+		}
+		Get get = new Get(row);
+		get.setId("history");
+		get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, qualifier);
+		get.setTimeRange(0, startTimestamp);
+		Result result = store.get(get);
+		return !result.isEmpty() ? result.rawCells()[0] : null;
+	}
+
+	protected Scan scan(boolean keysOnly) throws IOException {
+		Get get = new Get(row);
+		get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, qualifier);
+		get.setTimeRange(startTimestamp, DirectWriteHbaseResourceTStoreImpl.endOf(endTimestamp));
+		get.setMaxVersions();
+		Scan scan = new Scan(get);
+		scan.setId(keysOnly ? "history.keys" : "history");
+		scan.setBatch(keysOnly ? (int) Math.min(pageSize * 10L, Integer.MAX_VALUE) : pageSize);
+		scan.setCaching(1);
+		scan.setCacheBlocks(false);
+		if (keysOnly) {
+			scan.setFilter(new KeyOnlyFilter());
+		}
+		return scan;
+	}
+
+	protected void closeScanner() {
+		if (scanner != null) {
+			scanner.close();
+			scanner = null;
+		}
+	}
+
+	@Override
+	protected void release() {
+		closeScanner();
+	}
+}
@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+
+import edu.uoc.som.temf.estores.impl.HistoricalCachingDelegatedTStoreImpl;
+import edu.uoc.som.temf.hbase.HbaseConnectionRegistry;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+import edu.uoc.som.temf.hbase.impl.HbaseTResourceImpl;
+
+/**
+ * Replays a sequence of snapshots of a model, taken at increasing (past)
+ * timestamps, into the (new) table of a {@link HbaseTResourceImpl}, so that
+ * the state of the resource at any of those timestamps is the corresponding
+ * snapshot.
+ * <p>
+ * The serialized state of every object of the previous snapshot is kept in
+ * memory, and only the cells that differ from it are written, with the
+ * timestamp of the snapshot, using the same layout written by
+ * {@link DirectWriteHbaseResourceTStoreImpl}. Objects are matched across
+ * snapshots by their id: their XMI id or their ID attribute, if any, or their
+ * containment path from the closest container that has one. Objects that
+ * disappear from a snapshot are only detached from their container, like
+ * when they are removed from a live resource, and recorded as such in the
+ * {@link HbaseTypeIndex}. The {@link Put}s are queued in
+ * a {@link BufferedMutator}, and sent in the background in batches of
+ * {@link HbaseTResourceOptions#WRITE_BUFFER_SIZE} bytes.
+ * <p>
+ * Since the history written by the importer is in the past, resources should
+ * not be opened on the table until the import is {@link #close() closed}:
+ * their {@link HistoricalCachingDelegatedTStoreImpl historical caches} and
+ * {@link DirectWriteHbaseResourceTStoreImpl#pinSnapshot(long) pinned
+ * snapshots} assume that the past never changes, and would have to be
+ * {@link HistoricalCachingDelegatedTStoreImpl#invalidateAll() invalidated}.
+ *
+ * @author agomez
+ *
+ */
+public class HbaseHistoryImporter implements Closeable {
+
+	public static final long DEFAULT_WRITE_BUFFER_SIZE = 16 * 1024 * 1024;
+
+	protected final Connection connection;
+
+	protected final TableName tableName;
+
+	protected final HTableDescriptor tableDescriptor;
+
+	protected final HbaseListLayout listLayout;
+
+	protected final long writeBufferSize;
+
+	protected BufferedMutator mutator;
+
+	/**
+	 * The state of every object written so far, as of the last snapshot that
+	 * contained it, indexed by id
+	 */
+	protected Map<String, ObjectState> states = new HashMap<>();
+
+	/**
+	 * The actual {@link EClass} of every object contained in the last
+	 * snapshot, indexed by id
+	 */
+	protected Map<String, EClass> contained = new HashMap<>();
+
+	protected long lastTimestamp = -1;
+
+	/**
+	 * Serialized state of an object in a snapshot
+	 */
+	protected static class ObjectState {
+
+		protected String metamodel;
+
+		protected String eClass;
+
+		protected String container;
+
+		protected String containingFeature;
+
+		/**
+		 * The values of the features that are set: {@link String}s for
+		 * single-valued features, and {@link String}[]s for many-valued ones
+		 */
+		protected Map<EStructuralFeature, Object> values = new LinkedHashMap<>();
+
+		/**
+		 * The number of times each list has been replaced since it was
+		 * initialized (see {@link HbaseListLayout#replace(Put, EStructuralFeature, int, String[], String[])})
+		 */
+		protected Map<EStructuralFeature, Integer> revisions = new HashMap<>();
+	}
+
+	/**
+	 * Creates an importer into the table of the {@link HbaseTResourceImpl}
+	 * identified by <code>uri</code>, which must not exist yet. The
+	 * {@link HbaseTResourceOptions} that define the layout of a new table are
+	 * taken into account.
+	 */
+	public HbaseHistoryImporter(Connection connection, URI uri, Map<?, ?> options) {
+		this.connection = connection;
+		this.tableName = DirectWriteHbaseResourceTStoreImpl.tableName(uri);
+		ListLayout layout = HbaseTResourceOptions.getEnumOption(options, HbaseTResourceOptions.LIST_LAYOUT, ListLayout.SERIALIZED);
+		this.tableDescriptor = DirectWriteHbaseResourceTStoreImpl.createTableDescriptor(tableName, layout, options);
+		// The layout is only used to encode the states of the lists, which does
+		// not require a store
+		this.listLayout = DirectWriteHbaseResourceTStoreImpl.createListLayout(null, layout, tableDescriptor);
+		this.writeBufferSize = HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.WRITE_BUFFER_SIZE, DEFAULT_WRITE_BUFFER_SIZE);
+	}
+
+	/**
+	 * Loads the XMI (or XML) snapshots identified by the values of the given
+	 * map, one at a time, and imports each of them with the timestamp that
+	 * indexes it
+	 *
+	 * @return the number of cells written
+	 * @throws IOException
+	 * @see #importSnapshot(Resource, long)
+	 */
+	public long importHistory(SortedMap<Long, URI> snapshots) throws IOException {
+		long count = 0;
+		for (Entry<Long, URI> entry : snapshots.entrySet()) {
+			Resource resource = HFileBulkImporter.loadModel(entry.getValue());
+			try {
+				count += importSnapshot(resource, entry.getKey());
+			} finally {
+				resource.unload();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the differences between the contents of the given
+	 * {@link Resource} and the previous snapshot with the given
+	 * <code>timestamp</code> (in milliseconds since the epoch). The table is
+	 * created when the first snapshot is imported.
+	 *
+	 * @return the number of cells written
+	 * @throws IOException
+	 *             if the table already existed before the first snapshot, or
+	 *             the cells could not be written
+	 * @throws IllegalArgumentException
+	 *             if the <code>timestamp</code> is not later than the one of the
+	 *             previous snapshot
+	 */
+	public long importSnapshot(Resource resource, long timestamp) throws IOException {
+		if (timestamp <= lastTimestamp) {
+			throw new IllegalArgumentException(MessageFormat.format("Snapshot at {0} is not newer than the previous one, at {1}", timestamp, lastTimestamp));
+		}
+		if (mutator == null) {
+			if (HbaseConnectionRegistry.INSTANCE.tableExists(connection, tableName)) {
+				throw new IOException(MessageFormat.format("Table ''{0}'' already exists", tableName));
+			}
+			HbaseConnectionRegistry.INSTANCE.createTable(connection, tableDescriptor);
+			mutator = connection.getBufferedMutator(new BufferedMutatorParams(tableName).writeBufferSize(writeBufferSize));
+		}
+		lastTimestamp = timestamp;
+		long cellTimestamp = DirectWriteHbaseResourceTStoreImpl.startTimestamp(tableDescriptor, timestamp);
+
+		Map<EObject, String> ids = assignIds(resource);
+		Set<EObject> externalObjects = new LinkedHashSet<>();
+		List<EObject> roots = resource.getContents();
+		EStructuralFeature rootContents = HbaseTResourceImpl.getRootContentsFeature();
+		long count = 0;
+
+		ObjectState rootState = new ObjectState();
+		String[] rootIds = new String[roots.size()];
+		for (int index = 0; index < rootIds.length; index++) {
+			rootIds[index] = ids.get(roots.get(index));
+		}
+		rootState.values.put(rootContents, rootIds);
+		count += write(HbaseTResourceImpl.ROOT_EOBJECT_ID, rootState, cellTimestamp);
+
+		Map<String, EClass> newContained = new HashMap<>();
+		for (EObject root : roots) {
+			count += write(ids.get(root), toState(root, HbaseTResourceImpl.ROOT_EOBJECT_ID, rootContents, ids, externalObjects), cellTimestamp);
+			newContained.put(ids.get(root), root.eClass());
+			for (Iterator<EObject> it = root.eAllContents(); it.hasNext();) {
+				EObject object = it.next();
+				count += write(ids.get(object), toState(object, ids.get(object.eContainer()), object.eContainmentFeature(), ids, externalObjects), cellTimestamp);
+				newContained.put(ids.get(object), object.eClass());
+			}
+		}
+		count += writeTypeIndex(newContained, cellTimestamp);
+		for (EObject object : externalObjects) {
+			String id = ids.get(object);
+			if (!states.containsKey(id)) {
+				ObjectState state = new ObjectState();
+				state.metamodel = object.eClass().getEPackage().getNsURI();
+				state.eClass = object.eClass().getName();
+				count += write(id, state, cellTimestamp);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Assigns an id to every object contained in the given {@link Resource}:
+	 * its XMI id or its ID attribute, if any, or its containment path from its
+	 * container otherwise
+	 */
+	protected Map<EObject, String> assignIds(Resource resource) {
+		Map<EObject, String> ids = new IdentityHashMap<>();
+		List<EObject> roots = resource.getContents();
+		for (int index = 0; index < roots.size(); index++) {
+			ids.put(roots.get(index), idOf(resource, roots.get(index), "/" + index));
+		}
+		for (Iterator<EObject> it = EcoreUtil.getAllContents(resource, false); it.hasNext();) {
+			EObject object = it.next();
+			String id = ids.get(object);
+			for (EReference containment : object.eClass().getEAllContainments()) {
+				if (containment.isDerived() || !object.eIsSet(containment)) {
+					continue;
+				}
+				if (!containment.isMany()) {
+					EObject child = (EObject) object.eGet(containment);
+					ids.put(child, idOf(resource, child, id + "/@" + containment.getName()));
+				} else {
+					List<?> children = (List<?>) object.eGet(containment);
+					for (int index = 0; index < children.size(); index++) {
+						EObject child = (EObject) children.get(index);
+						ids.put(child, idOf(resource, child, id + "/@" + containment.getName() + "." + index));
+					}
+				}
+			}
+		}
+		return ids;
+	}
+
+	protected static String idOf(Resource resource, EObject object, String path) {
+		String id = resource instanceof XMLResource ? ((XMLResource) resource).getID(object) : null;
+		if (id == null) {
+			id = EcoreUtil.getID(object);
+		}
+		return id != null ? id : path;
+	}
+
+	/**
+	 * Builds the serialized state of the given <code>object</code>. Referenced
+	 * objects that are not contained in the snapshot are identified by their
+	 * {@link URI}, and added to <code>externalObjects</code>.
+	 */
+	protected ObjectState toState(EObject object, String containerId, EStructuralFeature containingFeature, Map<EObject, String> ids,
+			Set<EObject> externalObjects) {
+		ObjectState state = new ObjectState();
+		state.metamodel = object.eClass().getEPackage().getNsURI();
+		state.eClass = object.eClass().getName();
+		state.container = containerId;
+		state.containingFeature = containingFeature.getName();
+		for (EStructuralFeature feature : object.eClass().getEAllStructuralFeatures()) {
+			// Containers are stored in the containment family of the row
+			if (feature.isDerived() || (feature instanceof EReference && ((EReference) feature).isContainer()) || !object.eIsSet(feature)) {
+				continue;
+			}
+			if (!feature.isMany()) {
+				String value = toSerializedValue(feature, object.eGet(feature), ids, externalObjects);
+				if (value != null) {
+					state.values.put(feature, value);
+				}
+			} else {
+				List<?> values = (List<?>) object.eGet(feature);
+				String[] array = new String[values.size()];
+				for (int index = 0; index < array.length; index++) {
+					array[index] = toSerializedValue(feature, values.get(index), ids, externalObjects);
+				}
+				state.values.put(feature, array);
+			}
+		}
+		return state;
+	}
+
+	protected static String toSerializedValue(EStructuralFeature feature, Object value, Map<EObject, String> ids, Set<EObject> externalObjects) {
+		if (feature instanceof EAttribute) {
+			return DirectWriteHbaseResourceTStoreImpl.serializeValue((EAttribute) feature, value);
+		} else if (feature instanceof EReference) {
+			if (value == null) {
+				return null;
+			}
+			EObject referencedObject = (EObject) value;
+			String id = ids.get(referencedObject);
+			if (id == null) {
+				id = EcoreUtil.getURI(referencedObject).toString();
+				ids.put(referencedObject, id);
+				externalObjects.add(referencedObject);
+			}
+			return id;
+		} else {
+			throw new IllegalArgumentException(feature.toString());
+		}
+	}
+
+	/**
+	 * Queues the {@link Put} that turns the last known state of the object
+	 * identified by <code>id</code> into <code>newState</code>, if they differ,
+	 * and makes <code>newState</code> its last known state
+	 *
+	 * @return the number of cells written
+	 * @throws IOException
+	 */
+	protected int write(String id, ObjectState newState, long timestamp) throws IOException {
+		ObjectState oldState = states.get(id);
+		Put put = new Put(Bytes.toBytes(id), timestamp);
+		if (newState.eClass != null && (oldState == null || !Objects.equals(oldState.metamodel, newState.metamodel)
+				|| !Objects.equals(oldState.eClass, newState.eClass))) {
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.TYPE_FAMILY, DirectWriteHbaseResourceTStoreImpl.METAMODEL_QUALIFIER,
+					Bytes.toBytes(newState.metamodel));
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.TYPE_FAMILY, DirectWriteHbaseResourceTStoreImpl.ECLASS_QUALIFIER,
+					Bytes.toBytes(newState.eClass));
+		}
+		if (newState.container != null && (oldState == null || !Objects.equals(oldState.container, newState.container)
+				|| !Objects.equals(oldState.containingFeature, newState.containingFeature))) {
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.CONTAINMENT_FAMILY, DirectWriteHbaseResourceTStoreImpl.CONTAINER_QUALIFIER,
+					Bytes.toBytes(newState.container));
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.CONTAINMENT_FAMILY, DirectWriteHbaseResourceTStoreImpl.CONTAINING_FEATURE_QUALIFIER,
+					Bytes.toBytes(newState.containingFeature));
+		}
+		if (oldState != null) {
+			newState.revisions = oldState.revisions;
+		}
+		for (Entry<EStructuralFeature, Object> entry : newState.values.entrySet()) {
+			EStructuralFeature feature = entry.getKey();
+			Object oldValue = oldState != null ? oldState.values.get(feature) : null;
+			if (!feature.isMany()) {
+				if (!Objects.equals(oldValue, entry.getValue())) {
+					put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, Bytes.toBytes(feature.getName()),
+							Bytes.toBytes((String) entry.getValue()));
+				}
+			} else if (!Arrays.equals((String[]) oldValue, (String[]) entry.getValue())) {
+				writeList(put, newState, feature, (String[]) oldValue, (String[]) entry.getValue());
+			}
+		}
+		if (oldState != null) {
+			for (Entry<EStructuralFeature, Object> entry : oldState.values.entrySet()) {
+				EStructuralFeature feature = entry.getKey();
+				if (newState.values.containsKey(feature)) {
+					continue;
+				}
+				if (!feature.isMany()) {
+					put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, Bytes.toBytes(feature.getName()), null);
+				} else {
+					writeList(put, newState, feature, (String[]) entry.getValue(), null);
+				}
+			}
+		}
+		states.put(id, newState);
+		if (put.isEmpty()) {
+			return 0;
+		}
+		mutator.mutate(put);
+		return put.size();
+	}
+
+	/**
+	 * Writes the rows of the {@link HbaseTypeIndex} of the objects that have
+	 * been attached to the resource (or detached from it) since the last
+	 * snapshot, or whose {@link EClass} has changed, and makes
+	 * <code>newContained</code> the objects contained in the last snapshot
+	 *
+	 * @return the number of cells written
+	 * @throws IOException
+	 */
+	protected int writeTypeIndex(Map<String, EClass> newContained, long timestamp) throws IOException {
+		List<Put> puts = new ArrayList<>();
+		for (Entry<String, EClass> entry : contained.entrySet()) {
+			EClass newEClass = newContained.get(entry.getKey());
+			if (newEClass != entry.getValue()) {
+				List<EClass> newTypes = newEClass != null ? HbaseTypeIndex.typesOf(newEClass) : Collections.emptyList();
+				for (EClass type : HbaseTypeIndex.typesOf(entry.getValue())) {
+					if (!newTypes.contains(type)) {
+						puts.add(HbaseTypeIndex.toPut(type, entry.getKey(), null, timestamp));
+					}
+				}
+			}
+		}
+		for (Entry<String, EClass> entry : newContained.entrySet()) {
+			if (contained.get(entry.getKey()) != entry.getValue()) {
+				puts.addAll(HbaseTypeIndex.toPuts(entry.getKey(), entry.getValue(), true, timestamp));
+			}
+		}
+		contained = newContained;
+		mutator.mutate(puts);
+		return puts.size();
+	}
+
+	/**
+	 * Adds to the given {@link Put} the cells that replace the state of a list,
+	 * or that initialize it if it has never been written
+	 */
+	protected void writeList(Put put, ObjectState state, EStructuralFeature feature, String[] oldValues, String[] newValues) {
+		Integer revision = state.revisions.get(feature);
+		if (revision == null) {
+			if (newValues != null) {
+				listLayout.initialize(put, feature, newValues);
+				state.revisions.put(feature, 0);
+			}
+		} else {
+			listLayout.replace(put, feature, revision, oldValues, newValues);
+			state.revisions.put(feature, revision + 1);
+		}
+	}
+
+	/**
+	 * Sends all the queued {@link Put}s
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		if (mutator != null) {
+			mutator.flush();
+		}
+	}
+
+	/**
+	 * Sends all the queued {@link Put}s and releases the {@link BufferedMutator}.
+	 * The importer can not be used after it has been closed.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if (mutator != null) {
+			mutator.close();
+		}
+		states.clear();
+		contained.clear();
+	}
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ ******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+
+/**
+ * Defines how the values of many-valued {@link EStructuralFeature}s are stored
+ * in the property family of the table of a
+ * {@link DirectWriteHbaseResourceTStoreImpl}. See {@link ListLayout} for the
+ * available layouts.
+ * <p>
+ * Values are handled in their serialized form, i.e., as the {@link String}s
+ * that represent attribute values or the ids of referenced objects.
+ * <code>timestamp</code>s are inclusive, and {@link Long#MAX_VALUE} stands for
+ * the latest state.
+ * <p>
+ * Modifications that depend on the current state of the list are written with
+ * {@link DirectWriteHbaseResourceTStoreImpl#checkAndPut(byte[], byte[], byte[], byte[], Put)
+ * checkAndPut}, conditioned on a cell that changes with every modification,
+ * and are retried if another writer modifies the list in between, so that
+ * concurrent writers do not lose each other's updates.
+ *
+ * @author agomez
+ *
+ */
+public interface HbaseListLayout {
+
+	boolean isSet(TObject object, EStructuralFeature feature, long timestamp) throws IOException;
+
+	int size(TObject object, EStructuralFeature feature, long timestamp) throws IOException;
+
+	String get(TObject object, EStructuralFeature feature, int index, long timestamp) throws IOException;
+
+	/**
+	 * Returns the values of the list at the given moment, or <code>null</code> if
+	 * the feature was not set
+	 */
+	String[] toArray(TObject object, EStructuralFeature feature, long timestamp) throws IOException;
+
+	/**
+	 * Returns the states of the list between <code>startTimestamp</code> and
+	 * <code>endTimestamp</code> (both inclusive), indexed by the timestamp in which
+	 * each state was written. The first entry is the state in effect at
+	 * <code>startTimestamp</code>, and is indexed by the timestamp in which it was
+	 * written, which may be earlier than <code>startTimestamp</code>. States in
+	 * which the feature was not set are returned as empty arrays.
+	 * <p>
+	 * At most <code>limit</code> states are returned (all of them if
+	 * <code>limit</code> is <code>0</code>), starting from the newest ones if
+	 * <code>descending</code> is <code>true</code>, in which case the returned
+	 * {@link THistory} is also sorted from the newest to the oldest state.
+	 */
+	THistory<String[]> toArrayAllBetween(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, int limit, boolean descending)
+			throws IOException;
+
+	/**
+	 * Returns a lazy cursor over the same states returned by
+	 * {@link #toArrayAllBetween(TObject, EStructuralFeature, long, long, int, boolean)},
+	 * in ascending or <code>descending</code> order. By default, all the states
+	 * are read before returning the cursor; layouts that can read the states
+	 * incrementally override this method.
+	 */
+	default THistoryCursor<String[]> openAllBetween(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, boolean descending)
+			throws IOException {
+		return THistoryCursor.of(toArrayAllBetween(object, feature, startTimestamp, endTimestamp, 0, descending));
+	}
+
+	void set(TObject object, EStructuralFeature feature, int index, String value) throws IOException;
+
+	void add(TObject object, EStructuralFeature feature, int index, String value) throws IOException;
+
+	/**
+	 * Removes the value at <code>index</code> and returns it
+	 */
+	String remove(TObject object, EStructuralFeature feature, int index) throws IOException;
+
+	/**
+	 * Moves the value at <code>sourceIndex</code> to <code>targetIndex</code> and
+	 * returns it
+	 */
+	String move(TObject object, EStructuralFeature feature, int targetIndex, int sourceIndex) throws IOException;
+
+	void clear(TObject object, EStructuralFeature feature) throws IOException;
+
+	void unset(TObject object, EStructuralFeature feature) throws IOException;
+
+	/**
+	 * Adds to the given {@link Put}, which writes the row of an object that has
+	 * never been stored, the cells that store <code>values</code> as the
+	 * initial state of the list
+	 */
+	void initialize(Put put, EStructuralFeature feature, String[] values);
+
+	/**
+	 * Adds to the given {@link Put} the cells that replace the state of the list,
+	 * <code>oldValues</code> (<code>null</code> if it is unset), by
+	 * <code>newValues</code> (<code>null</code> to unset it). The
+	 * <code>revision</code> is the number of times the list has been replaced
+	 * since it was {@link #initialize(Put, EStructuralFeature, String[])
+	 * initialized}. Used to write states computed elsewhere, without reading
+	 * the table.
+	 */
+	void replace(Put put, EStructuralFeature feature, int revision, String[] oldValues, String[] newValues);
+
+}
@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ ******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
+import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+
+/**
+ * A cache of the latest version of whole rows, i.e., of all the type,
+ * containment and property cells of an object, used by
+ * {@link DirectWriteHbaseResourceTStoreImpl} to answer the reads of the latest
+ * state of an object without contacting the region servers.
+ * <p>
+ * The cache is bounded by the (estimated) heap size of the cached cells, and
+ * evicts the least recently used rows first. The rows are split into
+ * {@link Stripe}s by their key, each one with its own share of the capacity
+ * and its own lock, so that concurrent reads of different rows rarely
+ * contend. Rows must be
+ * {@link #invalidate(byte[]) invalidated} whenever they are modified; since
+ * only local modifications can be tracked, this cache should only be enabled
+ * (see {@link HbaseTResourceOptions#ROW_CACHE_SIZE}) when no other client
+ * modifies the same resource concurrently.
+ * <p>
+ * The same structure caches whole rows as they were at a past timestamp (see
+ * {@link DirectWriteHbaseResourceTStoreImpl#pinSnapshot(long)}), which never
+ * need to be invalidated.
+ *
+ * @author agomez
+ *
+ */
+public class HbaseRowCache {
+
+	protected static class CachedRow {
+
+		protected final Result result;
+
+		protected final long weight;
+
+		protected CachedRow(Result result, long weight) {
+			this.result = result;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * A subset of the cached rows, which evicts its least recently used rows
+	 * when its own share of the capacity is exceeded. Every stripe is guarded
+	 * by its own monitor, so that the reads of rows that belong to different
+	 * stripes do not contend.
+	 */
+	protected static class Stripe {
+
+		protected final LinkedHashMap<String, CachedRow> rows = new LinkedHashMap<>(16, 0.75f, true);
+
+		protected final long capacity;
+
+		protected long size;
+
+		/**
+		 * Incremented on every invalidation of a row of this stripe, so that
+		 * rows read before an invalidation are not cached afterwards
+		 */
+		protected long version;
+
+		protected Stripe(long capacity) {
+			this.capacity = capacity;
+		}
+	}
+
+	/**
+	 * The minimum capacity of every {@link Stripe}, so that small caches are
+	 * not split into stripes that can only hold a few rows
+	 */
+	protected static final long MIN_STRIPE_CAPACITY = 1024 * 1024;
+
+	protected final long capacity;
+
+	protected final Stripe[] stripes;
+
+	protected final LongAdder hits = new LongAdder();
+
+	protected final LongAdder misses = new LongAdder();
+
+	protected final LongAdder evictions = new LongAdder();
+
+	protected final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * Creates a cache whose cached cells take at most <code>capacity</code>
+	 * bytes, split into as many stripes as the available processors (rounded
+	 * up to a power of two), unless it is too small
+	 */
+	public HbaseRowCache(long capacity) {
+		this(capacity, Integer.highestOneBit((int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 2 - 1, capacity / MIN_STRIPE_CAPACITY))));
+	}
+
+	/**
+	 * Creates a cache whose cached cells take at most <code>capacity</code>
+	 * bytes, split into the given number of <code>stripes</code>, which must
+	 * be a power of two
+	 */
+	public HbaseRowCache(long capacity, int stripes) {
+		if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+			throw new IllegalArgumentException(MessageFormat.format("The number of stripes must be a power of two: {0}", stripes));
+		}
+		this.capacity = capacity;
+		this.stripes = new Stripe[stripes];
+		for (int index = 0; index < stripes; index++) {
+			this.stripes[index] = new Stripe(capacity / stripes);
+		}
+	}
+
+	protected Stripe stripe(String key) {
+		int hash = key.hashCode();
+		return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+	}
+
+	/**
+	 * Returns the cached row, or <code>null</code> if it is not cached
+	 */
+	public Result get(byte[] row) {
+		String key = Bytes.toString(row);
+		Stripe stripe = stripe(key);
+		CachedRow cachedRow;
+		synchronized (stripe) {
+			cachedRow = stripe.rows.get(key);
+		}
+		if (cachedRow != null) {
+			hits.increment();
+			return cachedRow.result;
+		} else {
+			misses.increment();
+			return null;
+		}
+	}
+
+	/**
+	 * Caches the given <code>result</code>, which contains the latest version of
+	 * all the cells of the <code>row</code>, unless the row has been
+	 * invalidated since <code>version</code> (as returned by
+	 * {@link #getVersion(byte[])} before reading the row)
+	 */
+	public void put(byte[] row, Result result, long version) {
+		long weight = 0;
+		if (!result.isEmpty()) {
+			for (Cell cell : result.rawCells()) {
+				weight += CellUtil.estimatedHeapSizeOf(cell);
+			}
+		}
+		String key = Bytes.toString(row);
+		Stripe stripe = stripe(key);
+		if (weight > stripe.capacity) {
+			return;
+		}
+		synchronized (stripe) {
+			if (version != stripe.version) {
+				return;
+			}
+			CachedRow previous = stripe.rows.put(key, new CachedRow(result, weight));
+			if (previous != null) {
+				stripe.size -= previous.weight;
+			}
+			stripe.size += weight;
+			Iterator<CachedRow> iterator = stripe.rows.values().iterator();
+			while (stripe.size > stripe.capacity && iterator.hasNext()) {
+				stripe.size -= iterator.next().weight;
+				iterator.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	public void invalidate(byte[] row) {
+		String key = Bytes.toString(row);
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			stripe.version++;
+			CachedRow cachedRow = stripe.rows.remove(key);
+			if (cachedRow != null) {
+				stripe.size -= cachedRow.weight;
+				invalidations.increment();
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.version++;
+				invalidations.add(stripe.rows.size());
+				stripe.rows.clear();
+				stripe.size = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns the version of the stripe of the given <code>row</code>, which
+	 * is incremented whenever one of its rows is invalidated
+	 */
+	public long getVersion(byte[] row) {
+		Stripe stripe = stripe(Bytes.toString(row));
+		synchronized (stripe) {
+			return stripe.version;
+		}
+	}
+
+	/**
+	 * Whether the given {@link Get} can be answered from a cached row, i.e.,
+	 * whether it only reads the latest version of the columns, either without
+	 * {@link Get#getFilter() filters} or with a column prefix or range filter
+	 */
+	public static boolean isCacheable(Get get) {
+		return isCacheable(get, HConstants.LATEST_TIMESTAMP);
+	}
+
+	/**
+	 * Whether the given {@link Get} can be answered from a row cached as it was
+	 * at the given <code>timestamp</code>, i.e., whether it only reads the
+	 * version of the columns in effect at that <code>timestamp</code>, with the
+	 * same restrictions as {@link #isCacheable(Get)}
+	 */
+	public static boolean isCacheable(Get get, long timestamp) {
+		return get.getTimeRange().getMin() == 0 && get.getTimeRange().getMax() == DirectWriteHbaseResourceTStoreImpl.endOf(timestamp)
+				&& get.getMaxVersions() == 1
+				&& (get.getFilter() == null || get.getFilter() instanceof ColumnPrefixFilter || get.getFilter() instanceof ColumnRangeFilter);
+	}
+
+	/**
+	 * Returns the cells of the whole <code>row</code> requested by the given
+	 * {@link Get}
+	 */
+	public static Result project(Get get, Result row) {
+		if (row.isEmpty()) {
+			return row;
+		}
+		List<Cell> cells = new ArrayList<>();
+		for (Cell cell : row.rawCells()) {
+			if (DirectWriteHbaseResourceTStoreImpl.isRequested(get, CellUtil.cloneFamily(cell), CellUtil.cloneQualifier(cell))) {
+				cells.add(cell);
+			}
+		}
+		return Result.create(cells);
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * Returns the estimated heap size of the cached cells
+	 */
+	public long getSize() {
+		long size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size;
+			}
+		}
+		return size;
+	}
+
+	public int getRowCount() {
+		int rowCount = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				rowCount += stripe.rows.size();
+			}
+		}
+		return rowCount;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public double getHitRate() {
+		long hitCount = getHits();
+		long missCount = getMisses();
+		return hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0;
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+		invalidations.reset();
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format("{0} rows, {1} of {2} bytes in {3} stripes; {4} hits, {5} misses ({6,number,percent} hit rate), {7} evictions, {8} invalidations",
+				getRowCount(), getSize(), capacity, stripes.length, getHits(), getMisses(), getHitRate(), getEvictions(), getInvalidations());
+	}
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EPackage.Registry;
+
+import edu.uoc.som.temf.Logger;
+
+/**
+ * Temporal index of the instances of every {@link EClass} stored in the table
+ * of a {@link DirectWriteHbaseResourceTStoreImpl}. Every object contained in
+ * the resource has an index row for its {@link EClass} and for each of its
+ * supertypes, whose key is made of the {@link EClass} and the id of the
+ * object, so that all the instances of an {@link EClass} (including the ones
+ * of its subclasses) are contiguous and are read with a single range scan.
+ * <p>
+ * The versions of the only cell of an index row record when the object was
+ * attached to the resource, and when it was detached from it: while the
+ * object is contained in the resource, the cell holds the actual
+ * {@link EClass} of the object (so that it can be loaded without reading its
+ * type), and it is empty otherwise.
+ * <p>
+ * Index rows are kept in the table of the objects, under keys that start with
+ * {@link #MARKER} (which object ids never start with), so that they are
+ * written (and committed by change sets) as the rest of the cells.
+ *
+ * @author agomez
+ *
+ */
+public class HbaseTypeIndex {
+
+	/**
+	 * Prefix of the keys of the index rows
+	 */
+	protected static final String MARKER = "\0";
+
+	/**
+	 * Separator of the parts of the keys and values of the index rows
+	 */
+	protected static final String SEPARATOR = "\0";
+
+	protected final DirectWriteHbaseResourceTStoreImpl store;
+
+	public HbaseTypeIndex(DirectWriteHbaseResourceTStoreImpl store) {
+		this.store = store;
+	}
+
+	/**
+	 * Returns the common prefix of the keys of the index rows of the instances
+	 * of <code>eClass</code>
+	 */
+	public static byte[] prefix(EClass eClass) {
+		return Bytes.toBytes(MARKER + eClass.getEPackage().getNsURI() + SEPARATOR + eClass.getName() + SEPARATOR);
+	}
+
+	/**
+	 * Returns the key of the index row of the object identified by
+	 * <code>id</code> as an instance of <code>eClass</code>
+	 */
+	public static byte[] row(EClass eClass, String id) {
+		return Bytes.add(prefix(eClass), Bytes.toBytes(id));
+	}
+
+	/**
+	 * Returns the {@link EClass}es that have an index row for the instances of
+	 * <code>eClass</code>, i.e., <code>eClass</code> and all its supertypes
+	 */
+	public static List<EClass> typesOf(EClass eClass) {
+		List<EClass> types = new ArrayList<>(eClass.getEAllSuperTypes().size() + 1);
+		types.add(eClass);
+		types.addAll(eClass.getEAllSuperTypes());
+		return types;
+	}
+
+	/**
+	 * Builds the {@link Put}s that record whether the object identified by
+	 * <code>id</code>, whose actual type is <code>eClass</code>, is
+	 * <code>contained</code> in the resource or not, with the given
+	 * <code>timestamp</code>: one per index row (see {@link #typesOf(EClass)})
+	 */
+	public static List<Put> toPuts(String id, EClass eClass, boolean contained, long timestamp) {
+		List<EClass> types = typesOf(eClass);
+		List<Put> puts = new ArrayList<>(types.size());
+		for (EClass type : types) {
+			puts.add(toPut(type, id, contained ? eClass : null, timestamp));
+		}
+		return puts;
+	}
+
+	/**
+	 * Builds the {@link Put} of the index row of the object identified by
+	 * <code>id</code> as an instance of <code>type</code>, which records that
+	 * the object is contained in the resource with the actual type
+	 * <code>eClass</code>, or that it is not contained if <code>eClass</code>
+	 * is <code>null</code>
+	 */
+	public static Put toPut(EClass type, String id, EClass eClass, long timestamp) {
+		Put put = new Put(row(type, id), timestamp);
+		put.setId("typeIndex");
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.INDEX_FAMILY, DirectWriteHbaseResourceTStoreImpl.ECLASS_QUALIFIER,
+				eClass != null ? Bytes.toBytes(eClass.getEPackage().getNsURI() + SEPARATOR + eClass.getName()) : HConstants.EMPTY_BYTE_ARRAY);
+		return put;
+	}
+
+	/**
+	 * Returns the {@link EClass} recorded in the given (non-empty) value of an
+	 * index cell, or <code>null</code> if its {@link EPackage} is not
+	 * registered
+	 */
+	protected static EClass toEClass(byte[] value) {
+		String string = Bytes.toString(value);
+		int separator = string.indexOf(SEPARATOR);
+		EPackage ePackage = Registry.INSTANCE.getEPackage(string.substring(0, separator));
+		return ePackage != null ? (EClass) ePackage.getEClassifier(string.substring(separator + 1)) : null;
+	}
+
+	/**
+	 * Returns the objects that were instances of <code>eClass</code> (or of any
+	 * of its subclasses) contained in the resource at the given
+	 * <code>timestamp</code>
+	 *
+	 * @see #instancesBetween(EClass, long, long)
+	 */
+	public Stream<EObject> instancesAt(EClass eClass, long timestamp) {
+		return instancesBetween(eClass, timestamp, timestamp);
+	}
+
+	/**
+	 * Returns the objects that were instances of <code>eClass</code> (or of any
+	 * of its subclasses) contained in the resource at any moment between the
+	 * given timestamps (both inclusive), in the order of their index rows.
+	 * <p>
+	 * The objects are read lazily with a single range scan over the index rows
+	 * of <code>eClass</code>, which reads all their versions up to
+	 * <code>endTimestamp</code> (or only the one in effect, if both timestamps
+	 * are the same). The returned {@link Stream} must be closed to release the
+	 * scanner.
+	 */
+	public Stream<EObject> instancesBetween(EClass eClass, long startTimestamp, long endTimestamp) {
+		byte[] prefix = prefix(eClass);
+		byte[] stopRow = Arrays.copyOf(prefix, prefix.length);
+		stopRow[stopRow.length - 1]++;
+		Scan scan = new Scan(prefix, stopRow);
+		scan.setId("instancesOf");
+		scan.addColumn(DirectWriteHbaseResourceTStoreImpl.INDEX_FAMILY, DirectWriteHbaseResourceTStoreImpl.ECLASS_QUALIFIER);
+		scan.setMaxVersions(startTimestamp < endTimestamp ? Integer.MAX_VALUE : 1);
+		ResultScanner scanner;
+		try {
+			scan.setTimeRange(0, DirectWriteHbaseResourceTStoreImpl.endOf(endTimestamp));
+			scanner = store.getScanner(scan);
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to read the instances of {0}", eClass.getName()));
+			return Stream.empty();
+		}
+		return StreamSupport.stream(new Spliterators.AbstractSpliterator<EObject>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super EObject> action) {
+				try {
+					for (Result result = store.next(scanner, scan); result != null; result = store.next(scanner, scan)) {
+						EClass instanceClass = instanceOf(result, startTimestamp);
+						if (instanceClass != null) {
+							String id = Bytes.toString(result.getRow(), prefix.length, result.getRow().length - prefix.length);
+							EObject eObject = store.getEObject(id, Collections.singletonMap(id, instanceClass));
+							if (eObject != null) {
+								action.accept(eObject);
+								return true;
+							}
+						}
+					}
+				} catch (IOException e) {
+					Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to read the instances of {0}", eClass.getName()));
+				}
+				return false;
+			}
+		}, false).onClose(scanner::close);
+	}
+
+	/**
+	 * Returns the actual {@link EClass} of the object of the given index row if
+	 * it was contained in the resource at any moment since
+	 * <code>startTimestamp</code>, or <code>null</code> otherwise. The cells are
+	 * sorted from the newest to the oldest, so the first non-empty one is the
+	 * latest {@link EClass}, and the first one before
+	 * <code>startTimestamp</code> is the one in effect at that moment.
+	 */
+	protected static EClass instanceOf(Result result, long startTimestamp) {
+		for (Cell cell : result.rawCells()) {
+			if (cell.getValueLength() > 0) {
+				return toEClass(Bytes.copy(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()));
+			} else if (cell.getTimestamp() < startTimestamp) {
+				return null;
+			}
+		}
+		return null;
+	}
+}
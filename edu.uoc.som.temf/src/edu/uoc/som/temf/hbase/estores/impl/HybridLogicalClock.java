@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ *******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.util.Date;
+
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.TimestampMode;
+
+/**
+ * A monotonic clock that assigns the timestamps of the cells written by a
+ * {@link DirectWriteHbaseResourceTStoreImpl} in
+ * {@link TimestampMode#HYBRID_LOGICAL} mode.
+ * <p>
+ * Every timestamp combines the wall-clock time in milliseconds (the upper
+ * bits) with a logical counter (the lower {@link #LOGICAL_BITS} bits), so
+ * that up to 2<sup>{@value #LOGICAL_BITS}</sup> modifications of the same
+ * cell within the same millisecond are kept as different versions. The
+ * counter is reset whenever the wall clock advances; if it overflows, or if
+ * the wall clock goes backwards, the clock keeps counting from its last
+ * timestamp, so that timestamps are always strictly increasing.
+ * <p>
+ * Timestamps assigned by different clocks (e.g., by different clients) are
+ * only ordered as far as the wall clocks of the clients are synchronized.
+ *
+ * @author agomez
+ *
+ */
+public class HybridLogicalClock {
+
+	/**
+	 * Number of bits of the logical counter
+	 */
+	public static final int LOGICAL_BITS = 16;
+
+	protected static final long LOGICAL_MASK = (1L << LOGICAL_BITS) - 1;
+
+	protected static final long MAX_MILLIS = Long.MAX_VALUE >>> LOGICAL_BITS;
+
+	protected long last;
+
+	/**
+	 * Returns a timestamp that is greater than any timestamp previously
+	 * returned by this clock
+	 */
+	public synchronized long next() {
+		last = Math.max(last + 1, System.currentTimeMillis() << LOGICAL_BITS);
+		return last;
+	}
+
+	/**
+	 * Returns the latest timestamp within the given millisecond, being
+	 * {@link Long#MAX_VALUE} the latest possible time (as well as for any
+	 * millisecond that cannot be represented)
+	 */
+	public static long toTimestamp(long millis) {
+		return millis < MAX_MILLIS ? millis << LOGICAL_BITS | LOGICAL_MASK : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the earliest timestamp within the given millisecond
+	 */
+	public static long toStartTimestamp(long millis) {
+		return millis < MAX_MILLIS ? millis << LOGICAL_BITS : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the wall-clock time (in milliseconds) of the given timestamp
+	 */
+	public static long toMillis(long timestamp) {
+		return timestamp >>> LOGICAL_BITS;
+	}
+
+	/**
+	 * Returns the {@link Date} of the given timestamp
+	 */
+	public static Date toDate(long timestamp) {
+		return new Date(toMillis(timestamp));
+	}
+
+}
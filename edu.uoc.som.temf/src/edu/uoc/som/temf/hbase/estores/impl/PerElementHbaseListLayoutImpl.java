@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ ******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+
+/**
+ * {@link HbaseListLayout} for {@link ListLayout#PER_ELEMENT}.
+ * <p>
+ * For a feature named <code>f</code>, the size of the list is stored in the
+ * column <code>f\0</code> (an empty value meaning that the feature is unset),
+ * and the value at position <code>i</code> is stored in the column
+ * <code>f\0i</code>, where <code>i</code> is a 4-byte big-endian integer. Since
+ * HBase keeps every version of every cell, the state of the list at any moment
+ * is given by the versions of the size and position cells in effect at that
+ * moment; positions beyond the size are ignored.
+ * <p>
+ * All the cells changed by a single operation are written in the same
+ * {@link Put}, so they share the same timestamp. Appending or removing the last
+ * element writes a constant amount of data; inserting, removing or moving
+ * elements in the middle of the list only rewrites the shifted positions.
+ * <p>
+ * The column <code>f\0\0</code> counts the modifications of the list, and
+ * every modification is written only if the count has not changed since the
+ * list was read, incrementing it. Thus, a writer that races with another one
+ * reads the list again and retries, instead of overwriting the positions
+ * written by the other writer.
+ *
+ * @author agomez
+ *
+ */
+public class PerElementHbaseListLayoutImpl implements HbaseListLayout {
+
+	protected static final byte SEPARATOR = 0x00;
+
+	/**
+	 * Marker that precedes the UTF-8 bytes of a non-<code>null</code> value, so
+	 * that <code>null</code> values (encoded as empty cells) can be told apart
+	 * from empty {@link String}s
+	 */
+	protected static final byte VALUE_MARKER = 0x01;
+
+	protected static final byte[] EMPTY = new byte[] {};
+
+	protected DirectWriteHbaseResourceTStoreImpl store;
+
+	public PerElementHbaseListLayoutImpl(DirectWriteHbaseResourceTStoreImpl store) {
+		this.store = store;
+	}
+
+	@Override
+	public boolean isSet(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		byte[] size = readSize(object, feature, timestamp);
+		return size != null && size.length > 0;
+	}
+
+	@Override
+	public int size(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		byte[] size = readSize(object, feature, timestamp);
+		return size != null && size.length > 0 ? Bytes.toInt(size) : 0;
+	}
+
+	@Override
+	public String get(TObject object, EStructuralFeature feature, int index, long timestamp) throws IOException {
+		Get get = new Get(Bytes.toBytes(object.tId()));
+		get.setId("list.get");
+		get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, index));
+		get.setTimeRange(0, DirectWriteHbaseResourceTStoreImpl.endOf(timestamp));
+		return toString(store.get(get).getValue(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, index)));
+	}
+
+	@Override
+	public String[] toArray(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		byte[] prefix = prefix(feature);
+		Get get = new Get(Bytes.toBytes(object.tId()));
+		get.setId("list.toArray");
+		get.addFamily(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY);
+		get.setFilter(new ColumnPrefixFilter(prefix));
+		get.setTimeRange(0, DirectWriteHbaseResourceTStoreImpl.endOf(timestamp));
+		Result result = store.get(get);
+		byte[] size = result.getValue(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, prefix);
+		if (size == null || size.length == 0) {
+			return null;
+		}
+		String[] array = new String[Bytes.toInt(size)];
+		for (Cell cell : result.rawCells()) {
+			int index = indexOf(cell, prefix.length);
+			if (index >= 0 && index < array.length) {
+				array[index] = toString(cell);
+			}
+		}
+		return array;
+	}
+
+	/**
+	 * Reads all the versions of the size and position cells up to
+	 * <code>endTimestamp</code> in a single {@link Get}, and replays them in
+	 * chronological order. Since every state depends on all the previous
+	 * changes, the whole history is replayed regardless of <code>limit</code>.
+	 */
+	@Override
+	public THistory<String[]> toArrayAllBetween(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, int limit, boolean descending)
+			throws IOException {
+		byte[] prefix = prefix(feature);
+		Get get = new Get(Bytes.toBytes(object.tId()));
+		get.setId("list.toArrayAllBetween");
+		get.addFamily(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY);
+		get.setFilter(new ColumnPrefixFilter(prefix));
+		get.setTimeRange(0, DirectWriteHbaseResourceTStoreImpl.endOf(endTimestamp));
+		get.setMaxVersions();
+		Result result = store.get(get);
+
+		SortedMap<Long, List<Cell>> changes = new TreeMap<>();
+		for (Cell cell : result.rawCells()) {
+			List<Cell> cells = changes.get(cell.getTimestamp());
+			if (cells == null) {
+				cells = new ArrayList<>();
+				changes.put(cell.getTimestamp(), cells);
+			}
+			cells.add(cell);
+		}
+
+		NavigableMap<Long, String[]> states = new TreeMap<>();
+		String[] elements = new String[16];
+		int size = -1;
+		Long last = null;
+		for (Entry<Long, List<Cell>> entry : changes.entrySet()) {
+			long timestamp = entry.getKey();
+			if (timestamp > startTimestamp && states.isEmpty() && last != null) {
+				// State in effect at 'startTimestamp'
+				states.put(last, snapshot(elements, size));
+			}
+			for (Cell cell : entry.getValue()) {
+				int index = indexOf(cell, prefix.length);
+				if (index >= 0) {
+					if (index >= elements.length) {
+						elements = Arrays.copyOf(elements, Math.max(index + 1, elements.length * 2));
+					}
+					elements[index] = toString(cell);
+				} else if (cell.getQualifierLength() == prefix.length) {
+					size = cell.getValueLength() > 0 ? Bytes.toInt(cell.getValueArray(), cell.getValueOffset()) : -1;
+				}
+			}
+			if (timestamp > startTimestamp) {
+				states.put(timestamp, snapshot(elements, size));
+			}
+			last = timestamp;
+		}
+		if (states.isEmpty() && last != null) {
+			states.put(last, snapshot(elements, size));
+		}
+		return DirectWriteHbaseResourceTStoreImpl.limit(states, limit, descending);
+	}
+
+	@Override
+	public void set(TObject object, EStructuralFeature feature, int index, String value) throws IOException {
+		while (true) {
+			Result header = readHeader(object, feature);
+			Put put = new Put(Bytes.toBytes(object.tId()));
+			put.setId("list.set");
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, index), toBytes(value));
+			if (write(put, feature, header)) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void add(TObject object, EStructuralFeature feature, int index, String value) throws IOException {
+		while (true) {
+			Result header = readHeader(object, feature);
+			int size = sizeOf(header, feature);
+			Put put = new Put(Bytes.toBytes(object.tId()));
+			put.setId("list.add");
+			if (index < size) {
+				// Shift the tail of the list one position to the right
+				String[] tail = readRange(object, feature, index, size);
+				for (int i = 0; i < tail.length; i++) {
+					put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, index + i + 1), toBytes(tail[i]));
+				}
+			}
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, index), toBytes(value));
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature), Bytes.toBytes(size + 1));
+			if (write(put, feature, header)) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public String remove(TObject object, EStructuralFeature feature, int index) throws IOException {
+		while (true) {
+			Result header = readHeader(object, feature);
+			int size = sizeOf(header, feature);
+			String[] tail = readRange(object, feature, index, size);
+			Put put = new Put(Bytes.toBytes(object.tId()));
+			put.setId("list.remove");
+			// Shift the tail of the list one position to the left
+			for (int i = 1; i < tail.length; i++) {
+				put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, index + i - 1), toBytes(tail[i]));
+			}
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature), Bytes.toBytes(size - 1));
+			if (write(put, feature, header)) {
+				return tail[0];
+			}
+		}
+	}
+
+	@Override
+	public String move(TObject object, EStructuralFeature feature, int targetIndex, int sourceIndex) throws IOException {
+		int from = Math.min(targetIndex, sourceIndex);
+		int to = Math.max(targetIndex, sourceIndex) + 1;
+		while (true) {
+			Result header = readHeader(object, feature);
+			List<String> range = new ArrayList<>(Arrays.asList(readRange(object, feature, from, to)));
+			String movedValue = range.remove(sourceIndex - from);
+			range.add(targetIndex - from, movedValue);
+			Put put = new Put(Bytes.toBytes(object.tId()));
+			put.setId("list.move");
+			for (int i = 0; i < range.size(); i++) {
+				put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, from + i), toBytes(range.get(i)));
+			}
+			if (write(put, feature, header)) {
+				return movedValue;
+			}
+		}
+	}
+
+	@Override
+	public void clear(TObject object, EStructuralFeature feature) throws IOException {
+		while (true) {
+			Result header = readHeader(object, feature);
+			Put put = new Put(Bytes.toBytes(object.tId()));
+			put.setId("list.clear");
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature), Bytes.toBytes(0));
+			if (write(put, feature, header)) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void unset(TObject object, EStructuralFeature feature) throws IOException {
+		while (true) {
+			Result header = readHeader(object, feature);
+			Put put = new Put(Bytes.toBytes(object.tId()));
+			put.setId("list.unset");
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature), EMPTY);
+			if (write(put, feature, header)) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void initialize(Put put, EStructuralFeature feature, String[] values) {
+		for (int i = 0; i < values.length; i++) {
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, i), toBytes(values[i]));
+		}
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature), Bytes.toBytes(values.length));
+	}
+
+	/**
+	 * Only the positions whose value changes, and the size if it changes, are
+	 * written. When the list was unset, all the positions are written, since
+	 * the cells beyond the previous size may hold stale values.
+	 */
+	@Override
+	public void replace(Put put, EStructuralFeature feature, int revision, String[] oldValues, String[] newValues) {
+		if (newValues == null) {
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature), EMPTY);
+			return;
+		}
+		for (int i = 0; i < newValues.length; i++) {
+			if (oldValues == null || i >= oldValues.length || !Objects.equals(oldValues[i], newValues[i])) {
+				put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, i), toBytes(newValues[i]));
+			}
+		}
+		if (oldValues == null || oldValues.length != newValues.length) {
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature), Bytes.toBytes(newValues.length));
+		}
+	}
+
+	/**
+	 * Reads the latest size and modification count of the list in a single
+	 * {@link Get}
+	 */
+	protected Result readHeader(TObject object, EStructuralFeature feature) throws IOException {
+		Get get = new Get(Bytes.toBytes(object.tId()));
+		get.setId("list.header");
+		get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature));
+		get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, countQualifier(feature));
+		return store.get(get);
+	}
+
+	/**
+	 * Writes a {@link Put} that modifies the list, together with the
+	 * incremented modification count, only if the count is still the one read
+	 * in <code>header</code>
+	 *
+	 * @return <code>false</code> if the list has been modified by another
+	 *         writer since the <code>header</code> was read, and nothing has
+	 *         been written
+	 */
+	protected boolean write(Put put, EStructuralFeature feature, Result header) throws IOException {
+		byte[] count = header.getValue(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, countQualifier(feature));
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, countQualifier(feature), Bytes.toBytes(count != null ? Bytes.toLong(count) + 1 : 1L));
+		return store.checkAndPut(put.getRow(), DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, countQualifier(feature), count, put);
+	}
+
+	protected static int sizeOf(Result header, EStructuralFeature feature) {
+		byte[] size = header.getValue(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature));
+		return size != null && size.length > 0 ? Bytes.toInt(size) : 0;
+	}
+
+	protected byte[] readSize(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		Get get = new Get(Bytes.toBytes(object.tId()));
+		get.setId("list.size");
+		get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature));
+		get.setTimeRange(0, DirectWriteHbaseResourceTStoreImpl.endOf(timestamp));
+		return store.get(get).getValue(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, sizeQualifier(feature));
+	}
+
+	/**
+	 * Reads the current values at the positions between <code>from</code>
+	 * (inclusive) and <code>to</code> (exclusive)
+	 */
+	protected String[] readRange(TObject object, EStructuralFeature feature, int from, int to) throws IOException {
+		Get get = new Get(Bytes.toBytes(object.tId()));
+		get.setId("list.range");
+		for (int i = from; i < to; i++) {
+			get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, i));
+		}
+		Result result = store.get(get);
+		String[] range = new String[to - from];
+		for (int i = from; i < to; i++) {
+			range[i - from] = toString(result.getValue(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, elementQualifier(feature, i)));
+		}
+		return range;
+	}
+
+	protected static byte[] prefix(EStructuralFeature feature) {
+		return Bytes.add(Bytes.toBytes(feature.getName()), new byte[] { SEPARATOR });
+	}
+
+	protected static byte[] sizeQualifier(EStructuralFeature feature) {
+		return prefix(feature);
+	}
+
+	/**
+	 * The modification count is stored in a column that is neither the size nor
+	 * a position one, so it is ignored when the list is read
+	 */
+	protected static byte[] countQualifier(EStructuralFeature feature) {
+		return Bytes.add(prefix(feature), new byte[] { SEPARATOR });
+	}
+
+	protected static byte[] elementQualifier(EStructuralFeature feature, int index) {
+		return Bytes.add(prefix(feature), Bytes.toBytes(index));
+	}
+
+	/**
+	 * Returns the position encoded in the qualifier of the given {@link Cell}, or
+	 * <code>-1</code> if it is the size or the modification count cell
+	 */
+	protected static int indexOf(Cell cell, int prefixLength) {
+		if (cell.getQualifierLength() == prefixLength + Bytes.SIZEOF_INT) {
+			return Bytes.toInt(cell.getQualifierArray(), cell.getQualifierOffset() + prefixLength);
+		}
+		return -1;
+	}
+
+	protected static String[] snapshot(String[] elements, int size) {
+		return size > 0 ? Arrays.copyOf(elements, size) : new String[] {};
+	}
+
+	protected static byte[] toBytes(String value) {
+		if (value == null) {
+			return EMPTY;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		byte[] result = new byte[bytes.length + 1];
+		result[0] = VALUE_MARKER;
+		System.arraycopy(bytes, 0, result, 1, bytes.length);
+		return result;
+	}
+
+	protected static String toString(byte[] bytes) {
+		return bytes != null && bytes.length > 0 ? new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8) : null;
+	}
+
+	protected static String toString(Cell cell) {
+		return cell.getValueLength() > 0
+				? new String(cell.getValueArray(), cell.getValueOffset() + 1, cell.getValueLength() - 1, StandardCharsets.UTF_8)
+				: null;
+	}
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ ******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.IOException;
+import java.util.function.UnaryOperator;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+import edu.uoc.som.temf.core.THistory;
+import edu.uoc.som.temf.core.THistoryCursor;
+import edu.uoc.som.temf.core.TObject;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.ListLayout;
+
+/**
+ * {@link HbaseListLayout} for {@link ListLayout#SERIALIZED}: the whole list is
+ * stored in a single cell whose qualifier is the name of the feature, encoded
+ * using {@link StringArrayCodec}. Every modification reads the list, modifies
+ * it, and writes it back only if the cell still holds the value that was read
+ * (see {@link #modify(TObject, EStructuralFeature, UnaryOperator)}), so that
+ * concurrent writers do not lose each other's updates.
+ *
+ * @author agomez
+ *
+ */
+public class SerializedHbaseListLayoutImpl implements HbaseListLayout {
+
+	protected DirectWriteHbaseResourceTStoreImpl store;
+
+	public SerializedHbaseListLayoutImpl(DirectWriteHbaseResourceTStoreImpl store) {
+		this.store = store;
+	}
+
+	@Override
+	public boolean isSet(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		return store.isSetInTable(object, feature, timestamp);
+	}
+
+	@Override
+	public int size(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		String[] array = toArray(object, feature, timestamp);
+		return array != null ? array.length : 0;
+	}
+
+	@Override
+	public String get(TObject object, EStructuralFeature feature, int index, long timestamp) throws IOException {
+		return toArray(object, feature, timestamp)[index];
+	}
+
+	@Override
+	public String[] toArray(TObject object, EStructuralFeature feature, long timestamp) throws IOException {
+		return (String[]) store.getFromTable(object, feature, timestamp);
+	}
+
+	@Override
+	public THistory<String[]> toArrayAllBetween(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, int limit, boolean descending)
+			throws IOException {
+		THistory<String[]> result = new THistory<>(descending);
+		store.visitHistory(object, Bytes.toBytes(feature.getName()), startTimestamp, endTimestamp, limit, descending, cell -> {
+			String[] array = DirectWriteHbaseResourceTStoreImpl.toStrings(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+			result.add(cell.getTimestamp(), array != null ? array : new String[] {});
+		});
+		return result;
+	}
+
+	@Override
+	public THistoryCursor<String[]> openAllBetween(TObject object, EStructuralFeature feature, long startTimestamp, long endTimestamp, boolean descending) {
+		return store.openHistory(object, Bytes.toBytes(feature.getName()), startTimestamp, endTimestamp, descending).map(cell -> {
+			String[] array = DirectWriteHbaseResourceTStoreImpl.toStrings(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+			return array != null ? array : new String[] {};
+		});
+	}
+
+	@Override
+	public void set(TObject object, EStructuralFeature feature, int index, String value) throws IOException {
+		modify(object, feature, array -> {
+			String[] result = array.clone();
+			result[index] = value;
+			return result;
+		});
+	}
+
+	@Override
+	public void add(TObject object, EStructuralFeature feature, int index, String value) throws IOException {
+		modify(object, feature, array -> (String[]) ArrayUtils.add(array != null ? array : new String[] {}, index, value));
+	}
+
+	@Override
+	public String remove(TObject object, EStructuralFeature feature, int index) throws IOException {
+		return modify(object, feature, array -> (String[]) ArrayUtils.remove(array, index))[index];
+	}
+
+	@Override
+	public String move(TObject object, EStructuralFeature feature, int targetIndex, int sourceIndex) throws IOException {
+		return modify(object, feature,
+				array -> (String[]) ArrayUtils.add(ArrayUtils.remove(array, sourceIndex), targetIndex, array[sourceIndex]))[sourceIndex];
+	}
+
+	@Override
+	public void clear(TObject object, EStructuralFeature feature) throws IOException {
+		write(object, feature, new String[] {});
+	}
+
+	@Override
+	public void unset(TObject object, EStructuralFeature feature) throws IOException {
+		Put put = new Put(Bytes.toBytes(object.tId()));
+		put.setId("list.unset");
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, Bytes.toBytes(feature.getName()), null);
+		store.put(put);
+	}
+
+	@Override
+	public void initialize(Put put, EStructuralFeature feature, String[] values) {
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, Bytes.toBytes(feature.getName()), StringArrayCodec.encode(values));
+	}
+
+	@Override
+	public void replace(Put put, EStructuralFeature feature, int revision, String[] oldValues, String[] newValues) {
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, Bytes.toBytes(feature.getName()),
+				newValues != null ? StringArrayCodec.encode(newValues) : null);
+	}
+
+	/**
+	 * Replaces the list with the result of applying <code>change</code> to its
+	 * latest state, and returns the replaced state. The new state is written
+	 * with a {@link DirectWriteHbaseResourceTStoreImpl#checkAndPut(byte[], byte[], byte[], byte[], Put)
+	 * checkAndPut} on the value that was read, so if another writer modifies the
+	 * list in between, the change is applied again to the new state.
+	 */
+	protected String[] modify(TObject object, EStructuralFeature feature, UnaryOperator<String[]> change) throws IOException {
+		byte[] row = Bytes.toBytes(object.tId());
+		byte[] qualifier = Bytes.toBytes(feature.getName());
+		while (true) {
+			Get get = new Get(row);
+			get.setId("list.read");
+			get.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, qualifier);
+			byte[] value = store.get(get).getValue(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, qualifier);
+			String[] array = DirectWriteHbaseResourceTStoreImpl.toStrings(value);
+			Put put = new Put(row);
+			put.setId("list.modify");
+			put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, qualifier, StringArrayCodec.encode(change.apply(array)));
+			if (store.checkAndPut(row, DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, qualifier, value, put)) {
+				return array;
+			}
+		}
+	}
+
+	protected void write(TObject object, EStructuralFeature feature, String[] array) throws IOException {
+		Put put = new Put(Bytes.toBytes(object.tId()));
+		put.setId("list.write");
+		put.addColumn(DirectWriteHbaseResourceTStoreImpl.PROPERTY_FAMILY, Bytes.toBytes(feature.getName()), StringArrayCodec.encode(array));
+		store.put(put);
+	}
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2018 SOM Research Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Abel Gmez - initial API and implementation
+ ******************************************************************************/
+package edu.uoc.som.temf.hbase.estores.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+
+import edu.uoc.som.temf.Logger;
+
+/**
+ * Binary encoding of the {@link String}[] values of many-valued features.
+ * <p>
+ * The encoding is a version byte ({@link #FORMAT_V1}) followed by the number of
+ * elements and, for each element, its length in bytes plus one (<code>0</code>
+ * encodes a <code>null</code> element) and its UTF-8 bytes. Numbers are written
+ * as unsigned variable-length integers (7 bits per byte, least significant
+ * group first).
+ * <p>
+ * Cells written by previous versions, which contain a Java-serialized
+ * {@link String}[], are recognized by the serialization stream magic number
+ * and are still decoded.
+ *
+ * @author agomez
+ *
+ */
+public final class StringArrayCodec {
+
+	public static final byte FORMAT_V1 = 0x01;
+
+	private static final byte STREAM_MAGIC_0 = (byte) 0xAC;
+
+	private static final byte STREAM_MAGIC_1 = (byte) 0xED;
+
+	private StringArrayCodec() {
+	}
+
+	public static byte[] encode(String[] strings) {
+		byte[][] encoded = new byte[strings.length][];
+		int length = 1 + sizeOf(strings.length);
+		for (int i = 0; i < strings.length; i++) {
+			if (strings[i] != null) {
+				encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+				length += sizeOf(encoded[i].length + 1) + encoded[i].length;
+			} else {
+				length += 1;
+			}
+		}
+		byte[] bytes = new byte[length];
+		bytes[0] = FORMAT_V1;
+		int offset = writeVarInt(bytes, 1, strings.length);
+		for (byte[] element : encoded) {
+			if (element != null) {
+				offset = writeVarInt(bytes, offset, element.length + 1);
+				System.arraycopy(element, 0, bytes, offset, element.length);
+				offset += element.length;
+			} else {
+				offset = writeVarInt(bytes, offset, 0);
+			}
+		}
+		return bytes;
+	}
+
+	public static String[] decode(byte[] bytes) {
+		return bytes != null ? decode(bytes, 0, bytes.length) : null;
+	}
+
+	/**
+	 * Decodes the {@link String}[] contained in the <code>length</code> bytes of
+	 * the <code>bytes</code> array starting at <code>offset</code>.
+	 *
+	 * @return the decoded array, or <code>null</code> if there are no bytes to
+	 *         decode or they are not a valid encoding
+	 */
+	public static String[] decode(byte[] bytes, int offset, int length) {
+		if (bytes == null || length == 0) {
+			return null;
+		} else if (bytes[offset] == FORMAT_V1) {
+			int end = offset + length;
+			int[] position = new int[] { offset + 1 };
+			int size = readVarInt(bytes, position);
+			String[] result = new String[size];
+			for (int i = 0; i < size; i++) {
+				int elementLength = readVarInt(bytes, position) - 1;
+				if (elementLength >= 0) {
+					if (position[0] + elementLength > end) {
+						Logger.log(Logger.SEVERITY_ERROR, "Unable to convert truncated byte[] to String[]");
+						return null;
+					}
+					result[i] = new String(bytes, position[0], elementLength, StandardCharsets.UTF_8);
+					position[0] += elementLength;
+				}
+			}
+			return result;
+		} else if (length > 1 && bytes[offset] == STREAM_MAGIC_0 && bytes[offset + 1] == STREAM_MAGIC_1) {
+			return decodeSerialized(bytes, offset, length);
+		} else {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unknown String[] encoding ''{0}''", bytes[offset]));
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes the {@link String}[] contained in the remaining bytes of the given
+	 * <code>buffer</code> (whose position is not modified), reading the elements
+	 * directly from it, so that buffers that are not backed by an array (such as
+	 * memory-mapped files) do not need to be copied first. Only
+	 * {@link #FORMAT_V1} is supported.
+	 *
+	 * @return the decoded array, or <code>null</code> if there are no bytes to
+	 *         decode or they are not a valid encoding
+	 */
+	public static String[] decode(ByteBuffer buffer) {
+		if (buffer == null || !buffer.hasRemaining()) {
+			return null;
+		} else if (buffer.hasArray()) {
+			return decode(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		} else if (buffer.get(buffer.position()) == FORMAT_V1) {
+			ByteBuffer source = buffer.duplicate();
+			source.get();
+			int size = readVarInt(source);
+			String[] result = new String[size];
+			for (int i = 0; i < size; i++) {
+				int elementLength = readVarInt(source) - 1;
+				if (elementLength >= 0) {
+					if (elementLength > source.remaining()) {
+						Logger.log(Logger.SEVERITY_ERROR, "Unable to convert truncated byte[] to String[]");
+						return null;
+					}
+					ByteBuffer element = source.slice();
+					element.limit(elementLength);
+					result[i] = StandardCharsets.UTF_8.decode(element).toString();
+					source.position(source.position() + elementLength);
+				}
+			}
+			return result;
+		} else {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unknown String[] encoding ''{0}''", buffer.get(buffer.position())));
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes the legacy format, i.e., a Java-serialized {@link String}[]
+	 */
+	private static String[] decodeSerialized(byte[] bytes, int offset, int length) {
+		try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+			return (String[]) objectInputStream.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			Logger.log(Logger.SEVERITY_ERROR, "Unable to convert serialized byte[] to String[]", e);
+		}
+		return null;
+	}
+
+	private static int sizeOf(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static int writeVarInt(byte[] bytes, int offset, int value) {
+		while ((value & ~0x7F) != 0) {
+			bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[offset++] = (byte) value;
+		return offset;
+	}
+
+	private static int readVarInt(byte[] bytes, int[] position) {
+		int value = 0;
+		int shift = 0;
+		byte current;
+		do {
+			current = bytes[position[0]++];
+			value |= (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0);
+		return value;
+	}
+
+	private static int readVarInt(ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte current;
+		do {
+			current = buffer.get();
+			value |= (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0);
+		return value;
+	}
+}
@@ -12,96 +12,77 @@ package edu.uoc.som.temf.hbase.impl;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.client.Connection;
-import org.apache.hadoop.hbase.client.ConnectionFactory;
-import org.eclipse.emf.common.notify.Notification;
-import org.eclipse.emf.common.notify.NotificationChain;
-import org.eclipse.emf.common.util.AbstractTreeIterator;
-import org.eclipse.emf.common.util.ECollections;
-import org.eclipse.emf.common.util.EList;
-import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
-import org.eclipse.emf.ecore.EStructuralFeature;
-import org.eclipse.emf.ecore.ETypedElement;
+import org.eclipse.emf.ecore.EReference;
 import org.eclipse.emf.ecore.InternalEObject;
-import org.eclipse.emf.ecore.InternalEObject.EStore;
-import org.eclipse.emf.ecore.impl.EClassifierImpl;
-import org.eclipse.emf.ecore.impl.EReferenceImpl;
-import org.eclipse.emf.ecore.impl.EStoreEObjectImpl;
-import org.eclipse.emf.ecore.impl.EStoreEObjectImpl.EStoreEList;
 import org.eclipse.emf.ecore.resource.Resource;
-import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
 
 import edu.uoc.som.temf.Logger;
+import edu.uoc.som.temf.core.THistory;
 import edu.uoc.som.temf.core.TObject;
 import edu.uoc.som.temf.core.InternalTObject;
 import edu.uoc.som.temf.core.TResource;
 import edu.uoc.som.temf.core.exceptions.InvalidOptionsException;
+import edu.uoc.som.temf.core.impl.AbstractTResourceImpl;
 import edu.uoc.som.temf.core.impl.TObjectAdapterFactoryImpl;
-import edu.uoc.som.temf.core.impl.TObjectImpl;
+import edu.uoc.som.temf.core.impl.TResourceViewImpl;
 import edu.uoc.som.temf.estores.SearcheableResourceEStore;
 import edu.uoc.som.temf.estores.SearcheableResourceTStore;
 import edu.uoc.som.temf.estores.TStore;
+import edu.uoc.som.temf.estores.impl.HistoricalCachingDelegatedTStoreImpl;
 import edu.uoc.som.temf.estores.impl.IsSetCachingDelegatedTStoreImpl;
 import edu.uoc.som.temf.estores.impl.SizeCachingDelegatedTStoreImpl;
+import edu.uoc.som.temf.hbase.HbaseConnectionRegistry;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.AccessMode;
+import edu.uoc.som.temf.hbase.HbaseTResourceOptions.WriteMode;
+import edu.uoc.som.temf.hbase.HbaseTStoreStatistics;
+import edu.uoc.som.temf.hbase.estores.impl.BufferedWriteHbaseResourceTStoreImpl;
 import edu.uoc.som.temf.hbase.estores.impl.DirectWriteHbaseResourceTStoreImpl;
+import edu.uoc.som.temf.hbase.estores.impl.HbaseRowCache;
+import edu.uoc.som.temf.hbase.estores.impl.HbaseTypeIndex;
 
-public class HbaseTResourceImpl extends ResourceImpl implements TResource {
+public class HbaseTResourceImpl extends AbstractTResourceImpl {
 
-	/**
-	 * Fake {@link EStructuralFeature} that represents the
-	 * {@link Resource#getContents()} feature.
-	 * 
-	 * @author agomez
-	 * 
-	 */
-	protected static class ResourceContentsEStructuralFeature extends EReferenceImpl {
-		protected static final String RESOURCE__CONTENTS__FEATURE_NAME = "eContents";
-
-		public ResourceContentsEStructuralFeature() {
-			this.setUpperBound(ETypedElement.UNBOUNDED_MULTIPLICITY);
-			this.setLowerBound(0);
-			this.setName(RESOURCE__CONTENTS__FEATURE_NAME);
-			this.setEType(new EClassifierImpl() {
-			});
-			this.setFeatureID(RESOURCE__CONTENTS);
-		}
-	}
+	protected Map<?, ?> options;
+
+	protected SearcheableResourceTStore eStore;
 
 	/**
-	 * Dummy {@link EObject} that represents the root entry point for this
-	 * {@link Resource}
-	 * 
-	 * @author agomez
-	 * 
+	 * The innermost {@link TStore} of {@link #eStore}, i.e., the one that actually
+	 * accesses the database
 	 */
-	protected final class DummyRootEObject extends TObjectImpl {
-		protected static final String ROOT_EOBJECT_ID = "ROOT";
-
-		public DummyRootEObject(Resource.Internal resource) {
-			super();
-			this.id = ROOT_EOBJECT_ID;
-			eSetDirectResource(resource);
-		}
-	}
-
-	protected static final ResourceContentsEStructuralFeature ROOT_CONTENTS_ESTRUCTURALFEATURE = new ResourceContentsEStructuralFeature();
+	protected DirectWriteHbaseResourceTStoreImpl hbaseEStore;
 
-	protected final DummyRootEObject DUMMY_ROOT_EOBJECT = new DummyRootEObject(this);
+	protected HistoricalCachingDelegatedTStoreImpl historicalCache;
 
-	protected Map<?, ?> options;
+	/**
+	 * The caches of {@link #eStore} that are suspended while change sets are in
+	 * progress when using {@link AccessMode#CONCURRENT} (so that the other
+	 * threads do not see their modifications), or <code>null</code>
+	 */
+	protected SizeCachingDelegatedTStoreImpl sizeCache;
 
-	protected SearcheableResourceTStore eStore;
+	protected IsSetCachingDelegatedTStoreImpl isSetCache;
 
 	protected Connection connection;
 
@@ -121,11 +102,11 @@ public class HbaseTResourceImpl extends ResourceImpl implements TResource {
 			if (isLoaded) {
 				return;
 			} else {
+				this.options = options;
 				this.connection = createConnection();
 				this.isPersistent = true;
 				this.eStore = createResourceEStore(connection);
 			}
-			this.options = options;
 			isLoaded = true;
 		} finally {
 			isLoading = false;
@@ -134,7 +115,7 @@ public class HbaseTResourceImpl extends ResourceImpl implements TResource {
 
 	@Override
 	public void save(Map<?, ?> options) throws IOException {
-		if (this.options != null) {
+		if (this.options != null && options != null) {
 			// Check that the save options do not collide with previous load options
 			for (Entry<?, ?> entry : options.entrySet()) {
 				Object key = entry.getKey();
@@ -149,41 +130,166 @@ public class HbaseTResourceImpl extends ResourceImpl implements TResource {
 		}
 
 		if (!isLoaded() || !this.isPersistent) {
+			this.options = options;
 			this.connection = createConnection();
 			this.isPersistent = true;
 			this.eStore = createResourceEStore(connection);
 			this.isLoaded = true;
 		}
+
+		// Make sure that any pending modification reaches the database
+		hbaseEStore.flush();
 	}
 
+	/**
+	 * Acquires the {@link Connection} shared by all the resources of the same
+	 * cluster, which is released on {@link #shutdown()}
+	 *
+	 * @see HbaseConnectionRegistry
+	 */
 	protected Connection createConnection() throws IOException {
-		Configuration conf = HBaseConfiguration.create();
-		conf.set("hbase.zookeeper.quorum", getURI().host());
-		conf.set("hbase.zookeeper.property.clientPort", getURI().port() != null ? getURI().port() : "2181");
-		return ConnectionFactory.createConnection(conf);
+		return HbaseConnectionRegistry.INSTANCE.acquire(getURI().host(), getURI().port());
 	}
 
 	@Override
-	public EList<EObject> getContents() {
-		return new ResourceContentsEStoreEList(DUMMY_ROOT_EOBJECT, ROOT_CONTENTS_ESTRUCTURALFEATURE, eStore());
+	public Stream<EObject> allInstancesAt(EClass eClass, Date date) {
+		return allInstancesAt(eClass, date != null ? date.getTime() : Long.MAX_VALUE);
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The instances are read with a single range scan over the
+	 * {@link HbaseTypeIndex} of the table, which does not see the
+	 * modifications of a change set in progress. All the contents at the given
+	 * <code>timestamp</code> are traversed instead if the table was created
+	 * before the index existed.
+	 */
 	@Override
-	public EList<EObject> getContents(Date date) {
-		return ECollections.unmodifiableEList((EList<EObject>)(Object)ECollections.asEList(eStore().toArrayAt(date, DUMMY_ROOT_EOBJECT, ROOT_CONTENTS_ESTRUCTURALFEATURE)));
+	public Stream<EObject> allInstancesAt(EClass eClass, long timestamp) {
+		HbaseTypeIndex typeIndex = hbaseEStore.getTypeIndex();
+		if (typeIndex != null) {
+			return typeIndex.instancesAt(eClass, hbaseEStore.toTableTimestamp(timestamp));
+		}
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(getAllContents(timestamp), Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.filter(eClass::isInstance);
 	}
 
-	public TreeIterator<EObject> getAllContents(final Date date) {
-		return new AbstractTreeIterator<EObject>(this, false) {
-			private static final long serialVersionUID = 1L;
+	@Override
+	public Stream<EObject> allInstancesBetween(EClass eClass, Date startDate, Date endDate) {
+		return allInstancesBetween(eClass, startDate != null ? startDate.getTime() : 0, endDate != null ? endDate.getTime() : Long.MAX_VALUE);
+	}
 
-			@Override
-			public Iterator<EObject> getChildren(Object object) {
-				return object == HbaseTResourceImpl.this ? HbaseTResourceImpl.this.getContents(date).iterator()
-						: ((TObject) object).eContents(date).iterator();
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The instances are read with a single range scan over the
+	 * {@link HbaseTypeIndex} of the table, which does not see the
+	 * modifications of a change set in progress. The history of the contents
+	 * of this resource is traversed instead if the table was created before
+	 * the index existed (see {@link #allContentsBetween(long, long)}).
+	 */
+	@Override
+	public Stream<EObject> allInstancesBetween(EClass eClass, long startTimestamp, long endTimestamp) {
+		HbaseTypeIndex typeIndex = hbaseEStore.getTypeIndex();
+		if (typeIndex != null) {
+			return typeIndex.instancesBetween(eClass, hbaseEStore.toTableStartTimestamp(startTimestamp), hbaseEStore.toTableTimestamp(endTimestamp));
+		}
+		return allContentsBetween(startTimestamp, endTimestamp).stream().filter(eClass::isInstance);
+	}
+
+	/**
+	 * Returns the objects contained in this resource at any moment between
+	 * <code>startTimestamp</code> and <code>endTimestamp</code>, by
+	 * traversing the versions of the root objects and of their containment
+	 * references in that period. An object is found if it was contained in an
+	 * object that is found too, although not necessarily at the same moment.
+	 */
+	protected List<EObject> allContentsBetween(long startTimestamp, long endTimestamp) {
+		Set<EObject> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<EObject> result = new ArrayList<>();
+		Deque<EObject> pending = new ArrayDeque<>();
+		addAll(pending, eStore.toArrayAllBetween(startTimestamp, endTimestamp, DUMMY_ROOT_EOBJECT, ROOT_CONTENTS_ESTRUCTURALFEATURE, 0, false));
+		while (!pending.isEmpty()) {
+			EObject eObject = pending.pop();
+			if (!visited.add(eObject)) {
+				continue;
+			}
+			result.add(eObject);
+			InternalEObject internalEObject = (InternalEObject) eObject;
+			for (EReference containment : eObject.eClass().getEAllContainments()) {
+				if (containment.isMany()) {
+					addAll(pending, eStore.toArrayAllBetween(startTimestamp, endTimestamp, internalEObject, containment, 0, false));
+				} else {
+					for (Object value : eStore.getAllBetween(startTimestamp, endTimestamp, internalEObject, containment, TStore.NO_INDEX, 0, false).getValueList()) {
+						if (value instanceof EObject) {
+							pending.push((EObject) value);
+						}
+					}
+				}
 			}
-		};
+		}
+		return result;
+	}
+
+	protected static void addAll(Deque<EObject> pending, THistory<Object[]> history) {
+		for (Object[] values : history.getValueList()) {
+			if (values != null) {
+				for (Object value : values) {
+					if (value instanceof EObject) {
+						pending.push((EObject) value);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The modifications of the change set are kept in memory, and are only
+	 * seen by the latest reads of the calling thread, until they are sent to
+	 * the table on commit, row by row.
+	 *
+	 * @see DirectWriteHbaseResourceTStoreImpl#commitChangeSet()
+	 */
+	@Override
+	public void beginChangeSet() throws IOException {
+		hbaseEStore.beginChangeSet();
+		if (sizeCache != null) {
+			sizeCache.suspend();
+			isSetCache.suspend();
+		}
+	}
+
+	@Override
+	public long commitChangeSet() throws IOException {
+		try {
+			return hbaseEStore.commitChangeSet();
+		} finally {
+			if (sizeCache != null) {
+				sizeCache.resume();
+				isSetCache.resume();
+			}
+		}
+	}
+
+	@Override
+	public TResource viewAt(Date date) {
+		return viewAt(date != null ? date.getTime() : Long.MAX_VALUE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Views pinned at a past timestamp also share the whole rows read by the
+	 * views pinned at the same timestamp (see
+	 * {@link HbaseTResourceOptions#VIEW_CACHE_SIZE}), so that every row is read
+	 * at most once.
+	 */
+	@Override
+	public TResource viewAt(long timestamp) {
+		return new HbaseTResourceView(timestamp);
 	}
 
 	@Override
@@ -196,24 +302,117 @@ public class HbaseTResourceImpl extends ResourceImpl implements TResource {
 		}
 	}
 
+	protected void shutdown() throws IOException {
+		try {
+			if (this.hbaseEStore != null) {
+				this.hbaseEStore.close();
+			}
+		} finally {
+			if (this.connection != null) {
+				HbaseConnectionRegistry.INSTANCE.release(this.connection);
+			}
+			this.connection = null;
+			this.hbaseEStore = null;
+			this.historicalCache = null;
+			this.eStore = null;
+			this.isPersistent = false;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * All the contents of the object are moved to the {@link #eStore()} too,
+	 * so that their history starts when they are attached, and the object and
+	 * all its contents are recorded in the {@link HbaseTypeIndex} as contained
+	 * in this resource, unless it is a root object whose contents have already
+	 * been moved and whose index rows have already been written while adding
+	 * it.
+	 */
 	@Override
-	public String getURIFragment(EObject eObject) {
-		if (eObject.eResource() != this) {
-			return "/-1";
-		} else {
-			// Try to adapt as a TObject and return the ID
-			TObject tObject = TObjectAdapterFactoryImpl.getAdapter(eObject, TObject.class);
-			if (tObject != null) {
-				return (tObject.tId());
+	public void attached(EObject eObject) {
+		super.attached(eObject);
+		if (eObject != attachingRoot) {
+			List<TObject> objects = new ArrayList<>();
+			objects.add(TObjectAdapterFactoryImpl.getAdapter(eObject, TObject.class));
+			for (Iterator<EObject> it = getAllProperContents(eObject); it.hasNext();) {
+				InternalTObject internalElement = TObjectAdapterFactoryImpl.getAdapter(it.next(), InternalTObject.class);
+				if (internalElement.tResource() != this) {
+					internalElement.tSetResource(this);
+				}
+				objects.add(internalElement);
+			}
+			if (hbaseEStore != null && hbaseEStore.getTypeIndex() != null) {
+				updateTypeIndex(objects, true);
 			}
 		}
-		return super.getURIFragment(eObject);
 	}
 
-	protected void shutdown() throws IOException {
-		this.connection.close();
-		this.eStore = null;
-		this.isPersistent = false;
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The object and all its contents are recorded in the
+	 * {@link HbaseTypeIndex} as no longer contained in this resource, unless it
+	 * is being moved to its root objects.
+	 */
+	@Override
+	public void detached(EObject eObject) {
+		super.detached(eObject);
+		if (eObject != attachingRoot && unloadingContents == null) {
+			updateTypeIndex(eObject, false);
+		}
+	}
+
+	/**
+	 * Records in the {@link HbaseTypeIndex} whether the given object and all
+	 * its contents are <code>contained</code> in this resource
+	 */
+	protected void updateTypeIndex(EObject eObject, boolean contained) {
+		if (hbaseEStore == null || hbaseEStore.getTypeIndex() == null) {
+			return;
+		}
+		List<TObject> objects = new ArrayList<>();
+		objects.add(TObjectAdapterFactoryImpl.getAdapter(eObject, TObject.class));
+		for (Iterator<EObject> it = getAllProperContents(eObject); it.hasNext();) {
+			objects.add(TObjectAdapterFactoryImpl.getAdapter(it.next(), TObject.class));
+		}
+		updateTypeIndex(objects, contained);
+	}
+
+	protected void updateTypeIndex(List<? extends TObject> objects, boolean contained) {
+		try {
+			hbaseEStore.updateTypeIndex(objects, contained);
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to update the type index of {0} elements", objects.size()));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The elements that have never been stored are written in bulk, instead
+	 * of copying their features one by one when they are attached.
+	 */
+	@Override
+	protected Set<InternalTObject> persistInBulk(List<InternalTObject> objects) {
+		Set<InternalTObject> persistedElements = Collections.newSetFromMap(new IdentityHashMap<>());
+		try {
+			persistedElements.addAll(hbaseEStore.bulkPersist(objects));
+		} catch (IOException e) {
+			Logger.log(Logger.SEVERITY_ERROR, MessageFormat.format("Unable to write the contents of ''{0}'' in bulk", objects.get(0)));
+		}
+		return persistedElements;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * All the index rows are written in batches, instead of one by one when
+	 * the objects are attached.
+	 */
+	@Override
+	protected void attachedInBulk(List<InternalTObject> objects) {
+		updateTypeIndex(objects, true);
 	}
 
 	@Override
@@ -242,6 +441,33 @@ public class HbaseTResourceImpl extends ResourceImpl implements TResource {
 		return eStore;
 	}
 
+	/**
+	 * Returns the {@link HbaseTStoreStatistics} of the requests sent to HBase
+	 * since this {@link Resource} was loaded, or <code>null</code> if it is not
+	 * loaded
+	 */
+	public HbaseTStoreStatistics getStatistics() {
+		return hbaseEStore != null ? hbaseEStore.getStatistics() : null;
+	}
+
+	/**
+	 * Returns the {@link HbaseRowCache} of this {@link Resource}, or
+	 * <code>null</code> if it is not loaded or the cache is not enabled (see
+	 * {@link HbaseTResourceOptions#ROW_CACHE_SIZE})
+	 */
+	public HbaseRowCache getRowCache() {
+		return hbaseEStore != null ? hbaseEStore.getRowCache() : null;
+	}
+
+	/**
+	 * Returns the cache of the historical queries of this {@link Resource}, or
+	 * <code>null</code> if it is not loaded or the cache is not enabled (see
+	 * {@link HbaseTResourceOptions#HISTORY_CACHE_SIZE})
+	 */
+	public HistoricalCachingDelegatedTStoreImpl getHistoricalCache() {
+		return historicalCache;
+	}
+
 	/**
 	 * Creates the {@link SearcheableResourceEStore} used by this {@link Resource}.
 	 * 
@@ -250,172 +476,75 @@ public class HbaseTResourceImpl extends ResourceImpl implements TResource {
 	 * @throws IOException
 	 */
 	protected SearcheableResourceTStore createResourceEStore(Connection connection) throws IOException {
-		return new IsSetCachingDelegatedTStoreImpl(
-				new SizeCachingDelegatedTStoreImpl(new DirectWriteHbaseResourceTStoreImpl(this, connection)));
+		this.hbaseEStore = createHbaseEStore(connection);
+		SearcheableResourceTStore eStore = hbaseEStore;
+		int historyCacheSize = (int) HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.HISTORY_CACHE_SIZE, 0);
+		if (historyCacheSize > 0) {
+			this.historicalCache = new HistoricalCachingDelegatedTStoreImpl(eStore, historyCacheSize,
+					HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.HISTORY_CACHE_WEIGHT, HistoricalCachingDelegatedTStoreImpl.DEFAULT_CACHE_WEIGHT),
+					HbaseTResourceOptions.getLongOption(options, HbaseTResourceOptions.HISTORY_CACHE_WATERMARK_LAG, HistoricalCachingDelegatedTStoreImpl.DEFAULT_WATERMARK_LAG));
+			eStore = historicalCache;
+		}
+		if (HbaseTResourceOptions.getEnumOption(options, HbaseTResourceOptions.ACCESS_MODE, AccessMode.SINGLE_THREADED) == AccessMode.CONCURRENT) {
+			this.sizeCache = new SizeCachingDelegatedTStoreImpl(eStore, SizeCachingDelegatedTStoreImpl.DEFAULT_SIZE_CACHE_SIZE, true);
+			this.isSetCache = new IsSetCachingDelegatedTStoreImpl(sizeCache, IsSetCachingDelegatedTStoreImpl.DEFAULT_IS_SET_CACHE_SIZE, true);
+			return isSetCache;
+		}
+		return new IsSetCachingDelegatedTStoreImpl(new SizeCachingDelegatedTStoreImpl(eStore));
 	}
 
 	/**
-	 * A notifying {@link EStoreEList} list implementation for supporting
-	 * {@link Resource#getContents}.
-	 * 
-	 * @author agomez
+	 * Creates the {@link DirectWriteHbaseResourceTStoreImpl} that actually
+	 * accesses the database, according to the {@link HbaseTResourceOptions} given
+	 * when loading or saving this {@link Resource}.
 	 * 
+	 * @param connection
+	 * @return
+	 * @throws IOException
 	 */
-	protected class ResourceContentsEStoreEList extends EStoreEObjectImpl.EStoreEList<EObject> {
-		protected static final long serialVersionUID = 1L;
-
-		protected ResourceContentsEStoreEList(InternalEObject owner, EStructuralFeature eStructuralFeature,
-				EStore store) {
-			super(owner, eStructuralFeature, store);
-		}
-
-		@Override
-		protected EObject validate(int index, EObject object) {
-			if (!canContainNull() && object == null) {
-				throw new IllegalArgumentException("The 'no null' constraint is violated");
-			}
-			return object;
-		}
-
-		@Override
-		public Object getNotifier() {
-			return HbaseTResourceImpl.this;
-		}
-
-		@Override
-		public int getFeatureID() {
-			return RESOURCE__CONTENTS;
-		}
-
-		@Override
-		protected boolean isNotificationRequired() {
-			return HbaseTResourceImpl.this.eNotificationRequired();
-		}
-
-		@Override
-		protected boolean useEquals() {
-			return false;
-		}
-
-		@Override
-		protected boolean hasInverse() {
-			return true;
-		}
-
-		@Override
-		protected boolean isUnique() {
-			return true;
-		}
-
-		@Override
-		public NotificationChain inverseAdd(EObject object, NotificationChain notifications) {
-			InternalEObject eObject = (InternalEObject) object;
-			notifications = eObject.eSetResource(HbaseTResourceImpl.this, notifications);
-			HbaseTResourceImpl.this.attached(eObject);
-			return notifications;
+	protected DirectWriteHbaseResourceTStoreImpl createHbaseEStore(Connection connection) throws IOException {
+		WriteMode writeMode = HbaseTResourceOptions.getEnumOption(options, HbaseTResourceOptions.WRITE_MODE, WriteMode.DIRECT);
+		switch (writeMode) {
+		case BUFFERED:
+			return new BufferedWriteHbaseResourceTStoreImpl(this, connection, options);
+		case DIRECT:
+		default:
+			return new DirectWriteHbaseResourceTStoreImpl(this, connection, options);
 		}
+	}
 
-		@Override
-		public NotificationChain inverseRemove(EObject object, NotificationChain notifications) {
-			InternalEObject eObject = (InternalEObject) object;
-			if (HbaseTResourceImpl.this.isLoaded || unloadingContents != null) {
-				HbaseTResourceImpl.this.detached(eObject);
-			}
-			return eObject.eSetResource(null, notifications);
-		}
+	/**
+	 * A {@link TResourceViewImpl} that pins the state of the
+	 * {@link #hbaseEStore} at its timestamp while it is loaded
+	 * 
+	 * @author agomez
+	 * 
+	 */
+	protected class HbaseTResourceView extends TResourceViewImpl {
 
-		@Override
-		protected void delegateAdd(int index, EObject object) {
-			// FIXME? Maintain a list of hard links to the elements while moving
-			// them to the new resource. If a garbage collection happens while
-			// traversing the children elements, some unsaved objects that are
-			// referenced from a saved object may be garbage collected before
-			// they have been completely stored in the DB
-			List<EObject> hardLinksList = new ArrayList<>();
-
-			// Collect all contents
-			hardLinksList.add(object);
-			for (Iterator<EObject> it = object.eAllContents(); it.hasNext(); hardLinksList.add(it.next()))
-				;
-
-			// The delegate add has to be processed before adding the child elements to the
-			// resource
-			// so that the root element is created
-			super.delegateAdd(index, object);
-
-			// Iterate using the hard links list instead the getAllContents
-			// We ensure that using the hardLinksList it is not taken out by JIT
-			// compiler
-			for (EObject element : hardLinksList) {
-				InternalTObject internalElement = TObjectAdapterFactoryImpl.getAdapter(element,
-						InternalTObject.class);
-				internalElement.tSetResource(HbaseTResourceImpl.this);
-			}
-		}
+		protected DirectWriteHbaseResourceTStoreImpl pinnedEStore;
 
-		@Override
-		protected EObject delegateRemove(int index) {
-			EObject object = super.delegateRemove(index);
-			List<EObject> hardLinksList = new ArrayList<>();
-			InternalTObject eObject = TObjectAdapterFactoryImpl.getAdapter(object, InternalTObject.class);
-			// Collect all contents
-			hardLinksList.add(object);
-			for (Iterator<EObject> it = eObject.eAllContents(); it.hasNext(); hardLinksList.add(it.next()))
-				;
-			// Iterate using the hard links list instead the getAllContents
-			// We ensure that using the hardLinksList it is not taken out by JIT
-			// compiler
-			for (EObject element : hardLinksList) {
-				InternalTObject internalElement = TObjectAdapterFactoryImpl.getAdapter(element,
-						InternalTObject.class);
-				internalElement.tSetResource(null);
+		public HbaseTResourceView(long timestamp) {
+			super(HbaseTResourceImpl.this, HbaseTResourceImpl.this.eStore, timestamp);
+			if (timestamp < System.currentTimeMillis()) {
+				pinnedEStore = hbaseEStore;
+				pinnedEStore.pinSnapshot(timestamp);
 			}
-			return object;
 		}
 
 		@Override
-		protected void didAdd(int index, EObject object) {
-			super.didAdd(index, object);
-			if (index == size() - 1) {
-				loaded();
+		protected synchronized void doUnload() {
+			super.doUnload();
+			if (pinnedEStore != null) {
+				pinnedEStore.unpinSnapshot(timestamp);
+				pinnedEStore = null;
 			}
-			modified();
-		}
-
-		@Override
-		protected void didRemove(int index, EObject object) {
-			super.didRemove(index, object);
-			modified();
 		}
 
 		@Override
-		protected void didSet(int index, EObject newObject, EObject oldObject) {
-			super.didSet(index, newObject, oldObject);
-			modified();
-		}
-
-		@Override
-		protected void didClear(int oldSize, Object[] oldData) {
-			if (oldSize == 0) {
-				loaded();
-			} else {
-				super.didClear(oldSize, oldData);
-			}
-		}
-
-		protected void loaded() {
-			if (!HbaseTResourceImpl.this.isLoaded()) {
-				Notification notification = HbaseTResourceImpl.this.setLoaded(true);
-				if (notification != null) {
-					HbaseTResourceImpl.this.eNotify(notification);
-				}
-			}
-		}
-
-		protected void modified() {
-			if (isTrackingModification()) {
-				setModified(true);
-			}
+		protected void finalize() throws Throwable {
+			unload();
+			super.finalize();
 		}
 	}
 